@@ -0,0 +1,68 @@
+package de.comroid.bench.vban;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANInputStream;
+import de.comroid.vban.VBANOutputStream;
+import de.comroid.vban.model.data.AudioFrame;
+import de.comroid.vban.packet.VBANPacket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Sends one audio packet over the loopback interface and receives it again per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LoopbackBenchmark {
+    private static final int PORT = 6990;
+
+    @Param({"false", "true"})
+    public boolean pooled;
+
+    private VBANOutputStream<AudioFrame> out;
+    private VBANInputStream<AudioFrame> in;
+    private AudioFrame frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+
+        in = VBAN.openAudioInputStream(loopback, PORT);
+        in.setSocketTimeout(1000);
+        out = pooled
+                ? new VBANOutputStream<>(VBANPacket.Factory.protocolDefault(VBAN.Protocol.AUDIO), loopback, PORT, 4)
+                : VBAN.openAudioOutputStream(loopback, PORT);
+        frame = AudioFrame.fromBytes(new byte[1024], VBAN.AudioFormat.INT16);
+    }
+
+    @TearDown
+    public void tearDown() {
+        out.close();
+        in.close();
+    }
+
+    @Benchmark
+    public AudioFrame sendAndReadData() throws IOException {
+        out.sendData(frame);
+        return in.readData();
+    }
+
+    @Benchmark
+    public int sendAndReadDatagram() throws IOException {
+        out.sendData(frame);
+        return in.readDatagram().remaining();
+    }
+}
@@ -0,0 +1,36 @@
+package de.comroid.bench.vban;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import de.comroid.vban.Util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UtilBenchmark {
+    private byte[] streamName;
+
+    @Setup
+    public void setUp() {
+        streamName = Util.trimArray(Util.stringToBytesASCII("Stream1"), 16);
+    }
+
+    @Benchmark
+    public String bytesToString() {
+        return Util.bytesToString(streamName, StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public byte[] stringToBytesASCII() {
+        return Util.stringToBytesASCII("Stream1");
+    }
+}
@@ -0,0 +1,98 @@
+package de.comroid.bench.vban.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import de.comroid.vban.VBAN.AudioFormat;
+import de.comroid.vban.audio.PcmConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Every invocation converts {@value #SAMPLES} samples. Each benchmark counts one operation per input byte,
+ * so the reported operations per second are the input throughput in bytes per second, whatever the input format.
+ * {@link #int16ToFloat32PerSample()} is the per-sample {@link ByteBuffer} loop that the kernels replace.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PcmConverterBenchmark {
+    private static final int SAMPLES = 64 * 1024;
+    private static final int INT16_BYTES = SAMPLES * 2;
+    private static final int INT24_BYTES = SAMPLES * 3;
+    private static final int FLOAT32_BYTES = SAMPLES * 4;
+
+    private PcmConverter converter;
+    private PcmConverter ditheringConverter;
+    private byte[] int16;
+    private byte[] int24;
+    private byte[] float32;
+    private float[] floats;
+
+    @Setup
+    public void setUp() {
+        converter = new PcmConverter();
+        ditheringConverter = new PcmConverter(true);
+        int16 = new byte[INT16_BYTES];
+        int24 = new byte[INT24_BYTES];
+        float32 = new byte[FLOAT32_BYTES];
+        floats = new float[SAMPLES];
+
+        for (int i = 0; i < int16.length; i++)
+            int16[i] = (byte) (i * 31);
+        converter.convert(int16, 0, AudioFormat.INT16, int24, 0, AudioFormat.INT24, SAMPLES);
+        converter.convert(int16, 0, AudioFormat.INT16, float32, 0, AudioFormat.FLOAT32, SAMPLES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INT16_BYTES)
+    public byte[] int16ToFloat32() {
+        converter.convert(int16, 0, AudioFormat.INT16, float32, 0, AudioFormat.FLOAT32, SAMPLES);
+        return float32;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FLOAT32_BYTES)
+    public byte[] float32ToInt16() {
+        converter.convert(float32, 0, AudioFormat.FLOAT32, int16, 0, AudioFormat.INT16, SAMPLES);
+        return int16;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FLOAT32_BYTES)
+    public byte[] float32ToInt16Dithered() {
+        ditheringConverter.convert(float32, 0, AudioFormat.FLOAT32, int16, 0, AudioFormat.INT16, SAMPLES);
+        return int16;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INT24_BYTES)
+    public byte[] int24ToInt16() {
+        converter.convert(int24, 0, AudioFormat.INT24, int16, 0, AudioFormat.INT16, SAMPLES);
+        return int16;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INT16_BYTES)
+    public float[] int16ToFloats() {
+        converter.decode(int16, 0, AudioFormat.INT16, floats, 0, SAMPLES);
+        return floats;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INT16_BYTES)
+    public float[] int16ToFloat32PerSample() {
+        ByteBuffer buffer = ByteBuffer.wrap(int16).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < SAMPLES; i++)
+            floats[i] = buffer.getShort(i * 2) / 32768f;
+        return floats;
+    }
+}
@@ -0,0 +1,48 @@
+package de.comroid.bench.vban.audio;
+
+import java.util.concurrent.TimeUnit;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.audio.Resampler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Converts one full stereo packet of 256 samples per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ResamplerBenchmark {
+    private Resampler upsampler;
+    private Resampler downsampler;
+    private float[] in;
+    private float[] out;
+
+    @Setup
+    public void setUp() {
+        upsampler = new Resampler(VBAN.SampleRate.Hz44100, VBAN.SampleRate.Hz48000, 2);
+        downsampler = new Resampler(VBAN.SampleRate.Hz48000, VBAN.SampleRate.Hz44100, 2);
+        in = new float[256 * 2];
+        out = new float[upsampler.maxOutputFrames(256) * 2];
+
+        for (int i = 0; i < in.length; i++)
+            in[i] = (float) Math.sin(i * 0.05);
+    }
+
+    @Benchmark
+    public int upsample44100To48000() {
+        return upsampler.process(in, 0, 256, out, 0);
+    }
+
+    @Benchmark
+    public int downsample48000To44100() {
+        return downsampler.process(in, 0, 256, out, 0);
+    }
+}
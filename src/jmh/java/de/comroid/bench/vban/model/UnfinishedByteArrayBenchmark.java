@@ -0,0 +1,48 @@
+package de.comroid.bench.vban.model;
+
+import java.util.concurrent.TimeUnit;
+
+import de.comroid.vban.model.UnfinishedByteArray;
+import de.comroid.vban.packet.VBANPacket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UnfinishedByteArrayBenchmark {
+    @Param({"1", "16", "256"})
+    public int chunkSize;
+
+    private byte[] chunk;
+
+    @Setup
+    public void setUp() {
+        chunk = new byte[chunkSize];
+    }
+
+    @Benchmark
+    public UnfinishedByteArray appendFixed() {
+        UnfinishedByteArray array = new UnfinishedByteArray(VBANPacket.MAX_SIZE, true);
+
+        for (int i = 0; i + chunkSize <= VBANPacket.MAX_SIZE; i += chunkSize)
+            array.append(chunk);
+        return array;
+    }
+
+    @Benchmark
+    public UnfinishedByteArray appendResizing() {
+        UnfinishedByteArray array = new UnfinishedByteArray(16);
+
+        for (int i = 0; i + chunkSize <= VBANPacket.MAX_SIZE; i += chunkSize)
+            array.append(chunk);
+        return array;
+    }
+}
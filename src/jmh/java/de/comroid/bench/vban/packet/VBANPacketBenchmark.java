@@ -0,0 +1,45 @@
+package de.comroid.bench.vban.packet;
+
+import java.util.concurrent.TimeUnit;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.exception.InvalidPacketAttributeException;
+import de.comroid.vban.packet.VBANPacket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class VBANPacketBenchmark {
+    @Param({"64", "1408"})
+    public int dataSize;
+
+    private VBANPacket.Factory<String> factory;
+    private byte[] data;
+    private byte[] packetBytes;
+
+    @Setup
+    public void setUp() {
+        factory = VBANPacket.Factory.protocolDefault(VBAN.Protocol.TEXT);
+        data = new byte[dataSize];
+        packetBytes = factory.create().setData(data).getBytes();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return factory.create().setData(data).getBytes();
+    }
+
+    @Benchmark
+    public VBANPacket.Decoded decode() throws InvalidPacketAttributeException {
+        return VBANPacket.decode(packetBytes, packetBytes.length);
+    }
+}
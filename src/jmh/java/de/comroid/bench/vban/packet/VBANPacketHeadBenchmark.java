@@ -0,0 +1,62 @@
+package de.comroid.bench.vban.packet;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.exception.InvalidPacketAttributeException;
+import de.comroid.vban.packet.VBANPacketHead;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class VBANPacketHeadBenchmark {
+    private VBANPacketHead.Factory<String> factory;
+    private byte[] headBytes;
+    private ByteBuffer headBuffer;
+    private VBANPacketHead.View view;
+
+    @Setup
+    public void setUp() {
+        factory = VBANPacketHead.Factory.builder(VBAN.Protocol.TEXT)
+                .setStreamName("Benchmark")
+                .build();
+        headBytes = factory.create().getBytes();
+        headBuffer = ByteBuffer.allocateDirect(VBANPacketHead.SIZE);
+        view = VBANPacketHead.view();
+
+        headBuffer.put(headBytes).flip();
+    }
+
+    @Benchmark
+    public VBANPacketHead<String> factoryCreate() {
+        return factory.create();
+    }
+
+    @Benchmark
+    public int factoryCreateInto() {
+        return factory.createInto(headBuffer, 0);
+    }
+
+    @Benchmark
+    public VBANPacketHead.Decoded decode() throws InvalidPacketAttributeException {
+        return VBANPacketHead.decode(headBytes.clone());
+    }
+
+    @Benchmark
+    public void viewProtocolAndName(Blackhole blackhole) {
+        view.wrap(headBuffer, 0);
+
+        blackhole.consume(view.getProtocol());
+        blackhole.consume(view.getStreamName());
+    }
+}
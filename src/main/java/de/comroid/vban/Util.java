@@ -110,14 +110,11 @@ public class Util {
      * @return The decoded {@link String}.
      */
     public static String bytesToString(byte[] bytes, Charset charset) {
-        StringBuilder str = new StringBuilder();
+        int length = 0;
 
-        for (byte b : bytes) {
-            if (b == 0) break;
+        while (length < bytes.length && bytes[length] != 0)
+            length++;
 
-            str.append(charset.decode(ByteBuffer.wrap(new byte[]{b})));
-        }
-
-        return str.toString();
+        return new String(bytes, 0, length, charset);
     }
 }
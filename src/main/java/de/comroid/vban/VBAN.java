@@ -8,6 +8,7 @@ import java.nio.charset.StandardCharsets;
 import de.comroid.util.model.Bindable;
 import de.comroid.util.model.Factory;
 import de.comroid.util.model.IntEnum;
+import de.comroid.vban.audio.JitterBuffer;
 import de.comroid.vban.model.DataRateValue;
 import de.comroid.vban.model.FormatValue;
 import de.comroid.vban.model.data.AudioFrame;
@@ -86,6 +87,49 @@ public final class VBAN {
         return new VBANOutputStream<>(packetFactory, address, port);
     }
 
+    /**
+     * Opens a new audio sending stream that accepts PCM data of any length and splits it into packets.
+     *
+     * @param packetFactory A factory to use for writing the packet heads.
+     * @param address       The {@linkplain InetAddress address} to send to.
+     * @param port          The port to send to.
+     * @param poolSize      The amount of reusable packet buffers.
+     *
+     * @return A new {@linkplain VBANAudioOutputStream fragmenting audio sender stream}.
+     * @throws SocketException See {@link java.nio.channels.DatagramChannel#open()}.
+     */
+    public static VBANAudioOutputStream openFragmentingAudioOutputStream(
+            VBANPacket.Factory<AudioFrame> packetFactory,
+            InetAddress address,
+            int port,
+            int poolSize)
+            throws SocketException {
+        return new VBANAudioOutputStream(packetFactory, address, port, poolSize);
+    }
+
+    /**
+     * Opens a new audio sending stream that splits PCM data into packets
+     * and sends them at the real-time rate of the stream's sample rate.
+     *
+     * @param packetFactory A factory to use for writing the packet heads.
+     * @param address       The {@linkplain InetAddress address} to send to.
+     * @param port          The port to send to.
+     * @param poolSize      The amount of reusable packet buffers.
+     * @param policy        How to catch up after the sender has fallen behind its schedule.
+     *
+     * @return A new {@linkplain VBANPacedAudioOutputStream paced audio sender stream}.
+     * @throws SocketException See {@link java.nio.channels.DatagramChannel#open()}.
+     */
+    public static VBANPacedAudioOutputStream openPacedAudioOutputStream(
+            VBANPacket.Factory<AudioFrame> packetFactory,
+            InetAddress address,
+            int port,
+            int poolSize,
+            VBANPacedAudioOutputStream.CatchUpPolicy policy)
+            throws SocketException {
+        return new VBANPacedAudioOutputStream(packetFactory, address, port, poolSize, policy);
+    }
+
     /**
      * Opens a new midi sending stream that uses the
      * {@linkplain VBANPacket.Factory#protocolDefault(Protocol) default packet factory}
@@ -192,6 +236,27 @@ public final class VBAN {
         return new VBANOutputStream<>(packetFactory, address, port);
     }
 
+    /**
+     * Opens a new command sending stream that packs as many complete lines into one packet as fit,
+     * using the {@linkplain VBANPacket.Factory#protocolDefault(Protocol) default packet factory}
+     * for the {@linkplain Protocol#TEXT command protocol}.
+     *
+     * @param address      The {@linkplain InetAddress address} to send to.
+     * @param port         The port to send to.
+     * @param lingerMillis How long the first line of a packet may wait for more lines before it is sent.
+     *
+     * @return A new {@linkplain VBANCoalescingOutputStream coalescing command sender stream}.
+     * @throws SocketException See {@link java.nio.channels.DatagramChannel#open()}.
+     */
+    public static VBANCoalescingOutputStream<String> openCoalescingCommandOutputStream(
+            InetAddress address,
+            int port,
+            long lingerMillis)
+            throws SocketException {
+        return new VBANCoalescingOutputStream<>(VBANPacket.Factory.protocolDefault(Protocol.TEXT),
+                address, port, 2, VBANPacket.MAX_SIZE_WITHOUT_HEAD, lingerMillis);
+    }
+
     // input
 
     /**
@@ -225,6 +290,27 @@ public final class VBAN {
         return new VBANInputStream<>(Protocol.AUDIO, address, port);
     }
 
+    /**
+     * Opens a new audio receiving stream that reorders the received frames by their frame counter
+     * and releases them after the given playout delay.
+     *
+     * @param address     The {@linkplain InetAddress address} to bind to.
+     * @param port        The port to bind to.
+     * @param capacity    The maximum amount of frames to buffer.
+     * @param delayMillis The playout delay in milliseconds.
+     *
+     * @return A new {@linkplain VBANAudioInputStream jitter-buffered audio receiver stream}.
+     * @throws SocketException See {@link DatagramSocket} constructor.
+     */
+    public static VBANAudioInputStream openJitterBufferedAudioInputStream(
+            InetAddress address,
+            int port,
+            int capacity,
+            int delayMillis)
+            throws SocketException {
+        return new VBANAudioInputStream(address, port, new JitterBuffer(capacity, delayMillis));
+    }
+
     /**
      * Opens a new midi receiving stream that binds to the
      * {@linkplain InetAddress#getLoopbackAddress() loopback address}.
@@ -296,6 +382,11 @@ public final class VBAN {
             public AudioFrame createDataObject(byte[] bytes) {
                 return AudioFrame.fromBytes(bytes);
             }
+
+            @Override
+            public AudioFrame createDataObject(byte[] bytes, FormatValue<?> format) {
+                return AudioFrame.fromBytes(bytes, format == null ? null : format.asAudioFormat());
+            }
         };
         public final static Protocol<MIDICommand> SERIAL = new Protocol<MIDICommand>(0x20) {
             @Override
@@ -324,6 +415,19 @@ public final class VBAN {
 
         public abstract T createDataObject(byte[] bytes);
 
+        /**
+         * Creates the data object for a packet with the given format.
+         * Only the {@link #AUDIO} protocol makes use of the format.
+         *
+         * @param bytes  The data bytes of the packet.
+         * @param format The format from the packet head.
+         *
+         * @return The data object.
+         */
+        public T createDataObject(byte[] bytes, FormatValue<?> format) {
+            return createDataObject(bytes);
+        }
+
         public String name() {
             switch (value) {
                 case 0x00:
@@ -399,39 +503,75 @@ public final class VBAN {
         public final static int USER = 0xF0;
     }
 
+    /**
+     * Collection of service types and functions of the {@linkplain Protocol#SERVICE service protocol}.
+     * A service head carries the function where other heads carry the samples,
+     * and the service type where other heads carry the channels.
+     */
+    public static final class Service {
+        public final static int IDENTIFICATION = 0x00;
+        public final static int CHAT_UTF8 = 0x01;
+        public final static int RT_PACKET_REGISTER = 0x20;
+        public final static int RT_PACKET = 0x21;
+
+        public final static int FUNCTION_PING0 = 0x00;
+        public final static int FUNCTION_REPLY = 0x80;
+
+        /**
+         * The stream name of service packets.
+         */
+        public final static String STREAM_NAME = "VBAN Service";
+    }
+
     /**
      * Collection of sample rate indices, required for creating a {@link VBANPacketHead.Factory}.
      */
     public enum SampleRate implements DataRateValue<AudioFrame> {
-        Hz6000,
-        Hz12000,
-        Hz24000,
-        Hz48000,
-        Hz96000,
-        Hz192000,
-        Hz384000,
-
-        Hz8000,
-        Hz16000,
-        Hz32000,
-        Hz64000,
-        Hz128000,
-        Hz256000,
-        Hz512000,
-
-        Hz11025,
-        Hz22050,
-        Hz44100,
-        Hz88200,
-        Hz176400,
-        Hz352800,
-        Hz705600;
+        Hz6000(6000),
+        Hz12000(12000),
+        Hz24000(24000),
+        Hz48000(48000),
+        Hz96000(96000),
+        Hz192000(192000),
+        Hz384000(384000),
+
+        Hz8000(8000),
+        Hz16000(16000),
+        Hz32000(32000),
+        Hz64000(64000),
+        Hz128000(128000),
+        Hz256000(256000),
+        Hz512000(512000),
+
+        Hz11025(11025),
+        Hz22050(22050),
+        Hz44100(44100),
+        Hz88200(88200),
+        Hz176400(176400),
+        Hz352800(352800),
+        Hz705600(705600);
+
+        private static final SampleRate[] VALUES = values();
+        private final int hz;
+
+        SampleRate(int hz) {
+            this.hz = hz;
+        }
 
         @Override
         public int getValue() {
             return ordinal();
         }
 
+        /**
+         * The sample rate in samples per second.
+         *
+         * @return The sample rate in Hertz.
+         */
+        public int getHz() {
+            return hz;
+        }
+
         @Override
         public <R> boolean isType(Class<R> type) {
             return SampleRate.class.isAssignableFrom(type);
@@ -448,7 +588,34 @@ public final class VBAN {
         }
 
         public static SampleRate byValue(int value) {
-            return values()[value];
+            return VALUES[value];
+        }
+
+        /**
+         * Checks whether a data rate index names a {@link SampleRate}.
+         *
+         * @param value The data rate index.
+         *
+         * @return Whether {@link #byValue(int)} accepts the index.
+         */
+        public static boolean isValue(int value) {
+            return value >= 0 && value < VALUES.length;
+        }
+
+        /**
+         * Finds the sample rate with the given amount of samples per second.
+         *
+         * @param hz The sample rate in Hertz.
+         *
+         * @return The sample rate.
+         * @throws IllegalArgumentException If VBAN does not support the sample rate.
+         */
+        public static SampleRate byHz(int hz) {
+            for (SampleRate x : VALUES)
+                if (x.hz == hz)
+                    return x;
+
+            throw new IllegalArgumentException("Unsupported sample rate: " + hz + " Hz");
         }
     }
 
@@ -482,6 +649,8 @@ public final class VBAN {
         Bps2000000,
         Bps3000000;
 
+        private static final BitsPerSecond[] VALUES = values();
+
         @Override
         public int getValue() {
             return ordinal();
@@ -503,7 +672,18 @@ public final class VBAN {
         }
 
         public static BitsPerSecond byValue(int value) {
-            return values()[value];
+            return VALUES[value];
+        }
+
+        /**
+         * Checks whether a data rate index names a {@link BitsPerSecond}.
+         *
+         * @param value The data rate index.
+         *
+         * @return Whether {@link #byValue(int)} accepts the index.
+         */
+        public static boolean isValue(int value) {
+            return value >= 0 && value < VALUES.length;
         }
     }
 
@@ -511,19 +691,22 @@ public final class VBAN {
      * Collection of format values, required for creating a {@link VBANPacketHead.Factory}.
      */
     public enum AudioFormat implements FormatValue<AudioFrame> {
-        BYTE8(0x00),
-        INT16(0x01),
-        INT24(0x02),
-        INT32(0x03),
-        FLOAT32(0x04),
-        FLOAT64(0x05),
-        BITS12(0x06),
-        BITS10(0x07);
-
+        BYTE8(0x00, 1),
+        INT16(0x01, 2),
+        INT24(0x02, 3),
+        INT32(0x03, 4),
+        FLOAT32(0x04, 4),
+        FLOAT64(0x05, 8),
+        BITS12(0x06, 0),
+        BITS10(0x07, 0);
+
+        private static final AudioFormat[] VALUES = values();
         private final int value;
+        private final int sampleSize;
 
-        AudioFormat(int value) {
+        AudioFormat(int value, int sampleSize) {
             this.value = value;
+            this.sampleSize = sampleSize;
         }
 
         @Override
@@ -531,6 +714,15 @@ public final class VBAN {
             return value;
         }
 
+        /**
+         * Gets the size of one sample in bytes.
+         *
+         * @return The sample size in bytes, or {@code 0} for the bit-packed formats {@link #BITS12} and {@link #BITS10}.
+         */
+        public int getSampleSize() {
+            return sampleSize;
+        }
+
         @Override
         public <R> boolean isType(Class<R> type) {
             return AudioFormat.class.isAssignableFrom(type);
@@ -552,7 +744,7 @@ public final class VBAN {
         }
 
         public static AudioFormat byValue(int value) {
-            for (AudioFormat x : values())
+            for (AudioFormat x : VALUES)
                 if (x.value == value)
                     return x;
 
@@ -565,6 +757,7 @@ public final class VBAN {
         UTF8(0x10),
         WCHAR(0x20);
 
+        private static final CommandFormat[] VALUES = values();
         private final int value;
 
         CommandFormat(int value) {
@@ -597,7 +790,7 @@ public final class VBAN {
         }
 
         public static <T> CommandFormat byValue(int value) {
-            for (CommandFormat x : values())
+            for (CommandFormat x : VALUES)
                 if (x.value == value)
                     return x;
 
@@ -608,6 +801,7 @@ public final class VBAN {
     public enum Format implements FormatValue<CharSequence> {
         BYTE8(0x00);
 
+        private static final Format[] VALUES = values();
         private final int value;
 
         Format(int value) {
@@ -640,7 +834,7 @@ public final class VBAN {
         }
 
         public static <T> Format byValue(int value) {
-            for (Format x : values())
+            for (Format x : VALUES)
                 if (x.value == value)
                     return x;
 
@@ -0,0 +1,204 @@
+package de.comroid.vban;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+import de.comroid.vban.audio.JitterBuffer;
+import de.comroid.vban.audio.LossConcealer;
+import de.comroid.vban.model.data.AudioFrame;
+import de.comroid.vban.packet.VBANPacketHead;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Audio receiving stream that passes all received frames through a {@link JitterBuffer}.
+ * <p>
+ * {@link #readData()} returns frames in frame counter order, each one after the buffer's playout delay.
+ * Packets of other protocols are ignored instead of causing an exception.
+ * <p>
+ * With a {@link LossConcealer}, the stream plays out on its own clock once the first frame has been returned:
+ * every frame is due one packet duration after the previous one, as given by the sample rate and sample count
+ * of the received heads. A frame that has not arrived when it is due is replaced by a concealed frame, and
+ * the buffer skips it. When the sender stops, the concealment fades out and the stream waits for the next frame.
+ */
+public class VBANAudioInputStream extends VBANInputStream<AudioFrame> {
+    private static final VBAN.SampleRate[] SAMPLE_RATES = VBAN.SampleRate.values();
+
+    private final JitterBuffer jitterBuffer;
+    private final VBANPacketHead.View headView = VBANPacketHead.view();
+    private LossConcealer concealer;
+    private boolean released = false;
+    private int lastReleased;
+    private boolean playing = false;
+    private long playoutDeadline;
+    private long frameNanos = 0;
+    private int concealedInRow = 0;
+    private int timeout = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param address      The {@linkplain InetAddress address} to bind to.
+     * @param port         The port to bind to.
+     * @param jitterBuffer The jitter buffer to pass received frames through.
+     *
+     * @throws SocketException See {@link VBANReceiver} constructor.
+     */
+    public VBANAudioInputStream(InetAddress address, int port, JitterBuffer jitterBuffer) throws SocketException {
+        super(VBAN.Protocol.AUDIO, address, port);
+
+        this.jitterBuffer = jitterBuffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * For this stream, the timeout applies to {@link #readData()} as a whole.
+     */
+    @Override
+    public void setSocketTimeout(int ms) throws SocketException {
+        super.setSocketTimeout(ms);
+        timeout = ms;
+    }
+
+    /**
+     * Receives packets until the {@link JitterBuffer} releases the next frame.
+     * If a {@linkplain #setLossConcealer(LossConcealer) loss concealer} is set, a concealed frame is returned
+     * in place of every frame that has not arrived by its playout time.
+     *
+     * @return The next frame in frame counter order. A concealed or cross-faded frame is only valid until the next read.
+     * @throws SocketTimeoutException If no frame was released within the {@linkplain #setSocketTimeout(int) timeout}.
+     * @throws IOException            If the stream has been {@linkplain #close() closed} before.
+     * @throws IOException            See {@link VBANReceiver#receive()} for details.
+     */
+    @Override
+    public synchronized AudioFrame readData() throws IOException {
+        long deadline = timeout > 0 ? System.nanoTime() + timeout * 1_000_000L : 0;
+
+        try {
+            while (true) {
+                // stamp everything that is already pending, so that arrival times stay accurate
+                ByteBuffer pending;
+                while ((pending = pollDatagram()) != null)
+                    offer(pending);
+
+                long now = System.nanoTime();
+                if (isClocked() && now - playoutDeadline >= 0) {
+                    AudioFrame frame = playOut();
+                    if (frame != null)
+                        return frame;
+                }
+
+                AudioFrame frame = jitterBuffer.poll(now);
+                if (frame != null)
+                    return release(frame, now);
+
+                long wait = jitterBuffer.nanosUntilNextRelease(now);
+                if (isClocked()) {
+                    long due = Math.max(0, playoutDeadline - now);
+                    wait = wait < 0 ? due : Math.min(wait, due);
+                }
+                if (timeout > 0) {
+                    long left = deadline - now;
+                    if (left <= 0)
+                        throw new SocketTimeoutException("Receive timed out");
+                    wait = wait < 0 ? left : Math.min(wait, left);
+                }
+                // round up, a timeout of 0 would block forever
+                super.setSocketTimeout(wait < 0 ? 0 : (int) Math.max(1, (wait + 999_999) / 1_000_000));
+
+                try {
+                    offer(readDatagram());
+                } catch (SocketTimeoutException e) {
+                    // a frame is due, or the overall deadline has passed; both are checked above
+                }
+            }
+        } finally {
+            super.setSocketTimeout(timeout);
+        }
+    }
+
+    public JitterBuffer getJitterBuffer() {
+        return jitterBuffer;
+    }
+
+    /**
+     * Sets the concealer that replaces frames that have not arrived by their playout time.
+     *
+     * @param concealer The concealer, or {@code null} to return only received frames, each after the buffer's delay.
+     */
+    public synchronized void setLossConcealer(@Nullable LossConcealer concealer) {
+        this.concealer = concealer;
+        this.playing = false;
+    }
+
+    public synchronized @Nullable LossConcealer getLossConcealer() {
+        return concealer;
+    }
+
+    private boolean isClocked() {
+        return concealer != null && playing;
+    }
+
+    /**
+     * Returns the frame whose playout time has come, or conceals it if it has not arrived.
+     * Once the concealment has faded out and no later frame is buffered, the sender is considered stopped.
+     */
+    private AudioFrame playOut() {
+        if (jitterBuffer.size() == 0 && concealedInRow > LossConcealer.FADE_OUT_FRAMES) {
+            playing = false;
+            return null;
+        }
+
+        AudioFrame frame = jitterBuffer.releaseNext();
+        lastReleased = jitterBuffer.getNextFrameCounter() - 1;
+        // advanced from the previous deadline, so that the playout clock does not drift
+        playoutDeadline += frameNanos;
+
+        if (frame == null) {
+            concealedInRow++;
+            return concealer.conceal();
+        }
+        concealedInRow = 0;
+        return concealer.accept(frame);
+    }
+
+    private AudioFrame release(AudioFrame frame, long now) {
+        // the buffer has just advanced past the released frame
+        int counter = jitterBuffer.getNextFrameCounter() - 1;
+        int lost = released ? counter - lastReleased - 1 : 0;
+        released = true;
+        lastReleased = counter;
+
+        if (concealer == null)
+            return frame;
+
+        playing = frameNanos > 0;
+        playoutDeadline = now + frameNanos;
+        concealedInRow = 0;
+        // the buffer skipped frames before the clock could conceal them, or it was resynchronized
+        if (lost != 0)
+            concealer.reset();
+        return concealer.accept(frame);
+    }
+
+    private void offer(ByteBuffer datagram) {
+        VBANPacketHead.View head = headView.wrap(datagram);
+        if (!head.isValid() || !head.getProtocol().isAudio())
+            return;
+
+        byte[] bytes = new byte[datagram.limit() - head.getOffset() - VBANPacketHead.SIZE];
+        datagram.position(head.getOffset() + VBANPacketHead.SIZE);
+        datagram.get(bytes);
+
+        int rate = head.getDataRateIndex();
+        if (rate < SAMPLE_RATES.length)
+            frameNanos = head.getSamples() * 1_000_000_000L / SAMPLE_RATES[rate].getHz();
+
+        jitterBuffer.offer(head.getFrameCounter(), AudioFrame.fromBytes(bytes, head.getFormat().asAudioFormat()),
+                System.nanoTime());
+    }
+}
@@ -0,0 +1,267 @@
+package de.comroid.vban;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import de.comroid.vban.model.PacketBuffer;
+import de.comroid.vban.model.data.AudioFrame;
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.packet.VBANPacketHead;
+import de.comroid.vban.transport.Transport;
+
+import static de.comroid.vban.packet.VBANPacket.MAX_SIZE_WITHOUT_HEAD;
+
+/**
+ * Audio sending stream that accepts PCM data of any length and splits it into packets on its own.
+ * <p>
+ * Written bytes are copied once into pooled {@link de.comroid.vban.model.PacketBuffer}s. As soon as a buffer
+ * holds the largest amount of whole sample frames that fits into one packet, it is sent with the samples field
+ * of its head set accordingly. Data that does not fill a whole packet is carried over to the next write,
+ * until {@link #flush()} sends it as a shorter packet.
+ * <p>
+ * Line breaks have no meaning for this stream.
+ */
+public class VBANAudioOutputStream extends VBANOutputStream<AudioFrame> {
+    private final int frameSize;
+    private final int packetSamples;
+    private final int packetBytes;
+    private final byte[] partial;
+    private PacketBuffer pending;
+
+    /**
+     * Constructor.
+     *
+     * @param packetFactory A factory whose {@linkplain VBANPacket.Factory#getHeadFactory() head factory} writes the heads.
+     *                      Its samples field is the upper limit for the samples per packet.
+     * @param address       The InetAddress to send to.
+     * @param port          The port to send to.
+     * @param poolSize      The amount of reusable packet buffers.
+     *
+     * @throws SocketException          See {@link DatagramChannel#open()}.
+     * @throws IllegalArgumentException If the format is not byte-aligned, or one sample frame does not fit into a packet.
+     */
+    public VBANAudioOutputStream(VBANPacket.Factory<AudioFrame> packetFactory, InetAddress address, int port, int poolSize)
+            throws SocketException {
+        super(packetFactory, address, port, poolSize);
+
+        this.frameSize = frameSize(packetFactory);
+        this.packetSamples = packetSamples(packetFactory, frameSize);
+        this.packetBytes = packetSamples * frameSize;
+        this.partial = new byte[frameSize];
+    }
+
+    /**
+     * Constructor for a stream that sends through the given transport.
+     *
+     * @param packetFactory A factory whose {@linkplain VBANPacket.Factory#getHeadFactory() head factory} writes the heads.
+     *                      Its samples field is the upper limit for the samples per packet.
+     * @param transport     The transport to send through. It is closed with this stream.
+     * @param target        The address to send to.
+     * @param poolSize      The amount of reusable packet buffers.
+     *
+     * @throws IllegalArgumentException If the format is not byte-aligned, or one sample frame does not fit into a packet.
+     */
+    public VBANAudioOutputStream(VBANPacket.Factory<AudioFrame> packetFactory,
+                                 Transport transport,
+                                 InetSocketAddress target,
+                                 int poolSize) {
+        super(packetFactory, transport, target, poolSize);
+
+        this.frameSize = frameSize(packetFactory);
+        this.packetSamples = packetSamples(packetFactory, frameSize);
+        this.packetBytes = packetSamples * frameSize;
+        this.partial = new byte[frameSize];
+    }
+
+    /**
+     * Appends one byte of PCM data. Sends a packet once it is full.
+     *
+     * @param b The byte as an int to append.
+     *
+     * @throws IOException If the stream has been {@linkplain #close() closed} before.
+     * @throws IOException See {@link DatagramChannel#send(ByteBuffer, java.net.SocketAddress)} for details.
+     */
+    @Override
+    public synchronized void write(int b) throws IOException {
+        PacketBuffer packet = pendingBuffer();
+        packet.put((byte) b);
+
+        if (packet.length() == packetBytes)
+            sendPending(packetSamples);
+    }
+
+    /**
+     * Appends PCM data of any length. Sends every packet that becomes full.
+     *
+     * @param b   The bytes to append, interleaved by channel in the stream's format.
+     * @param off The offset in the array.
+     * @param len The amount of bytes to append.
+     *
+     * @throws IOException If the stream has been {@linkplain #close() closed} before.
+     * @throws IOException See {@link DatagramChannel#send(ByteBuffer, java.net.SocketAddress)} for details.
+     */
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IndexOutOfBoundsException();
+
+        while (len > 0) {
+            PacketBuffer packet = pendingBuffer();
+            int count = Math.min(len, packetBytes - packet.length());
+            packet.put(b, off, count);
+            off += count;
+            len -= count;
+
+            if (packet.length() == packetBytes)
+                sendPending(packetSamples);
+        }
+    }
+
+    /**
+     * Appends the remaining bytes of the given buffer as PCM data, like {@link #write(byte[], int, int)}.
+     * The buffer's position is advanced to its limit.
+     *
+     * @param src The buffer to append.
+     *
+     * @throws IOException If the stream has been {@linkplain #close() closed} before.
+     * @throws IOException See {@link DatagramChannel#send(ByteBuffer, java.net.SocketAddress)} for details.
+     */
+    public synchronized void write(ByteBuffer src) throws IOException {
+        int limit = src.limit();
+
+        try {
+            while (src.hasRemaining()) {
+                PacketBuffer packet = pendingBuffer();
+                src.limit(src.position() + Math.min(src.remaining(), packetBytes - packet.length()));
+                packet.put(src);
+                src.limit(limit);
+
+                if (packet.length() == packetBytes)
+                    sendPending(packetSamples);
+            }
+        } finally {
+            src.limit(limit);
+        }
+    }
+
+    /**
+     * Sends all whole sample frames that have been written, even if they do not fill a packet.
+     * An incomplete sample frame is kept for the next write.
+     *
+     * @throws IOException If the stream has been {@linkplain #close() closed} before.
+     * @throws IOException See {@link DatagramChannel#send(ByteBuffer, java.net.SocketAddress)} for details.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        checkOpen();
+        if (pending == null) return;
+
+        int length = pending.length();
+        int samples = length / frameSize;
+        int rest = length - samples * frameSize;
+        if (samples == 0) return;
+
+        if (rest > 0) {
+            ByteBuffer buffer = pending.buffer();
+            int restStart = buffer.position() - rest;
+            for (int i = 0; i < rest; i++)
+                partial[i] = buffer.get(restStart + i);
+            buffer.position(restStart);
+        }
+
+        sendPending(samples);
+
+        if (rest > 0)
+            pendingBuffer().put(partial, 0, rest);
+    }
+
+    /**
+     * Writes the data of every frame like {@link #write(byte[], int, int)}, then {@linkplain #flush() flushes}.
+     * Unlike for other streams, the frames are split into packets on sample frame boundaries,
+     * so a frame may be spread over several packets and one packet may contain several frames.
+     *
+     * @param data The frames to send.
+     *
+     * @return The instance of the stream.
+     * @throws IOException If the stream has been {@linkplain #close() closed} before.
+     * @throws IOException See {@link DatagramChannel#send(ByteBuffer, java.net.SocketAddress)} for details.
+     */
+    @Override
+    public synchronized VBANOutputStream<AudioFrame> sendBatch(Iterable<? extends AudioFrame> data) throws IOException {
+        for (AudioFrame frame : data) {
+            byte[] bytes = frame.getBytes();
+            write(bytes, 0, bytes.length);
+        }
+        flush();
+        return this;
+    }
+
+    /**
+     * The amount of samples per channel in a full packet.
+     *
+     * @return The samples per packet.
+     */
+    public int getSamplesPerPacket() {
+        return packetSamples;
+    }
+
+    /**
+     * The size of one sample frame, which holds one sample of every channel.
+     *
+     * @return The sample frame size in bytes.
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * The amount of bytes that have been written, but not yet sent.
+     *
+     * @return The amount of pending bytes.
+     */
+    public synchronized int getPendingBytes() {
+        return pending == null ? 0 : pending.length();
+    }
+
+    @Override
+    public synchronized void close() {
+        super.close();
+
+        if (pending != null) {
+            release(pending);
+            pending = null;
+        }
+    }
+
+    private static int frameSize(VBANPacket.Factory<AudioFrame> packetFactory) {
+        VBANPacketHead.Factory<AudioFrame> headFactory = packetFactory.getHeadFactory();
+        VBAN.AudioFormat format = VBAN.AudioFormat.byValue(headFactory.getFormat());
+        if (format.getSampleSize() == 0)
+            throw new IllegalArgumentException("Unsupported sample format: " + format);
+
+        int frameSize = (headFactory.getChannel() + 1) * format.getSampleSize();
+        if (frameSize > MAX_SIZE_WITHOUT_HEAD)
+            throw new IllegalArgumentException("One sample frame of " + frameSize + " bytes does not fit into a packet");
+        return frameSize;
+    }
+
+    private static int packetSamples(VBANPacket.Factory<AudioFrame> packetFactory, int frameSize) {
+        return Math.min(packetFactory.getHeadFactory().getSamples() + 1, MAX_SIZE_WITHOUT_HEAD / frameSize);
+    }
+
+    private PacketBuffer pendingBuffer() throws IOException {
+        if (pending == null)
+            pending = acquire();
+        return pending;
+    }
+
+    private void sendPending(int samples) throws IOException {
+        PacketBuffer packet = pending;
+        pending = null;
+        sendPooled(packet, samples);
+    }
+}
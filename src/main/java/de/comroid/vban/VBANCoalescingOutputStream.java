@@ -0,0 +1,308 @@
+package de.comroid.vban;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.comroid.vban.model.PacketBuffer;
+import de.comroid.vban.packet.VBANPacket;
+
+import static de.comroid.vban.Util.createByteArray;
+import static de.comroid.vban.packet.VBANPacket.MAX_SIZE;
+import static de.comroid.vban.packet.VBANPacket.MAX_SIZE_WITHOUT_HEAD;
+
+/**
+ * Line-based sending stream that packs as many complete lines into one packet as fit, instead of sending one
+ * packet per line.
+ * <p>
+ * Complete lines are collected in a pooled {@link PacketBuffer}. It is sent once it reaches the size threshold,
+ * when the next line would not fit anymore, or when the linger time has passed since its first line was added,
+ * whichever comes first. A line is never split over two packets. Bytes after the last line break stay in this
+ * stream until their line is complete, or until {@link #flush()} sends them along with all collected lines.
+ * <p>
+ * If sending lines after their linger time fails, the next write or flush throws the failure.
+ */
+public class VBANCoalescingOutputStream<T> extends VBANOutputStream<T> {
+    private final int threshold;
+    private final long lingerMillis;
+    private final byte[] line = new byte[MAX_SIZE_WITHOUT_HEAD];
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private int lineLength = 0;
+    private PacketBuffer pending;
+    private ScheduledFuture<?> lingerTask;
+    private long generation = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param packetFactory A factory whose {@linkplain VBANPacket.Factory#getHeadFactory() head factory} writes the heads.
+     * @param address       The InetAddress to send to.
+     * @param port          The port to send to.
+     * @param poolSize      The amount of reusable packet buffers.
+     * @param threshold     The amount of bytes from which on collected lines are sent immediately,
+     *                      at most {@value VBANPacket#MAX_SIZE_WITHOUT_HEAD}.
+     * @param lingerMillis  How long the first collected line may wait for more lines before it is sent.
+     *                      With {@code 0}, the lines of every write call are sent at its end.
+     *
+     * @throws SocketException          See {@link DatagramChannel#open()}.
+     * @throws IllegalArgumentException If the threshold or the linger time are out of range.
+     */
+    public VBANCoalescingOutputStream(VBANPacket.Factory<T> packetFactory,
+                                      InetAddress address,
+                                      int port,
+                                      int poolSize,
+                                      int threshold,
+                                      long lingerMillis)
+            throws SocketException {
+        // validated before the channel is opened, so that it is not leaked
+        super(packetFactory, address, port, checkArguments(poolSize, threshold, lingerMillis));
+
+        this.threshold = threshold;
+        this.lingerMillis = lingerMillis;
+    }
+
+    /**
+     * Appends the data as one line. A line break is added, unless the data already ends with one.
+     *
+     * @param data The data to send. Is converted to a bytearray using {@link Util#createByteArray(Object)}.
+     *
+     * @return The instance of the stream.
+     * @throws IOException If the stream has been {@linkplain #close() closed} before.
+     * @throws IOException If the converted byte-array from the given data is too large.
+     * @throws IOException See {@link DatagramChannel#send(java.nio.ByteBuffer, java.net.SocketAddress)} for details.
+     */
+    @Override
+    public synchronized VBANOutputStream<T> sendData(T data) throws IOException {
+        byte[] bytes = createByteArray(data);
+        append(bytes, 0, bytes.length);
+        if (bytes.length == 0 || bytes[bytes.length - 1] != '\n')
+            append('\n');
+        if (lingerMillis == 0)
+            sendPending();
+        return this;
+    }
+
+    /**
+     * Appends every element as one line like {@link #sendData(Object)}, then {@linkplain #flush() flushes}.
+     * Unlike for other streams, the elements are packed into as few packets as possible.
+     *
+     * @param data The data to send.
+     *
+     * @return The instance of the stream.
+     * @throws IOException See {@link #sendData(Object)}.
+     */
+    @Override
+    public synchronized VBANOutputStream<T> sendBatch(Iterable<? extends T> data) throws IOException {
+        for (T each : data) {
+            byte[] bytes = createByteArray(each);
+            append(bytes, 0, bytes.length);
+            if (bytes.length == 0 || bytes[bytes.length - 1] != '\n')
+                append('\n');
+        }
+        flush();
+        return this;
+    }
+
+    /**
+     * Appends one byte to the current line. A line break completes the line.
+     *
+     * @param b The byte as an int to append.
+     *
+     * @throws IOException If the stream has been {@linkplain #close() closed} before.
+     * @throws IOException If the line is longer than one packet.
+     * @throws IOException See {@link DatagramChannel#send(java.nio.ByteBuffer, java.net.SocketAddress)} for details.
+     */
+    @Override
+    public synchronized void write(int b) throws IOException {
+        append(b);
+        if (lingerMillis == 0)
+            sendPending();
+    }
+
+    /**
+     * Appends the given bytes, like {@link #write(int)} does for every byte.
+     * The bytes between two line breaks are copied at once.
+     *
+     * @param b   The bytes to append.
+     * @param off The offset in the array.
+     * @param len The amount of bytes to append.
+     *
+     * @throws IOException See {@link #write(int)}.
+     */
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        append(b, off, len);
+        if (lingerMillis == 0)
+            sendPending();
+    }
+
+    /**
+     * Sends all collected lines and the incomplete line in one packet, if they fit into one.
+     *
+     * @throws IOException If the stream has been {@linkplain #close() closed} before.
+     * @throws IOException If sending lines after their linger time has failed. Every failure is only reported once.
+     * @throws IOException See {@link DatagramChannel#send(java.nio.ByteBuffer, java.net.SocketAddress)} for details.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        checkOpen();
+        checkFailure();
+        if (lineLength > 0)
+            completeLine();
+        sendPending();
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    /**
+     * The amount of bytes that have been written, but not yet sent.
+     *
+     * @return The amount of pending bytes, including the incomplete line.
+     */
+    public synchronized int getPendingBytes() {
+        return (pending == null ? 0 : pending.length()) + lineLength;
+    }
+
+    /**
+     * Sends all collected lines and the incomplete line, then closes the stream.
+     */
+    @Override
+    public synchronized void close() {
+        super.close();
+
+        if (lingerTask != null)
+            lingerTask.cancel(false);
+        if (pending != null) {
+            release(pending);
+            pending = null;
+        }
+    }
+
+    private void append(int b) throws IOException {
+        checkOpen();
+        checkFailure();
+        if (lineLength == line.length)
+            throw new IOException("Line is too large, must be smaller than " + MAX_SIZE);
+
+        line[lineLength++] = (byte) b;
+        if (b == '\n')
+            completeLine();
+    }
+
+    private void append(byte[] b, int off, int len) throws IOException {
+        checkOpen();
+        checkFailure();
+
+        int end = off + len;
+        while (off < end) {
+            // copy up to and including the next line break
+            int lineEnd = off;
+            while (lineEnd < end && b[lineEnd] != '\n')
+                lineEnd++;
+            boolean lineBreak = lineEnd < end;
+            int segment = lineEnd - off + (lineBreak ? 1 : 0);
+
+            if (lineLength + segment > line.length)
+                throw new IOException("Line is too large, must be smaller than " + MAX_SIZE);
+            System.arraycopy(b, off, line, lineLength, segment);
+            lineLength += segment;
+            off += segment;
+
+            if (lineBreak)
+                completeLine();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        IOException failure = this.failure.getAndSet(null);
+        if (failure != null)
+            throw new IOException("Linger send failed", failure);
+    }
+
+    private void completeLine() throws IOException {
+        if (pending != null && pending.length() + lineLength > MAX_SIZE_WITHOUT_HEAD)
+            sendPending();
+
+        if (pending == null) {
+            pending = acquire();
+            scheduleLinger();
+        }
+        pending.put(line, 0, lineLength);
+        lineLength = 0;
+
+        if (pending.length() >= threshold)
+            sendPending();
+    }
+
+    private void sendPending() throws IOException {
+        if (pending == null) return;
+
+        PacketBuffer packet = pending;
+        pending = null;
+        generation++;
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        sendPooled(packet);
+    }
+
+    private void scheduleLinger() {
+        if (lingerMillis == 0) return;
+
+        final long scheduled = generation;
+        lingerTask = Linger.TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (VBANCoalescingOutputStream.this) {
+                    // the lines may have been sent in the meantime
+                    if (generation != scheduled)
+                        return;
+                    try {
+                        sendPending();
+                    } catch (IOException e) {
+                        failure.set(e);
+                    } catch (RuntimeException e) {
+                        // such as an unresolved target; the buffer has been released
+                        failure.set(new IOException("Send failed", e));
+                    }
+                }
+            }
+        }, lingerMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static int checkArguments(int poolSize, int threshold, long lingerMillis) {
+        if (threshold < 1 || threshold > MAX_SIZE_WITHOUT_HEAD)
+            throw new IllegalArgumentException("Threshold must be from 1 to " + MAX_SIZE_WITHOUT_HEAD + " bytes");
+        if (lingerMillis < 0)
+            throw new IllegalArgumentException("Linger time must not be negative");
+        return poolSize;
+    }
+
+    private static final class Linger {
+        private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "VBAN linger timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        static {
+            TIMER.setRemoveOnCancelPolicy(true);
+        }
+    }
+}
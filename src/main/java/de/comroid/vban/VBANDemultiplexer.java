@@ -0,0 +1,381 @@
+package de.comroid.vban;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.comroid.vban.metrics.StripedCounter;
+import de.comroid.vban.packet.VBANPacketHead;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Receives all VBAN traffic of one port and dispatches every packet to the {@link Handler}s that were
+ * {@linkplain #register(VBAN.Protocol, String, InetAddress, Handler) registered} for its protocol,
+ * stream name and source address.
+ * <p>
+ * Dispatching does not decode the packet and does not allocate. Invalid packets and packets
+ * without a matching handler are counted and dropped, but never cause an exception.
+ * A handler that throws is counted as failed for that packet; the other handlers still receive it.
+ */
+public class VBANDemultiplexer implements Runnable, Closeable {
+    private static final Route[] NO_ROUTES = new Route[0];
+
+    private final VBANReceiver receiver;
+    // one view per dispatching thread, so that concurrent dispatch() calls do not re-point each other's views
+    private final ThreadLocal<VBANPacketHead.View> heads = new ThreadLocal<VBANPacketHead.View>() {
+        @Override
+        protected VBANPacketHead.View initialValue() {
+            return VBANPacketHead.view();
+        }
+    };
+    private final Object registrationLock = new Object();
+    // indexed by protocol value >> 5, replaced as a whole on every registration
+    private volatile Table[] tables = new Table[]{Table.EMPTY, Table.EMPTY, Table.EMPTY, Table.EMPTY};
+    private final StripedCounter dispatchedCount = new StripedCounter();
+    private final StripedCounter unmatchedCount = new StripedCounter();
+    private final StripedCounter invalidCount = new StripedCounter();
+    private final StripedCounter failedCount = new StripedCounter();
+    private final StripedCounter errorCount = new StripedCounter();
+    private volatile Throwable lastFailure;
+    private volatile Exception lastError;
+
+    /**
+     * Constructor. Binds a new {@link VBANReceiver} to the given address and port.
+     *
+     * @param address The {@linkplain InetAddress address} to bind to.
+     * @param port    The port to bind to.
+     *
+     * @throws IOException See {@link VBANReceiver} constructor.
+     */
+    public VBANDemultiplexer(InetAddress address, int port) throws IOException {
+        this(new VBANReceiver(new InetSocketAddress(address, port)));
+    }
+
+    /**
+     * Constructor. Takes ownership of the given receiver.
+     *
+     * @param receiver The receiver to dispatch packets from.
+     */
+    public VBANDemultiplexer(VBANReceiver receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Registers a handler for the packets that match all of the given criteria.
+     * A packet is passed to every handler that matches it.
+     *
+     * @param protocol   The protocol to match.
+     * @param streamName The stream name to match, or {@code null} to match any stream name.
+     * @param source     The source address to match, or {@code null} to match any source.
+     * @param handler    The handler to pass matching packets to.
+     */
+    public void register(VBAN.Protocol<?> protocol,
+                         @Nullable String streamName,
+                         @Nullable InetAddress source,
+                         Handler handler) {
+        Route route = new Route(streamName == null ? null : streamName.intern(), source, handler);
+
+        synchronized (registrationLock) {
+            Table[] tables = this.tables.clone();
+            int index = protocol.getValue() >> 5;
+
+            tables[index] = tables[index].with(route);
+            this.tables = tables;
+        }
+    }
+
+    /**
+     * Removes every registration of the given handler.
+     *
+     * @param handler The handler to remove.
+     */
+    public void unregister(Handler handler) {
+        synchronized (registrationLock) {
+            Table[] tables = this.tables.clone();
+
+            for (int i = 0; i < tables.length; i++)
+                tables[i] = tables[i].without(handler);
+            this.tables = tables;
+        }
+    }
+
+    /**
+     * Receives and dispatches packets until this demultiplexer is {@linkplain #close() closed}.
+     * Exceptions thrown by handlers are counted in {@link #getFailedCount()}, and receive errors in
+     * {@link #getErrorCount()}; neither stops the loop. Receive timeouts are ignored.
+     */
+    @Override
+    public void run() {
+        while (!receiver.isClosed()) {
+            try {
+                dispatchNext();
+            } catch (SocketTimeoutException ignored) {
+                // nothing arrived within the receiver's timeout
+            } catch (IOException | RuntimeException e) {
+                if (!receiver.isClosed()) {
+                    errorCount.increment();
+                    lastError = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives the next datagram and dispatches it to all matching handlers.
+     *
+     * @return The amount of handlers the datagram was passed to.
+     * @throws IOException See {@link VBANReceiver#receive()} for details.
+     */
+    public int dispatchNext() throws IOException {
+        return dispatch(receiver.receive(), receiver.getSource());
+    }
+
+    /**
+     * Dispatches one datagram to all matching handlers.
+     * May be called from several threads at once; handlers are then invoked concurrently as well,
+     * each with a head view of the calling thread.
+     *
+     * @param datagram The datagram, starting at the buffer's position.
+     * @param source   The address the datagram was sent from.
+     *
+     * @return The amount of handlers the datagram was passed to.
+     */
+    public int dispatch(ByteBuffer datagram, SocketAddress source) {
+        VBANPacketHead.View head = heads.get().wrap(datagram);
+        if (!head.isValid()) {
+            invalidCount.increment();
+            return 0;
+        }
+
+        Table table = tables[head.getProtocol().getValue() >> 5];
+        InetAddress sourceAddress = source instanceof InetSocketAddress
+                ? ((InetSocketAddress) source).getAddress()
+                : null;
+
+        int position = datagram.position();
+        int handled = deliver(table.byName.isEmpty() ? null : table.byName.get(head.getStreamName()),
+                head, sourceAddress, datagram, position, source);
+        handled += deliver(table.anyName, head, sourceAddress, datagram, position, source);
+
+        if (handled == 0)
+            unmatchedCount.increment();
+        else dispatchedCount.increment();
+        return handled;
+    }
+
+    public long getDispatchedCount() {
+        return dispatchedCount.sum();
+    }
+
+    public long getUnmatchedCount() {
+        return unmatchedCount.sum();
+    }
+
+    public long getInvalidCount() {
+        return invalidCount.sum();
+    }
+
+    /**
+     * The amount of times a handler threw while handling a packet.
+     *
+     * @return The amount of failed deliveries.
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * The exception that a handler threw most recently.
+     *
+     * @return The last failure, or {@code null} if no handler has failed yet.
+     */
+    public @Nullable Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * The amount of errors that {@link #run()} ran into while receiving, other than timeouts.
+     *
+     * @return The amount of receive errors.
+     */
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    /**
+     * The error that {@link #run()} ran into most recently while receiving.
+     *
+     * @return The last receive error, or {@code null} if there was none yet.
+     */
+    public @Nullable Exception getLastError() {
+        return lastError;
+    }
+
+    public VBANReceiver getReceiver() {
+        return receiver;
+    }
+
+    @Override
+    public void close() throws IOException {
+        receiver.close();
+    }
+
+    private int deliver(Route[] routes, VBANPacketHead.View head, InetAddress sourceAddress, ByteBuffer datagram,
+                        int position, SocketAddress source) {
+        if (routes == null) return 0;
+
+        int handled = 0;
+        for (Route route : routes) {
+            if (route.source != null && !route.source.equals(sourceAddress))
+                continue;
+
+            // every handler sees the datagram from its start
+            datagram.position(position);
+            head.wrap(datagram, position);
+            try {
+                route.handler.handle(head, datagram, source);
+            } catch (RuntimeException | AssertionError e) {
+                // counted instead of printed, so that a stream of bad packets cannot flood the output
+                failedCount.increment();
+                lastFailure = e;
+            }
+            handled++;
+        }
+        return handled;
+    }
+
+    /**
+     * Receives the packets of a {@link VBANDemultiplexer}.
+     */
+    public interface Handler {
+        /**
+         * Handles one packet. Is called on the receiving thread.
+         * <p>
+         * The head and the datagram buffer are reused for the next packet, so neither may be kept after returning.
+         *
+         * @param head     A view of the packet head.
+         * @param datagram The whole datagram, including the head, starting at the buffer's position.
+         * @param source   The address the datagram was sent from.
+         */
+        void handle(VBANPacketHead.View head, ByteBuffer datagram, SocketAddress source);
+    }
+
+    /**
+     * A {@link Handler} that decodes the data of every packet into the data type of its protocol.
+     * Packets that cannot be decoded are counted and skipped.
+     *
+     * @param <T> The data type of the protocol.
+     */
+    public static abstract class DataHandler<T> implements Handler {
+        private final VBAN.Protocol<T> protocol;
+        private final AtomicLong decodeFailureCount = new AtomicLong(0);
+
+        protected DataHandler(VBAN.Protocol<T> protocol) {
+            this.protocol = protocol;
+        }
+
+        @Override
+        public void handle(VBANPacketHead.View head, ByteBuffer datagram, SocketAddress source) {
+            byte[] bytes = new byte[datagram.remaining() - VBANPacketHead.SIZE];
+            datagram.position(datagram.position() + VBANPacketHead.SIZE);
+            datagram.get(bytes);
+
+            T data;
+            try {
+                data = protocol.createDataObject(bytes, head.getFormat());
+            } catch (RuntimeException | AssertionError e) {
+                decodeFailureCount.incrementAndGet();
+                return;
+            }
+            handleData(data, head, source);
+        }
+
+        /**
+         * The amount of packets whose data could not be decoded.
+         *
+         * @return The amount of skipped packets.
+         */
+        public long getDecodeFailureCount() {
+            return decodeFailureCount.get();
+        }
+
+        /**
+         * Handles the decoded data of one packet. Is called on the receiving thread.
+         *
+         * @param data   The decoded data.
+         * @param head   A view of the packet head. May not be kept after returning.
+         * @param source The address the datagram was sent from.
+         */
+        protected abstract void handleData(T data, VBANPacketHead.View head, SocketAddress source);
+    }
+
+    private static final class Route {
+        private final String streamName;
+        private final InetAddress source;
+        private final Handler handler;
+
+        private Route(String streamName, InetAddress source, Handler handler) {
+            this.streamName = streamName;
+            this.source = source;
+            this.handler = handler;
+        }
+    }
+
+    private static final class Table {
+        private static final Table EMPTY = new Table(Collections.<String, Route[]>emptyMap(), NO_ROUTES);
+
+        private final Map<String, Route[]> byName;
+        private final Route[] anyName;
+
+        private Table(Map<String, Route[]> byName, Route[] anyName) {
+            this.byName = byName;
+            this.anyName = anyName;
+        }
+
+        private Table with(Route route) {
+            if (route.streamName == null)
+                return new Table(byName, append(anyName, route));
+
+            Map<String, Route[]> byName = new HashMap<>(this.byName);
+            Route[] existing = byName.get(route.streamName);
+            byName.put(route.streamName, append(existing == null ? NO_ROUTES : existing, route));
+            return new Table(byName, anyName);
+        }
+
+        private Table without(Handler handler) {
+            Map<String, Route[]> byName = new HashMap<>();
+            for (Map.Entry<String, Route[]> entry : this.byName.entrySet()) {
+                Route[] routes = remove(entry.getValue(), handler);
+                if (routes.length > 0)
+                    byName.put(entry.getKey(), routes);
+            }
+            return new Table(byName, remove(anyName, handler));
+        }
+
+        private static Route[] append(Route[] routes, Route route) {
+            Route[] result = Arrays.copyOf(routes, routes.length + 1);
+            result[routes.length] = route;
+            return result;
+        }
+
+        private static Route[] remove(Route[] routes, Handler handler) {
+            List<Route> result = new ArrayList<>(routes.length);
+            for (Route route : routes)
+                if (route.handler != handler)
+                    result.add(route);
+            return result.toArray(NO_ROUTES);
+        }
+    }
+}
@@ -2,94 +2,243 @@ package de.comroid.vban;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 
+import de.comroid.vban.exception.InvalidPacketAttributeException;
+import de.comroid.vban.metrics.StreamMetrics;
 import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.packet.VBANPacketHead;
+import de.comroid.vban.transport.Transport;
+
+import org.jetbrains.annotations.Nullable;
 
 public class VBANInputStream<T> extends InputStream {
     private final VBAN.Protocol<T> expectedProtocol;
-    private final InetAddress address;
-    private final int port;
-    private DatagramSocket socket;
-    private byte[] buf = new byte[0];
-    private int iBuf = 0;
+    private final byte[] packetBytes = new byte[VBANPacket.MAX_SIZE];
+    private final VBANPacketHead.View headView = VBANPacketHead.view();
+    private final StreamMetrics metrics = new StreamMetrics();
+    private VBANReceiver receiver;
+    private ByteBuffer buf;
+    private long lastReturn = 0;
     private boolean closed = false;
 
     public VBANInputStream(VBAN.Protocol<T> expectedProtocol, InetAddress address, int port) throws SocketException {
         this.expectedProtocol = expectedProtocol;
-        this.address = address;
-        this.port = port;
 
         InetSocketAddress socketAddress = new InetSocketAddress(address, port);
-        socket = new DatagramSocket(socketAddress);
+        try {
+            receiver = new VBANReceiver(socketAddress);
+        } catch (SocketException e) {
+            throw e;
+        } catch (IOException e) {
+            throw (SocketException) new SocketException("Could not bind to " + socketAddress).initCause(e);
+        }
+        buf = receiver.buffer();
+    }
+
+    /**
+     * Constructor for a stream that receives from the given transport.
+     *
+     * @param expectedProtocol The protocol that {@link #readData()} expects.
+     * @param transport        The bound transport to receive from. It is closed with this stream.
+     */
+    public VBANInputStream(VBAN.Protocol<T> expectedProtocol, Transport transport) {
+        this.expectedProtocol = expectedProtocol;
+        this.receiver = new VBANReceiver(transport);
+        this.buf = receiver.buffer();
     }
 
     public void setSocketTimeout(int ms) throws SocketException {
-        socket.setSoTimeout(ms);
+        receiver.setTimeout(ms);
     }
 
+    /**
+     * Joins a multicast group in addition to the address this stream is bound to.
+     * A stream that was opened on a multicast group address has already joined that group.
+     *
+     * @param group            The multicast group address.
+     * @param networkInterface The interface to join the group on, or {@code null} for the default interface.
+     *
+     * @throws IOException If the stream has been {@linkplain #close() closed} before,
+     *                     or see {@link VBANReceiver#joinGroup(InetAddress, NetworkInterface)}.
+     */
+    public void joinGroup(InetAddress group, @Nullable NetworkInterface networkInterface) throws IOException {
+        if (closed) throw new IOException("Stream is closed");
+        receiver.joinGroup(group, networkInterface);
+    }
+
+    /**
+     * Leaves a multicast group on all interfaces it was joined on.
+     *
+     * @param group The multicast group address.
+     *
+     * @return Whether this stream was a member of the group.
+     */
+    public boolean leaveGroup(InetAddress group) {
+        return !closed && receiver.leaveGroup(group);
+    }
+
+    /**
+     * Reads the next packet and creates the data object of the expected protocol from it.
+     * Packets of the {@linkplain VBAN.Protocol#SERVICE service protocol} share the port with all streams,
+     * so they are skipped unless the service protocol is expected.
+     *
+     * @return The data of the next packet.
+     * @throws IOException See {@link #readPacket()}.
+     * @throws IllegalStateException If the packet has another protocol than the expected one.
+     */
     public synchronized T readData() throws IOException {
-        VBANPacket.Decoded packet = readPacket();
+        VBANPacket.Decoded packet;
         VBAN.Protocol<?> rcvProt;
 
-        if (!(rcvProt = packet.getHead().getProtocol()).equals(expectedProtocol))
+        do {
+            packet = readPacket();
+            rcvProt = packet.getHead().getProtocol();
+        } while (rcvProt.isService() && !expectedProtocol.isService());
+
+        if (!rcvProt.equals(expectedProtocol))
             throw new IllegalStateException("Expected Protocol mismatches received protocol " +
                     "[exp:" + expectedProtocol + ";rcv:" + rcvProt + "]");
 
-        return expectedProtocol.createDataObject(packet.getBytes());
+        return expectedProtocol.createDataObject(packet.getData(), packet.getHead().getFormat());
     }
 
     public synchronized VBANPacket.Decoded readPacket() throws IOException {
-        long available;
-        long skipped = skip(available = available());
+        ByteBuffer datagram = readDatagram();
+        int length = datagram.remaining();
+
+        if (length < VBANPacketHead.SIZE)
+            throw new InvalidPacketAttributeException("Datagram is too small to contain a packet head [len=" + length + "]");
+
+        // the decoder copies what it needs, so the scratch array can be reused
+        datagram.get(packetBytes, 0, length);
+
+        try {
+            return VBANPacket.decode(packetBytes, length);
+        } catch (InvalidPacketAttributeException e) {
+            // invalid heads have already been counted on receive
+            if (headView.isValid())
+                metrics.recordDecodeFailure();
+            throw e;
+        }
+    }
 
-        if (available != skipped)
-            throw new AssertionError("Didn't skip as many bytes as available [ava="
-                    + available + ";skp=" + skipped + "]");
+    /**
+     * Discards any unread bytes of the current datagram and receives the next one, without copying it.
+     * <p>
+     * The returned buffer is reused for every datagram and is only valid until the next read from this stream.
+     *
+     * @return The direct receive buffer, positioned at the start of the datagram's {@link VBANPacketHead head}.
+     * @throws IOException If the stream has been {@linkplain #close() closed} before.
+     * @throws IOException See {@link VBANReceiver#receive()} for details.
+     */
+    public synchronized ByteBuffer readDatagram() throws IOException {
+        if (closed) throw new IOException("Stream is closed");
 
-        byte[] bytes = new byte[VBANPacket.MAX_SIZE];
+        return receive();
+    }
 
-        int nRead = read(bytes);
+    /**
+     * Like {@link #readDatagram()}, but only returns a datagram if one is already pending. Never blocks.
+     *
+     * @return The direct receive buffer, or {@code null} if no datagram was pending.
+     * @throws IOException If the stream has been {@linkplain #close() closed} before.
+     * @throws IOException See {@link VBANReceiver#poll()} for details.
+     */
+    public synchronized ByteBuffer pollDatagram() throws IOException {
+        if (closed) throw new IOException("Stream is closed");
 
-        return VBANPacket.decode(bytes);
+        ByteBuffer datagram = receiver.poll();
+        if (datagram != null)
+            record(datagram, 0, System.nanoTime());
+        return datagram;
+    }
+
+    /**
+     * Receives the next datagram like {@link #readDatagram()} and wraps this stream's reusable
+     * {@link VBANPacketHead.View} around it, so that single head fields can be read without decoding the whole packet.
+     * <p>
+     * The returned view is only valid until the next read from this stream.
+     * Check {@link VBANPacketHead.View#isValid()} before reading any fields.
+     *
+     * @return The head view of the next datagram.
+     * @throws IOException If the stream has been {@linkplain #close() closed} before.
+     * @throws IOException See {@link VBANReceiver#receive()} for details.
+     */
+    public synchronized VBANPacketHead.View readHead() throws IOException {
+        return headView.wrap(readDatagram());
+    }
+
+    /**
+     * The address the last datagram was sent from.
+     *
+     * @return The source address of the last datagram.
+     */
+    public SocketAddress getLastSource() {
+        return receiver.getSource();
+    }
+
+    /**
+     * The runtime metrics of this stream.
+     * Loss and reordering are counted from the frame counters of all received packets.
+     *
+     * @return The metrics of this stream.
+     */
+    public StreamMetrics getMetrics() {
+        return metrics;
     }
 
     @Override
     public synchronized int read() throws IOException {
         if (closed) throw new IOException("Stream is closed");
 
-        // if buffer not existent or end of buffer reached, recieve new bytes
-        if (buf.length == 0 || iBuf >= buf.length) {
-            if (socket.isClosed())
-                throw new SocketException("Socket is closed");
-            if (!socket.isBound())
-                throw new SocketException("Socket is not bound");
-
-            byte[] bytes = new byte[VBANPacket.MAX_SIZE];
-            DatagramPacket packet = new DatagramPacket(bytes, bytes.length);
-            // blocking recieve call
-            socket.receive(packet);
-
-            buf = bytes;
-            iBuf = 0;
-        }
+        // if end of buffer reached, recieve new bytes
+        while (!buf.hasRemaining())
+            receive();
 
-        return buf[iBuf++];
+        return buf.get() & 0xFF;
     }
 
     @Override
     public int available() {
-        return buf.length - iBuf;
+        return buf.remaining();
+    }
+
+    private ByteBuffer receive() throws IOException {
+        long start = System.nanoTime();
+        if (lastReturn != 0)
+            metrics.recordProcessing(start - lastReturn);
+
+        ByteBuffer datagram = receiver.receive();
+
+        long end = System.nanoTime();
+        record(datagram, end - start, end);
+        lastReturn = end;
+        return datagram;
+    }
+
+    private void record(ByteBuffer datagram, long blocked, long arrival) {
+        metrics.recordPacket(datagram.remaining());
+        metrics.recordArrival(blocked, arrival);
+
+        if (headView.wrap(datagram).isValid())
+            metrics.recordFrame(headView.getProtocol(), headView.getStreamName(), headView.getFrameCounter());
+        else metrics.recordDecodeFailure();
     }
 
     @Override
     public void close() {
-        socket.close();
-        socket = null;
+        try {
+            receiver.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        receiver = null;
 
         closed = true;
     }
@@ -2,14 +2,25 @@ package de.comroid.vban;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
 import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 
 import de.comroid.util.model.Factory;
+import de.comroid.vban.metrics.StreamMetrics;
+import de.comroid.vban.model.PacketBuffer;
+import de.comroid.vban.model.PacketBufferPool;
 import de.comroid.vban.model.UnfinishedByteArray;
 import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.packet.VBANPacketHead;
+import de.comroid.vban.transport.BlockingUdpTransport;
+import de.comroid.vban.transport.Transport;
+import de.comroid.vban.transport.UdpTransport;
 
 import static de.comroid.vban.Util.createByteArray;
 import static de.comroid.vban.packet.VBANPacket.MAX_SIZE;
@@ -18,8 +29,13 @@ import static de.comroid.vban.packet.VBANPacket.MAX_SIZE_WITHOUT_HEAD;
 public class VBANOutputStream<T> extends OutputStream {
     private final InetAddress address;
     private final int port;
+    private final InetSocketAddress target;
+    private final StreamMetrics metrics = new StreamMetrics();
     private Factory<VBANPacket<T>> packetFactory;
-    private DatagramSocket socket;
+    private VBANPacketHead.Factory<T> headFactory;
+    private PacketBufferPool pool;
+    private PacketBuffer current;
+    private Transport transport;
     private UnfinishedByteArray buf;
     private boolean closed = false;
 
@@ -37,11 +53,74 @@ public class VBANOutputStream<T> extends OutputStream {
         this.packetFactory = packetFactory;
         this.address = address;
         this.port = port;
+        this.target = new InetSocketAddress(address, port);
 
-        socket = new DatagramSocket();
+        transport = openTransport(address);
         buf = new UnfinishedByteArray(MAX_SIZE, true);
     }
 
+    /**
+     * Constructor for a stream in pooled mode.
+     * <p>
+     * In pooled mode, written bytes are copied once into a preformatted {@link PacketBuffer} from a fixed
+     * {@link PacketBufferPool}, and {@link #flush()} only writes the head in front of them before sending.
+     * The buffer is recycled after each send, so no packet objects are allocated.
+     *
+     * @param packetFactory A factory whose {@linkplain VBANPacket.Factory#getHeadFactory() head factory} writes the heads.
+     * @param address       The InetAddress to send to.
+     * @param port          The port to send to.
+     * @param poolSize      The amount of reusable packet buffers.
+     *
+     * @throws SocketException See {@link DatagramChannel#open()}.
+     */
+    public VBANOutputStream(VBANPacket.Factory<T> packetFactory, InetAddress address, int port, int poolSize)
+            throws SocketException {
+        this.packetFactory = packetFactory;
+        this.headFactory = packetFactory.getHeadFactory();
+        this.address = address;
+        this.port = port;
+        this.target = new InetSocketAddress(address, port);
+
+        transport = openTransport(address);
+        pool = new PacketBufferPool(poolSize);
+    }
+
+    /**
+     * Constructor for a stream that sends through the given transport.
+     *
+     * @param packetFactory A factory that creates new instances of VBANPacket. See {@link VBANPacket.Factory.Builder}
+     * @param transport     The transport to send through. It is closed with this stream.
+     * @param target        The address to send to.
+     */
+    public VBANOutputStream(Factory<VBANPacket<T>> packetFactory, Transport transport, InetSocketAddress target) {
+        this.packetFactory = packetFactory;
+        this.address = target.getAddress();
+        this.port = target.getPort();
+        this.target = target;
+        this.transport = transport;
+
+        buf = new UnfinishedByteArray(MAX_SIZE, true);
+    }
+
+    /**
+     * Constructor for a stream in pooled mode that sends through the given transport.
+     *
+     * @param packetFactory A factory whose {@linkplain VBANPacket.Factory#getHeadFactory() head factory} writes the heads.
+     * @param transport     The transport to send through. It is closed with this stream.
+     * @param target        The address to send to.
+     * @param poolSize      The amount of reusable packet buffers.
+     */
+    public VBANOutputStream(VBANPacket.Factory<T> packetFactory, Transport transport, InetSocketAddress target, int poolSize) {
+        this.packetFactory = packetFactory;
+        this.headFactory = packetFactory.getHeadFactory();
+        this.address = target.getAddress();
+        this.port = target.getPort();
+        this.target = target;
+        this.transport = transport;
+
+        pool = new PacketBufferPool(poolSize);
+    }
+
     /**
      * Tries to send the given data to the specified {@linkplain InetAddress address} on the specified {@code port}.
      *
@@ -50,7 +129,7 @@ public class VBANOutputStream<T> extends OutputStream {
      *
      * @return The instance of the stream.
      * @throws IOException              If the stream has been {@linkplain #close() closed} before.
-     * @throws IOException              See {@link DatagramSocket#send(DatagramPacket)} for details.
+     * @throws IOException              See {@link DatagramChannel#send(ByteBuffer, java.net.SocketAddress)} for details.
      * @throws IllegalArgumentException If the converted byte-array from the given data is too large.
      */
     public VBANOutputStream<T> sendData(T data) throws IOException, IllegalArgumentException {
@@ -59,6 +138,55 @@ public class VBANOutputStream<T> extends OutputStream {
         return this;
     }
 
+    /**
+     * Sends every element of the given data as one packet each, in iteration order,
+     * while holding this stream's lock only once for the whole batch.
+     * <p>
+     * Unlike {@link #sendData(Object)}, an element is never split at line breaks.
+     * Bytes that were written but not yet flushed are sent first.
+     * In pooled mode, one buffer is reused for the whole batch and the datagrams are sent in a tight loop.
+     *
+     * @param data The data to send. Every element is converted to a bytearray using
+     *             {@link Util#createByteArray(Object)}.
+     *
+     * @return The instance of the stream.
+     * @throws IOException If the stream has been {@linkplain #close() closed} before.
+     * @throws IOException If the converted byte-array of an element is too large. Elements before it have been sent.
+     * @throws IOException See {@link DatagramChannel#send(ByteBuffer, java.net.SocketAddress)} for details.
+     */
+    public synchronized VBANOutputStream<T> sendBatch(Iterable<? extends T> data) throws IOException {
+        if (closed) throw new IOException("Stream is closed");
+        if (current != null || (buf != null && buf.length() > 0))
+            flush();
+
+        if (pool == null) {
+            for (T each : data) {
+                byte[] bytes = createByteArray(each);
+                if (bytes.length > MAX_SIZE_WITHOUT_HEAD)
+                    throw new IOException("Byte array is too large, must be smaller than " + MAX_SIZE);
+                send(ByteBuffer.wrap(packetFactory.create().setData(bytes).getBytes()));
+            }
+            return this;
+        }
+
+        PacketBuffer packet = pool.acquire();
+        try {
+            ByteBuffer buffer = packet.buffer();
+            for (T each : data) {
+                byte[] bytes = createByteArray(each);
+                if (bytes.length > MAX_SIZE_WITHOUT_HEAD)
+                    throw new IOException("Byte array is too large, must be smaller than " + MAX_SIZE);
+
+                packet.clear().put(bytes, 0, bytes.length);
+                headFactory.createInto(buffer, 0);
+                send(packet.flip());
+            }
+        } finally {
+            pool.release(packet);
+        }
+        return this;
+    }
+
     /**
      * Writes one byte to this stream's byte buffer, but does not send anything.
      * The byte buffer is being sent and cleared by invoking {@link #flush()}.
@@ -68,35 +196,203 @@ public class VBANOutputStream<T> extends OutputStream {
      * @param b The byte as an int to append.
      *
      * @throws IOException If the stream has been {@linkplain #close() closed} before.
-     * @throws IOException See {@link DatagramSocket#send(DatagramPacket)} for details.
+     * @throws IOException See {@link DatagramChannel#send(ByteBuffer, java.net.SocketAddress)} for details.
      */
     @Override
     public void write(int b) throws IOException {
-        if (buf.length() + 1 > MAX_SIZE_WITHOUT_HEAD)
-            throw new IOException("Byte array is too large, must be smaller than " + MAX_SIZE);
-        buf.append((byte) b);
+        if (pool != null) {
+            PacketBuffer packet = currentBuffer();
+            if (packet.length() + 1 > MAX_SIZE_WITHOUT_HEAD)
+                throw new IOException("Byte array is too large, must be smaller than " + MAX_SIZE);
+            packet.put((byte) b);
+        } else {
+            if (buf.length() + 1 > MAX_SIZE_WITHOUT_HEAD)
+                throw new IOException("Byte array is too large, must be smaller than " + MAX_SIZE);
+            buf.append((byte) b);
+        }
         if ((char) b == '\n') flush();
     }
 
+    /**
+     * Writes the given bytes to this stream's byte buffer, like {@link #write(int)} does for every byte.
+     * In pooled mode, the bytes between two line breaks are copied at once.
+     *
+     * @param b   The bytes to append.
+     * @param off The offset in the array.
+     * @param len The amount of bytes to append.
+     *
+     * @throws IOException If the stream has been {@linkplain #close() closed} before.
+     * @throws IOException See {@link DatagramChannel#send(ByteBuffer, java.net.SocketAddress)} for details.
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (pool == null) {
+            super.write(b, off, len);
+            return;
+        }
+
+        int end = off + len;
+        while (off < end) {
+            // copy up to and including the next line break
+            int lineEnd = off;
+            while (lineEnd < end && b[lineEnd] != '\n')
+                lineEnd++;
+            boolean lineBreak = lineEnd < end;
+            int segment = lineEnd - off + (lineBreak ? 1 : 0);
+
+            PacketBuffer packet = currentBuffer();
+            if (packet.length() + segment > MAX_SIZE_WITHOUT_HEAD)
+                throw new IOException("Byte array is too large, must be smaller than " + MAX_SIZE);
+            packet.put(b, off, segment);
+            off += segment;
+
+            if (lineBreak) flush();
+        }
+    }
+
     /**
      * Sends this stream's byte buffer to the specified {@linkplain InetAddress address} on the specified {@code port},
      * then clears the byte buffer.
      *
      * @throws IOException If the stream has been {@linkplain #close() closed} before.
-     * @throws IOException See {@link DatagramSocket#send(DatagramPacket)} for details.
+     * @throws IOException See {@link DatagramChannel#send(ByteBuffer, java.net.SocketAddress)} for details.
      */
     @Override
     public synchronized void flush() throws IOException {
         if (closed) throw new IOException("Stream is closed");
+        if (pool != null) {
+            PacketBuffer packet = currentBuffer();
+            current = null;
+            sendPooled(packet);
+            return;
+        }
         if (buf.length() > MAX_SIZE)
             throw new IOException("Byte array is too large, must be smaller than " + MAX_SIZE);
         byte[] bytes = packetFactory.create()
                 .setData(buf.getBytes())
                 .getBytes();
-        socket.send(new DatagramPacket(bytes, bytes.length, address, port));
+        send(ByteBuffer.wrap(bytes));
         buf = new UnfinishedByteArray(MAX_SIZE, true);
     }
 
+    /**
+     * Whether this stream sends from a {@link PacketBufferPool}.
+     *
+     * @return Whether this stream is in pooled mode.
+     */
+    public boolean isPooled() {
+        return pool != null;
+    }
+
+    /**
+     * Sends a complete datagram, including its head, as it is.
+     * Bytes that were written, but not flushed yet, are kept for the next packet.
+     *
+     * @param datagram The datagram, from the buffer's position to its limit.
+     *
+     * @throws IOException If the stream has been {@linkplain #close() closed} before,
+     *                     or see {@link DatagramChannel#send(ByteBuffer, java.net.SocketAddress)} for details.
+     */
+    public synchronized void sendRaw(ByteBuffer datagram) throws IOException {
+        checkOpen();
+        send(datagram);
+    }
+
+    /**
+     * The factory that writes the heads of this stream's packets.
+     *
+     * @return The head factory.
+     */
+    public VBANPacketHead.Factory<T> getHeadFactory() {
+        return headFactory;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Whether this stream sends to an IP multicast group.
+     *
+     * @return Whether the target address is a multicast address.
+     */
+    public boolean isMulticast() {
+        return address.isMulticastAddress();
+    }
+
+    /**
+     * Sets how many routers the multicast packets of this stream may pass. {@code 1}, the default,
+     * keeps them in the local network; {@code 0} keeps them on this host.
+     *
+     * @param ttl The time-to-live, from {@code 0} to {@code 255}.
+     *
+     * @throws IllegalArgumentException If the time-to-live is out of range.
+     * @throws IOException              If the stream has been {@linkplain #close() closed} before,
+     *                                  or see {@link UdpTransport#setOption(java.net.SocketOption, Object)}.
+     * @throws UnsupportedOperationException If the transport is no {@link UdpTransport}.
+     */
+    public void setMulticastTimeToLive(int ttl) throws IOException {
+        if (ttl < 0 || ttl > 255)
+            throw new IllegalArgumentException("Time-to-live must be from 0 to 255");
+        checkOpen();
+        udp().setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+    }
+
+    public int getMulticastTimeToLive() throws IOException {
+        checkOpen();
+        return udp().getOption(StandardSocketOptions.IP_MULTICAST_TTL);
+    }
+
+    /**
+     * Sets whether receivers on this host get the multicast packets of this stream. Enabled by default.
+     *
+     * @param loopback Whether to loop multicast packets back to this host.
+     *
+     * @throws IOException If the stream has been {@linkplain #close() closed} before,
+     *                     or see {@link UdpTransport#setOption(java.net.SocketOption, Object)}.
+     * @throws UnsupportedOperationException If the transport is no {@link UdpTransport}.
+     */
+    public void setMulticastLoopback(boolean loopback) throws IOException {
+        checkOpen();
+        udp().setOption(StandardSocketOptions.IP_MULTICAST_LOOP, loopback);
+    }
+
+    public boolean isMulticastLoopback() throws IOException {
+        checkOpen();
+        return udp().getOption(StandardSocketOptions.IP_MULTICAST_LOOP);
+    }
+
+    /**
+     * Sets the network interface that multicast packets of this stream are sent on.
+     * By default, the operating system picks the interface by its routing table.
+     *
+     * @param networkInterface The interface to send on.
+     *
+     * @throws IOException If the stream has been {@linkplain #close() closed} before,
+     *                     or see {@link UdpTransport#setOption(java.net.SocketOption, Object)}.
+     * @throws UnsupportedOperationException If the transport is no {@link UdpTransport}.
+     */
+    public void setMulticastInterface(NetworkInterface networkInterface) throws IOException {
+        checkOpen();
+        udp().setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+    }
+
+    public NetworkInterface getMulticastInterface() throws IOException {
+        checkOpen();
+        return udp().getOption(StandardSocketOptions.IP_MULTICAST_IF);
+    }
+
+    /**
+     * The runtime metrics of this stream.
+     * For sent packets, the blocked time is the time spent in the send call,
+     * and the inter-arrival times are the times between two sends.
+     *
+     * @return The metrics of this stream.
+     */
+    public StreamMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Drops the Socket and PacketFactory object and marks this stream as {@code closed.}
      * Any attempt to send data after closing the stream will result in an {@link IOException} being thrown.
@@ -108,10 +404,117 @@ public class VBANOutputStream<T> extends OutputStream {
         } catch (IOException e) {
             e.printStackTrace();
         }
-        socket.close();
-        socket = null;
+        try {
+            transport.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        transport = null;
         packetFactory = null;
+        headFactory = null;
 
         closed = true;
     }
+
+    private PacketBuffer currentBuffer() throws IOException {
+        if (closed) throw new IOException("Stream is closed");
+        if (current == null)
+            current = pool.acquire();
+        return current;
+    }
+
+    /**
+     * Acquires an empty buffer from the pool, for subclasses that fill packets themselves.
+     *
+     * @return An empty packet buffer. Must be passed to {@link #sendPooled(PacketBuffer, int)} or {@link #release(PacketBuffer)}.
+     * @throws IOException If the stream has been {@linkplain #close() closed} before.
+     */
+    PacketBuffer acquire() throws IOException {
+        if (closed) throw new IOException("Stream is closed");
+        return pool.acquire();
+    }
+
+    void release(PacketBuffer packet) {
+        pool.release(packet);
+    }
+
+    void checkOpen() throws IOException {
+        if (closed) throw new IOException("Stream is closed");
+    }
+
+    /**
+     * Sends a filled buffer with the head of the packet factory, then recycles the buffer.
+     *
+     * @param packet The buffer to send.
+     *
+     * @throws IOException See {@link DatagramChannel#send(ByteBuffer, java.net.SocketAddress)} for details.
+     */
+    void sendPooled(PacketBuffer packet) throws IOException {
+        try {
+            headFactory.createInto(packet.buffer(), 0);
+            send(packet.flip());
+        } finally {
+            pool.release(packet);
+        }
+    }
+
+    /**
+     * Sends a filled buffer with the given amount of samples written into the head, then recycles the buffer.
+     *
+     * @param packet  The buffer to send.
+     * @param samples The amount of samples per channel in the packet.
+     *
+     * @throws IOException See {@link DatagramChannel#send(ByteBuffer, java.net.SocketAddress)} for details.
+     */
+    void sendPooled(PacketBuffer packet, int samples) throws IOException {
+        try {
+            headFactory.createInto(packet.buffer(), 0, samples);
+            send(packet.flip());
+        } finally {
+            pool.release(packet);
+        }
+    }
+
+    private void send(ByteBuffer datagram) throws IOException {
+        int size = datagram.remaining();
+        long start = System.nanoTime();
+        transport.send(datagram, target);
+        long end = System.nanoTime();
+
+        // the transport leaves a dropped datagram unconsumed
+        if (datagram.hasRemaining())
+            metrics.recordDroppedPacket();
+        else metrics.recordPacket(size);
+        metrics.recordArrival(end - start, end);
+    }
+
+    /**
+     * Drops a filled buffer instead of sending it, but still uses up a frame counter,
+     * so that receivers can detect the gap.
+     *
+     * @param packet The buffer to drop.
+     */
+    void dropPooled(PacketBuffer packet) {
+        try {
+            headFactory.createInto(packet.buffer(), 0);
+        } finally {
+            pool.release(packet);
+        }
+    }
+
+    private UdpTransport udp() {
+        if (!(transport instanceof UdpTransport))
+            throw new UnsupportedOperationException("Socket options require a UDP transport");
+        return (UdpTransport) transport;
+    }
+
+    private static Transport openTransport(InetAddress address) throws SocketException {
+        try {
+            return BlockingUdpTransport.forTarget(address);
+        } catch (SocketException e) {
+            throw e;
+        } catch (IOException e) {
+            throw (SocketException) new SocketException("Could not open channel").initCause(e);
+        }
+    }
 }
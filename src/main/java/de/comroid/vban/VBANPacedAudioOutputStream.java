@@ -0,0 +1,290 @@
+package de.comroid.vban;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import de.comroid.vban.model.PacketBuffer;
+import de.comroid.vban.model.data.AudioFrame;
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.transport.Transport;
+
+/**
+ * Audio sending stream that releases its packets at the real-time rate of the stream,
+ * instead of sending them as soon as they are full.
+ * <p>
+ * Full packets are queued and sent by a scheduler thread. Every packet is due once the samples of all packets
+ * before it have been played at the {@linkplain VBAN.SampleRate sample rate} of the head factory. Due times
+ * are calculated from one anchor time, so rounding errors do not add up.
+ * <p>
+ * A packet that is due more than one packet duration in the past is handled according to the
+ * {@link CatchUpPolicy}. If no further packets are queued, the producer has simply fallen behind,
+ * and the schedule is always restarted from the current time.
+ */
+public class VBANPacedAudioOutputStream extends VBANAudioOutputStream {
+    private static final long SECOND = 1_000_000_000L;
+
+    private final CatchUpPolicy policy;
+    private final int hz;
+    private final long toleranceNanos;
+    private final Object queueLock = new Object();
+    private final PacketBuffer[] queue;
+    private final int[] queueSamples;
+    private final Thread scheduler;
+    private int head = 0;
+    private int size = 0;
+    private boolean stopping = false;
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private volatile long resyncCount = 0;
+    private volatile long droppedCount = 0;
+
+    /**
+     * Constructor. Starts the scheduler thread.
+     *
+     * @param packetFactory A factory whose {@linkplain VBANPacket.Factory#getHeadFactory() head factory} writes the heads.
+     *                      Its sample rate determines the pacing.
+     * @param address       The InetAddress to send to.
+     * @param port          The port to send to.
+     * @param poolSize      The amount of reusable packet buffers. Writing blocks while all of them are queued.
+     * @param policy        How to catch up after the sender has fallen behind its schedule.
+     *
+     * @throws SocketException          See {@link DatagramChannel#open()}.
+     * @throws IllegalArgumentException See {@link VBANAudioOutputStream} constructor.
+     */
+    public VBANPacedAudioOutputStream(VBANPacket.Factory<AudioFrame> packetFactory,
+                                      InetAddress address,
+                                      int port,
+                                      int poolSize,
+                                      CatchUpPolicy policy)
+            throws SocketException {
+        super(packetFactory, address, port, poolSize);
+
+        this.policy = policy;
+        this.hz = VBAN.SampleRate.byValue(packetFactory.getHeadFactory().getSampleRate()).getHz();
+        this.toleranceNanos = getSamplesPerPacket() * SECOND / hz;
+        this.queue = new PacketBuffer[poolSize];
+        this.queueSamples = new int[poolSize];
+        this.scheduler = startScheduler();
+    }
+
+    /**
+     * Constructor for a stream that sends through the given transport. Starts the scheduler thread.
+     *
+     * @param packetFactory A factory whose {@linkplain VBANPacket.Factory#getHeadFactory() head factory} writes the heads.
+     *                      Its sample rate determines the pacing.
+     * @param transport     The transport to send through. It is closed with this stream.
+     * @param target        The address to send to.
+     * @param poolSize      The amount of reusable packet buffers. Writing blocks while all of them are queued.
+     * @param policy        How to catch up after the sender has fallen behind its schedule.
+     *
+     * @throws IllegalArgumentException See {@link VBANAudioOutputStream} constructor.
+     */
+    public VBANPacedAudioOutputStream(VBANPacket.Factory<AudioFrame> packetFactory,
+                                      Transport transport,
+                                      InetSocketAddress target,
+                                      int poolSize,
+                                      CatchUpPolicy policy) {
+        super(packetFactory, transport, target, poolSize);
+
+        this.policy = policy;
+        this.hz = VBAN.SampleRate.byValue(packetFactory.getHeadFactory().getSampleRate()).getHz();
+        this.toleranceNanos = getSamplesPerPacket() * SECOND / hz;
+        this.queue = new PacketBuffer[poolSize];
+        this.queueSamples = new int[poolSize];
+        this.scheduler = startScheduler();
+    }
+
+    public CatchUpPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * The amount of packets that are queued, but not yet due.
+     *
+     * @return The queue length.
+     */
+    public int getQueuedPackets() {
+        synchronized (queueLock) {
+            return size;
+        }
+    }
+
+    /**
+     * How often the schedule has been restarted from the current time.
+     *
+     * @return The amount of resynchronizations.
+     */
+    public long getResyncCount() {
+        return resyncCount;
+    }
+
+    /**
+     * How many packets were dropped by the {@link CatchUpPolicy#DROP} policy.
+     *
+     * @return The amount of dropped packets.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Sends all pending whole sample frames, then waits until every queued packet has been sent,
+     * and stops the scheduler thread.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        synchronized (queueLock) {
+            stopping = true;
+            queueLock.notifyAll();
+        }
+        try {
+            scheduler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        super.close();
+    }
+
+    /**
+     * Queues a full packet for the scheduler thread instead of sending it.
+     *
+     * @throws IOException If sending a previous packet has failed, also with a runtime exception.
+     *                     Every failure is only reported once.
+     */
+    @Override
+    void sendPooled(PacketBuffer packet, int samples) throws IOException {
+        IOException failure = this.failure.getAndSet(null);
+        if (failure != null) {
+            release(packet);
+            throw new IOException("Paced send failed", failure);
+        }
+
+        synchronized (queueLock) {
+            // the pool holds no more buffers than the queue can take
+            int tail = (head + size) % queue.length;
+            queue[tail] = packet;
+            queueSamples[tail] = samples;
+            size++;
+            queueLock.notifyAll();
+        }
+    }
+
+    private Thread startScheduler() {
+        Thread scheduler = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                schedule();
+            }
+        }, "VBAN paced sender");
+        scheduler.setDaemon(true);
+        scheduler.start();
+        return scheduler;
+    }
+
+    private void schedule() {
+        boolean started = false;
+        long anchor = 0;
+        long sentSamples = 0;
+
+        while (true) {
+            PacketBuffer packet;
+            int samples;
+            boolean backlog;
+
+            synchronized (queueLock) {
+                while (size == 0 && !stopping) {
+                    try {
+                        queueLock.wait();
+                    } catch (InterruptedException ignored) {
+                        // queued packets still have to be sent and released; only close() stops the scheduler
+                    }
+                }
+                if (size == 0) return;
+
+                packet = queue[head];
+                samples = queueSamples[head];
+                queue[head] = null;
+                head = (head + 1) % queue.length;
+                size--;
+                backlog = size > 0;
+            }
+
+            long now = System.nanoTime();
+            if (!started) {
+                started = true;
+                anchor = now;
+            }
+
+            // move the anchor by whole seconds, so that the product below cannot overflow
+            while (sentSamples >= hz) {
+                anchor += SECOND;
+                sentSamples -= hz;
+            }
+
+            long due = anchor + sentSamples * SECOND / hz;
+            if (now - due > toleranceNanos) {
+                if (policy == CatchUpPolicy.RESYNC || !backlog) {
+                    resyncCount++;
+                    anchor = now;
+                    sentSamples = 0;
+                    due = now;
+                } else if (policy == CatchUpPolicy.DROP) {
+                    droppedCount++;
+                    dropPooled(packet);
+                    sentSamples += samples;
+                    continue;
+                }
+                // BURST sends right away and keeps the schedule
+            }
+
+            while (due - (now = System.nanoTime()) > 0)
+                LockSupport.parkNanos(due - now);
+
+            try {
+                super.sendPooled(packet, samples);
+            } catch (IOException e) {
+                failure.set(e);
+            } catch (RuntimeException e) {
+                // such as an unresolved target; the buffer has been released, and the scheduler must keep draining
+                failure.set(new IOException("Send failed", e));
+            }
+
+            sentSamples += samples;
+        }
+    }
+
+    /**
+     * Determines how a {@link VBANPacedAudioOutputStream} catches up with its schedule after a stall,
+     * while further packets are queued.
+     */
+    public enum CatchUpPolicy {
+        /**
+         * Sends the late packets as fast as possible, until the schedule has been reached again.
+         * Keeps all audio and the original latency, but bursts.
+         */
+        BURST,
+
+        /**
+         * Restarts the schedule from the current time. Keeps all audio without bursting,
+         * but the additional latency of the stall remains.
+         */
+        RESYNC,
+
+        /**
+         * Drops late packets until the schedule has been reached again. Keeps the original latency without
+         * bursting, but loses audio. Dropped packets still use up their frame counters.
+         */
+        DROP
+    }
+}
@@ -0,0 +1,216 @@
+package de.comroid.vban;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.util.Collections;
+import java.util.List;
+
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.transport.NioUdpTransport;
+import de.comroid.vban.transport.Transport;
+import de.comroid.vban.transport.UdpTransport;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Receive engine that reads VBAN datagrams from a {@link Transport} into one reusable direct {@link ByteBuffer}.
+ * <p>
+ * Receiving a datagram does not allocate in steady state; the contents of {@link #buffer()} are only
+ * valid until the next call to {@link #receive()}. This class is not thread-safe,
+ * except for joining and leaving multicast groups.
+ */
+public class VBANReceiver implements Closeable {
+    private final Transport transport;
+    private final ByteBuffer buffer;
+    private SocketAddress source;
+    private int timeout = 0;
+
+    /**
+     * Constructor. Opens a new {@link NioUdpTransport} and binds it to the given address.
+     * <p>
+     * If the address is a multicast group, the channel is bound to the wildcard address with the given port,
+     * shares the port with other receivers of the group, and {@linkplain #joinGroup(InetAddress, NetworkInterface)
+     * joins} the group on the default interface.
+     *
+     * @param bindAddress The address to bind to.
+     *
+     * @throws IOException See {@link NioUdpTransport#NioUdpTransport(SocketAddress)}.
+     */
+    public VBANReceiver(SocketAddress bindAddress) throws IOException {
+        this(new NioUdpTransport(bindAddress));
+    }
+
+    /**
+     * Constructor. Takes ownership of an already bound channel.
+     *
+     * @param channel The bound channel to receive from.
+     *
+     * @throws IOException See {@link NioUdpTransport#NioUdpTransport(DatagramChannel)}.
+     */
+    public VBANReceiver(DatagramChannel channel) throws IOException {
+        this(new NioUdpTransport(channel));
+    }
+
+    /**
+     * Constructor. Takes ownership of a transport.
+     *
+     * @param transport The bound transport to receive from.
+     */
+    public VBANReceiver(Transport transport) {
+        this.transport = transport;
+        this.buffer = ByteBuffer.allocateDirect(VBANPacket.MAX_SIZE);
+
+        buffer.limit(0);
+    }
+
+    /**
+     * Sets the maximum amount of milliseconds {@link #receive()} blocks for. {@code 0} blocks infinitely.
+     *
+     * @param ms The timeout in milliseconds.
+     */
+    public void setTimeout(int ms) {
+        if (ms < 0) throw new IllegalArgumentException("Timeout must not be negative");
+        this.timeout = ms;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Joins a multicast group, so that datagrams sent to the group on this receiver's port are received.
+     *
+     * @param group            The multicast group address.
+     * @param networkInterface The interface to join the group on, or {@code null} for the default interface.
+     *
+     * @return The membership.
+     * @throws UnsupportedOperationException If the transport is no {@link UdpTransport}.
+     * @throws IOException                   See {@link UdpTransport#joinGroup(InetAddress, NetworkInterface)}.
+     */
+    public MembershipKey joinGroup(InetAddress group, @Nullable NetworkInterface networkInterface)
+            throws IOException {
+        return udp().joinGroup(group, networkInterface);
+    }
+
+    /**
+     * Leaves a multicast group on all interfaces it was joined on.
+     *
+     * @param group The multicast group address.
+     *
+     * @return Whether this receiver was a member of the group.
+     * @throws UnsupportedOperationException If the transport is no {@link UdpTransport}.
+     */
+    public boolean leaveGroup(InetAddress group) {
+        return udp().leaveGroup(group);
+    }
+
+    /**
+     * The multicast groups this receiver has joined, one entry per interface.
+     *
+     * @return The valid memberships; empty if the transport is no {@link UdpTransport}.
+     */
+    public List<MembershipKey> getMemberships() {
+        if (transport instanceof UdpTransport)
+            return ((UdpTransport) transport).getMemberships();
+        return Collections.emptyList();
+    }
+
+    /**
+     * Blocks until the next datagram has been received into {@link #buffer()}.
+     *
+     * @return The receive buffer, flipped to contain exactly the received datagram.
+     * @throws SocketTimeoutException If no datagram arrived within the {@linkplain #setTimeout(int) timeout}.
+     * @throws SocketException        If this receiver has been {@linkplain #close() closed}.
+     * @throws IOException            See {@link Transport#receive(ByteBuffer, int)} for details.
+     */
+    public ByteBuffer receive() throws IOException {
+        if (!transport.isOpen())
+            throw new SocketException("Socket is closed");
+
+        buffer.clear();
+        try {
+            source = transport.receive(buffer, timeout);
+        } finally {
+            buffer.flip();
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Receives the next datagram into {@link #buffer()} only if one is already pending. Never blocks.
+     *
+     * @return The receive buffer, flipped to contain exactly the received datagram,
+     * or {@code null} if no datagram was pending.
+     * @throws SocketException If this receiver has been {@linkplain #close() closed}.
+     * @throws IOException     See {@link Transport#poll(ByteBuffer)} for details.
+     */
+    public ByteBuffer poll() throws IOException {
+        if (!transport.isOpen())
+            throw new SocketException("Socket is closed");
+
+        buffer.clear();
+        SocketAddress from = transport.poll(buffer);
+        buffer.flip();
+
+        if (from == null)
+            return null;
+
+        source = from;
+        return buffer;
+    }
+
+    /**
+     * The reusable receive buffer, containing the last datagram.
+     *
+     * @return The receive buffer.
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * The address the last datagram was sent from.
+     *
+     * @return The source address, or {@code null} if nothing has been received yet.
+     */
+    public SocketAddress getSource() {
+        return source;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * The channel of the transport.
+     *
+     * @return The channel, or {@code null} if the transport is no {@link UdpTransport}.
+     */
+    public @Nullable DatagramChannel getChannel() {
+        return transport instanceof UdpTransport ? ((UdpTransport) transport).getChannel() : null;
+    }
+
+    public boolean isClosed() {
+        return !transport.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        transport.close();
+    }
+
+    private UdpTransport udp() {
+        if (!(transport instanceof UdpTransport))
+            throw new UnsupportedOperationException("Multicast groups require a UDP transport");
+        return (UdpTransport) transport;
+    }
+}
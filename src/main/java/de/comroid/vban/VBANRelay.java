@@ -0,0 +1,413 @@
+package de.comroid.vban;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.comroid.vban.metrics.StripedCounter;
+import de.comroid.vban.packet.StreamNameCache;
+import de.comroid.vban.packet.VBANPacketHead;
+import de.comroid.vban.transport.BlockingUdpTransport;
+import de.comroid.vban.transport.Transport;
+
+import org.jetbrains.annotations.Nullable;
+
+import static de.comroid.vban.Util.stringToBytesASCII;
+import static de.comroid.vban.Util.trimArray;
+
+/**
+ * Receives all VBAN traffic of one port and forwards every packet to the destinations of the first matching {@link Rule}.
+ * <p>
+ * Packets are neither decoded nor re-encoded. The received direct buffer is sent to every destination as it is,
+ * after the rule has optionally rewritten the stream name or shifted the frame counter in place.
+ * Invalid packets and packets without a matching rule are counted and dropped.
+ * {@link #relay(ByteBuffer)} may be called from several threads at once.
+ */
+public class VBANRelay implements Runnable, Closeable {
+    private final VBANReceiver receiver;
+    private final Transport sender;
+    // one view per relaying thread, so that concurrent relay() calls do not re-point each other's views
+    private final ThreadLocal<VBANPacketHead.View> heads = new ThreadLocal<VBANPacketHead.View>() {
+        @Override
+        protected VBANPacketHead.View initialValue() {
+            return VBANPacketHead.view();
+        }
+    };
+    private final Object rulesLock = new Object();
+    private volatile Rule[] rules = new Rule[0];
+    private final StripedCounter relayedCount = new StripedCounter();
+    private final StripedCounter sentCount = new StripedCounter();
+    private final StripedCounter unmatchedCount = new StripedCounter();
+    private final StripedCounter invalidCount = new StripedCounter();
+    private final StripedCounter failedCount = new StripedCounter();
+    private final StripedCounter errorCount = new StripedCounter();
+    private volatile Exception lastFailure;
+    private volatile Exception lastError;
+
+    /**
+     * Constructor. Binds a new {@link VBANReceiver} to the given address and port.
+     *
+     * @param address The {@linkplain InetAddress address} to bind to.
+     * @param port    The port to bind to.
+     *
+     * @throws IOException See {@link VBANReceiver} constructor.
+     */
+    public VBANRelay(InetAddress address, int port) throws IOException {
+        this(new VBANReceiver(new InetSocketAddress(address, port)));
+    }
+
+    /**
+     * Constructor. Takes ownership of the given receiver, and opens a {@link BlockingUdpTransport} for sending.
+     *
+     * @param receiver The receiver to relay packets from.
+     *
+     * @throws IOException See {@link BlockingUdpTransport#BlockingUdpTransport()}.
+     */
+    public VBANRelay(VBANReceiver receiver) throws IOException {
+        this(receiver, new BlockingUdpTransport());
+    }
+
+    /**
+     * Constructor. Takes ownership of the given receiver and sender.
+     *
+     * @param receiver The receiver to relay packets from.
+     * @param sender   The transport to forward packets through.
+     */
+    public VBANRelay(VBANReceiver receiver, Transport sender) {
+        this.receiver = receiver;
+        this.sender = sender;
+    }
+
+    /**
+     * Appends a rule. Rules are matched in the order they were added.
+     *
+     * @param rule The rule to add.
+     */
+    public void addRule(Rule rule) {
+        synchronized (rulesLock) {
+            Rule[] rules = Arrays.copyOf(this.rules, this.rules.length + 1);
+            rules[rules.length - 1] = rule;
+            this.rules = rules;
+        }
+    }
+
+    /**
+     * Removes a rule.
+     *
+     * @param rule The rule to remove.
+     */
+    public void removeRule(Rule rule) {
+        synchronized (rulesLock) {
+            List<Rule> rules = new ArrayList<>(Arrays.asList(this.rules));
+            rules.remove(rule);
+            this.rules = rules.toArray(new Rule[0]);
+        }
+    }
+
+    /**
+     * Relays packets until this relay is {@linkplain #close() closed}.
+     * Errors are counted in {@link #getErrorCount()} and do not stop the loop. Receive timeouts are ignored.
+     */
+    @Override
+    public void run() {
+        while (!receiver.isClosed()) {
+            try {
+                relayNext();
+            } catch (SocketTimeoutException ignored) {
+                // nothing arrived within the receiver's timeout
+            } catch (IOException | RuntimeException e) {
+                if (!receiver.isClosed()) {
+                    errorCount.increment();
+                    lastError = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives the next datagram and relays it.
+     *
+     * @return The amount of destinations the datagram was sent to.
+     * @throws IOException See {@link VBANReceiver#receive()}.
+     */
+    public int relayNext() throws IOException {
+        return relay(receiver.receive());
+    }
+
+    /**
+     * Relays one datagram to the destinations of the first matching rule.
+     * The head of the datagram is rewritten in place if the rule says so.
+     * May be called from several threads at once, each with a datagram of its own.
+     *
+     * A send that fails, or that the sender drops, is counted in {@link #getFailedCount()}, and the datagram is
+     * still sent to the other destinations.
+     *
+     * @param datagram The datagram, starting at the buffer's position.
+     *
+     * @return The amount of destinations the datagram was sent to.
+     */
+    public int relay(ByteBuffer datagram) {
+        VBANPacketHead.View head = heads.get().wrap(datagram);
+        if (!head.isValid()) {
+            invalidCount.increment();
+            return 0;
+        }
+
+        Rule rule = match(head);
+        if (rule == null) {
+            unmatchedCount.increment();
+            return 0;
+        }
+
+        int position = datagram.position();
+        rule.rewrite(datagram, position);
+
+        int sent = 0;
+        for (InetSocketAddress destination : rule.destinations) {
+            datagram.position(position);
+            try {
+                sender.send(datagram, destination);
+                // the sender leaves a dropped datagram unconsumed
+                if (datagram.hasRemaining())
+                    failedCount.increment();
+                else sent++;
+            } catch (IOException | RuntimeException e) {
+                // one unreachable destination must not cut off the ones after it
+                failedCount.increment();
+                lastFailure = e;
+            }
+        }
+
+        relayedCount.increment();
+        sentCount.add(sent);
+        return sent;
+    }
+
+    /**
+     * The amount of packets that matched a rule.
+     *
+     * @return The amount of relayed packets.
+     */
+    public long getRelayedCount() {
+        return relayedCount.sum();
+    }
+
+    /**
+     * The amount of datagrams sent, which is one per destination of every relayed packet,
+     * less the {@linkplain #getFailedCount() failed} sends.
+     *
+     * @return The amount of sent datagrams.
+     */
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    public long getUnmatchedCount() {
+        return unmatchedCount.sum();
+    }
+
+    public long getInvalidCount() {
+        return invalidCount.sum();
+    }
+
+    /**
+     * The amount of sends to single destinations that failed or were dropped by the sender.
+     *
+     * @return The amount of failed sends.
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * The exception that a send to a destination threw most recently.
+     *
+     * @return The last send failure, or {@code null} if no send has failed yet.
+     */
+    public @Nullable Exception getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * The amount of errors that {@link #run()} ran into, other than receive timeouts.
+     *
+     * @return The amount of errors.
+     */
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    /**
+     * The error that {@link #run()} ran into most recently.
+     *
+     * @return The last error, or {@code null} if there was none yet.
+     */
+    public @Nullable Exception getLastError() {
+        return lastError;
+    }
+
+    public VBANReceiver getReceiver() {
+        return receiver;
+    }
+
+    @Override
+    public void close() throws IOException {
+        receiver.close();
+        sender.close();
+    }
+
+    private Rule match(VBANPacketHead.View head) {
+        for (Rule rule : rules)
+            if (rule.matches(head))
+                return rule;
+        return null;
+    }
+
+    /**
+     * A routing rule of a {@link VBANRelay}. Create rules with {@link #builder()}.
+     */
+    public static final class Rule {
+        private final VBAN.Protocol<?> protocol;
+        private final String streamName;
+        private final InetSocketAddress[] destinations;
+        private final byte[] rewrittenName;
+        private final int frameCounterOffset;
+
+        private Rule(VBAN.Protocol<?> protocol,
+                     String streamName,
+                     InetSocketAddress[] destinations,
+                     byte[] rewrittenName,
+                     int frameCounterOffset) {
+            this.protocol = protocol;
+            this.streamName = streamName;
+            this.destinations = destinations;
+            this.rewrittenName = rewrittenName;
+            this.frameCounterOffset = frameCounterOffset;
+        }
+
+        public @Nullable VBAN.Protocol<?> getProtocol() {
+            return protocol;
+        }
+
+        public @Nullable String getStreamName() {
+            return streamName;
+        }
+
+        public List<InetSocketAddress> getDestinations() {
+            return Arrays.asList(destinations.clone());
+        }
+
+        private boolean matches(VBANPacketHead.View head) {
+            return (protocol == null || protocol == head.getProtocol())
+                    && (streamName == null || streamName.equals(head.getStreamName()));
+        }
+
+        private void rewrite(ByteBuffer datagram, int offset) {
+            if (rewrittenName != null)
+                for (int i = 0; i < StreamNameCache.NAME_SIZE; i++)
+                    datagram.put(offset + 8 + i, rewrittenName[i]);
+
+            if (frameCounterOffset != 0) {
+                // the frame counter is stored big-endian, which is the buffer's default order
+                int index = offset + 24;
+                datagram.putInt(index, datagram.getInt(index) + frameCounterOffset);
+            }
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static final class Builder implements de.comroid.util.model.Builder<Rule> {
+            private final List<InetSocketAddress> destinations = new ArrayList<>();
+            private VBAN.Protocol<?> protocol = null;
+            private String streamName = null;
+            private String rewrittenName = null;
+            private int frameCounterOffset = 0;
+
+            private Builder() {
+            }
+
+            /**
+             * Restricts the rule to one protocol.
+             *
+             * @param protocol The protocol to match, or {@code null} to match any protocol.
+             *
+             * @return This builder.
+             */
+            public Builder setProtocol(@Nullable VBAN.Protocol<?> protocol) {
+                this.protocol = protocol;
+                return this;
+            }
+
+            /**
+             * Restricts the rule to one stream name.
+             *
+             * @param streamName The stream name to match, or {@code null} to match any stream name.
+             *
+             * @return This builder.
+             */
+            public Builder setStreamName(@Nullable String streamName) {
+                this.streamName = streamName;
+                return this;
+            }
+
+            public Builder addDestination(InetAddress address, int port) {
+                return addDestination(new InetSocketAddress(address, port));
+            }
+
+            public Builder addDestination(InetSocketAddress destination) {
+                destinations.add(destination);
+                return this;
+            }
+
+            /**
+             * Rewrites the stream name of every matching packet.
+             *
+             * @param streamName The new stream name, or {@code null} to keep the original one.
+             *
+             * @return This builder.
+             */
+            public Builder setRewrittenStreamName(@Nullable String streamName) {
+                this.rewrittenName = streamName;
+                return this;
+            }
+
+            /**
+             * Adds a constant to the frame counter of every matching packet,
+             * for example to give a relayed stream a different frame counter base.
+             *
+             * @param offset The offset to add.
+             *
+             * @return This builder.
+             */
+            public Builder setFrameCounterOffset(int offset) {
+                this.frameCounterOffset = offset;
+                return this;
+            }
+
+            /**
+             * {@inheritDoc}
+             *
+             * @throws IllegalArgumentException If the rewritten stream name is longer than 16 characters.
+             */
+            @Override
+            public Rule build() {
+                if (rewrittenName != null && rewrittenName.length() > StreamNameCache.NAME_SIZE)
+                    throw new IllegalArgumentException("Stream name must not be longer than "
+                            + StreamNameCache.NAME_SIZE + " characters");
+
+                return new Rule(protocol, streamName, destinations.toArray(new InetSocketAddress[0]),
+                        rewrittenName == null ? null : trimArray(stringToBytesASCII(rewrittenName),
+                                StreamNameCache.NAME_SIZE),
+                        frameCounterOffset);
+            }
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package de.comroid.vban.async;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANDemultiplexer;
+import de.comroid.vban.packet.VBANPacketHead;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Asynchronous receiving API for all VBAN traffic of one port.
+ * <p>
+ * One thread receives and decodes the packets through a {@link VBANDemultiplexer}.
+ * {@linkplain Callback Callbacks} are then invoked on an {@link Executor}, so that many listeners do not need
+ * one blocked thread each. The callbacks of one registration are invoked one at a time and in arrival order.
+ * <p>
+ * Single packets can be awaited with {@link #read(VBAN.Protocol, String)},
+ * whose {@link Future} replaces socket timeouts with {@link Future#get(long, TimeUnit)}.
+ * A read that times out is cancelled, so that it does not stay registered.
+ * <p>
+ * Each registration queues at most a fixed amount of packets for its callback; further packets are dropped
+ * and counted in {@link #getDroppedCount()}. Exceptions thrown by callbacks are counted in {@link #getFailedCount()}.
+ */
+public class AsyncReceiver implements Closeable {
+    /**
+     * The amount of packets that a registration queues for its callback by default.
+     */
+    public static final int DEFAULT_PENDING_CAPACITY = 1024;
+
+    private final VBANDemultiplexer demultiplexer;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+    private final Thread receiveThread;
+    private final Map<Callback<?>, Route<?>> routes = new ConcurrentHashMap<>();
+    private final Set<Read<?>> reads = Collections.newSetFromMap(new ConcurrentHashMap<Read<?>, Boolean>());
+    private final AtomicLong failedCount = new AtomicLong(0);
+    private final AtomicLong droppedCount = new AtomicLong(0);
+    private volatile RuntimeException lastFailure;
+
+    /**
+     * Constructor. Binds to the given address and port, and delivers on the {@linkplain #defaultExecutor() default executor}.
+     *
+     * @param address The {@linkplain InetAddress address} to bind to.
+     * @param port    The port to bind to.
+     *
+     * @throws IOException See {@link VBANDemultiplexer} constructor.
+     */
+    public AsyncReceiver(InetAddress address, int port) throws IOException {
+        this(new VBANDemultiplexer(address, port), defaultExecutor(), true);
+    }
+
+    /**
+     * Constructor. Binds to the given address and port.
+     *
+     * @param address  The {@linkplain InetAddress address} to bind to.
+     * @param port     The port to bind to.
+     * @param executor The executor to invoke callbacks on. Is not shut down by {@link #close()}.
+     *
+     * @throws IOException See {@link VBANDemultiplexer} constructor.
+     */
+    public AsyncReceiver(InetAddress address, int port, Executor executor) throws IOException {
+        this(new VBANDemultiplexer(address, port), executor, false);
+    }
+
+    /**
+     * Constructor. Takes ownership of the given demultiplexer and starts receiving from it.
+     *
+     * @param demultiplexer The demultiplexer to receive from.
+     * @param executor      The executor to invoke callbacks on. Is not shut down by {@link #close()}.
+     */
+    public AsyncReceiver(VBANDemultiplexer demultiplexer, Executor executor) {
+        this(demultiplexer, executor, false);
+    }
+
+    private AsyncReceiver(VBANDemultiplexer demultiplexer, Executor executor, boolean ownsExecutor) {
+        this.demultiplexer = demultiplexer;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+
+        receiveThread = new Thread(demultiplexer, "VBAN async receiver");
+        receiveThread.setDaemon(true);
+        receiveThread.start();
+    }
+
+    /**
+     * Registers a callback for the packets that match all of the given criteria.
+     * Queues up to {@link #DEFAULT_PENDING_CAPACITY} packets for the callback.
+     *
+     * @param protocol   The protocol to match.
+     * @param streamName The stream name to match, or {@code null} to match any stream name.
+     * @param source     The source address to match, or {@code null} to match any source.
+     * @param callback   The callback to pass matching packets to.
+     * @param <T>        The data type of the protocol.
+     *
+     * @throws IllegalStateException If the callback is already registered.
+     */
+    public <T> void register(VBAN.Protocol<T> protocol,
+                             @Nullable String streamName,
+                             @Nullable InetAddress source,
+                             Callback<T> callback) {
+        register(protocol, streamName, source, callback, DEFAULT_PENDING_CAPACITY);
+    }
+
+    /**
+     * Registers a callback for the packets that match all of the given criteria.
+     *
+     * @param protocol        The protocol to match.
+     * @param streamName      The stream name to match, or {@code null} to match any stream name.
+     * @param source          The source address to match, or {@code null} to match any source.
+     * @param callback        The callback to pass matching packets to.
+     * @param pendingCapacity The amount of packets to queue while the callback is busy.
+     *                        Packets that arrive while the queue is full are dropped.
+     * @param <T>             The data type of the protocol.
+     *
+     * @throws IllegalArgumentException If the capacity is not positive.
+     * @throws IllegalStateException    If the callback is already registered.
+     */
+    public <T> void register(VBAN.Protocol<T> protocol,
+                             @Nullable String streamName,
+                             @Nullable InetAddress source,
+                             Callback<T> callback,
+                             int pendingCapacity) {
+        if (pendingCapacity <= 0)
+            throw new IllegalArgumentException("Pending capacity must be positive");
+
+        Route<T> route = new Route<>(protocol, callback, pendingCapacity);
+        if (routes.put(callback, route) != null)
+            throw new IllegalStateException("Callback is already registered");
+
+        demultiplexer.register(protocol, streamName, source, route);
+    }
+
+    /**
+     * Removes the registration of the given callback.
+     * Packets that have already been received may still be delivered.
+     *
+     * @param callback The callback to remove.
+     */
+    public void unregister(Callback<?> callback) {
+        Route<?> route = routes.remove(callback);
+        if (route != null)
+            demultiplexer.unregister(route);
+    }
+
+    /**
+     * Waits for the next packet of the given protocol and stream name, without blocking.
+     * <p>
+     * The returned future completes on the receiving thread. {@linkplain Future#cancel(boolean) Cancelling} it
+     * stops waiting, and so does a timed out {@link Future#get(long, TimeUnit)}: the read is then cancelled.
+     *
+     * @param protocol   The protocol to match.
+     * @param streamName The stream name to match, or {@code null} to match any stream name.
+     * @param <T>        The data type of the protocol.
+     *
+     * @return A future of the next matching packet.
+     */
+    public <T> Future<ReceivedPacket<T>> read(VBAN.Protocol<T> protocol, @Nullable String streamName) {
+        Read<T> read = new Read<>(protocol);
+        reads.add(read);
+
+        demultiplexer.register(protocol, streamName, null, read);
+        return read;
+    }
+
+    public VBANDemultiplexer getDemultiplexer() {
+        return demultiplexer;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * The amount of times a callback threw while handling a packet.
+     *
+     * @return The amount of failed deliveries.
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * The exception that a callback threw most recently.
+     *
+     * @return The last failure, or {@code null} if no callback has failed yet.
+     */
+    public @Nullable RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * The amount of packets that were dropped because a callback's queue was full.
+     *
+     * @return The amount of dropped packets.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Stops receiving, and cancels all pending {@linkplain #read(VBAN.Protocol, String) reads}.
+     * The executor is only shut down if it was created by this receiver.
+     *
+     * @throws IOException See {@link VBANDemultiplexer#close()}.
+     */
+    @Override
+    public void close() throws IOException {
+        demultiplexer.close();
+        try {
+            receiveThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Read<?> read : reads)
+            read.cancel(false);
+        if (ownsExecutor)
+            ((ExecutorService) executor).shutdown();
+    }
+
+    /**
+     * Creates the executor that is used when none is given.
+     * On Java 21 and newer, this starts a virtual thread per task; otherwise, it is a cached pool of daemon threads.
+     *
+     * @return A new executor.
+     */
+    public static ExecutorService defaultExecutor() {
+        try {
+            // only available on Java 21 and newer
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ignored) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "VBAN async callback");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Receives the packets of an {@link AsyncReceiver}.
+     *
+     * @param <T> The data type of the protocol.
+     */
+    public interface Callback<T> {
+        /**
+         * Handles one packet. Is called on the receiver's executor.
+         *
+         * @param packet The received packet.
+         */
+        void onReceive(ReceivedPacket<T> packet);
+    }
+
+    private final class Route<T> extends VBANDemultiplexer.DataHandler<T> implements Runnable {
+        private final Callback<T> callback;
+        private final Queue<ReceivedPacket<T>> pending;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private Route(VBAN.Protocol<T> protocol, Callback<T> callback, int pendingCapacity) {
+            super(protocol);
+
+            this.callback = callback;
+            this.pending = new ArrayBlockingQueue<>(pendingCapacity);
+        }
+
+        @Override
+        protected void handleData(T data, VBANPacketHead.View head, SocketAddress source) {
+            // a slow callback must not let the queue grow without bound
+            if (!pending.offer(new ReceivedPacket<>(data, head.getStreamName(), head.getFrameCounter(), source)))
+                droppedCount.incrementAndGet();
+            schedule();
+        }
+
+        @Override
+        public void run() {
+            try {
+                ReceivedPacket<T> packet;
+                while ((packet = pending.poll()) != null) {
+                    try {
+                        callback.onReceive(packet);
+                    } catch (RuntimeException e) {
+                        // counted instead of printed, so that a failing callback cannot flood the output
+                        failedCount.incrementAndGet();
+                        lastFailure = e;
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+            }
+
+            // a packet may have been added after the last poll, but before the flag was cleared
+            if (!pending.isEmpty())
+                schedule();
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true))
+                return;
+
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // the executor has been shut down; nothing will be delivered anymore
+                pending.clear();
+                scheduled.set(false);
+            }
+        }
+    }
+
+    private final class Read<T> extends VBANDemultiplexer.DataHandler<T> implements Future<ReceivedPacket<T>> {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private volatile ReceivedPacket<T> result;
+        private volatile boolean cancelled = false;
+
+        private Read(VBAN.Protocol<T> protocol) {
+            super(protocol);
+        }
+
+        @Override
+        protected void handleData(T data, VBANPacketHead.View head, SocketAddress source) {
+            if (!done.compareAndSet(false, true))
+                return;
+
+            result = new ReceivedPacket<>(data, head.getStreamName(), head.getFrameCounter(), source);
+            finish();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!done.compareAndSet(false, true))
+                return false;
+
+            cancelled = true;
+            finish();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return latch.getCount() == 0;
+        }
+
+        @Override
+        public ReceivedPacket<T> get() throws InterruptedException {
+            latch.await();
+            return result();
+        }
+
+        @Override
+        public ReceivedPacket<T> get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+            // stop waiting, unless a packet arrived in the meantime
+            if (!latch.await(timeout, unit) && cancel(false))
+                throw new TimeoutException("Receive timed out");
+            latch.await();
+            return result();
+        }
+
+        private ReceivedPacket<T> result() {
+            if (cancelled)
+                throw new CancellationException();
+            return result;
+        }
+
+        private void finish() {
+            demultiplexer.unregister(this);
+            reads.remove(this);
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package de.comroid.vban.async;
+
+/**
+ * Interfaces for publishing received data with backpressure.
+ * <p>
+ * They have the same methods and contracts as the ones in {@code java.util.concurrent.Flow} and Reactive Streams,
+ * which this library cannot depend on while it supports Java 7. Adapting them takes one delegating method each.
+ */
+public final class Flow {
+    /**
+     * nope
+     */
+    private Flow() {
+        // nope
+    }
+
+    /**
+     * A source of items that are passed to its {@link Subscriber}s as they request them.
+     *
+     * @param <T> The item type.
+     */
+    public interface Publisher<T> {
+        /**
+         * Adds a subscriber. Its {@link Subscriber#onSubscribe(Subscription)} method is called before this returns.
+         *
+         * @param subscriber The subscriber to add.
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * A receiver of the items of a {@link Publisher}.
+     * The methods of one subscriber are never called concurrently.
+     *
+     * @param <T> The item type.
+     */
+    public interface Subscriber<T> {
+        /**
+         * Called once, before any other method. No items are passed until they are {@linkplain Subscription#request(long) requested}.
+         *
+         * @param subscription The new subscription.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called for every item, but never more often than requested.
+         *
+         * @param item The next item.
+         */
+        void onNext(T item);
+
+        /**
+         * Called once if the subscription has failed. No further methods are called.
+         *
+         * @param throwable The cause of the failure.
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called once when the publisher has no more items. No further methods are called.
+         */
+        void onComplete();
+    }
+
+    /**
+     * The link between a {@link Publisher} and one of its {@link Subscriber}s.
+     */
+    public interface Subscription {
+        /**
+         * Adds to the amount of items the subscriber is ready to receive.
+         *
+         * @param n The additional amount of items. Must be positive.
+         */
+        void request(long n);
+
+        /**
+         * Stops passing items to the subscriber. Items that are already being passed may still arrive.
+         */
+        void cancel();
+    }
+}
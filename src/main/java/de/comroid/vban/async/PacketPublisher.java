@@ -0,0 +1,327 @@
+package de.comroid.vban.async;
+
+import java.io.Closeable;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANDemultiplexer;
+import de.comroid.vban.packet.VBANPacketHead;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * {@link Flow.Publisher} of the packets of one protocol and stream that an {@link AsyncReceiver} receives.
+ * <p>
+ * Every subscriber has a bounded buffer of its own. Packets are added to it on the receiving thread without blocking,
+ * and passed to the subscriber on the receiver's executor as far as it has requested them. When a subscriber
+ * falls behind and its buffer is full, the {@link OverflowStrategy} decides which packets are lost.
+ * Lost packets are counted per subscription.
+ * A subscriber that throws is cancelled, and its exception is counted in {@link #getFailedCount()}.
+ *
+ * @param <T> The data type of the protocol.
+ */
+public class PacketPublisher<T> implements Flow.Publisher<ReceivedPacket<T>>, Closeable {
+    private final AsyncReceiver receiver;
+    private final int bufferSize;
+    private final OverflowStrategy strategy;
+    private final Handler handler;
+    private final List<PacketSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong failedCount = new AtomicLong(0);
+    private volatile RuntimeException lastFailure;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor. Starts receiving immediately; packets are only buffered for existing subscribers.
+     *
+     * @param receiver   The receiver to take the packets from.
+     * @param protocol   The protocol to publish.
+     * @param streamName The stream name to publish, or {@code null} for any stream name.
+     * @param bufferSize The amount of packets to buffer per subscriber.
+     * @param strategy   What to do when a subscriber's buffer is full.
+     */
+    public PacketPublisher(AsyncReceiver receiver,
+                           VBAN.Protocol<T> protocol,
+                           @Nullable String streamName,
+                           int bufferSize,
+                           OverflowStrategy strategy) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("Buffer size must be positive");
+
+        this.receiver = receiver;
+        this.bufferSize = bufferSize;
+        this.strategy = strategy;
+        this.handler = new Handler(protocol);
+
+        receiver.getDemultiplexer().register(protocol, streamName, null, handler);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ReceivedPacket<T>> subscriber) {
+        PacketSubscription subscription = new PacketSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+
+        subscriptions.add(subscription);
+        // checked after adding, so that a concurrent close cannot miss the subscription
+        if (closed)
+            subscription.complete();
+    }
+
+    /**
+     * The amount of packets that the current subscriptions have lost so far.
+     *
+     * @return The amount of lost packets.
+     */
+    public long getLostCount() {
+        long lost = 0;
+        for (PacketSubscription subscription : subscriptions)
+            lost += subscription.getLostCount();
+        return lost;
+    }
+
+    /**
+     * The amount of subscribers that were cancelled because they threw.
+     *
+     * @return The amount of failed subscribers.
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * The exception that a subscriber threw most recently.
+     *
+     * @return The last failure, or {@code null} if no subscriber has failed yet.
+     */
+    public @Nullable RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Stops receiving. Every subscriber is {@linkplain Flow.Subscriber#onComplete() completed}
+     * once it has received its buffered packets.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        receiver.getDemultiplexer().unregister(handler);
+
+        for (PacketSubscription subscription : subscriptions)
+            subscription.complete();
+    }
+
+    /**
+     * Determines which packets are lost when a subscriber's buffer is full.
+     */
+    public enum OverflowStrategy {
+        /**
+         * Drops the oldest buffered packet to make room for the new one.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Drops the new packet and keeps the buffered ones.
+         */
+        DROP_NEWEST,
+
+        /**
+         * Cancels the subscription and signals an {@link IllegalStateException} to the subscriber.
+         */
+        ERROR
+    }
+
+    /**
+     * A subscription of a {@link PacketPublisher}, with its own loss accounting.
+     */
+    public final class PacketSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super ReceivedPacket<T>> subscriber;
+        private final Object[] buffer = new Object[bufferSize];
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private int head = 0;
+        private int count = 0;
+        private long demand = 0;
+        private long lost = 0;
+        private boolean completed = false;
+        private boolean cancelled = false;
+        private Throwable error;
+
+        private PacketSubscription(Flow.Subscriber<? super ReceivedPacket<T>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (cancelled) return;
+                if (n <= 0)
+                    error = new IllegalArgumentException("Requested amount must be positive: " + n);
+                else demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        /**
+         * The amount of packets that were lost because this subscription's buffer was full.
+         *
+         * @return The amount of lost packets.
+         */
+        public synchronized long getLostCount() {
+            return lost;
+        }
+
+        /**
+         * The amount of packets that are buffered, but not yet requested.
+         *
+         * @return The amount of buffered packets.
+         */
+        public synchronized int getBufferedCount() {
+            return count;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            try {
+                while (true) {
+                    ReceivedPacket<T> next = null;
+                    Throwable failure = null;
+                    boolean complete = false;
+
+                    synchronized (this) {
+                        if (cancelled) return;
+
+                        if (error != null) {
+                            failure = error;
+                            cancelled = true;
+                            clear();
+                        } else if (count > 0 && demand > 0) {
+                            next = (ReceivedPacket<T>) buffer[head];
+                            buffer[head] = null;
+                            head = (head + 1) % buffer.length;
+                            count--;
+                            if (demand != Long.MAX_VALUE)
+                                demand--;
+                        } else if (count == 0 && completed) {
+                            complete = true;
+                            cancelled = true;
+                        } else return;
+                    }
+
+                    if (failure != null) {
+                        subscriptions.remove(this);
+                        subscriber.onError(failure);
+                        return;
+                    }
+                    if (complete) {
+                        subscriptions.remove(this);
+                        subscriber.onComplete();
+                        return;
+                    }
+                    subscriber.onNext(next);
+                }
+            } catch (RuntimeException e) {
+                // a subscriber that throws is treated as cancelled
+                cancel();
+                failedCount.incrementAndGet();
+                lastFailure = e;
+            } finally {
+                scheduled.set(false);
+                if (hasWork())
+                    schedule();
+            }
+        }
+
+        private void offer(ReceivedPacket<T> packet) {
+            synchronized (this) {
+                if (cancelled || completed) return;
+
+                if (count == buffer.length) {
+                    lost++;
+                    switch (strategy) {
+                        case DROP_OLDEST:
+                            buffer[head] = null;
+                            head = (head + 1) % buffer.length;
+                            count--;
+                            break;
+                        case DROP_NEWEST:
+                            return;
+                        case ERROR:
+                            if (error == null)
+                                error = new IllegalStateException("Subscriber fell behind by more than "
+                                        + buffer.length + " packets");
+                            break;
+                    }
+                }
+
+                if (error == null) {
+                    buffer[(head + count) % buffer.length] = packet;
+                    count++;
+                }
+            }
+            schedule();
+        }
+
+        private void complete() {
+            synchronized (this) {
+                completed = true;
+            }
+            schedule();
+        }
+
+        private synchronized boolean hasWork() {
+            return !cancelled && (error != null || (count > 0 && demand > 0) || (count == 0 && completed));
+        }
+
+        private void clear() {
+            for (int i = 0; i < buffer.length; i++)
+                buffer[i] = null;
+            count = 0;
+        }
+
+        private void schedule() {
+            if (!hasWork() || !scheduled.compareAndSet(false, true))
+                return;
+
+            Executor executor = receiver.getExecutor();
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // the executor has been shut down; nothing will be delivered anymore
+                scheduled.set(false);
+            }
+        }
+    }
+
+    private final class Handler extends VBANDemultiplexer.DataHandler<T> {
+        private Handler(VBAN.Protocol<T> protocol) {
+            super(protocol);
+        }
+
+        @Override
+        protected void handleData(T data, VBANPacketHead.View head, SocketAddress source) {
+            if (subscriptions.isEmpty()) return;
+
+            ReceivedPacket<T> packet = new ReceivedPacket<>(data, head.getStreamName(), head.getFrameCounter(), source);
+            for (PacketSubscription subscription : subscriptions)
+                subscription.offer(packet);
+        }
+    }
+}
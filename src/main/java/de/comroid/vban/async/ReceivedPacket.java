@@ -0,0 +1,45 @@
+package de.comroid.vban.async;
+
+import java.net.SocketAddress;
+
+/**
+ * The decoded data of one received packet, together with the head fields that identify it.
+ * Unlike the views of the blocking API, instances may be kept.
+ *
+ * @param <T> The data type of the protocol.
+ */
+public final class ReceivedPacket<T> {
+    private final T data;
+    private final String streamName;
+    private final int frameCounter;
+    private final SocketAddress source;
+
+    ReceivedPacket(T data, String streamName, int frameCounter, SocketAddress source) {
+        this.data = data;
+        this.streamName = streamName;
+        this.frameCounter = frameCounter;
+        this.source = source;
+    }
+
+    public T getData() {
+        return data;
+    }
+
+    public String getStreamName() {
+        return streamName;
+    }
+
+    public int getFrameCounter() {
+        return frameCounter;
+    }
+
+    public SocketAddress getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return "ReceivedPacket{streamName=" + streamName + ", frameCounter=" + frameCounter
+                + ", source=" + source + ", data=" + data + "}";
+    }
+}
@@ -0,0 +1,393 @@
+package de.comroid.vban.audio;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBAN.AudioFormat;
+import de.comroid.vban.VBANDemultiplexer;
+import de.comroid.vban.VBANOutputStream;
+import de.comroid.vban.model.data.AudioFrame;
+import de.comroid.vban.packet.VBANPacketHead;
+
+/**
+ * Mixes any amount of audio streams with the same sample rate and channel count into one.
+ * <p>
+ * Every {@link Input} buffers the frames of one stream. The first frame of an input is aligned to the next
+ * frame the mixer produces, and all later frames are placed by their distance in frame counters from it, so that
+ * inputs from different senders stay aligned. The mixer is clocked by calls to {@link #mix()}, and never waits
+ * for an input: an input without a frame for the current position is silent, and frames that arrive after
+ * their position has been mixed are dropped.
+ * <p>
+ * The inputs are summed with their gain into a float accumulator. From {@value #PARALLEL_THRESHOLD} inputs on,
+ * groups of inputs are summed in parallel on a shared {@link ForkJoinPool}.
+ * Mixing does not allocate; the list of inputs and the parallel tasks are only rebuilt when inputs are added
+ * or removed.
+ */
+public class AudioMixer {
+    /**
+     * The amount of inputs from which on mixing runs in parallel.
+     */
+    public static final int PARALLEL_THRESHOLD = 32;
+
+    private static final int INPUT_CAPACITY = 16;
+    private static final int GROUP_SIZE = 8;
+
+    private final int channels;
+    private final int samplesPerChannel;
+    private final int samples;
+    private final AudioFormat outputFormat;
+    private final Object inputsLock = new Object();
+    // replaced as a whole when an input is added or removed, so that mixing can iterate it without copying
+    private volatile Input[] inputs = new Input[0];
+    private final float[] accumulator;
+    private final PcmConverter converter = new PcmConverter(true);
+    private final byte[] outputBytes;
+    private final AudioFrame outputFrame;
+    // the output frame is reused, so one batch of it can be sent for every frame
+    private final List<AudioFrame> outputBatch;
+    private final ParallelMix parallelMix = new ParallelMix();
+    private float[][] partials = new float[0][];
+    private GroupMix[] groupMixes = new GroupMix[0];
+    private VBANOutputStream<?> checkedOutput;
+    private volatile int position = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param channels          The amount of interleaved channels of all inputs and the output.
+     * @param samplesPerChannel The amount of samples per channel in one mixed frame.
+     * @param outputFormat      The format of the frames returned by {@link #mixFrame()}.
+     *
+     * @throws IllegalArgumentException If the output format is not byte-aligned.
+     */
+    public AudioMixer(int channels, int samplesPerChannel, AudioFormat outputFormat) {
+        if (channels < 1 || samplesPerChannel < 1)
+            throw new IllegalArgumentException("Channel and sample counts must be positive");
+        if (outputFormat.getSampleSize() == 0)
+            throw new IllegalArgumentException("Unsupported sample format: " + outputFormat);
+
+        this.channels = channels;
+        this.samplesPerChannel = samplesPerChannel;
+        this.samples = channels * samplesPerChannel;
+        this.outputFormat = outputFormat;
+        this.accumulator = new float[samples];
+        this.outputBytes = new byte[samples * outputFormat.getSampleSize()];
+        this.outputFrame = AudioFrame.fromBytes(outputBytes, outputFormat);
+        this.outputBatch = Collections.singletonList(outputFrame);
+    }
+
+    /**
+     * Adds an input. It can be fed with {@link Input#offer(int, AudioFrame)}, or registered at a
+     * {@link VBANDemultiplexer} directly.
+     *
+     * @param gain The linear gain of the input.
+     *
+     * @return The new input.
+     */
+    public Input addInput(float gain) {
+        Input input = new Input(gain);
+        synchronized (inputsLock) {
+            Input[] inputs = Arrays.copyOf(this.inputs, this.inputs.length + 1);
+            inputs[inputs.length - 1] = input;
+            this.inputs = inputs;
+        }
+        return input;
+    }
+
+    /**
+     * Removes an input. It is silent from the next mixed frame on.
+     *
+     * @param input The input to remove.
+     */
+    public void removeInput(Input input) {
+        synchronized (inputsLock) {
+            List<Input> inputs = new ArrayList<>(Arrays.asList(this.inputs));
+            inputs.remove(input);
+            this.inputs = inputs.toArray(new Input[0]);
+        }
+    }
+
+    /**
+     * The current inputs.
+     *
+     * @return A snapshot of the inputs. It does not change when inputs are added or removed.
+     */
+    public List<Input> getInputs() {
+        return Collections.unmodifiableList(Arrays.asList(inputs));
+    }
+
+    /**
+     * Mixes the frames of all inputs at the current position, and advances the position.
+     *
+     * @return The mixed samples, interleaved by channel. The array is reused by the next call.
+     */
+    public synchronized float[] mix() {
+        Arrays.fill(accumulator, 0);
+
+        Input[] current = inputs;
+        if (current.length >= PARALLEL_THRESHOLD)
+            mixParallel(current);
+        else for (Input input : current)
+            input.addTo(accumulator, position);
+
+        position++;
+        return accumulator;
+    }
+
+    /**
+     * Mixes like {@link #mix()} and encodes the result in the output format.
+     * Down-conversion to integer formats is dithered.
+     *
+     * @return The mixed frame. It is reused by the next call.
+     */
+    public synchronized AudioFrame mixFrame() {
+        converter.encode(mix(), 0, outputBytes, 0, outputFormat, samples);
+        return outputFrame;
+    }
+
+    /**
+     * Mixes like {@link #mixFrame()} and sends the frame.
+     * The frame is sent with {@link VBANOutputStream#sendBatch(Iterable)}, so that it is never split at line breaks.
+     *
+     * @param out The stream to send to. Its head factory must describe the mixed frames.
+     *
+     * @throws IllegalArgumentException If the stream's head factory does not describe audio in the output format,
+     *                                  with the channel count and samples per channel of this mixer.
+     * @throws IOException              See {@link VBANOutputStream#sendBatch(Iterable)}.
+     */
+    public synchronized void mixTo(VBANOutputStream<AudioFrame> out) throws IOException {
+        if (out != checkedOutput)
+            checkOutput(out);
+
+        mixFrame();
+        out.sendBatch(outputBatch);
+    }
+
+    /**
+     * The position of the next mixed frame, counted from {@code 0}.
+     *
+     * @return The next position.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public AudioFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    private void checkOutput(VBANOutputStream<AudioFrame> out) {
+        VBANPacketHead.Factory<AudioFrame> head = out.getHeadFactory();
+        // a closed stream has no head factory; sending to it fails anyway
+        if (head == null) return;
+
+        if (head.getProtocol() != VBAN.Protocol.AUDIO.getValue()
+                || head.getFormat() != outputFormat.getValue()
+                || head.getChannel() + 1 != channels
+                || head.getSamples() + 1 != samplesPerChannel)
+            throw new IllegalArgumentException("Output stream does not send frames of " + channels + " channels with "
+                    + samplesPerChannel + " samples per channel in " + outputFormat);
+        checkedOutput = out;
+    }
+
+    private void mixParallel(Input[] current) {
+        int groups = (current.length + GROUP_SIZE - 1) / GROUP_SIZE;
+        if (partials.length < groups) {
+            partials = Arrays.copyOf(partials, groups);
+            groupMixes = Arrays.copyOf(groupMixes, groups);
+            for (int i = 0; i < groups; i++) {
+                if (partials[i] == null) {
+                    partials[i] = new float[samples];
+                    groupMixes[i] = new GroupMix(partials[i]);
+                }
+            }
+        }
+
+        for (int g = 0; g < groups; g++)
+            groupMixes[g].prepare(current, g * GROUP_SIZE, Math.min(current.length, (g + 1) * GROUP_SIZE), position);
+        parallelMix.reinitialize();
+        parallelMix.groups = groups;
+        SharedPool.POOL.invoke(parallelMix);
+
+        for (int g = 0; g < groups; g++) {
+            float[] partial = partials[g];
+            for (int i = 0; i < samples; i++)
+                accumulator[i] += partial[i];
+            // do not keep removed inputs reachable
+            groupMixes[g].inputs = null;
+        }
+    }
+
+    /**
+     * One input of an {@link AudioMixer}.
+     * Registered at a {@link VBANDemultiplexer}, it takes the frames of all packets it is passed.
+     */
+    public final class Input implements VBANDemultiplexer.Handler {
+        private final AudioFrame[] frames = new AudioFrame[INPUT_CAPACITY];
+        private final int[] positions = new int[INPUT_CAPACITY];
+        private final float[] scratch = new float[samples];
+        private final PcmConverter decoder = new PcmConverter();
+        private volatile float gain;
+        private boolean aligned = false;
+        private int offset;
+        private long lateCount = 0;
+        private long resyncCount = 0;
+
+        private Input(float gain) {
+            this.gain = gain;
+        }
+
+        /**
+         * Buffers one frame of this input.
+         *
+         * @param frameCounter The frame counter from the packet head.
+         * @param frame        The frame. Its format must be known.
+         *
+         * @return Whether the frame was buffered; {@code false} if its position has already been mixed.
+         * A frame that is further behind or ahead than the input can buffer aligns the input anew.
+         */
+        public boolean offer(int frameCounter, AudioFrame frame) {
+            int next = getPosition();
+
+            synchronized (this) {
+                if (!aligned) {
+                    aligned = true;
+                    offset = next - frameCounter;
+                }
+
+                int at = frameCounter + offset;
+                int distance = at - next;
+                if (distance < 0 && distance > -INPUT_CAPACITY) {
+                    lateCount++;
+                    return false;
+                }
+                if (distance < 0 || distance >= INPUT_CAPACITY) {
+                    // the sender has been restarted or jumped; align it anew
+                    resyncCount++;
+                    Arrays.fill(frames, null);
+                    offset = next - frameCounter;
+                    at = next;
+                }
+
+                int slot = at & (INPUT_CAPACITY - 1);
+                frames[slot] = frame;
+                positions[slot] = at;
+                return true;
+            }
+        }
+
+        @Override
+        public void handle(VBANPacketHead.View head, ByteBuffer datagram, SocketAddress source) {
+            byte[] bytes = new byte[datagram.remaining() - VBANPacketHead.SIZE];
+            datagram.position(datagram.position() + VBANPacketHead.SIZE);
+            datagram.get(bytes);
+
+            offer(head.getFrameCounter(), AudioFrame.fromBytes(bytes, head.getFormat().asAudioFormat()));
+        }
+
+        public float getGain() {
+            return gain;
+        }
+
+        public void setGain(float gain) {
+            this.gain = gain;
+        }
+
+        /**
+         * The amount of frames that arrived after their position had been mixed.
+         *
+         * @return The amount of late frames.
+         */
+        public synchronized long getLateCount() {
+            return lateCount;
+        }
+
+        /**
+         * The amount of times the input was aligned anew, because its frame counter jumped.
+         *
+         * @return The amount of resyncs.
+         */
+        public synchronized long getResyncCount() {
+            return resyncCount;
+        }
+
+        private void addTo(float[] sum, int at) {
+            AudioFrame frame;
+            synchronized (this) {
+                int slot = at & (INPUT_CAPACITY - 1);
+                frame = positions[slot] == at ? frames[slot] : null;
+                frames[slot] = null;
+            }
+            if (frame == null) return;
+
+            AudioFormat format = frame.getFormat();
+            if (format == null || format.getSampleSize() == 0) return;
+
+            int count = Math.min(samples, frame.getBytes().length / format.getSampleSize());
+            decoder.decode(frame.getBytes(), 0, format, scratch, 0, count);
+
+            float gain = this.gain;
+            for (int i = 0; i < count; i++)
+                sum[i] += gain * scratch[i];
+        }
+    }
+
+    // forks the prepared group tasks and waits for them; reused by every parallel mix
+    private final class ParallelMix extends RecursiveAction {
+        private int groups;
+
+        @Override
+        protected void compute() {
+            for (int g = 1; g < groups; g++)
+                groupMixes[g].fork();
+            groupMixes[0].invoke();
+            for (int g = 1; g < groups; g++)
+                groupMixes[g].join();
+        }
+    }
+
+    // sums one group of inputs into its partial accumulator; reused by every parallel mix
+    private static final class GroupMix extends RecursiveAction {
+        private final float[] partial;
+        private Input[] inputs;
+        private int from;
+        private int to;
+        private int position;
+
+        private GroupMix(float[] partial) {
+            this.partial = partial;
+        }
+
+        private void prepare(Input[] inputs, int from, int to, int position) {
+            reinitialize();
+            this.inputs = inputs;
+            this.from = from;
+            this.to = to;
+            this.position = position;
+        }
+
+        @Override
+        protected void compute() {
+            Arrays.fill(partial, 0);
+            for (int i = from; i < to; i++)
+                inputs[i].addTo(partial, position);
+        }
+    }
+
+    private static final class SharedPool {
+        // worker threads of a ForkJoinPool are daemon threads, so the pool does not need to be shut down
+        private static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+}
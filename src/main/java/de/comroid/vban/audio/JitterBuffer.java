@@ -0,0 +1,298 @@
+package de.comroid.vban.audio;
+
+import de.comroid.vban.model.data.AudioFrame;
+
+/**
+ * Bounded buffer that reorders received {@link AudioFrame}s by their frame counter
+ * and releases them after a configurable playout delay.
+ * <p>
+ * Every frame is held for at least the playout delay after its arrival. If the next expected frame is
+ * still missing once a later frame's delay has run out, the missing frames are reported as lost and skipped.
+ * Frames that arrive after their slot has been released or skipped are reported as late and dropped.
+ * A frame too far ahead for the capacity makes the buffer skip ahead; frames it held in the skipped range
+ * are counted as discarded, and only the missing ones as lost.
+ */
+public class JitterBuffer {
+    private static final int RESYNC_DISTANCE = 1 << 16;
+
+    private final int mask;
+    private final long delayNanos;
+    private final AudioFrame[] frames;
+    private final int[] counters;
+    private final long[] arrivals;
+    private Listener listener;
+    private boolean started = false;
+    private int next;
+    private int size = 0;
+    private long lateCount = 0;
+    private long lostCount = 0;
+    private long duplicateCount = 0;
+    private long discardedCount = 0;
+    private long resyncCount = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity    The maximum amount of frames to hold. Is rounded up to the next power of two.
+     * @param delayMillis The playout delay in milliseconds.
+     */
+    public JitterBuffer(int capacity, int delayMillis) {
+        if (capacity < 1 || capacity > 1 << 15)
+            throw new IllegalArgumentException("Capacity must be within [1;32768]");
+        if (delayMillis < 0)
+            throw new IllegalArgumentException("Delay must not be negative");
+
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity) slots <<= 1;
+
+        this.mask = slots - 1;
+        this.delayNanos = delayMillis * 1_000_000L;
+        this.frames = new AudioFrame[slots];
+        this.counters = new int[slots];
+        this.arrivals = new long[slots];
+    }
+
+    /**
+     * Sets the listener that is notified about late and lost frames.
+     *
+     * @param listener The listener, or {@code null} to remove it.
+     */
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Inserts a received frame.
+     *
+     * @param frameCounter The frame counter from the packet head.
+     * @param frame        The frame.
+     * @param nowNanos     The arrival time, as of {@link System#nanoTime()}.
+     *
+     * @return Whether the frame was buffered; {@code false} if it was late or a duplicate.
+     */
+    public synchronized boolean offer(int frameCounter, AudioFrame frame, long nowNanos) {
+        if (!started) {
+            started = true;
+            next = frameCounter;
+        }
+
+        int distance = frameCounter - next;
+        if (distance < 0 && distance > -RESYNC_DISTANCE) {
+            lateCount++;
+            if (listener != null)
+                listener.onLateFrame(frameCounter);
+            return false;
+        }
+        if (distance < 0 || distance >= RESYNC_DISTANCE) {
+            // the sender has been restarted or jumped; start over
+            resyncCount++;
+            clear();
+            next = frameCounter;
+        }
+
+        // no room for the frame; give up on the oldest slots
+        if (frameCounter - next > mask)
+            skipTo(frameCounter - mask);
+
+        int slot = frameCounter & mask;
+        if (frames[slot] != null) {
+            duplicateCount++;
+            return false;
+        }
+
+        frames[slot] = frame;
+        counters[slot] = frameCounter;
+        arrivals[slot] = nowNanos;
+        size++;
+        return true;
+    }
+
+    /**
+     * Releases the next frame in frame counter order, if its playout time has come.
+     *
+     * @param nowNanos The current time, as of {@link System#nanoTime()}.
+     *
+     * @return The next frame, or {@code null} if no frame is due yet.
+     */
+    public synchronized AudioFrame poll(long nowNanos) {
+        if (size == 0) return null;
+
+        int slot = next & mask;
+        if (frames[slot] != null)
+            return nowNanos - arrivals[slot] >= delayNanos ? release(slot) : null;
+
+        // the next frame is missing; skip it once a later frame is due
+        int later = firstBuffered();
+        if (nowNanos - arrivals[later] < delayNanos)
+            return null;
+
+        skipTo(counters[later]);
+        return release(later);
+    }
+
+    /**
+     * Releases the next frame in frame counter order now, regardless of its playout delay.
+     * If it has not arrived, it is skipped and reported as lost. Used by consumers that play out on their own clock,
+     * once the next frame's playout time has come.
+     *
+     * @return The next frame, or {@code null} if it was skipped.
+     */
+    public synchronized AudioFrame releaseNext() {
+        if (!started) return null;
+
+        int slot = next & mask;
+        if (frames[slot] != null)
+            return release(slot);
+
+        skipTo(next + 1);
+        return null;
+    }
+
+    /**
+     * Calculates how long it takes until {@link #poll(long)} can release or skip a frame.
+     *
+     * @param nowNanos The current time, as of {@link System#nanoTime()}.
+     *
+     * @return The nanoseconds until the next frame is due, {@code 0} if one is due now,
+     * or {@code -1} if the buffer is empty.
+     */
+    public synchronized long nanosUntilNextRelease(long nowNanos) {
+        if (size == 0) return -1;
+
+        int slot = next & mask;
+        if (frames[slot] == null)
+            slot = firstBuffered();
+
+        return Math.max(0, arrivals[slot] + delayNanos - nowNanos);
+    }
+
+    /**
+     * Drops all buffered frames. The next offered frame determines the new frame order.
+     */
+    public synchronized void reset() {
+        clear();
+        started = false;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public long getDelayNanos() {
+        return delayNanos;
+    }
+
+    /**
+     * The frame counter of the next frame that will be released.
+     *
+     * @return The next expected frame counter.
+     */
+    public synchronized int getNextFrameCounter() {
+        return next;
+    }
+
+    public synchronized long getLateCount() {
+        return lateCount;
+    }
+
+    public synchronized long getLostCount() {
+        return lostCount;
+    }
+
+    public synchronized long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * The amount of buffered frames that were dropped because a frame arrived too far ahead for the capacity.
+     *
+     * @return The amount of discarded frames.
+     */
+    public synchronized long getDiscardedCount() {
+        return discardedCount;
+    }
+
+    public synchronized long getResyncCount() {
+        return resyncCount;
+    }
+
+    private AudioFrame release(int slot) {
+        AudioFrame frame = frames[slot];
+        frames[slot] = null;
+        size--;
+        next++;
+        return frame;
+    }
+
+    /**
+     * Advances to the given frame counter in one step. Only the slots in the skipped range are visited,
+     * and every gap between buffered frames is reported as one loss.
+     */
+    private void skipTo(int target) {
+        int end = target - next > mask ? next + mask + 1 : target;
+        int gap = next;
+
+        for (int counter = next; counter != end; counter++) {
+            int slot = counter & mask;
+            if (frames[slot] != null) {
+                frames[slot] = null;
+                size--;
+                discardedCount++;
+                reportLost(gap, counter - gap);
+                gap = counter + 1;
+            }
+        }
+
+        reportLost(gap, target - gap);
+        next = target;
+    }
+
+    private void reportLost(int first, int count) {
+        if (count == 0) return;
+
+        lostCount += count;
+        if (listener != null)
+            listener.onFramesLost(first, count);
+    }
+
+    private int firstBuffered() {
+        for (int i = 1; i <= mask; i++) {
+            int slot = (next + i) & mask;
+            if (frames[slot] != null)
+                return slot;
+        }
+
+        throw new AssertionError("Buffer is not empty, but contains no frames");
+    }
+
+    private void clear() {
+        for (int i = 0; i <= mask; i++)
+            frames[i] = null;
+        size = 0;
+    }
+
+    /**
+     * Listener for irregularities in the received frame order.
+     * Is called while the buffer is locked, and must therefore return quickly.
+     */
+    public interface Listener {
+        /**
+         * Called when a frame arrives after its slot has already been released or skipped.
+         *
+         * @param frameCounter The frame counter of the late frame.
+         */
+        void onLateFrame(int frameCounter);
+
+        /**
+         * Called when frames are skipped because they have not arrived in time.
+         *
+         * @param firstFrameCounter The frame counter of the first lost frame.
+         * @param count             The amount of consecutive lost frames.
+         */
+        void onFramesLost(int firstFrameCounter, int count);
+    }
+}
@@ -0,0 +1,309 @@
+package de.comroid.vban.audio;
+
+import de.comroid.vban.VBAN.AudioFormat;
+import de.comroid.vban.model.data.AudioFrame;
+
+/**
+ * Synthesizes replacements for lost frames of one audio stream, so that gaps in the frame counter
+ * do not end up as clicks or dropouts.
+ * <p>
+ * Every received frame is passed through {@link #accept(AudioFrame)}, and {@link #conceal()} is called once for
+ * every lost frame in its place. The {@link Mode} decides what a concealed frame contains. Concealment continues the
+ * signal at full level for the first lost frame, then fades it out over {@value #FADE_OUT_FRAMES} frames.
+ * The first received frame after a gap is cross-faded from the continued signal over {@value #CROSS_FADE} samples.
+ * <p>
+ * All state, including the returned frame, is allocated once by the constructor.
+ * Instances are not thread-safe; every stream needs its own concealer.
+ */
+public class LossConcealer {
+    /**
+     * The amount of concealed frames after the first one, over which the continued signal fades out.
+     */
+    public static final int FADE_OUT_FRAMES = 4;
+
+    /**
+     * The maximum amount of samples per channel over which the first frame after a gap is cross-faded.
+     */
+    public static final int CROSS_FADE = 64;
+
+    private static final int MATCH = 128;
+    private static final int MIN_LAG = 32;
+    private static final int MAX_LAG = 768;
+
+    private final int channels;
+    private final int frameSamples;
+    private final AudioFormat format;
+    private final Mode mode;
+    private final int historySize;
+    private final float[][] history;
+    private final float[] downmix;
+    private final float[] samples;
+    private final PcmConverter converter = new PcmConverter();
+    private final byte[] outputBytes;
+    private final AudioFrame outputFrame;
+    private int filled = 0;
+    private int lag = 0;
+    private int burst = 0;
+    private long concealedCount = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param channels          The amount of interleaved channels of the stream.
+     * @param samplesPerChannel The amount of samples per channel in one frame.
+     * @param format            The format of the frames.
+     * @param mode              How to fill lost frames.
+     *
+     * @throws IllegalArgumentException If the format is not byte-aligned.
+     */
+    public LossConcealer(int channels, int samplesPerChannel, AudioFormat format, Mode mode) {
+        if (channels < 1 || samplesPerChannel < 1)
+            throw new IllegalArgumentException("Channel and sample counts must be positive");
+        if (format.getSampleSize() == 0)
+            throw new IllegalArgumentException("Unsupported sample format: " + format);
+
+        this.channels = channels;
+        this.frameSamples = samplesPerChannel;
+        this.format = format;
+        this.mode = mode;
+        this.historySize = Math.max(samplesPerChannel, MAX_LAG + MATCH);
+        this.history = new float[channels][historySize];
+        this.downmix = new float[historySize];
+        this.samples = new float[channels * samplesPerChannel];
+        this.outputBytes = new byte[samples.length * format.getSampleSize()];
+        this.outputFrame = AudioFrame.fromBytes(outputBytes, format);
+    }
+
+    /**
+     * Passes one received frame. The frame is returned as it is, unless it is the first one after a gap:
+     * then a cross-faded copy is returned.
+     * <p>
+     * Frames with another format or size than this concealer was created for are returned as they are,
+     * and reset the state, as if the stream started anew.
+     *
+     * @param frame The received frame.
+     *
+     * @return The frame to play. A cross-faded copy is reused by the next call.
+     */
+    public AudioFrame accept(AudioFrame frame) {
+        if (frame.getFormat() != format || frame.getBytes().length != outputBytes.length) {
+            reset();
+            return frame;
+        }
+
+        converter.decode(frame.getBytes(), 0, format, samples, 0, samples.length);
+
+        AudioFrame result = frame;
+        if (burst > 0) {
+            crossFade();
+            converter.encode(samples, 0, outputBytes, 0, format, samples.length);
+            result = outputFrame;
+        }
+
+        append(samples);
+        burst = 0;
+        return result;
+    }
+
+    /**
+     * Synthesizes one frame in place of a lost one.
+     *
+     * @return The synthesized frame. It is reused by the next call.
+     */
+    public AudioFrame conceal() {
+        if (burst == 0)
+            lag = chooseLag();
+
+        // the history keeps the continued signal at full level, so that a following gap continues it seamlessly
+        continueSignal(samples, frameSamples);
+        append(samples);
+
+        float from = gain(burst);
+        float to = gain(burst + 1);
+        for (int i = 0; i < frameSamples; i++) {
+            float g = from + (to - from) * i / frameSamples;
+            for (int c = 0; c < channels; c++)
+                samples[i * channels + c] *= g;
+        }
+
+        burst++;
+        concealedCount++;
+        converter.encode(samples, 0, outputBytes, 0, format, samples.length);
+        return outputFrame;
+    }
+
+    /**
+     * Forgets the received signal, as if the stream started anew.
+     */
+    public void reset() {
+        filled = 0;
+        lag = 0;
+        burst = 0;
+    }
+
+    /**
+     * The amount of frames that were synthesized so far.
+     *
+     * @return The amount of concealed frames.
+     */
+    public long getConcealedCount() {
+        return concealedCount;
+    }
+
+    /**
+     * Whether the last frame was concealed.
+     *
+     * @return Whether a gap is being concealed.
+     */
+    public boolean isConcealing() {
+        return burst > 0;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    private int chooseLag() {
+        switch (mode) {
+            case REPEAT_LAST:
+                return filled >= frameSamples ? frameSamples : 0;
+            case INTERPOLATE:
+                if (filled >= MIN_LAG + MATCH)
+                    return searchLag();
+                return filled >= frameSamples ? frameSamples : 0;
+            case SILENCE:
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Finds the period at which the end of the history repeats best, by the normalized cross-correlation
+     * of the last {@value #MATCH} samples with every earlier segment, over all channels summed.
+     */
+    private int searchLag() {
+        int maxLag = Math.min(MAX_LAG, filled - MATCH);
+        int start = historySize - MATCH - maxLag;
+
+        for (int i = start; i < historySize; i++) {
+            float sum = 0;
+            for (int c = 0; c < channels; c++)
+                sum += history[c][i];
+            downmix[i] = sum;
+        }
+
+        int template = historySize - MATCH;
+        double energy = 0;
+        for (int k = 0; k < MATCH; k++) {
+            float x = downmix[template - MIN_LAG + k];
+            energy += x * x;
+        }
+
+        int best = 0;
+        double bestScore = 0;
+        for (int p = MIN_LAG; p <= maxLag; p++) {
+            int segment = template - p;
+            if (p > MIN_LAG) {
+                // slide the energy window one sample back
+                float entering = downmix[segment];
+                float leaving = downmix[segment + MATCH];
+                energy += entering * entering - leaving * leaving;
+            }
+
+            double dot = 0;
+            for (int k = 0; k < MATCH; k++)
+                dot += downmix[template + k] * downmix[segment + k];
+
+            if (dot > 0 && energy > 1e-9) {
+                double score = dot / Math.sqrt(energy);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = p;
+                }
+            }
+        }
+
+        // a silent or uncorrelated history has no period; repeat the last frame instead
+        if (best == 0)
+            return Math.min(frameSamples, filled);
+        return best;
+    }
+
+    /**
+     * Writes the periodic continuation of the history, interleaved by channel.
+     */
+    private void continueSignal(float[] dst, int count) {
+        if (lag == 0) {
+            for (int i = 0; i < count * channels; i++)
+                dst[i] = 0;
+            return;
+        }
+
+        int start = historySize - lag;
+        for (int i = 0, j = 0; i < count; i++, j++) {
+            if (j == lag) j = 0;
+            for (int c = 0; c < channels; c++)
+                dst[i * channels + c] = history[c][start + j];
+        }
+    }
+
+    private void crossFade() {
+        int length = Math.min(CROSS_FADE, frameSamples);
+        float level = gain(burst);
+        int start = historySize - lag;
+
+        for (int i = 0, j = 0; i < length; i++, j++) {
+            if (j == lag) j = 0;
+            float w = (i + 1) / (float) (length + 1);
+            for (int c = 0; c < channels; c++) {
+                float continued = lag == 0 ? 0 : level * history[c][start + j];
+                int index = i * channels + c;
+                samples[index] = w * samples[index] + (1 - w) * continued;
+            }
+        }
+    }
+
+    private void append(float[] interleaved) {
+        int keep = historySize - frameSamples;
+        for (int c = 0; c < channels; c++) {
+            float[] channel = history[c];
+            System.arraycopy(channel, frameSamples, channel, 0, keep);
+            for (int i = 0, j = c; i < frameSamples; i++, j += channels)
+                channel[keep + i] = interleaved[j];
+        }
+        filled = Math.min(historySize, filled + frameSamples);
+    }
+
+    private static float gain(int frame) {
+        if (frame <= 1) return 1;
+        return Math.max(0, 1 - (frame - 1) / (float) FADE_OUT_FRAMES);
+    }
+
+    /**
+     * Determines what a concealed frame contains.
+     */
+    public enum Mode {
+        /**
+         * Lost frames are silent.
+         */
+        SILENCE,
+
+        /**
+         * The last received frame is repeated.
+         */
+        REPEAT_LAST,
+
+        /**
+         * The signal is continued with the period at which it repeats best, which suits voice and tonal music.
+         */
+        INTERPOLATE
+    }
+}
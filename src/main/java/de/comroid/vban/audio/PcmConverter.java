@@ -0,0 +1,348 @@
+package de.comroid.vban.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import de.comroid.vban.VBAN.AudioFormat;
+import de.comroid.vban.model.data.AudioFrame;
+
+/**
+ * Bulk converter between the byte-aligned {@link AudioFormat}s.
+ * <p>
+ * Samples are converted in chunks of {@value #CHUNK} through a float array, or a double array where floats
+ * would lose precision. Bytes are moved with bulk buffer copies, and all arithmetic runs in plain counted
+ * loops over primitive arrays without branches, which the JIT compiles to vector instructions.
+ * The scaling is the same as the one of {@link AudioFrame#getSample(int)}.
+ * <p>
+ * Interleaved frames are converted like any other sequence of samples, by passing the amount of
+ * sample frames multiplied by the amount of channels.
+ * Instances keep their working arrays and dither state, so they are not thread-safe.
+ */
+public class PcmConverter {
+    /**
+     * The amount of samples that are converted at once.
+     */
+    public static final int CHUNK = 1024;
+
+    private final boolean dither;
+    private final float[] floats = new float[CHUNK];
+    private final double[] doubles = new double[CHUNK];
+    private final short[] shorts = new short[CHUNK];
+    private final int[] ints = new int[CHUNK];
+    private int seed = 0x2545F491;
+
+    /**
+     * Constructor for a converter without dither.
+     */
+    public PcmConverter() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param dither Whether to add triangular dither of one least significant bit
+     *               when converting to an integer format with fewer bits.
+     */
+    public PcmConverter(boolean dither) {
+        this.dither = dither;
+    }
+
+    /**
+     * Converts samples from one format to another.
+     * The source and destination ranges may overlap if they start at the same offset, to convert in place.
+     *
+     * @param src       The source bytes.
+     * @param srcOffset The offset of the first source sample.
+     * @param from      The format of the source samples.
+     * @param dst       The destination bytes.
+     * @param dstOffset The offset to write the first converted sample at.
+     * @param to        The format to convert to.
+     * @param samples   The amount of samples, counting every channel separately.
+     *
+     * @throws IllegalArgumentException  If one of the formats is not byte-aligned.
+     * @throws IndexOutOfBoundsException If one of the ranges is out of bounds.
+     */
+    public void convert(byte[] src, int srcOffset, AudioFormat from, byte[] dst, int dstOffset, AudioFormat to,
+                        int samples) {
+        int srcSize = sampleSize(from);
+        int dstSize = sampleSize(to);
+        checkRange(src, srcOffset, samples * srcSize);
+        checkRange(dst, dstOffset, samples * dstSize);
+
+        if (from == to) {
+            System.arraycopy(src, srcOffset, dst, dstOffset, samples * srcSize);
+            return;
+        }
+
+        boolean precise = (from == AudioFormat.INT32 && to == AudioFormat.FLOAT64)
+                || (from == AudioFormat.FLOAT64 && to == AudioFormat.INT32);
+        boolean dithered = dither && bits(to) < bits(from);
+        // when the output runs ahead of the input, converting from the end keeps unread samples from being overwritten
+        boolean backwards = src == dst && (dstOffset > srcOffset || dstSize > srcSize);
+        ByteBuffer in = ByteBuffer.wrap(src).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer out = ByteBuffer.wrap(dst).order(ByteOrder.LITTLE_ENDIAN);
+
+        int chunks = (samples + CHUNK - 1) / CHUNK;
+        for (int c = 0; c < chunks; c++) {
+            int index = backwards ? chunks - 1 - c : c;
+            int first = index * CHUNK;
+            int count = Math.min(CHUNK, samples - first);
+            int srcPosition = srcOffset + first * srcSize;
+            int dstPosition = dstOffset + first * dstSize;
+
+            if (precise) {
+                decodeDoubles(in, srcPosition, from, count);
+                encodeDoubles(out, dstPosition, to, count);
+            } else {
+                decodeFloats(in, srcPosition, from, floats, 0, count);
+                encodeFloats(floats, 0, out, dstPosition, to, count, dithered);
+            }
+        }
+    }
+
+    /**
+     * Converts samples to floats within {@code [-1;1]}.
+     *
+     * @param src       The source bytes.
+     * @param srcOffset The offset of the first source sample.
+     * @param from      The format of the source samples.
+     * @param dst       The array to write the samples to.
+     * @param dstOffset The offset to write the first sample at.
+     * @param samples   The amount of samples, counting every channel separately.
+     *
+     * @throws IllegalArgumentException  If the format is not byte-aligned.
+     * @throws IndexOutOfBoundsException If one of the ranges is out of bounds.
+     */
+    public void decode(byte[] src, int srcOffset, AudioFormat from, float[] dst, int dstOffset, int samples) {
+        checkRange(src, srcOffset, samples * sampleSize(from));
+        if (dstOffset < 0 || dstOffset + samples > dst.length)
+            throw new IndexOutOfBoundsException("Destination range is out of bounds");
+
+        ByteBuffer in = ByteBuffer.wrap(src).order(ByteOrder.LITTLE_ENDIAN);
+        for (int first = 0; first < samples; first += CHUNK)
+            decodeFloats(in, srcOffset + first * from.getSampleSize(), from, dst, dstOffset + first,
+                    Math.min(CHUNK, samples - first));
+    }
+
+    /**
+     * Converts floats within {@code [-1;1]} to samples. Values outside of the range are clipped.
+     *
+     * @param src       The samples to convert.
+     * @param srcOffset The offset of the first sample.
+     * @param dst       The destination bytes.
+     * @param dstOffset The offset to write the first converted sample at.
+     * @param to        The format to convert to.
+     * @param samples   The amount of samples, counting every channel separately.
+     *
+     * @throws IllegalArgumentException  If the format is not byte-aligned.
+     * @throws IndexOutOfBoundsException If one of the ranges is out of bounds.
+     */
+    public void encode(float[] src, int srcOffset, byte[] dst, int dstOffset, AudioFormat to, int samples) {
+        if (srcOffset < 0 || srcOffset + samples > src.length)
+            throw new IndexOutOfBoundsException("Source range is out of bounds");
+        checkRange(dst, dstOffset, samples * sampleSize(to));
+
+        ByteBuffer out = ByteBuffer.wrap(dst).order(ByteOrder.LITTLE_ENDIAN);
+        boolean dithered = dither && bits(to) < bits(AudioFormat.FLOAT32);
+        for (int first = 0; first < samples; first += CHUNK)
+            encodeFloats(src, srcOffset + first, out, dstOffset + first * to.getSampleSize(), to,
+                    Math.min(CHUNK, samples - first), dithered);
+    }
+
+    /**
+     * Converts a whole frame into a new frame.
+     *
+     * @param frame The frame to convert. Its format must be known.
+     * @param to    The format to convert to.
+     *
+     * @return A new frame in the given format.
+     * @throws IllegalStateException    If the format of the frame is unknown.
+     * @throws IllegalArgumentException If one of the formats is not byte-aligned.
+     */
+    public AudioFrame convert(AudioFrame frame, AudioFormat to) {
+        AudioFormat from = frame.getFormat();
+        if (from == null)
+            throw new IllegalStateException("Frame format is unknown");
+
+        int samples = frame.getBytes().length / sampleSize(from);
+        byte[] bytes = new byte[samples * sampleSize(to)];
+        convert(frame.getBytes(), 0, from, bytes, 0, to, samples);
+        return AudioFrame.fromBytes(bytes, to);
+    }
+
+    public boolean isDither() {
+        return dither;
+    }
+
+    private void decodeFloats(ByteBuffer in, int position, AudioFormat from, float[] dst, int offset, int count) {
+        switch (from) {
+            case BYTE8:
+                byte[] bytes = in.array();
+                for (int i = 0; i < count; i++)
+                    dst[offset + i] = ((bytes[position + i] & 0xFF) - 128) * (1f / 128);
+                break;
+            case INT16:
+                view(in, position, count * 2).asShortBuffer().get(shorts, 0, count);
+                for (int i = 0; i < count; i++)
+                    dst[offset + i] = shorts[i] * (1f / 32768);
+                break;
+            case INT24:
+                readInt24(in.array(), position, count);
+                for (int i = 0; i < count; i++)
+                    dst[offset + i] = ints[i] * (1f / 8388608);
+                break;
+            case INT32:
+                view(in, position, count * 4).asIntBuffer().get(ints, 0, count);
+                for (int i = 0; i < count; i++)
+                    dst[offset + i] = ints[i] * (1f / 2147483648f);
+                break;
+            case FLOAT32:
+                view(in, position, count * 4).asFloatBuffer().get(dst, offset, count);
+                break;
+            case FLOAT64:
+                view(in, position, count * 8).asDoubleBuffer().get(doubles, 0, count);
+                for (int i = 0; i < count; i++)
+                    dst[offset + i] = (float) doubles[i];
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported sample format: " + from);
+        }
+    }
+
+    private void encodeFloats(float[] src, int offset, ByteBuffer out, int position, AudioFormat to, int count,
+                              boolean dithered) {
+        float scale;
+        switch (to) {
+            case BYTE8:
+                scale = 128;
+                break;
+            case INT16:
+                scale = 32768;
+                break;
+            case INT24:
+                scale = 8388608;
+                break;
+            case INT32:
+                scale = 2147483648f;
+                break;
+            case FLOAT32:
+                view(out, position, count * 4).asFloatBuffer().put(src, offset, count);
+                return;
+            case FLOAT64:
+                for (int i = 0; i < count; i++)
+                    doubles[i] = src[offset + i];
+                view(out, position, count * 8).asDoubleBuffer().put(doubles, 0, count);
+                return;
+            default:
+                throw new IllegalArgumentException("Unsupported sample format: " + to);
+        }
+
+        float[] scaled = floats;
+        for (int i = 0; i < count; i++)
+            scaled[i] = src[offset + i] * scale;
+        if (dithered)
+            addDither(scaled, count);
+
+        // Math.round saturates, which clips the 32 bit range; the smaller ones are clipped explicitly
+        float max = scale - 1;
+        switch (to) {
+            case BYTE8:
+                byte[] bytes = out.array();
+                for (int i = 0; i < count; i++)
+                    bytes[position + i] = (byte) (Math.round(Math.max(-scale, Math.min(max, scaled[i]))) + 128);
+                break;
+            case INT16:
+                for (int i = 0; i < count; i++)
+                    shorts[i] = (short) Math.round(Math.max(-scale, Math.min(max, scaled[i])));
+                view(out, position, count * 2).asShortBuffer().put(shorts, 0, count);
+                break;
+            case INT24:
+                for (int i = 0; i < count; i++)
+                    ints[i] = Math.round(Math.max(-scale, Math.min(max, scaled[i])));
+                writeInt24(out.array(), position, count);
+                break;
+            case INT32:
+                for (int i = 0; i < count; i++)
+                    ints[i] = Math.round(scaled[i]);
+                view(out, position, count * 4).asIntBuffer().put(ints, 0, count);
+                break;
+        }
+    }
+
+    private void decodeDoubles(ByteBuffer in, int position, AudioFormat from, int count) {
+        if (from == AudioFormat.INT32) {
+            view(in, position, count * 4).asIntBuffer().get(ints, 0, count);
+            for (int i = 0; i < count; i++)
+                doubles[i] = ints[i] * (1.0 / 2147483648.0);
+        } else view(in, position, count * 8).asDoubleBuffer().get(doubles, 0, count);
+    }
+
+    private void encodeDoubles(ByteBuffer out, int position, AudioFormat to, int count) {
+        if (to == AudioFormat.INT32) {
+            for (int i = 0; i < count; i++)
+                ints[i] = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE,
+                        Math.round(doubles[i] * 2147483648.0)));
+            view(out, position, count * 4).asIntBuffer().put(ints, 0, count);
+        } else view(out, position, count * 8).asDoubleBuffer().put(doubles, 0, count);
+    }
+
+    private void addDither(float[] values, int count) {
+        int x = seed;
+        for (int i = 0; i < count; i++) {
+            // xorshift, two uniform values per sample for a triangular distribution
+            x ^= x << 13;
+            x ^= x >>> 17;
+            x ^= x << 5;
+            float a = (x >>> 8) * (1f / 16777216);
+            x ^= x << 13;
+            x ^= x >>> 17;
+            x ^= x << 5;
+            float b = (x >>> 8) * (1f / 16777216);
+            values[i] += a - b;
+        }
+        seed = x;
+    }
+
+    private void readInt24(byte[] src, int position, int count) {
+        for (int i = 0, j = position; i < count; i++, j += 3)
+            ints[i] = (src[j] & 0xFF) | (src[j + 1] & 0xFF) << 8 | src[j + 2] << 16;
+    }
+
+    private void writeInt24(byte[] dst, int position, int count) {
+        for (int i = 0, j = position; i < count; i++, j += 3) {
+            int value = ints[i];
+            dst[j] = (byte) value;
+            dst[j + 1] = (byte) (value >> 8);
+            dst[j + 2] = (byte) (value >> 16);
+        }
+    }
+
+    private static ByteBuffer view(ByteBuffer buffer, int position, int length) {
+        buffer.limit(position + length).position(position);
+        return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int sampleSize(AudioFormat format) {
+        int size = format.getSampleSize();
+        if (size == 0)
+            throw new IllegalArgumentException("Unsupported sample format: " + format);
+        return size;
+    }
+
+    private static int bits(AudioFormat format) {
+        switch (format) {
+            case FLOAT32:
+                return 24;
+            case FLOAT64:
+                return 53;
+            default:
+                return format.getSampleSize() * 8;
+        }
+    }
+
+    private static void checkRange(byte[] array, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > array.length)
+            throw new IndexOutOfBoundsException("Range [" + offset + ";" + (offset + length) + ") is out of bounds");
+    }
+}
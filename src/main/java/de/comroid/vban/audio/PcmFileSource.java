@@ -0,0 +1,326 @@
+package de.comroid.vban.audio;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBAN.AudioFormat;
+import de.comroid.vban.VBAN.SampleRate;
+import de.comroid.vban.VBANAudioOutputStream;
+import de.comroid.vban.model.data.AudioFrame;
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.packet.VBANPacketHead;
+
+/**
+ * Streams the samples of a WAV or raw PCM file from a memory mapping of the file.
+ * <p>
+ * The file is mapped in windows of up to 1 GiB, so files of any length can be played without loading them onto
+ * the heap. {@link #transferTo(VBANAudioOutputStream, long)} passes views of the mapping to a
+ * {@link VBANAudioOutputStream}, which copies them straight into its direct packet buffers.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class PcmFileSource implements Closeable {
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private static final int WAVE_FORMAT_PCM = 0x0001;
+    private static final int WAVE_FORMAT_IEEE_FLOAT = 0x0003;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final FileChannel channel;
+    private final long dataOffset;
+    private final long dataLength;
+    private final SampleRate sampleRate;
+    private final AudioFormat format;
+    private final int channels;
+    private final int frameSize;
+    private final long windowSize;
+    private ByteBuffer window;
+    private long windowStart = -1;
+    private long position = 0;
+
+    private PcmFileSource(FileChannel channel,
+                          long dataOffset,
+                          long dataLength,
+                          SampleRate sampleRate,
+                          AudioFormat format,
+                          int channels) {
+        this.channel = channel;
+        this.dataOffset = dataOffset;
+        this.sampleRate = sampleRate;
+        this.format = format;
+        this.channels = channels;
+        this.frameSize = channels * format.getSampleSize();
+        // a trailing partial sample frame is ignored
+        this.dataLength = dataLength / frameSize * frameSize;
+        this.windowSize = WINDOW_SIZE / frameSize * frameSize;
+    }
+
+    /**
+     * Opens a WAV file. The sample rate, format and channel count are read from its header.
+     *
+     * @param file The WAV file.
+     *
+     * @return A new source, positioned at the first sample frame.
+     * @throws IOException If the file is no WAV file, or has a format that VBAN does not support.
+     */
+    public static PcmFileSource openWav(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) // "RIFF", "WAVE"
+                throw new IOException("Not a WAV file: " + file);
+
+            ByteBuffer fmt = null;
+            long position = 12;
+            ByteBuffer chunk = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            while (true) {
+                chunk.clear();
+                readFully(channel, chunk, position);
+                int id = chunk.getInt(0);
+                long size = chunk.getInt(4) & 0xFFFFFFFFL;
+                position += 8;
+
+                if (id == 0x20746D66) { // "fmt "
+                    fmt = ByteBuffer.allocate((int) Math.min(size, 40)).order(ByteOrder.LITTLE_ENDIAN);
+                    readFully(channel, fmt, position);
+                } else if (id == 0x61746164) { // "data"
+                    if (fmt == null)
+                        throw new IOException("WAV file has no format chunk before its data: " + file);
+
+                    // streaming writers leave the size open; the data then reaches to the end of the file
+                    long length = Math.min(size, channel.size() - position);
+                    return fromFormat(channel, fmt, position, length);
+                }
+
+                position += size + (size & 1);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a raw PCM file of interleaved little-endian samples without a header.
+     *
+     * @param file       The PCM file.
+     * @param sampleRate The sample rate of the file.
+     * @param format     The sample format of the file.
+     * @param channels   The amount of interleaved channels.
+     *
+     * @return A new source, positioned at the first sample frame.
+     * @throws IllegalArgumentException If the format is not byte-aligned, or the channel count is out of range.
+     * @throws IOException              See {@link FileChannel#open(Path, java.nio.file.OpenOption...)}.
+     */
+    public static PcmFileSource openRaw(Path file, SampleRate sampleRate, AudioFormat format, int channels)
+            throws IOException {
+        checkLayout(format, channels);
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new PcmFileSource(channel, 0, channel.size(), sampleRate, format, channels);
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a packet factory whose heads describe the samples of this file,
+     * with as many samples per packet as fit into one packet.
+     *
+     * @param streamName The stream name of the packets.
+     *
+     * @return A new audio packet factory.
+     */
+    public VBANPacket.Factory<AudioFrame> createPacketFactory(String streamName) {
+        int samples = Math.min(256, VBANPacket.MAX_SIZE_WITHOUT_HEAD / frameSize);
+
+        VBANPacketHead.Factory<AudioFrame> headFactory = VBANPacketHead.Factory.builder(VBAN.Protocol.AUDIO)
+                .setSRValue(sampleRate)
+                .setSamples(samples)
+                .setChannel(channels)
+                .setFormatValue(format)
+                .setStreamName(streamName)
+                .build();
+
+        return VBANPacket.Factory.builder(VBAN.Protocol.AUDIO)
+                .setHeadFactory(headFactory)
+                .build();
+    }
+
+    /**
+     * Writes sample frames from the current position to a stream, and advances the position.
+     * Full packets are sent; the rest stays pending in the stream.
+     *
+     * @param out    The stream to write to. Its frame size must match the frame size of this file.
+     * @param frames The maximum amount of sample frames to write.
+     *
+     * @return The amount of written sample frames; {@code 0} at the end of the file.
+     * @throws IllegalArgumentException If the frame size of the stream does not match.
+     * @throws IOException              See {@link VBANAudioOutputStream#write(ByteBuffer)}
+     *                                  and {@link FileChannel#map(FileChannel.MapMode, long, long)}.
+     */
+    public long transferTo(VBANAudioOutputStream out, long frames) throws IOException {
+        if (out.getFrameSize() != frameSize)
+            throw new IllegalArgumentException("Frame size of the stream (" + out.getFrameSize()
+                    + " bytes) does not match the frame size of the file (" + frameSize + " bytes)");
+
+        long remaining = Math.min(frames * frameSize, dataLength - position);
+        long written = 0;
+        while (written < remaining) {
+            ByteBuffer view = map(position);
+            int start = (int) (position - windowStart);
+            int length = (int) Math.min(remaining - written, view.capacity() - start);
+
+            view.limit(start + length).position(start);
+            out.write(view);
+
+            position += length;
+            written += length;
+        }
+
+        return written / frameSize;
+    }
+
+    /**
+     * Writes all sample frames from the current position to the end of the file to a stream, and flushes it.
+     * Use a {@link de.comroid.vban.VBANPacedAudioOutputStream paced stream} to play the file in real time.
+     *
+     * @param out The stream to write to. Its frame size must match the frame size of this file.
+     *
+     * @return The amount of written sample frames.
+     * @throws IOException See {@link #transferTo(VBANAudioOutputStream, long)}.
+     */
+    public long transferTo(VBANAudioOutputStream out) throws IOException {
+        long written = transferTo(out, getFrameCount() - getPosition());
+        out.flush();
+        return written;
+    }
+
+    /**
+     * Moves the position to a sample frame.
+     *
+     * @param frame The index of the sample frame.
+     *
+     * @throws IndexOutOfBoundsException If the frame is not within the file.
+     */
+    public void seek(long frame) {
+        if (frame < 0 || frame > getFrameCount())
+            throw new IndexOutOfBoundsException("Frame " + frame + " out of bounds for " + getFrameCount() + " frames");
+        position = frame * frameSize;
+    }
+
+    /**
+     * The index of the next sample frame to write.
+     *
+     * @return The current position in sample frames.
+     */
+    public long getPosition() {
+        return position / frameSize;
+    }
+
+    public long getFrameCount() {
+        return dataLength / frameSize;
+    }
+
+    public SampleRate getSampleRate() {
+        return sampleRate;
+    }
+
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private ByteBuffer map(long position) throws IOException {
+        if (window == null || position < windowStart || position >= windowStart + window.capacity()) {
+            long start = position / windowSize * windowSize;
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + start,
+                    Math.min(windowSize, dataLength - start));
+            // the previous window is unmapped once it has been garbage collected
+            window = mapped;
+            windowStart = start;
+        }
+        return window;
+    }
+
+    private static PcmFileSource fromFormat(FileChannel channel, ByteBuffer fmt, long offset, long length)
+            throws IOException {
+        if (fmt.capacity() < 16)
+            throw new IOException("WAV format chunk is too short");
+
+        int tag = fmt.getShort(0) & 0xFFFF;
+        int channels = fmt.getShort(2) & 0xFFFF;
+        int hz = fmt.getInt(4);
+        int bits = fmt.getShort(14) & 0xFFFF;
+        if (tag == WAVE_FORMAT_EXTENSIBLE && fmt.capacity() >= 26)
+            tag = fmt.getShort(24) & 0xFFFF; // the first two bytes of the sub format GUID
+
+        AudioFormat format;
+        if (tag == WAVE_FORMAT_PCM && bits == 8)
+            format = AudioFormat.BYTE8;
+        else if (tag == WAVE_FORMAT_PCM && bits == 16)
+            format = AudioFormat.INT16;
+        else if (tag == WAVE_FORMAT_PCM && bits == 24)
+            format = AudioFormat.INT24;
+        else if (tag == WAVE_FORMAT_PCM && bits == 32)
+            format = AudioFormat.INT32;
+        else if (tag == WAVE_FORMAT_IEEE_FLOAT && bits == 32)
+            format = AudioFormat.FLOAT32;
+        else if (tag == WAVE_FORMAT_IEEE_FLOAT && bits == 64)
+            format = AudioFormat.FLOAT64;
+        else throw new IOException("Unsupported WAV format " + Integer.toHexString(tag) + " with " + bits + " bits");
+
+        SampleRate sampleRate;
+        try {
+            sampleRate = SampleRate.byHz(hz);
+            checkLayout(format, channels);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+
+        return new PcmFileSource(channel, offset, length, sampleRate, format, channels);
+    }
+
+    private static void checkLayout(AudioFormat format, int channels) {
+        if (format.getSampleSize() == 0)
+            throw new IllegalArgumentException("Unsupported sample format: " + format);
+        if (channels < 1 || channels > 256)
+            throw new IllegalArgumentException("Channel count must be from 1 to 256");
+        if (channels * format.getSampleSize() > VBANPacket.MAX_SIZE_WITHOUT_HEAD)
+            throw new IllegalArgumentException("One sample frame does not fit into a packet");
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new EOFException("Unexpected end of file");
+            position += read;
+        }
+    }
+}
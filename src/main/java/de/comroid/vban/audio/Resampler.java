@@ -0,0 +1,309 @@
+package de.comroid.vban.audio;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import de.comroid.vban.VBAN.AudioFormat;
+import de.comroid.vban.VBAN.SampleRate;
+import de.comroid.vban.model.data.AudioFrame;
+
+/**
+ * Streaming sample rate converter between two {@link SampleRate}s.
+ * <p>
+ * The conversion ratio is reduced to {@code L/M}, and every output sample is calculated by one phase of a
+ * polyphase lowpass filter with {@value #TAPS} taps, or proportionally more when downsampling, so that the
+ * passband keeps the same share of the output bandwidth at any ratio. The filters are designed once per rate pair
+ * and shared by all resamplers of that pair. The state of every channel is kept across calls, so a stream can be
+ * converted block by block without clicks, and no memory is allocated once the working buffers have their size.
+ * <p>
+ * Instances are not thread-safe; every stream needs its own resampler.
+ */
+public class Resampler {
+    /**
+     * The amount of input samples that every output sample is calculated from, unless the rate is lowered.
+     * Downsampling by a factor {@code r} uses {@code r} times as many, see {@link #getTaps()}.
+     */
+    public static final int TAPS = 64;
+
+    private static final int CHUNK = 1024;
+    private static final double ATTENUATION = 86;
+    private static final double KAISER_BETA = 0.1102 * (ATTENUATION - 8.7);
+    private static final ConcurrentMap<Long, Filter> FILTERS = new ConcurrentHashMap<>();
+
+    private final SampleRate from;
+    private final SampleRate to;
+    private final int channels;
+    private final Filter filter;
+    private final int taps;
+    private final float[][] history;
+    private final PcmConverter converter = new PcmConverter();
+    private int position;
+    private int phase = 0;
+    private float[] inScratch = new float[0];
+    private float[] outScratch = new float[0];
+    private AudioFrame outputFrame;
+    private AudioFrame spareFrame;
+
+    /**
+     * Constructor.
+     *
+     * @param from     The sample rate of the input.
+     * @param to       The sample rate of the output.
+     * @param channels The amount of interleaved channels.
+     */
+    public Resampler(SampleRate from, SampleRate to, int channels) {
+        if (channels < 1)
+            throw new IllegalArgumentException("Channel count must be positive");
+
+        this.from = from;
+        this.to = to;
+        this.channels = channels;
+        this.filter = from == to ? null : filter(from.getHz(), to.getHz());
+        this.taps = filter == null ? TAPS : filter.taps;
+        this.history = new float[channels][taps - 1 + CHUNK];
+        this.position = taps - 1;
+    }
+
+    /**
+     * Calculates how many output sample frames a call to {@link #process(float[], int, int, float[], int)}
+     * can produce at most.
+     *
+     * @param inputFrames The amount of input sample frames.
+     *
+     * @return The maximum amount of output sample frames.
+     */
+    public int maxOutputFrames(int inputFrames) {
+        if (filter == null) return inputFrames;
+        return (int) (((long) inputFrames * filter.up + filter.down - 1) / filter.down) + 1;
+    }
+
+    /**
+     * Converts interleaved samples. All samples are consumed; their effect on the output may be delayed
+     * by up to {@link #getTaps()} input samples, which are kept for the next call.
+     *
+     * @param in          The input samples, interleaved by channel.
+     * @param inOffset    The offset of the first input sample.
+     * @param inputFrames The amount of input sample frames.
+     * @param out         The array to write the output samples to, interleaved by channel.
+     * @param outOffset   The offset to write the first output sample at.
+     *
+     * @return The amount of output sample frames that were written.
+     * @throws IndexOutOfBoundsException If the output array cannot take {@link #maxOutputFrames(int)} sample frames.
+     */
+    public int process(float[] in, int inOffset, int inputFrames, float[] out, int outOffset) {
+        if (inOffset < 0 || inputFrames < 0 || inOffset + inputFrames * channels > in.length)
+            throw new IndexOutOfBoundsException("Input range is out of bounds");
+        if (outOffset < 0 || outOffset + maxOutputFrames(inputFrames) * channels > out.length)
+            throw new IndexOutOfBoundsException("Output array is too small for " + maxOutputFrames(inputFrames)
+                    + " sample frames");
+
+        if (filter == null) {
+            System.arraycopy(in, inOffset, out, outOffset, inputFrames * channels);
+            return inputFrames;
+        }
+
+        int written = 0;
+        while (inputFrames > 0) {
+            int chunk = Math.min(inputFrames, CHUNK);
+            written += processChunk(in, inOffset, chunk, out, outOffset + written * channels);
+            inOffset += chunk * channels;
+            inputFrames -= chunk;
+        }
+        return written;
+    }
+
+    /**
+     * Converts one frame of audio. The output is in {@link AudioFormat#FLOAT32} format,
+     * so that no precision is lost.
+     * <p>
+     * The ratio of the rates may give the output of successive calls two different lengths, so two output frames
+     * are kept, and no memory is allocated once both have been created for the input length.
+     *
+     * @param frame The input frame, in any byte-aligned format.
+     *
+     * @return The frame with the converted samples. It is reused by a later call with the same output length.
+     * @throws IllegalStateException If the format of the frame is unknown or not byte-aligned.
+     */
+    public AudioFrame process(AudioFrame frame) {
+        int samples = frame.getSampleCount();
+        int inputFrames = samples / channels;
+        if (inScratch.length < samples)
+            inScratch = new float[samples];
+        int capacity = maxOutputFrames(inputFrames) * channels;
+        if (outScratch.length < capacity)
+            outScratch = new float[capacity];
+
+        frame.toFloatArray(inScratch, 0);
+        int outputSamples = process(inScratch, 0, inputFrames, outScratch, 0) * channels;
+
+        AudioFrame output = outputFrame(outputSamples * 4);
+        converter.encode(outScratch, 0, output.getBytes(), 0, AudioFormat.FLOAT32, outputSamples);
+        return output;
+    }
+
+    /**
+     * Clears the kept samples, as if the stream started anew.
+     */
+    public void reset() {
+        for (float[] channel : history)
+            Arrays.fill(channel, 0);
+        position = taps - 1;
+        phase = 0;
+    }
+
+    public SampleRate getFrom() {
+        return from;
+    }
+
+    public SampleRate getTo() {
+        return to;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * The amount of input samples that every output sample is calculated from.
+     *
+     * @return {@value #TAPS}, times the downsampling factor if the rate is lowered.
+     */
+    public int getTaps() {
+        return taps;
+    }
+
+    private AudioFrame outputFrame(int length) {
+        if (outputFrame == null || outputFrame.getBytes().length != length) {
+            AudioFrame previous = outputFrame;
+            outputFrame = spareFrame != null && spareFrame.getBytes().length == length
+                    ? spareFrame
+                    : AudioFrame.fromBytes(new byte[length], AudioFormat.FLOAT32);
+            spareFrame = previous;
+        }
+        return outputFrame;
+    }
+
+    private int processChunk(float[] in, int inOffset, int frames, float[] out, int outOffset) {
+        int taps = this.taps;
+        int filled = taps - 1 + frames;
+        for (int c = 0; c < channels; c++) {
+            float[] work = history[c];
+            for (int i = 0, j = inOffset + c; i < frames; i++, j += channels)
+                work[taps - 1 + i] = in[j];
+        }
+
+        float[] coefficients = filter.coefficients;
+        int up = filter.up;
+        int down = filter.down;
+        int written = 0;
+
+        while (position < filled) {
+            int base = phase * taps;
+            int start = position - (taps - 1);
+
+            for (int c = 0; c < channels; c++) {
+                float[] work = history[c];
+                float sum = 0;
+                for (int k = 0; k < taps; k++)
+                    sum += coefficients[base + k] * work[start + k];
+                out[outOffset + written * channels + c] = sum;
+            }
+            written++;
+
+            phase += down;
+            while (phase >= up) {
+                phase -= up;
+                position++;
+            }
+        }
+
+        // keep the newest samples for the next chunk
+        for (int c = 0; c < channels; c++)
+            System.arraycopy(history[c], frames, history[c], 0, taps - 1);
+        position -= frames;
+
+        return written;
+    }
+
+    private static Filter filter(int fromHz, int toHz) {
+        Long key = (long) fromHz << 32 | toHz;
+
+        Filter filter = FILTERS.get(key);
+        if (filter == null) {
+            Filter created = new Filter(fromHz, toHz);
+            filter = FILTERS.putIfAbsent(key, created);
+            if (filter == null)
+                filter = created;
+        }
+        return filter;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < sum * 1e-12)
+                break;
+        }
+        return sum;
+    }
+
+    /**
+     * A Kaiser-windowed sinc lowpass, split into {@code up} phases of {@code taps} coefficients each.
+     * Every phase is stored in reverse, so that the inner loop walks both arrays forwards.
+     * <p>
+     * The transition band is narrowed by the downsampling factor together with the cutoff, which takes that many
+     * more taps; a fixed length cannot realize a cutoff below its own transition width.
+     */
+    private static final class Filter {
+        private final int up;
+        private final int down;
+        private final int taps;
+        private final float[] coefficients;
+
+        private Filter(int fromHz, int toHz) {
+            int gcd = gcd(fromHz, toHz);
+            this.up = toHz / gcd;
+            this.down = fromHz / gcd;
+
+            this.taps = Math.max(TAPS, (int) Math.ceil((double) TAPS * down / up));
+
+            int length = up * taps;
+            // in cycles per input sample; the passband ends half a transition width below the lower Nyquist frequency
+            double transition = (ATTENUATION - 8) / (2.285 * 2 * Math.PI * taps);
+            double cutoff = (Math.min(0.5, 0.5 * toHz / fromHz) - transition / 2) / up;
+            double center = (length - 1) / 2.0;
+            double window = besselI0(KAISER_BETA);
+
+            double[] prototype = new double[length];
+            for (int i = 0; i < length; i++) {
+                double t = i - center;
+                double sinc = t == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * t) / (Math.PI * t);
+                double ratio = t / center;
+                prototype[i] = sinc * besselI0(KAISER_BETA * Math.sqrt(Math.max(0, 1 - ratio * ratio))) / window;
+            }
+
+            coefficients = new float[length];
+            for (int p = 0; p < up; p++) {
+                // normalize every phase to unity gain, so that constant signals pass unchanged
+                double sum = 0;
+                for (int j = 0; j < taps; j++)
+                    sum += prototype[p + up * j];
+                for (int j = 0; j < taps; j++)
+                    coefficients[p * taps + (taps - 1 - j)] = (float) (prototype[p + up * j] / sum);
+            }
+        }
+
+        private static int gcd(int a, int b) {
+            while (b != 0) {
+                int t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package de.comroid.vban.capture;
+
+/**
+ * Layout of a capture file.
+ * <p>
+ * A capture file starts with a header of {@value #HEADER_SIZE} bytes, followed by the records, and ends with the
+ * stream index. All numbers are big-endian. The file is divided into chunks of the size stored in the header, and
+ * no record spans two chunks; a record length of {@code 0} marks the unused end of a chunk.
+ * <pre>
+ * header:  int magic, int version, int chunk size, int reserved,
+ *          long start time in ms since the epoch, long end of records, long offset of the index
+ * record:  int length, long nanoseconds since the start time, byte[length] datagram
+ * index:   int stream count, then per stream:
+ *          byte protocol, byte[16] stream name, int record count, varint[record count] record offset deltas
+ * </pre>
+ * The end of records and the index offset are {@code 0} until the capture is closed;
+ * a capture that was not closed is read by scanning its records.
+ */
+final class CaptureFormat {
+    static final int MAGIC = 0x56424350; // "VBCP"
+    static final int VERSION = 1;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int CHUNK_SIZE_OFFSET = 8;
+    static final int START_TIME_OFFSET = 16;
+    static final int DATA_END_OFFSET = 24;
+    static final int INDEX_OFFSET_OFFSET = 32;
+    static final int HEADER_SIZE = 40;
+
+    static final int RECORD_HEAD_SIZE = 12;
+
+    private CaptureFormat() {
+    }
+}
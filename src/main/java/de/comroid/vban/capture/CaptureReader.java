@@ -0,0 +1,298 @@
+package de.comroid.vban.capture;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.packet.StreamNameCache;
+import de.comroid.vban.packet.VBANPacketHead;
+
+import org.jetbrains.annotations.Nullable;
+
+import static de.comroid.vban.capture.CaptureFormat.*;
+
+/**
+ * Reads a capture file written by a {@link CaptureWriter}.
+ * <p>
+ * The file is mapped read-only chunk by chunk, and records are read through {@link Cursor}s, which return views
+ * of the mapped file instead of copies. A capture that was not closed properly has no index; its records are
+ * scanned once when it is opened.
+ */
+public class CaptureReader implements Closeable {
+    private final FileChannel channel;
+    private final int chunkSize;
+    private final long startTime;
+    private final long dataEnd;
+    private final MappedByteBuffer[] chunks;
+    private final List<StreamIndex> streams = new ArrayList<>();
+    private long recordCount = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor. Opens the file and reads its index.
+     *
+     * @param file The capture file.
+     *
+     * @throws IOException If the file is no capture file, or see {@link FileChannel#open(Path, java.nio.file.OpenOption...)}.
+     */
+    public CaptureReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining())
+                if (channel.read(header, header.position()) < 0)
+                    throw new IOException("Not a capture file: " + file);
+            header.flip();
+
+            if (header.getInt(MAGIC_OFFSET) != MAGIC)
+                throw new IOException("Not a capture file: " + file);
+            if (header.getInt(VERSION_OFFSET) != VERSION)
+                throw new IOException("Unsupported capture file version: " + header.getInt(VERSION_OFFSET));
+
+            this.chunkSize = header.getInt(CHUNK_SIZE_OFFSET);
+            this.startTime = header.getLong(START_TIME_OFFSET);
+            long indexOffset = header.getLong(INDEX_OFFSET_OFFSET);
+            long end = header.getLong(DATA_END_OFFSET);
+            this.dataEnd = end == 0 ? channel.size() : end;
+            this.chunks = new MappedByteBuffer[(int) ((dataEnd + chunkSize - 1) / chunkSize)];
+
+            if (indexOffset != 0)
+                readIndex(indexOffset);
+            else scanIndex();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a cursor over all records, in the order they were written.
+     *
+     * @return A new cursor.
+     */
+    public Cursor cursor() {
+        return new Cursor(null);
+    }
+
+    /**
+     * Creates a cursor over the records of one stream.
+     *
+     * @param stream The index of the stream.
+     *
+     * @return A new cursor.
+     */
+    public Cursor cursor(StreamIndex stream) {
+        return new Cursor(stream);
+    }
+
+    /**
+     * Finds the index of a stream.
+     *
+     * @param protocol   The protocol of the stream.
+     * @param streamName The name of the stream.
+     *
+     * @return The index of the stream, or {@code null} if the capture has no such stream.
+     */
+    public @Nullable StreamIndex getStream(VBAN.Protocol<?> protocol, String streamName) {
+        for (StreamIndex stream : streams)
+            if (stream.matches(protocol, streamName))
+                return stream;
+        return null;
+    }
+
+    public List<StreamIndex> getStreams() {
+        return Collections.unmodifiableList(streams);
+    }
+
+    /**
+     * The amount of valid VBAN datagrams in the capture.
+     *
+     * @return The amount of indexed records.
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * The time the capture was started at. Record timestamps are relative to it.
+     *
+     * @return The start time in milliseconds since the epoch.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+
+    private ByteBuffer chunk(int index) throws IOException {
+        if (closed) throw new IOException("Capture is closed");
+
+        MappedByteBuffer chunk = chunks[index];
+        if (chunk == null) {
+            long offset = (long) index * chunkSize;
+            chunks[index] = chunk = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min(chunkSize, dataEnd - offset));
+        }
+        return chunk;
+    }
+
+    private void readIndex(long offset) throws IOException {
+        ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, offset, channel.size() - offset);
+        byte[] name = new byte[StreamNameCache.NAME_SIZE];
+
+        int streamCount = index.getInt();
+        for (int s = 0; s < streamCount; s++) {
+            VBAN.Protocol<?> protocol = VBAN.Protocol.byValue(index.get() & 0xFF);
+            index.get(name);
+            int length = 0;
+            while (length < name.length && name[length] != 0)
+                length++;
+
+            int count = index.getInt();
+            StreamIndex stream = new StreamIndex(protocol, new String(name, 0, length, "US-ASCII"), count);
+            long previous = 0;
+            for (int i = 0; i < count; i++)
+                stream.add(previous += getVarLong(index));
+
+            streams.add(stream);
+            recordCount += count;
+        }
+    }
+
+    private void scanIndex() throws IOException {
+        VBANPacketHead.View head = VBANPacketHead.view();
+        Cursor cursor = cursor();
+
+        while (cursor.next()) {
+            if (!head.wrap(cursor.getDatagram()).isValid())
+                continue;
+
+            StreamIndex stream = getStream(head.getProtocol(), head.getStreamName());
+            if (stream == null)
+                streams.add(stream = new StreamIndex(head.getProtocol(), head.getStreamName(), 1024));
+            stream.add(cursor.getOffset());
+            recordCount++;
+        }
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Iterates over the records of a capture. Not thread-safe; every thread needs its own cursor.
+     */
+    public final class Cursor {
+        private final StreamIndex stream;
+        private ByteBuffer view;
+        private int viewChunk = -1;
+        private long next = HEADER_SIZE;
+        private int ordinal = 0;
+        private long offset = -1;
+        private long timestamp;
+
+        private Cursor(StreamIndex stream) {
+            this.stream = stream;
+        }
+
+        /**
+         * Advances to the next record.
+         *
+         * @return Whether there was another record.
+         * @throws IOException If the capture has been {@linkplain #close() closed}, or see {@link FileChannel#map(FileChannel.MapMode, long, long)}.
+         */
+        public boolean next() throws IOException {
+            if (stream != null) {
+                if (ordinal >= stream.getRecordCount())
+                    return false;
+                return read(stream.getOffset(ordinal++));
+            }
+
+            while (next < dataEnd) {
+                int chunk = (int) (next / chunkSize);
+                int within = (int) (next % chunkSize);
+                ByteBuffer buffer = chunk(chunk);
+
+                int length = buffer.limit() - within < RECORD_HEAD_SIZE ? 0 : buffer.getInt(within);
+                if (length > 0) {
+                    read(next);
+                    next += RECORD_HEAD_SIZE + length;
+                    return true;
+                }
+
+                // the rest of the chunk is unused; an empty chunk marks the end of an unclosed capture
+                if (within == 0)
+                    break;
+                next = (long) (chunk + 1) * chunkSize;
+            }
+            return false;
+        }
+
+        /**
+         * The datagram of the current record. The returned buffer is a read-only view of the mapped file,
+         * and is reused by the next call to {@link #next()}.
+         *
+         * @return The datagram, from the buffer's position to its limit.
+         */
+        public ByteBuffer getDatagram() {
+            if (offset < 0)
+                throw new IllegalStateException("No current record");
+            return view;
+        }
+
+        /**
+         * The arrival time of the current record.
+         *
+         * @return The nanoseconds since the {@linkplain #getStartTime() start} of the capture.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * The file offset of the current record.
+         *
+         * @return The offset of the current record.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        private boolean read(long offset) throws IOException {
+            int chunk = (int) (offset / chunkSize);
+            int within = (int) (offset % chunkSize);
+            if (chunk != viewChunk) {
+                view = chunk(chunk).asReadOnlyBuffer();
+                viewChunk = chunk;
+            }
+
+            view.clear();
+            int length = view.getInt(within);
+            timestamp = view.getLong(within + 4);
+            view.limit(within + RECORD_HEAD_SIZE + length).position(within + RECORD_HEAD_SIZE);
+            this.offset = offset;
+            return true;
+        }
+    }
+}
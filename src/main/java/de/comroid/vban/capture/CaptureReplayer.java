@@ -0,0 +1,86 @@
+package de.comroid.vban.capture;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+import de.comroid.vban.VBANOutputStream;
+
+/**
+ * Sends the records of a capture through a {@link VBANOutputStream}, unchanged, to the stream's target.
+ */
+public class CaptureReplayer {
+    private final VBANOutputStream<?> out;
+    private final Timing timing;
+
+    /**
+     * Constructor.
+     *
+     * @param out    The stream to send the records through.
+     * @param timing Whether to keep the original timing.
+     */
+    public CaptureReplayer(VBANOutputStream<?> out, Timing timing) {
+        this.out = out;
+        this.timing = timing;
+    }
+
+    /**
+     * Sends all remaining records of a cursor. Blocks until the last record has been sent.
+     * With {@link Timing#ORIGINAL}, the first record is sent immediately, and every later record
+     * at its original distance from it.
+     *
+     * @param cursor The cursor to read the records from.
+     *
+     * @return The amount of sent records.
+     * @throws InterruptedIOException If the thread was interrupted while waiting for the next record.
+     * @throws IOException            See {@link CaptureReader.Cursor#next()} and {@link VBANOutputStream#sendRaw(ByteBuffer)}.
+     */
+    public long replay(CaptureReader.Cursor cursor) throws IOException {
+        long sent = 0;
+        long anchor = 0;
+        long first = 0;
+
+        while (cursor.next()) {
+            if (timing == Timing.ORIGINAL) {
+                if (sent == 0) {
+                    anchor = System.nanoTime();
+                    first = cursor.getTimestamp();
+                } else await(anchor + (cursor.getTimestamp() - first));
+            }
+
+            out.sendRaw(cursor.getDatagram());
+            sent++;
+        }
+
+        return sent;
+    }
+
+    public Timing getTiming() {
+        return timing;
+    }
+
+    private static void await(long due) throws InterruptedIOException {
+        long now;
+        while (due - (now = System.nanoTime()) > 0) {
+            LockSupport.parkNanos(due - now);
+            if (Thread.interrupted())
+                throw new InterruptedIOException("Replay was interrupted");
+        }
+    }
+
+    /**
+     * How a {@link CaptureReplayer} times the records it sends.
+     */
+    public enum Timing {
+        /**
+         * Keeps the distances between the arrival times of the records.
+         */
+        ORIGINAL,
+
+        /**
+         * Sends every record as soon as the previous one has been sent.
+         */
+        AS_FAST_AS_POSSIBLE
+    }
+}
@@ -0,0 +1,283 @@
+package de.comroid.vban.capture;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.comroid.vban.VBANDemultiplexer;
+import de.comroid.vban.VBANReceiver;
+import de.comroid.vban.packet.StreamNameCache;
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.packet.VBANPacketHead;
+
+import static de.comroid.vban.capture.CaptureFormat.*;
+
+/**
+ * Appends raw VBAN datagrams with their arrival time to a memory-mapped capture file.
+ * <p>
+ * The file is mapped chunk by chunk, so that appending a datagram is a copy into memory without a system call.
+ * Datagrams are stored as they were received, including invalid ones; valid datagrams are also added to the
+ * index of their stream, which is written to the end of the file on {@link #close()}.
+ * See {@link CaptureFormat} for the layout of the file.
+ * <p>
+ * Registered at a {@link VBANDemultiplexer}, a writer captures all packets it is passed.
+ * Packets that cannot be written are counted by the demultiplexer as {@linkplain VBANDemultiplexer#getFailedCount()
+ * failed deliveries}.
+ */
+public class CaptureWriter implements VBANDemultiplexer.Handler, Closeable {
+    /**
+     * The default size of the mapped chunks of the file.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 16 << 20;
+
+    private static final int MIN_CHUNK_SIZE = 64 << 10;
+
+    private final FileChannel channel;
+    private final int chunkSize;
+    private final long startNanos;
+    private final VBANPacketHead.View head = VBANPacketHead.view();
+    private final List<StreamIndex> streams = new ArrayList<>();
+    private MappedByteBuffer header;
+    private MappedByteBuffer chunk;
+    private long chunkOffset = 0;
+    private StreamIndex lastStream;
+    private long recordCount = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor. Creates the file, or overwrites it if it exists, with the {@linkplain #DEFAULT_CHUNK_SIZE
+     * default chunk size}.
+     *
+     * @param file The capture file.
+     *
+     * @throws IOException See {@link FileChannel#open(Path, java.nio.file.OpenOption...)}.
+     */
+    public CaptureWriter(Path file) throws IOException {
+        this(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor. Creates the file, or overwrites it if it exists.
+     *
+     * @param file      The capture file.
+     * @param chunkSize The size of the mapped chunks of the file. The file grows by one chunk at a time.
+     *
+     * @throws IllegalArgumentException If the chunk size is smaller than 64 KiB.
+     * @throws IOException              See {@link FileChannel#open(Path, java.nio.file.OpenOption...)}.
+     */
+    public CaptureWriter(Path file, int chunkSize) throws IOException {
+        if (chunkSize < MIN_CHUNK_SIZE)
+            throw new IllegalArgumentException("Chunk size must be at least " + MIN_CHUNK_SIZE + " bytes");
+
+        this.chunkSize = chunkSize;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.startNanos = System.nanoTime();
+
+        try {
+            header = chunk = channel.map(FileChannel.MapMode.READ_WRITE, 0, chunkSize);
+            header.putInt(MAGIC_OFFSET, MAGIC);
+            header.putInt(VERSION_OFFSET, VERSION);
+            header.putInt(CHUNK_SIZE_OFFSET, chunkSize);
+            header.putLong(START_TIME_OFFSET, System.currentTimeMillis());
+            chunk.position(HEADER_SIZE);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a datagram with the current time as its arrival time.
+     *
+     * @param datagram The datagram, from the buffer's position to its limit. The position is not changed.
+     *
+     * @throws IOException See {@link #write(ByteBuffer, long)}.
+     */
+    public void write(ByteBuffer datagram) throws IOException {
+        write(datagram, System.nanoTime());
+    }
+
+    /**
+     * Appends a datagram.
+     *
+     * @param datagram    The datagram, from the buffer's position to its limit. The position is not changed.
+     * @param arrivalTime The arrival time of the datagram, as returned by {@link System#nanoTime()}.
+     *
+     * @throws IllegalArgumentException If the datagram is empty or larger than {@value VBANPacket#MAX_SIZE} bytes.
+     * @throws IOException              If the writer has been {@linkplain #close() closed} before,
+     *                                  or see {@link FileChannel#map(FileChannel.MapMode, long, long)}.
+     */
+    public synchronized void write(ByteBuffer datagram, long arrivalTime) throws IOException {
+        if (closed) throw new IOException("Capture is closed");
+
+        int length = datagram.remaining();
+        if (length == 0 || length > VBANPacket.MAX_SIZE)
+            throw new IllegalArgumentException("Invalid datagram length: " + length);
+
+        if (chunk.remaining() < RECORD_HEAD_SIZE + length)
+            nextChunk();
+
+        long offset = chunkOffset + chunk.position();
+        int position = datagram.position();
+        chunk.putInt(length);
+        chunk.putLong(arrivalTime - startNanos);
+        chunk.put(datagram);
+        datagram.position(position);
+
+        recordCount++;
+        if (head.wrap(datagram).isValid())
+            index(head).add(offset);
+    }
+
+    /**
+     * Receives the next datagram and appends it.
+     *
+     * @param receiver The receiver to receive from.
+     *
+     * @throws IOException See {@link VBANReceiver#receive()} and {@link #write(ByteBuffer, long)}.
+     */
+    public void writeNext(VBANReceiver receiver) throws IOException {
+        ByteBuffer datagram = receiver.receive();
+        write(datagram, System.nanoTime());
+    }
+
+    /**
+     * Appends the datagram with the current time as its arrival time.
+     *
+     * @throws RuntimeException If the datagram could not be written, with the {@link IOException} of
+     *                          {@link #write(ByteBuffer, long)} as its cause.
+     */
+    @Override
+    public void handle(VBANPacketHead.View head, ByteBuffer datagram, SocketAddress source) {
+        try {
+            write(datagram, System.nanoTime());
+        } catch (IOException e) {
+            // lets the demultiplexer count the failure
+            throw new RuntimeException("Capture write failed", e);
+        }
+    }
+
+    /**
+     * Writes the mapped contents of the file to the storage device.
+     *
+     * @throws IOException If the writer has been {@linkplain #close() closed} before.
+     */
+    public synchronized void force() throws IOException {
+        if (closed) throw new IOException("Capture is closed");
+        chunk.force();
+    }
+
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * The indexes of all streams captured so far.
+     *
+     * @return The stream indexes. They grow while the capture is written.
+     */
+    public synchronized List<StreamIndex> getStreams() {
+        return Collections.unmodifiableList(new ArrayList<>(streams));
+    }
+
+    /**
+     * Writes the stream index behind the records, completes the header, and truncates the file to its used size.
+     * Platforms that do not allow truncating a mapped file keep the unused end of the last chunk.
+     *
+     * @throws IOException See {@link FileChannel#write(ByteBuffer, long)}.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+
+        try {
+            long dataEnd = chunkOffset + chunk.position();
+            chunk.force();
+            long indexEnd = writeIndex(dataEnd);
+
+            header.putLong(DATA_END_OFFSET, dataEnd);
+            header.putLong(INDEX_OFFSET_OFFSET, dataEnd);
+            header.force();
+            header = chunk = null;
+
+            try {
+                channel.truncate(indexEnd);
+            } catch (IOException e) {
+                // the mappings are only released by the garbage collector; readers stop at the index end
+            }
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void nextChunk() throws IOException {
+        chunkOffset += chunkSize;
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkOffset, chunkSize);
+    }
+
+    private StreamIndex index(VBANPacketHead.View head) {
+        // consecutive packets usually belong to the same stream
+        if (lastStream != null && lastStream.matches(head.getProtocol(), head.getStreamName()))
+            return lastStream;
+
+        for (StreamIndex stream : streams)
+            if (stream.matches(head.getProtocol(), head.getStreamName()))
+                return lastStream = stream;
+
+        StreamIndex stream = new StreamIndex(head.getProtocol(), head.getStreamName(), 1024);
+        streams.add(stream);
+        return lastStream = stream;
+    }
+
+    private long writeIndex(long offset) throws IOException {
+        int size = 4;
+        for (StreamIndex stream : streams)
+            size += 1 + StreamNameCache.NAME_SIZE + 4 + stream.getRecordCount() * 10;
+
+        ByteBuffer index = ByteBuffer.allocate(size);
+        index.putInt(streams.size());
+        for (StreamIndex stream : streams) {
+            index.put((byte) stream.getProtocol().getValue());
+            byte[] name = stream.getStreamName().getBytes("US-ASCII");
+            for (int i = 0; i < StreamNameCache.NAME_SIZE; i++)
+                index.put(i < name.length ? name[i] : 0);
+            index.putInt(stream.getRecordCount());
+
+            long[] offsets = stream.offsets();
+            long previous = 0;
+            for (int i = 0; i < stream.getRecordCount(); i++) {
+                putVarLong(index, offsets[i] - previous);
+                previous = offsets[i];
+            }
+        }
+        index.flip();
+
+        long end = offset + index.remaining();
+        writeFully(index, offset);
+        return end;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
@@ -0,0 +1,71 @@
+package de.comroid.vban.capture;
+
+import java.util.Arrays;
+
+import de.comroid.vban.VBAN;
+
+/**
+ * The offsets of all records of one stream in a capture file.
+ */
+public final class StreamIndex {
+    private final VBAN.Protocol<?> protocol;
+    private final String streamName;
+    private long[] offsets;
+    private int count = 0;
+
+    StreamIndex(VBAN.Protocol<?> protocol, String streamName, int capacity) {
+        this.protocol = protocol;
+        this.streamName = streamName;
+        this.offsets = new long[Math.max(capacity, 1)];
+    }
+
+    public VBAN.Protocol<?> getProtocol() {
+        return protocol;
+    }
+
+    public String getStreamName() {
+        return streamName;
+    }
+
+    /**
+     * The amount of records of this stream.
+     *
+     * @return The record count.
+     */
+    public int getRecordCount() {
+        return count;
+    }
+
+    /**
+     * The file offset of one record of this stream.
+     *
+     * @param index The index of the record within this stream.
+     *
+     * @return The file offset of the record.
+     * @throws IndexOutOfBoundsException If there is no record with the given index.
+     */
+    public long getOffset(int index) {
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("Record index " + index + " out of bounds for " + count + " records");
+        return offsets[index];
+    }
+
+    boolean matches(VBAN.Protocol<?> protocol, String streamName) {
+        return this.protocol == protocol && this.streamName.equals(streamName);
+    }
+
+    void add(long offset) {
+        if (count == offsets.length)
+            offsets = Arrays.copyOf(offsets, count * 2);
+        offsets[count++] = offset;
+    }
+
+    long[] offsets() {
+        return offsets;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamIndex{protocol=" + protocol + ", streamName=" + streamName + ", records=" + count + "}";
+    }
+}
@@ -0,0 +1,76 @@
+package de.comroid.vban.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram with power-of-two buckets, meant for nanosecond durations.
+ * <p>
+ * Bucket {@code 0} counts zero, bucket {@code i} counts the values within {@code [2^(i-1);2^i)}, so percentiles are exact
+ * to a factor of two, which is plenty to tell apart the causes of audio dropouts.
+ */
+public final class Histogram {
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Records one value. Negative values are recorded as {@code 0}.
+     *
+     * @param value The value to record.
+     */
+    public void record(long value) {
+        buckets.getAndIncrement(value <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * Creates a copy of the current bucket counts.
+     *
+     * @return The current bucket counts.
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] = buckets.get(i);
+        return counts;
+    }
+
+    /**
+     * Counts all recorded values.
+     *
+     * @return The amount of recorded values.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            count += buckets.get(i);
+        return count;
+    }
+
+    /**
+     * Estimates the given percentile as the upper bound of the bucket it falls into.
+     *
+     * @param percentile The percentile, within {@code [0;100]}.
+     *
+     * @return The estimated value, or {@code 0} if nothing has been recorded yet.
+     */
+    public long getPercentile(double percentile) {
+        return percentile(getBucketCounts(), percentile);
+    }
+
+    static long percentile(long[] counts, double percentile) {
+        long total = 0;
+        for (long count : counts)
+            total += count;
+        if (total == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0)
+                return i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : (1L << i) - 1;
+        }
+        return Long.MAX_VALUE;
+    }
+}
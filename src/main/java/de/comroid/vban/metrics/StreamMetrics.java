@@ -0,0 +1,381 @@
+package de.comroid.vban.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import de.comroid.vban.VBAN;
+
+/**
+ * Low-overhead runtime metrics of one VBAN input or output stream.
+ * <p>
+ * Counters are {@linkplain StripedCounter striped} and histograms are lock-free. Frame counters are tracked per
+ * stream, keyed by protocol and stream name, so that streams sharing a port do not count each other's frames as lost;
+ * each stream has its own lock, which is only contended if several threads receive the same stream.
+ * A copy of all values can be taken with {@link #snapshot()},
+ * and the metrics can be {@linkplain #registerMBean(String) published over JMX}.
+ */
+public class StreamMetrics implements StreamMetricsMBean {
+    /**
+     * A frame counter jump of this size or more, backwards or forwards, means that the sender was restarted;
+     * tracking starts over instead of counting the frames in between.
+     */
+    public static final int RESYNC_DISTANCE = 1 << 16;
+
+    /**
+     * The maximum amount of streams per protocol whose frame counters are tracked.
+     */
+    public static final int MAX_TRACKED_STREAMS = 64;
+
+    private final StripedCounter packets = new StripedCounter();
+    private final StripedCounter bytes = new StripedCounter();
+    private final StripedCounter decodeFailures = new StripedCounter();
+    private final StripedCounter droppedPackets = new StripedCounter();
+    private final StripedCounter blockedNanos = new StripedCounter();
+    private final Histogram interArrival = new Histogram();
+    private final Histogram processing = new Histogram();
+    private final StripedCounter lostFrames = new StripedCounter();
+    private final StripedCounter reorderedFrames = new StripedCounter();
+    private final StripedCounter resyncs = new StripedCounter();
+    private final AtomicLong lastArrival = new AtomicLong(0);
+    private final FrameTracker unnamed = new FrameTracker();
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ConcurrentMap<String, FrameTracker>[] streams = new ConcurrentMap[8];
+    private ObjectName objectName;
+
+    public StreamMetrics() {
+        for (int i = 0; i < streams.length; i++)
+            streams[i] = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Records one received or sent packet.
+     *
+     * @param size The size of the datagram in bytes.
+     */
+    public void recordPacket(int size) {
+        packets.increment();
+        bytes.add(size);
+    }
+
+    /**
+     * Records a datagram that could not be decoded.
+     */
+    public void recordDecodeFailure() {
+        decodeFailures.increment();
+    }
+
+    /**
+     * Records a datagram that the transport dropped instead of sending, for example because the send buffer was full.
+     */
+    public void recordDroppedPacket() {
+        droppedPackets.increment();
+    }
+
+    /**
+     * Records the time spent blocked in a receive or send call, and the arrival time of the resulting datagram.
+     *
+     * @param blocked     The nanoseconds spent blocked.
+     * @param arrivalTime The arrival time, as of {@link System#nanoTime()}.
+     */
+    public void recordArrival(long blocked, long arrivalTime) {
+        blockedNanos.add(blocked);
+
+        long last = lastArrival.getAndSet(arrivalTime);
+        if (last != 0)
+            interArrival.record(arrivalTime - last);
+    }
+
+    /**
+     * Records the time the application spent between two receive calls.
+     *
+     * @param nanos The processing time in nanoseconds.
+     */
+    public void recordProcessing(long nanos) {
+        processing.record(nanos);
+    }
+
+    /**
+     * Tracks the frame counter of a received packet of a single stream, to count lost and reordered frames.
+     * A frame that arrives after a later one counts as reordered and is no longer counted as lost.
+     * Use {@link #recordFrame(VBAN.Protocol, String, int)} if several streams are received.
+     *
+     * @param frameCounter The frame counter from the packet head.
+     */
+    public void recordFrame(int frameCounter) {
+        unnamed.record(frameCounter);
+    }
+
+    /**
+     * Tracks the frame counter of a received packet of the given stream, to count lost and reordered frames.
+     * Frames of streams beyond the first {@value #MAX_TRACKED_STREAMS} of a protocol are not tracked.
+     *
+     * @param protocol     The protocol from the packet head.
+     * @param streamName   The interned stream name from the packet head.
+     * @param frameCounter The frame counter from the packet head.
+     */
+    public void recordFrame(VBAN.Protocol<?> protocol, String streamName, int frameCounter) {
+        ConcurrentMap<String, FrameTracker> trackers = streams[protocol.getValue() >> 5];
+        FrameTracker tracker = trackers.get(streamName);
+        if (tracker == null) {
+            if (trackers.size() >= MAX_TRACKED_STREAMS)
+                return;
+            FrameTracker created = new FrameTracker();
+            tracker = trackers.putIfAbsent(streamName, created);
+            if (tracker == null)
+                tracker = created;
+        }
+        tracker.record(frameCounter);
+    }
+
+    @Override
+    public long getPackets() {
+        return packets.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getDecodeFailures() {
+        return decodeFailures.sum();
+    }
+
+    @Override
+    public long getDroppedPackets() {
+        return droppedPackets.sum();
+    }
+
+    @Override
+    public long getLostFrames() {
+        return lostFrames.sum();
+    }
+
+    @Override
+    public long getReorderedFrames() {
+        return reorderedFrames.sum();
+    }
+
+    @Override
+    public long getResyncs() {
+        return resyncs.sum();
+    }
+
+    @Override
+    public long getBlockedNanos() {
+        return blockedNanos.sum();
+    }
+
+    @Override
+    public long getInterArrivalP50() {
+        return interArrival.getPercentile(50);
+    }
+
+    @Override
+    public long getInterArrivalP99() {
+        return interArrival.getPercentile(99);
+    }
+
+    @Override
+    public long getProcessingP50() {
+        return processing.getPercentile(50);
+    }
+
+    @Override
+    public long getProcessingP99() {
+        return processing.getPercentile(99);
+    }
+
+    public Histogram getInterArrivalHistogram() {
+        return interArrival;
+    }
+
+    public Histogram getProcessingHistogram() {
+        return processing;
+    }
+
+    /**
+     * Takes a copy of all current values.
+     * The values are read one after another while recording goes on, so they may not add up exactly;
+     * for example, the packet count may already include a packet whose bytes are not counted yet.
+     *
+     * @return A new snapshot.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(getPackets(), getBytes(), getDecodeFailures(), getDroppedPackets(), getLostFrames(),
+                getReorderedFrames(), getResyncs(), getBlockedNanos(), interArrival.getBucketCounts(), processing.getBucketCounts());
+    }
+
+    /**
+     * Registers these metrics with the platform {@link MBeanServer}
+     * as {@code de.comroid.vban:type=StreamMetrics,name=<name>}.
+     *
+     * @param name The name to register as, for example the stream name.
+     *
+     * @throws JMException If the name is invalid or already registered.
+     */
+    public synchronized void registerMBean(String name) throws JMException {
+        if (objectName != null)
+            throw new IllegalStateException("Already registered as " + objectName);
+
+        ObjectName objectName = new ObjectName("de.comroid.vban:type=StreamMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.objectName = objectName;
+    }
+
+    /**
+     * Removes the registration of {@link #registerMBean(String)}, if there is one.
+     *
+     * @throws JMException See {@link MBeanServer#unregisterMBean(ObjectName)}.
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (objectName == null) return;
+
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        objectName = null;
+    }
+
+    /**
+     * The frame counter state of one stream.
+     */
+    private final class FrameTracker {
+        private boolean tracking = false;
+        private int highestFrame;
+        private long lost = 0;
+
+        private synchronized void record(int frameCounter) {
+            if (!tracking) {
+                tracking = true;
+                highestFrame = frameCounter;
+                return;
+            }
+
+            int distance = frameCounter - highestFrame;
+            if (distance >= RESYNC_DISTANCE || distance <= -RESYNC_DISTANCE) {
+                // the sender has been restarted or jumped; start over
+                resyncs.increment();
+                highestFrame = frameCounter;
+                lost = 0;
+            } else if (distance > 0) {
+                if (distance > 1) {
+                    lost += distance - 1;
+                    lostFrames.add(distance - 1);
+                }
+                highestFrame = frameCounter;
+            } else if (distance < 0) {
+                reorderedFrames.increment();
+                if (lost > 0) {
+                    lost--;
+                    lostFrames.add(-1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Immutable copy of the values of a {@link StreamMetrics} object.
+     */
+    public static final class Snapshot {
+        private final long packets;
+        private final long bytes;
+        private final long decodeFailures;
+        private final long droppedPackets;
+        private final long lostFrames;
+        private final long reorderedFrames;
+        private final long resyncs;
+        private final long blockedNanos;
+        private final long[] interArrivalBuckets;
+        private final long[] processingBuckets;
+
+        private Snapshot(long packets,
+                         long bytes,
+                         long decodeFailures,
+                         long droppedPackets,
+                         long lostFrames,
+                         long reorderedFrames,
+                         long resyncs,
+                         long blockedNanos,
+                         long[] interArrivalBuckets,
+                         long[] processingBuckets) {
+            this.packets = packets;
+            this.bytes = bytes;
+            this.decodeFailures = decodeFailures;
+            this.droppedPackets = droppedPackets;
+            this.lostFrames = lostFrames;
+            this.reorderedFrames = reorderedFrames;
+            this.resyncs = resyncs;
+            this.blockedNanos = blockedNanos;
+            this.interArrivalBuckets = interArrivalBuckets;
+            this.processingBuckets = processingBuckets;
+        }
+
+        public long getPackets() {
+            return packets;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getDecodeFailures() {
+            return decodeFailures;
+        }
+
+        public long getDroppedPackets() {
+            return droppedPackets;
+        }
+
+        public long getLostFrames() {
+            return lostFrames;
+        }
+
+        public long getReorderedFrames() {
+            return reorderedFrames;
+        }
+
+        public long getResyncs() {
+            return resyncs;
+        }
+
+        public long getBlockedNanos() {
+            return blockedNanos;
+        }
+
+        /**
+         * Estimates a percentile of the inter-arrival times.
+         *
+         * @param percentile The percentile, within {@code [0;100]}.
+         *
+         * @return The estimated inter-arrival time in nanoseconds.
+         */
+        public long getInterArrivalPercentile(double percentile) {
+            return Histogram.percentile(interArrivalBuckets, percentile);
+        }
+
+        /**
+         * Estimates a percentile of the processing times.
+         *
+         * @param percentile The percentile, within {@code [0;100]}.
+         *
+         * @return The estimated processing time in nanoseconds.
+         */
+        public long getProcessingPercentile(double percentile) {
+            return Histogram.percentile(processingBuckets, percentile);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("StreamMetrics{packets=%d;bytes=%d;decodeFailures=%d;dropped=%d;lost=%d;" +
+                            "reordered=%d;resyncs=%d;blocked=%dns;interArrivalP99=%dns;processingP99=%dns}",
+                    packets, bytes, decodeFailures, droppedPackets, lostFrames, reorderedFrames, resyncs, blockedNanos,
+                    getInterArrivalPercentile(99), getProcessingPercentile(99));
+        }
+    }
+}
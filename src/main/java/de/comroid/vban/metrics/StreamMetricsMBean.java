@@ -0,0 +1,30 @@
+package de.comroid.vban.metrics;
+
+/**
+ * JMX interface of {@link StreamMetrics}. All durations are in nanoseconds.
+ */
+public interface StreamMetricsMBean {
+    long getPackets();
+
+    long getBytes();
+
+    long getDecodeFailures();
+
+    long getDroppedPackets();
+
+    long getLostFrames();
+
+    long getReorderedFrames();
+
+    long getResyncs();
+
+    long getBlockedNanos();
+
+    long getInterArrivalP50();
+
+    long getInterArrivalP99();
+
+    long getProcessingP50();
+
+    long getProcessingP99();
+}
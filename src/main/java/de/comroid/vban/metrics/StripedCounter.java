@@ -0,0 +1,60 @@
+package de.comroid.vban.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that spreads concurrent increments over several cache lines,
+ * so that threads counting in parallel do not contend on a single value.
+ */
+public final class StripedCounter {
+    // 8 longs are 64 bytes, so every stripe sits on its own cache line
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    /**
+     * Constructor. Uses one stripe per available processor.
+     */
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param stripes The amount of stripes. Is rounded up to the next power of two.
+     */
+    public StripedCounter(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes));
+        if (size < stripes) size <<= 1;
+
+        this.mask = size - 1;
+        this.cells = new AtomicLongArray(size * PADDING);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Adds the given amount to the stripe of the current thread.
+     *
+     * @param amount The amount to add.
+     */
+    public void add(long amount) {
+        cells.getAndAdd(((int) Thread.currentThread().getId() & mask) * PADDING, amount);
+    }
+
+    /**
+     * Sums up all stripes. Concurrent updates may or may not be included.
+     *
+     * @return The current sum.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++)
+            sum += cells.get(i * PADDING);
+        return sum;
+    }
+}
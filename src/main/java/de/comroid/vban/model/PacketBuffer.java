@@ -0,0 +1,109 @@
+package de.comroid.vban.model;
+
+import java.nio.ByteBuffer;
+
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.packet.VBANPacketHead;
+
+/**
+ * A reusable, preformatted buffer for one outgoing VBAN packet.
+ * <p>
+ * The data is written directly behind the space that is reserved for the {@linkplain VBANPacketHead head},
+ * so sending a packet only requires writing the head in front of it.
+ */
+public final class PacketBuffer {
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructor. Allocates a direct buffer of {@link VBANPacket#MAX_SIZE} bytes.
+     */
+    public PacketBuffer() {
+        buffer = ByteBuffer.allocateDirect(VBANPacket.MAX_SIZE);
+
+        clear();
+    }
+
+    /**
+     * Discards all data and positions the buffer behind the head space.
+     *
+     * @return This instance.
+     */
+    public PacketBuffer clear() {
+        buffer.clear();
+        buffer.position(VBANPacketHead.SIZE);
+        return this;
+    }
+
+    /**
+     * Gets the amount of data bytes written to this buffer.
+     *
+     * @return The current data length.
+     */
+    public int length() {
+        return buffer.position() - VBANPacketHead.SIZE;
+    }
+
+    /**
+     * Gets the amount of data bytes that can still be written to this buffer.
+     *
+     * @return The remaining data capacity.
+     */
+    public int remaining() {
+        return buffer.remaining();
+    }
+
+    /**
+     * Appends one data byte.
+     *
+     * @param b The byte to append.
+     *
+     * @throws java.nio.BufferOverflowException If the buffer is full.
+     */
+    public void put(byte b) {
+        buffer.put(b);
+    }
+
+    /**
+     * Appends data bytes.
+     *
+     * @param src    The array to copy from.
+     * @param offset The offset in the array.
+     * @param length The amount of bytes to copy.
+     *
+     * @throws java.nio.BufferOverflowException If the data does not fit into the buffer.
+     */
+    public void put(byte[] src, int offset, int length) {
+        buffer.put(src, offset, length);
+    }
+
+    /**
+     * Appends the remaining bytes of the given buffer.
+     *
+     * @param src The buffer to copy from.
+     *
+     * @throws java.nio.BufferOverflowException If the data does not fit into the buffer.
+     */
+    public void put(ByteBuffer src) {
+        buffer.put(src);
+    }
+
+    /**
+     * Flips the underlying buffer so that it spans the head and all written data.
+     * The head has to be written to the first {@link VBANPacketHead#SIZE} bytes separately.
+     *
+     * @return The underlying buffer, ready to be sent.
+     */
+    public ByteBuffer flip() {
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * The underlying direct buffer.
+     *
+     * @return The underlying buffer.
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+}
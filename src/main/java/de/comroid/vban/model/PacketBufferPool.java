@@ -0,0 +1,69 @@
+package de.comroid.vban.model;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A fixed set of {@link PacketBuffer}s that are recycled after each send.
+ * <p>
+ * All buffers are allocated upfront. {@link #acquire()} blocks while every buffer is in use,
+ * which bounds the amount of packets that can be in flight at any time.
+ */
+public final class PacketBufferPool {
+    private final BlockingQueue<PacketBuffer> free;
+    private final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param size The amount of buffers in this pool.
+     */
+    public PacketBufferPool(int size) {
+        if (size < 1) throw new IllegalArgumentException("Pool size must be at least 1");
+
+        this.free = new ArrayBlockingQueue<>(size);
+        this.size = size;
+
+        for (int i = 0; i < size; i++)
+            free.add(new PacketBuffer());
+    }
+
+    /**
+     * Takes a cleared buffer from this pool, waiting if none is available.
+     *
+     * @return A cleared buffer.
+     * @throws InterruptedIOException If the thread is interrupted while waiting.
+     */
+    public PacketBuffer acquire() throws InterruptedIOException {
+        try {
+            return free.take().clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a packet buffer");
+        }
+    }
+
+    /**
+     * Returns a buffer to this pool.
+     *
+     * @param buffer The buffer to return. Must have been acquired from this pool.
+     */
+    public void release(PacketBuffer buffer) {
+        if (!free.offer(buffer))
+            throw new IllegalStateException("Buffer was not acquired from this pool");
+    }
+
+    /**
+     * Gets the amount of buffers that are currently not in use.
+     *
+     * @return The amount of available buffers.
+     */
+    public int available() {
+        return free.size();
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -1,21 +1,37 @@
 package de.comroid.vban.model.data;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
 import de.comroid.util.model.ByteArray;
+import de.comroid.vban.VBAN.AudioFormat;
+
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A class representing any frame of audio data received via VBAN.
+ * <p>
+ * Samples are stored little-endian and interleaved by channel. The typed views returned by this class
+ * share the frame's memory and do not copy it.
  */
 public class AudioFrame implements ByteArray {
     private final byte[] audioBytes;
+    private final @Nullable AudioFormat format;
 
     /**
      * Private constructor.
      * Create {@link AudioFrame}s with {@link #fromBytes(byte[])}.
      *
-     * @param bytes The audio data bytes of this frame.
+     * @param bytes  The audio data bytes of this frame.
+     * @param format The format of the samples, if known.
      */
-    private AudioFrame(byte[] bytes) {
+    private AudioFrame(byte[] bytes, @Nullable AudioFormat format) {
         audioBytes = bytes;
+        this.format = format;
     }
 
     @Override
@@ -23,6 +39,202 @@ public class AudioFrame implements ByteArray {
         return audioBytes;
     }
 
+    /**
+     * Gets the format of the samples in this frame, as given by the packet head.
+     *
+     * @return The format of the samples, or {@code null} if it is unknown.
+     */
+    public @Nullable AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Gets the amount of samples in this frame, counting every channel separately.
+     *
+     * @return The amount of samples.
+     * @throws IllegalStateException If the format is unknown or not byte-aligned.
+     */
+    public int getSampleCount() {
+        return audioBytes.length / sampleSize();
+    }
+
+    /**
+     * Wraps the bytes of this frame as a little-endian buffer.
+     *
+     * @return A little-endian view of this frame.
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(audioBytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Views the samples of this frame as 16 bit integers.
+     *
+     * @return A view of this frame's samples.
+     * @throws IllegalStateException If the format is known and not {@link AudioFormat#INT16}.
+     */
+    public ShortBuffer asShortBuffer() {
+        requireFormat(AudioFormat.INT16);
+        return asByteBuffer().asShortBuffer();
+    }
+
+    /**
+     * Views the samples of this frame as 32 bit integers.
+     *
+     * @return A view of this frame's samples.
+     * @throws IllegalStateException If the format is known and not {@link AudioFormat#INT32}.
+     */
+    public IntBuffer asIntBuffer() {
+        requireFormat(AudioFormat.INT32);
+        return asByteBuffer().asIntBuffer();
+    }
+
+    /**
+     * Views the samples of this frame as 32 bit floats.
+     *
+     * @return A view of this frame's samples.
+     * @throws IllegalStateException If the format is known and not {@link AudioFormat#FLOAT32}.
+     */
+    public FloatBuffer asFloatBuffer() {
+        requireFormat(AudioFormat.FLOAT32);
+        return asByteBuffer().asFloatBuffer();
+    }
+
+    /**
+     * Views the samples of this frame as 64 bit floats.
+     *
+     * @return A view of this frame's samples.
+     * @throws IllegalStateException If the format is known and not {@link AudioFormat#FLOAT64}.
+     */
+    public DoubleBuffer asDoubleBuffer() {
+        requireFormat(AudioFormat.FLOAT64);
+        return asByteBuffer().asDoubleBuffer();
+    }
+
+    /**
+     * Reads a sign-extended 24 bit sample.
+     *
+     * @param index The index of the sample.
+     *
+     * @return The sample value.
+     * @throws IllegalStateException If the format is known and not {@link AudioFormat#INT24}.
+     */
+    public int getInt24(int index) {
+        requireFormat(AudioFormat.INT24);
+
+        int i = index * 3;
+        return (audioBytes[i] & 0xFF) | (audioBytes[i + 1] & 0xFF) << 8 | audioBytes[i + 2] << 16;
+    }
+
+    /**
+     * Reads one sample, scaled to the range {@code [-1;1]}.
+     * {@link AudioFormat#BYTE8} samples are unsigned, with {@code 128} as the zero line.
+     *
+     * @param index The index of the sample.
+     *
+     * @return The scaled sample value.
+     * @throws IllegalStateException If the format is unknown or not byte-aligned.
+     */
+    public float getSample(int index) {
+        switch (requireKnownFormat()) {
+            case BYTE8:
+                return ((audioBytes[index] & 0xFF) - 128) / 128f;
+            case INT16:
+                return (short) ((audioBytes[index * 2] & 0xFF) | audioBytes[index * 2 + 1] << 8) / 32768f;
+            case INT24:
+                return getInt24(index) / 8388608f;
+            case INT32:
+                return asByteBuffer().getInt(index * 4) / 2147483648f;
+            case FLOAT32:
+                return asByteBuffer().getFloat(index * 4);
+            case FLOAT64:
+                return (float) asByteBuffer().getDouble(index * 8);
+            default:
+                throw new IllegalStateException("Unsupported sample format: " + format);
+        }
+    }
+
+    /**
+     * Copies all samples of this frame into the given array, scaled like {@link #getSample(int)}.
+     *
+     * @param dst    The array to copy to.
+     * @param offset The offset in the array.
+     *
+     * @return The amount of samples that were copied.
+     * @throws IllegalStateException     If the format is unknown or not byte-aligned.
+     * @throws IndexOutOfBoundsException If the array is too small.
+     */
+    public int toFloatArray(float[] dst, int offset) {
+        AudioFormat format = requireKnownFormat();
+        int count = getSampleCount();
+        if (offset < 0 || offset + count > dst.length)
+            throw new IndexOutOfBoundsException("Array is too small for " + count + " samples");
+
+        byte[] src = audioBytes;
+        switch (format) {
+            case BYTE8:
+                for (int i = 0; i < count; i++)
+                    dst[offset + i] = ((src[i] & 0xFF) - 128) / 128f;
+                break;
+            case INT16:
+                for (int i = 0; i < count; i++)
+                    dst[offset + i] = (short) ((src[2 * i] & 0xFF) | src[2 * i + 1] << 8) / 32768f;
+                break;
+            case INT24:
+                for (int i = 0; i < count; i++)
+                    dst[offset + i] = ((src[3 * i] & 0xFF) | (src[3 * i + 1] & 0xFF) << 8 | src[3 * i + 2] << 16)
+                            / 8388608f;
+                break;
+            case INT32:
+                for (int i = 0; i < count; i++)
+                    dst[offset + i] = ((src[4 * i] & 0xFF) | (src[4 * i + 1] & 0xFF) << 8
+                            | (src[4 * i + 2] & 0xFF) << 16 | src[4 * i + 3] << 24) / 2147483648f;
+                break;
+            case FLOAT32:
+                asFloatBuffer().get(dst, offset, count);
+                break;
+            case FLOAT64:
+                DoubleBuffer doubles = asDoubleBuffer();
+                for (int i = 0; i < count; i++)
+                    dst[offset + i] = (float) doubles.get(i);
+                break;
+            default:
+                throw new IllegalStateException("Unsupported sample format: " + format);
+        }
+
+        return count;
+    }
+
+    /**
+     * Copies all samples of this frame into a new array, scaled like {@link #getSample(int)}.
+     *
+     * @return A new array containing all samples.
+     * @throws IllegalStateException If the format is unknown or not byte-aligned.
+     */
+    public float[] toFloatArray() {
+        float[] samples = new float[getSampleCount()];
+        toFloatArray(samples, 0);
+        return samples;
+    }
+
+    private void requireFormat(AudioFormat required) {
+        if (format != null && format != required)
+            throw new IllegalStateException("Frame format is " + format + ", not " + required);
+    }
+
+    private AudioFormat requireKnownFormat() {
+        if (format == null)
+            throw new IllegalStateException("Frame format is unknown");
+        return format;
+    }
+
+    private int sampleSize() {
+        int size = requireKnownFormat().getSampleSize();
+        if (size == 0)
+            throw new IllegalStateException("Unsupported sample format: " + format);
+        return size;
+    }
+
     /**
      * Used to create a new {@link AudioFrame}.
      *
@@ -31,6 +243,18 @@ public class AudioFrame implements ByteArray {
      * @return A new {@link AudioFrame}.
      */
     public static AudioFrame fromBytes(byte[] bytes) {
-        return new AudioFrame(bytes);
+        return new AudioFrame(bytes, null);
+    }
+
+    /**
+     * Used to create a new {@link AudioFrame} whose samples have a known format.
+     *
+     * @param bytes  The audio data bytes of this frame.
+     * @param format The format of the samples.
+     *
+     * @return A new {@link AudioFrame}.
+     */
+    public static AudioFrame fromBytes(byte[] bytes, @Nullable AudioFormat format) {
+        return new AudioFrame(bytes, format);
     }
 }
@@ -0,0 +1,106 @@
+package de.comroid.vban.packet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cache of interned stream names, keyed by the 16 raw name bytes of a packet head.
+ * <p>
+ * A lookup that hits the cache does not allocate. The cache is direct-mapped and never grows;
+ * a colliding name simply replaces the previous entry.
+ */
+public final class StreamNameCache {
+    /**
+     * The length of the stream name field in a packet head.
+     */
+    public static final int NAME_SIZE = 16;
+    private static final int SLOTS = 1024;
+    private static final Entry[] TABLE = new Entry[SLOTS];
+
+    private StreamNameCache() {
+        // nope
+    }
+
+    /**
+     * Gets the stream name stored at the given absolute offset of the buffer.
+     *
+     * @param buffer The buffer to read from. Its position is not modified.
+     * @param offset The absolute offset of the 16 name bytes.
+     *
+     * @return The interned stream name.
+     */
+    public static String get(ByteBuffer buffer, int offset) {
+        long hi = 0, lo = 0;
+        for (int i = 0; i < 8; i++) {
+            hi = hi << 8 | (buffer.get(offset + i) & 0xFF);
+            lo = lo << 8 | (buffer.get(offset + 8 + i) & 0xFF);
+        }
+
+        Entry entry = TABLE[slot(hi, lo)];
+        if (entry != null && entry.hi == hi && entry.lo == lo)
+            return entry.name;
+
+        byte[] bytes = new byte[NAME_SIZE];
+        for (int i = 0; i < NAME_SIZE; i++)
+            bytes[i] = buffer.get(offset + i);
+
+        return store(hi, lo, bytes);
+    }
+
+    /**
+     * Gets the stream name stored at the given offset of the array.
+     *
+     * @param bytes  The array to read from.
+     * @param offset The offset of the 16 name bytes.
+     *
+     * @return The interned stream name.
+     */
+    public static String get(byte[] bytes, int offset) {
+        long hi = 0, lo = 0;
+        for (int i = 0; i < 8; i++) {
+            hi = hi << 8 | (bytes[offset + i] & 0xFF);
+            lo = lo << 8 | (bytes[offset + 8 + i] & 0xFF);
+        }
+
+        Entry entry = TABLE[slot(hi, lo)];
+        if (entry != null && entry.hi == hi && entry.lo == lo)
+            return entry.name;
+
+        byte[] copy = new byte[NAME_SIZE];
+        System.arraycopy(bytes, offset, copy, 0, NAME_SIZE);
+
+        return store(hi, lo, copy);
+    }
+
+    private static String store(long hi, long lo, byte[] nameBytes) {
+        int length = 0;
+        while (length < NAME_SIZE && nameBytes[length] != 0)
+            length++;
+
+        String name = new String(nameBytes, 0, length, StandardCharsets.US_ASCII).intern();
+
+        // entries are immutable, so racing writers can only replace each other
+        TABLE[slot(hi, lo)] = new Entry(hi, lo, name);
+
+        return name;
+    }
+
+    private static int slot(long hi, long lo) {
+        long h = hi * 0x9E3779B97F4A7C15L + lo;
+        h ^= h >>> 29;
+
+        return (int) (h ^ h >>> 32) & (SLOTS - 1);
+    }
+
+    private static final class Entry {
+        private final long hi;
+        private final long lo;
+        private final String name;
+
+        private Entry(long hi, long lo, String name) {
+            this.hi = hi;
+            this.lo = lo;
+            this.name = name;
+        }
+    }
+}
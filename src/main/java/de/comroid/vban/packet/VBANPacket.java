@@ -57,6 +57,15 @@ public class VBANPacket<T> implements ByteArray {
         return unfinishedByteArray.getBytes();
     }
 
+    /**
+     * Gets the data of this packet, without the head.
+     *
+     * @return A copy of the data bytes.
+     */
+    public byte[] getData() {
+        return subArray(unfinishedByteArray.getBufferArray(), VBANPacketHead.SIZE, unfinishedByteArray.length());
+    }
+
     private void attachData(byte[] data) throws IllegalArgumentException {
         if (data.length > MAX_SIZE)
             throw new IllegalArgumentException("Data is too large to be sent, must be smaller than " + MAX_SIZE);
@@ -70,6 +79,20 @@ public class VBANPacket<T> implements ByteArray {
         return new Decoded(bytes);
     }
 
+    /**
+     * Decodes the first {@code length} bytes of the given array as one packet.
+     * The array is not referenced after decoding, so it can be reused.
+     *
+     * @param bytes  The array containing the packet.
+     * @param length The length of the packet in the array.
+     *
+     * @return The decoded packet.
+     * @throws InvalidPacketAttributeException If the packet head cannot be decoded.
+     */
+    public static VBANPacket.Decoded decode(byte[] bytes, int length) throws InvalidPacketAttributeException {
+        return new Decoded(bytes, length);
+    }
+
     public static class Decoded extends VBANPacket {
         public Decoded(byte[] bytes) throws InvalidPacketAttributeException {
             //noinspection unchecked
@@ -77,6 +100,12 @@ public class VBANPacket<T> implements ByteArray {
                     subArray(bytes, VBANPacketHead.SIZE + 1, VBANPacket.MAX_SIZE));
         }
 
+        public Decoded(byte[] bytes, int length) throws InvalidPacketAttributeException {
+            //noinspection unchecked
+            super(VBANPacketHead.decode(subArray(bytes, 0, VBANPacketHead.SIZE)),
+                    subArray(bytes, VBANPacketHead.SIZE, length));
+        }
+
         public VBANPacketHead.Decoded getHead() {
             if (head instanceof VBANPacketHead.Decoded)
                 return (VBANPacketHead.Decoded) head;
@@ -102,6 +131,10 @@ public class VBANPacket<T> implements ByteArray {
             return headFactory.counter();
         }
 
+        public VBANPacketHead.Factory<T> getHeadFactory() {
+            return headFactory;
+        }
+
         public static <T> Builder<T> builder(Protocol<T> protocol) {
             return new Builder<>(protocol);
         }
@@ -1,7 +1,9 @@
 package de.comroid.vban.packet;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.comroid.util.model.ByteArray;
 import de.comroid.vban.Util;
@@ -19,6 +21,7 @@ import de.comroid.vban.model.FormatValue;
 import de.comroid.vban.model.UnfinishedByteArray;
 
 import org.intellij.lang.annotations.MagicConstant;
+import org.jetbrains.annotations.Nullable;
 
 import static de.comroid.vban.Util.checkRange;
 import static de.comroid.vban.Util.intToByteArray;
@@ -29,11 +32,13 @@ import static de.comroid.vban.packet.VBANPacketHead.Factory.builder;
 public class VBANPacketHead<T> implements ByteArray {
     public final static int SIZE = 28;
 
-    private final UnfinishedByteArray unfinishedByteArray;
+    private final byte[] bytes;
 
     private VBANPacketHead(byte[] bytes) {
-        unfinishedByteArray = new UnfinishedByteArray(SIZE, true);
-        unfinishedByteArray.append(bytes);
+        if (bytes.length != SIZE)
+            throw new IllegalArgumentException("Bytearray must be exactly " + SIZE + " bytes long!");
+
+        this.bytes = bytes;
     }
 
     public VBANPacketHead(int protocol,
@@ -47,7 +52,7 @@ public class VBANPacketHead<T> implements ByteArray {
         checkRange(samples, 0, 255);
         checkRange(channel, 0, 255);
 
-        unfinishedByteArray = new UnfinishedByteArray(SIZE, true);
+        UnfinishedByteArray unfinishedByteArray = new UnfinishedByteArray(SIZE, true);
 
         unfinishedByteArray.append("VBAN".getBytes());
         unfinishedByteArray.append((byte) (protocol | sampleRateIndex));
@@ -55,11 +60,23 @@ public class VBANPacketHead<T> implements ByteArray {
         unfinishedByteArray.append((byte) (format | codec));
         unfinishedByteArray.append(trimArray(stringToBytesASCII(streamName), 16));
         unfinishedByteArray.append(intToByteArray(frameCounter, 4));
+
+        bytes = unfinishedByteArray.getBufferArray();
     }
 
     @Override
     public byte[] getBytes() {
-        return unfinishedByteArray.getBytes();
+        return bytes.clone();
+    }
+
+    /**
+     * Copies this head into the given array, without creating an intermediate copy.
+     *
+     * @param dst    The array to write to.
+     * @param offset The offset to write the head at.
+     */
+    public void writeTo(byte[] dst, int offset) {
+        System.arraycopy(bytes, 0, dst, offset, SIZE);
     }
 
     /**
@@ -69,9 +86,8 @@ public class VBANPacketHead<T> implements ByteArray {
      * @param <T>         Type-variable for the VBAN-Stream.
      *
      * @return A new Factory instance.
-     * @throws UnsupportedOperationException If the Protocol is one of {@code [AUDIO, SERIAL, SERVICE]}.
      */
-    public static <T> Factory<T> defaultFactory(Protocol<T> forProtocol) throws UnsupportedOperationException {
+    public static <T> Factory<T> defaultFactory(Protocol<T> forProtocol) {
         return builder(forProtocol).build();
     }
 
@@ -92,56 +108,52 @@ public class VBANPacketHead<T> implements ByteArray {
         private Decoded(byte[] bytes) throws InvalidPacketAttributeException {
             super(bytes);
 
-            if (bytes.length > SIZE)
-                throw new IllegalArgumentException("Bytearray is too large, must be exactly " + SIZE + " bytes long!");
-
             if (bytes[0] != 'V' || bytes[1] != 'B' || bytes[2] != 'A' || bytes[3] != 'N')
                 throw new InvalidPacketAttributeException("Invalid packet head: First bytes must be 'VBAN' [rcv='"
                         + new String(Util.subArray(bytes, 0, 4), StandardCharsets.US_ASCII) + "']");
 
-            int protocolInt = bytes[4] & 0b11111000;
+            int protocolInt = bytes[4] & 0b11100000;
             protocol = VBAN.Protocol.byValue(protocolInt);
 
-            // throw exception if protocol is SERVICE
-            if (protocol.getValue() == 0x60)
-                throw new IllegalStateException("Service Subprotocol is not supported!");
-
-            int dataRateInt = bytes[4] & 0b00000111;
+            int dataRateInt = bytes[4] & 0b00011111;
             switch (protocol.getValue()) {
                 case 0x00: // AUDIO
+                    if (!SampleRate.isValue(dataRateInt))
+                        throw new InvalidPacketAttributeException("Invalid sample rate index: " + dataRateInt);
                     dataRateValue = SampleRate.byValue(dataRateInt);
                     break;
                 case 0x20: // SERIAL
                 case 0x40: // TEXT
+                    if (!BitsPerSecond.isValue(dataRateInt))
+                        throw new InvalidPacketAttributeException("Invalid bit rate index: " + dataRateInt);
                     dataRateValue = BitsPerSecond.byValue(dataRateInt);
                     break;
                 case 0x60: // SERVICE
                 default:
-                    // to avoid compiler warning, set to null.
-                    // service protocol is not supported
+                    // service heads have no data rate
                     dataRateValue = null;
                     break;
             }
 
             // +1 to avoid indexed counting
-            samples = bytes[5] + 1;
-            channel = bytes[6] + 1;
+            samples = (bytes[5] & 0xFF) + 1;
+            channel = (bytes[6] & 0xFF) + 1;
 
             int formatInt = bytes[7] & 0b00011111;
             switch (protocol.getValue()) {
                 case 0x00: // AUDIO
-                    format = AudioFormat.byValue(formatInt);
+                    // bit 3 is reserved and bits 4 to 7 select the codec
+                    format = AudioFormat.byValue(bytes[7] & 0b00000111);
                     break;
                 case 0x20: // SERIAL
-                    format = Format.byValue(formatInt);
+                    format = Format.byValue(bytes[7] & 0b00000111);
                     break;
                 case 0x40: // TEXT
                     format = CommandFormat.byValue(formatInt);
                     break;
                 case 0x60: // SERVICE
                 default:
-                    // to avoid compiler warning, set to null.
-                    // service protocol is not supported
+                    // service heads have no format
                     format = null;
                     break;
             }
@@ -162,9 +174,7 @@ public class VBANPacketHead<T> implements ByteArray {
                     throw new InvalidPacketAttributeException("Invalid Codec selector: " + Integer.toHexString(codecInt));
             }
 
-            byte[] nameBytes = new byte[16];
-            System.arraycopy(bytes, 8, nameBytes, 0, 16);
-            streamName = Util.bytesToString(nameBytes, StandardCharsets.US_ASCII);
+            streamName = StreamNameCache.get(bytes, 8);
 
             byte[] frameBytes = new byte[4];
             System.arraycopy(bytes, 24, frameBytes, 0, 4);
@@ -187,6 +197,24 @@ public class VBANPacketHead<T> implements ByteArray {
             return channel;
         }
 
+        /**
+         * The function of a {@linkplain Protocol#SERVICE service} head, such as {@link VBAN.Service#FUNCTION_PING0}.
+         *
+         * @return The raw samples field.
+         */
+        public int getServiceFunction() {
+            return samples - 1;
+        }
+
+        /**
+         * The service type of a {@linkplain Protocol#SERVICE service} head, such as {@link VBAN.Service#IDENTIFICATION}.
+         *
+         * @return The raw channel field.
+         */
+        public int getServiceType() {
+            return channel - 1;
+        }
+
         public FormatValue<?> getFormat() {
             return format;
         }
@@ -199,6 +227,198 @@ public class VBANPacketHead<T> implements ByteArray {
         public String getStreamName() {
             return streamName;
         }
+
+        public int getFrameCounter() {
+            return frame;
+        }
+    }
+
+    /**
+     * Creates a new, unwrapped {@link View}.
+     *
+     * @return A new View that can be {@linkplain View#wrap(ByteBuffer) wrapped} around received packets.
+     */
+    public static View view() {
+        return new View();
+    }
+
+    /**
+     * Reusable flyweight view of a packet head inside a {@link ByteBuffer}.
+     * <p>
+     * Unlike {@link Decoded}, a View copies nothing and decodes a field only when its getter is called,
+     * so a View can be rewrapped around every received packet without allocating.
+     * The wrapped buffer must not be modified while the View is in use.
+     */
+    public static final class View {
+        private ByteBuffer buffer;
+        private int offset;
+
+        private View() {
+        }
+
+        /**
+         * Wraps this view around the packet head at the buffer's current position.
+         *
+         * @param buffer The buffer containing the packet.
+         *
+         * @return This instance.
+         */
+        public View wrap(ByteBuffer buffer) {
+            return wrap(buffer, buffer.position());
+        }
+
+        /**
+         * Wraps this view around the packet head at the given absolute offset.
+         *
+         * @param buffer The buffer containing the packet.
+         * @param offset The absolute offset of the packet head.
+         *
+         * @return This instance.
+         */
+        public View wrap(ByteBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+            return this;
+        }
+
+        /**
+         * Checks whether the wrapped bytes are long enough, start with {@code VBAN}, name a known protocol
+         * and, for protocols with a data rate, a known data rate. The other getters assume a valid head.
+         *
+         * @return Whether the wrapped bytes form a valid packet head.
+         */
+        public boolean isValid() {
+            if (buffer.limit() - offset < SIZE
+                    || buffer.get(offset) != 'V'
+                    || buffer.get(offset + 1) != 'B'
+                    || buffer.get(offset + 2) != 'A'
+                    || buffer.get(offset + 3) != 'N')
+                return false;
+
+            switch (buffer.get(offset + 4) & 0b11100000) {
+                case 0x00: // AUDIO
+                    return SampleRate.isValue(getDataRateIndex());
+                case 0x20: // SERIAL
+                case 0x40: // TEXT
+                    return BitsPerSecond.isValue(getDataRateIndex());
+                case 0x60: // SERVICE
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        public Protocol<?> getProtocol() {
+            return Protocol.byValue(buffer.get(offset + 4) & 0b11100000);
+        }
+
+        /**
+         * The raw data rate index of this head. Its meaning depends on the {@linkplain #getProtocol() protocol}.
+         *
+         * @return The raw data rate index.
+         */
+        public int getDataRateIndex() {
+            return buffer.get(offset + 4) & 0b00011111;
+        }
+
+        /**
+         * The data rate of this head, decoded according to the {@linkplain #getProtocol() protocol}.
+         *
+         * @return The data rate, or {@code null} if the protocol has none or the index is unknown.
+         */
+        public @Nullable DataRateValue<?> getDataRateValue() {
+            int index = getDataRateIndex();
+            switch (buffer.get(offset + 4) & 0b11100000) {
+                case 0x00: // AUDIO
+                    return SampleRate.isValue(index) ? SampleRate.byValue(index) : null;
+                case 0x20: // SERIAL
+                case 0x40: // TEXT
+                    return BitsPerSecond.isValue(index) ? BitsPerSecond.byValue(index) : null;
+                default:
+                    return null;
+            }
+        }
+
+        public int getSamples() {
+            return (buffer.get(offset + 5) & 0xFF) + 1;
+        }
+
+        public int getChannel() {
+            return (buffer.get(offset + 6) & 0xFF) + 1;
+        }
+
+        /**
+         * The function of a {@linkplain Protocol#SERVICE service} head, such as {@link VBAN.Service#FUNCTION_PING0}.
+         *
+         * @return The raw samples field.
+         */
+        public int getServiceFunction() {
+            return buffer.get(offset + 5) & 0xFF;
+        }
+
+        /**
+         * The service type of a {@linkplain Protocol#SERVICE service} head, such as {@link VBAN.Service#IDENTIFICATION}.
+         *
+         * @return The raw channel field.
+         */
+        public int getServiceType() {
+            return buffer.get(offset + 6) & 0xFF;
+        }
+
+        public FormatValue<?> getFormat() {
+            int formatInt = buffer.get(offset + 7) & 0b00011111;
+
+            switch (buffer.get(offset + 4) & 0b11100000) {
+                case 0x00: // AUDIO
+                    // bit 3 is reserved and bits 4 to 7 select the codec
+                    return AudioFormat.byValue(formatInt & 0b00000111);
+                case 0x20: // SERIAL
+                    return Format.byValue(formatInt & 0b00000111);
+                case 0x40: // TEXT
+                    return CommandFormat.byValue(formatInt);
+                default:
+                    return null;
+            }
+        }
+
+        @MagicConstant(valuesFromClass = VBAN.Codec.class)
+        public int getCodec() {
+            //noinspection MagicConstant
+            return buffer.get(offset + 7) & 0b11110000;
+        }
+
+        /**
+         * Gets the stream name from the {@link StreamNameCache}. Does not allocate if the name is cached.
+         *
+         * @return The interned stream name.
+         */
+        public String getStreamName() {
+            return StreamNameCache.get(buffer, offset + 8);
+        }
+
+        public int getFrameCounter() {
+            return buffer.order() == ByteOrder.BIG_ENDIAN
+                    ? buffer.getInt(offset + 24)
+                    : Integer.reverseBytes(buffer.getInt(offset + 24));
+        }
+
+        /**
+         * The buffer this view is wrapped around.
+         *
+         * @return The wrapped buffer.
+         */
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        /**
+         * The absolute offset of the packet head in the {@linkplain #getBuffer() wrapped buffer}.
+         *
+         * @return The offset of the packet head.
+         */
+        public int getOffset() {
+            return offset;
+        }
     }
 
     public static class Factory<T> implements de.comroid.util.model.Factory<VBANPacketHead<T>> {
@@ -209,7 +429,8 @@ public class VBANPacketHead<T> implements ByteArray {
         private final int format;
         private final int codec;
         private final String streamName;
-        private int counter;
+        private final byte[] template;
+        private final AtomicInteger counter = new AtomicInteger(0);
 
         private Factory(Protocol<T> protocol,
                         DataRateValue<? super T> sampleRate,
@@ -219,24 +440,132 @@ public class VBANPacketHead<T> implements ByteArray {
                         int codec,
                         String streamName) {
             this.protocol = protocol.getValue();
-            this.sampleRate = sampleRate.getValue();
+            // service heads have neither a data rate nor a format
+            this.sampleRate = sampleRate == null ? 0 : sampleRate.getValue();
             this.samples = samples;
             this.channel = channel;
-            this.format = format.getValue();
+            this.format = format == null ? 0 : format.getValue();
             this.codec = codec;
             this.streamName = streamName;
 
-            counter = 0;
+            // all fields but the frame counter are constant, so they are encoded only once
+            template = new VBANPacketHead<T>(this.protocol, this.sampleRate, samples, channel, this.format, codec,
+                    streamName, 0).bytes;
         }
 
         @Override
-        public synchronized VBANPacketHead<T> create() {
-            return new VBANPacketHead<>(protocol, sampleRate, samples, channel, format, codec, streamName, counter++);
+        public VBANPacketHead<T> create() {
+            byte[] bytes = template.clone();
+            putFrameCounter(bytes, 0, counter.getAndIncrement());
+
+            return new VBANPacketHead<>(bytes);
+        }
+
+        /**
+         * Writes the next head directly into the given array and increments the counter.
+         * Unlike {@link #create()}, this does not allocate.
+         *
+         * @param dst    The array to write to.
+         * @param offset The offset to write the head at.
+         *
+         * @return The frame counter that was written.
+         */
+        public int createInto(byte[] dst, int offset) {
+            int frame = counter.getAndIncrement();
+
+            System.arraycopy(template, 0, dst, offset, SIZE - 4);
+            putFrameCounter(dst, offset, frame);
+
+            return frame;
+        }
+
+        /**
+         * Writes the next head directly into the given buffer at the given absolute offset and increments the counter.
+         * Unlike {@link #create()}, this does not allocate. The buffer's position is not modified.
+         *
+         * @param dst    The buffer to write to.
+         * @param offset The absolute offset to write the head at.
+         *
+         * @return The frame counter that was written.
+         */
+        public int createInto(ByteBuffer dst, int offset) {
+            int frame = counter.getAndIncrement();
+
+            for (int i = 0; i < SIZE - 4; i++)
+                dst.put(offset + i, template[i]);
+            dst.put(offset + 24, (byte) (frame >>> 24));
+            dst.put(offset + 25, (byte) (frame >>> 16));
+            dst.put(offset + 26, (byte) (frame >>> 8));
+            dst.put(offset + 27, (byte) frame);
+
+            return frame;
+        }
+
+        /**
+         * Writes the next head like {@link #createInto(ByteBuffer, int)},
+         * but with the given amount of samples instead of the configured one.
+         *
+         * @param dst     The buffer to write to.
+         * @param offset  The absolute offset to write the head at.
+         * @param samples The amount of samples per channel in the packet, within {@code [1;256]}.
+         *
+         * @return The frame counter that was written.
+         */
+        public int createInto(ByteBuffer dst, int offset, int samples) {
+            int frame = createInto(dst, offset);
+            dst.put(offset + 5, (byte) (samples - 1));
+
+            return frame;
         }
 
         @Override
-        public synchronized int counter() {
-            return counter;
+        public int counter() {
+            return counter.get();
+        }
+
+        public int getProtocol() {
+            return protocol;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        /**
+         * The samples field as it is encoded in the head, which is one less than the amount of samples per channel.
+         *
+         * @return The encoded samples field.
+         */
+        public int getSamples() {
+            return samples;
+        }
+
+        /**
+         * The channel field as it is encoded in the head, which is one less than the amount of channels.
+         *
+         * @return The encoded channel field.
+         */
+        public int getChannel() {
+            return channel;
+        }
+
+        public int getFormat() {
+            return format;
+        }
+
+        public int getCodec() {
+            return codec;
+        }
+
+        public String getStreamName() {
+            return streamName;
+        }
+
+        private static void putFrameCounter(byte[] head, int offset, int frame) {
+            head[offset + 24] = (byte) (frame >>> 24);
+            head[offset + 25] = (byte) (frame >>> 16);
+            head[offset + 26] = (byte) (frame >>> 8);
+            head[offset + 27] = (byte) frame;
         }
 
         /**
@@ -246,9 +575,8 @@ public class VBANPacketHead<T> implements ByteArray {
          * @param <T>      Type-Variable for the stream type.
          *
          * @return A new builder for the given protocol.
-         * @throws UnsupportedOperationException If the protocol is {@link Protocol#SERVICE}.
          */
-        public static <T> Builder<T> builder(Protocol<T> protocol) throws UnsupportedOperationException {
+        public static <T> Builder<T> builder(Protocol<T> protocol) {
             return new Builder<>(protocol);
         }
 
@@ -267,7 +595,7 @@ public class VBANPacketHead<T> implements ByteArray {
             being implemented yet, the IF in the Text communication branch will always be 'false'
              */
             @SuppressWarnings({"unchecked", "ConstantConditions"})
-            private Builder(Protocol<T> protocol) throws UnsupportedOperationException {
+            private Builder(Protocol<T> protocol) {
                 this.protocol = protocol;
 
                 switch (protocol.getValue()) {
@@ -294,12 +622,15 @@ public class VBANPacketHead<T> implements ByteArray {
                         if (streamName == null) streamName = "Command1";
                         return;
                     case 0x60:
-                        break;
+                        sampleRate = null;
+                        samples = VBAN.Service.FUNCTION_PING0;
+                        channel = VBAN.Service.IDENTIFICATION;
+                        format = null;
+                        streamName = VBAN.Service.STREAM_NAME;
+                        return;
                     default:
                         throw new AssertionError("Unknown Protocol: " + protocol);
                 }
-
-                throw new UnsupportedOperationException("Unsupported Protocol: " + protocol);
             }
 
             public Protocol<T> getProtocol() {
@@ -324,6 +655,21 @@ public class VBANPacketHead<T> implements ByteArray {
                 return this;
             }
 
+            /**
+             * Sets the amount of samples per channel in one packet.
+             *
+             * @param samples The amount of samples, from {@code 1} to {@code 256}.
+             *
+             * @return This builder.
+             * @throws IllegalArgumentException If the amount is out of range.
+             */
+            public Builder<T> setSamples(int samples) {
+                if (samples < 1 || samples > 256)
+                    throw new IllegalArgumentException("Sample count must be from 1 to 256");
+                this.samples = samples - 1;
+                return this;
+            }
+
             public int getChannel() {
                 return channel;
             }
@@ -333,6 +679,49 @@ public class VBANPacketHead<T> implements ByteArray {
                 return this;
             }
 
+            /**
+             * Sets the amount of channels.
+             *
+             * @param channel The amount of channels, from {@code 1} to {@code 256}.
+             *
+             * @return This builder.
+             * @throws IllegalArgumentException If the amount is out of range.
+             */
+            public Builder<T> setChannel(int channel) {
+                if (channel < 1 || channel > 256)
+                    throw new IllegalArgumentException("Channel count must be from 1 to 256");
+                this.channel = channel - 1;
+                return this;
+            }
+
+            /**
+             * Sets the function of a {@linkplain Protocol#SERVICE service} head, which is stored in the samples field.
+             *
+             * @param function The function, such as {@link VBAN.Service#FUNCTION_PING0}.
+             *
+             * @return This builder.
+             * @throws IllegalArgumentException If the function does not fit into one byte.
+             */
+            public Builder<T> setServiceFunction(int function) {
+                checkRange(function, 0, 255);
+                this.samples = function;
+                return this;
+            }
+
+            /**
+             * Sets the service type of a {@linkplain Protocol#SERVICE service} head, which is stored in the channel field.
+             *
+             * @param type The service type, such as {@link VBAN.Service#IDENTIFICATION}.
+             *
+             * @return This builder.
+             * @throws IllegalArgumentException If the service type does not fit into one byte.
+             */
+            public Builder<T> setServiceType(int type) {
+                checkRange(type, 0, 255);
+                this.channel = type;
+                return this;
+            }
+
             public FormatValue<? super T> getFormat() {
                 return format;
             }
@@ -0,0 +1,217 @@
+package de.comroid.vban.service;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The VBAN devices that a {@link PingService} has heard from, with their {@link Ping0 identity}.
+ * <p>
+ * Every PING0 request or reply refreshes the entry of its sender. An entry that has not been refreshed within
+ * the time to live is expired: it is never returned, and it is removed the next time the cache is listed or
+ * {@linkplain #evictExpired() evicted}. Adding an entry also evicts the expired ones, at most once per time
+ * to live, so that devices that have gone away do not stay in the cache. Senders can pick their destinations
+ * from the cache instead of pinging again.
+ */
+public class PeerCache {
+    private final long ttlNanos;
+    private final ConcurrentMap<InetSocketAddress, Peer> peers = new ConcurrentHashMap<>();
+    private final AtomicLong nextEviction;
+
+    /**
+     * Constructor.
+     *
+     * @param ttl  The time to live of every entry.
+     * @param unit The unit of the time to live.
+     */
+    public PeerCache(long ttl, TimeUnit unit) {
+        if (ttl <= 0)
+            throw new IllegalArgumentException("Time to live must be positive");
+
+        this.ttlNanos = unit.toNanos(ttl);
+        this.nextEviction = new AtomicLong(System.nanoTime() + ttlNanos);
+    }
+
+    /**
+     * Adds or refreshes the entry of a device.
+     * Evicts the expired entries if the time to live has passed since they were last evicted.
+     *
+     * @param address  The address the device sent from.
+     * @param identity The identity the device sent.
+     *
+     * @return The refreshed entry.
+     */
+    public Peer update(InetSocketAddress address, Ping0 identity) {
+        long now = System.nanoTime();
+        Peer previous = peers.get(address);
+        Peer peer = new Peer(address, identity, previous == null || previous.isExpired(now) ? now : previous.firstSeen, now);
+        peers.put(address, peer);
+
+        // amortized over one time to live; only one of concurrent updates evicts
+        long due = nextEviction.get();
+        if (now - due >= 0 && nextEviction.compareAndSet(due, now + ttlNanos))
+            evictExpired();
+        return peer;
+    }
+
+    /**
+     * Refreshes the entry of a device in place, if it is live and the given payload equals its identity.
+     * Unlike {@link #update(InetSocketAddress, Ping0)}, this does not allocate.
+     *
+     * @param address The address the device sent from.
+     * @param payload The buffer holding the identity the device sent.
+     * @param offset  The absolute offset of the identity.
+     *
+     * @return Whether the entry was refreshed; {@code false} if the identity has to be read and updated.
+     */
+    boolean refresh(InetSocketAddress address, ByteBuffer payload, int offset) {
+        long now = System.nanoTime();
+        Peer peer = peers.get(address);
+        if (peer == null || peer.isExpired(now) || !peer.identity.matches(payload, offset))
+            return false;
+
+        peer.lastSeen = now;
+        return true;
+    }
+
+    /**
+     * Gets the entry of one device.
+     *
+     * @param address The address of the device.
+     *
+     * @return The entry, or {@code null} if there is none or it has expired.
+     */
+    public @Nullable Peer get(InetSocketAddress address) {
+        Peer peer = peers.get(address);
+        return peer == null || peer.isExpired(System.nanoTime()) ? null : peer;
+    }
+
+    /**
+     * Lists all entries that have not expired.
+     *
+     * @return A new list of the live entries.
+     */
+    public List<Peer> getPeers() {
+        return findPeers(0);
+    }
+
+    /**
+     * Lists all entries that have not expired and support all of the given features.
+     *
+     * @param features The {@link Ping0.Feature} bits every entry must have, or {@code 0} for all entries.
+     *
+     * @return A new list of the matching entries.
+     */
+    public List<Peer> findPeers(int features) {
+        long now = System.nanoTime();
+        List<Peer> found = new ArrayList<>();
+
+        for (Iterator<Peer> iterator = peers.values().iterator(); iterator.hasNext(); ) {
+            Peer peer = iterator.next();
+            if (peer.isExpired(now))
+                iterator.remove();
+            else if (peer.identity.supports(features))
+                found.add(peer);
+        }
+        return found;
+    }
+
+    /**
+     * Removes all expired entries.
+     *
+     * @return The amount of removed entries.
+     */
+    public int evictExpired() {
+        long now = System.nanoTime();
+        int evicted = 0;
+
+        for (Iterator<Peer> iterator = peers.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().isExpired(now)) {
+                iterator.remove();
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    public void clear() {
+        peers.clear();
+    }
+
+    public long getTtl(TimeUnit unit) {
+        return unit.convert(ttlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * One entry of a {@link PeerCache}.
+     */
+    public final class Peer {
+        private final InetSocketAddress address;
+        private final Ping0 identity;
+        private final long firstSeen;
+        private volatile long lastSeen;
+
+        private Peer(InetSocketAddress address, Ping0 identity, long firstSeen, long lastSeen) {
+            this.address = address;
+            this.identity = identity;
+            this.firstSeen = firstSeen;
+            this.lastSeen = lastSeen;
+        }
+
+        /**
+         * The address the device sent from. VBAN devices send from the port they receive on.
+         *
+         * @return The address of the device.
+         */
+        public InetSocketAddress getAddress() {
+            return address;
+        }
+
+        public Ping0 getIdentity() {
+            return identity;
+        }
+
+        /**
+         * The time since the device was last heard from.
+         *
+         * @param unit The unit to return.
+         *
+         * @return The age of this entry.
+         */
+        public long getAge(TimeUnit unit) {
+            return unit.convert(System.nanoTime() - lastSeen, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * The time since the device was first heard from, without expiring in between.
+         *
+         * @param unit The unit to return.
+         *
+         * @return The time the device has been known.
+         */
+        public long getKnownFor(TimeUnit unit) {
+            return unit.convert(System.nanoTime() - firstSeen, TimeUnit.NANOSECONDS);
+        }
+
+        public boolean isExpired() {
+            return isExpired(System.nanoTime());
+        }
+
+        private boolean isExpired(long now) {
+            return now - lastSeen > ttlNanos;
+        }
+
+        @Override
+        public String toString() {
+            return address + " " + identity;
+        }
+    }
+}
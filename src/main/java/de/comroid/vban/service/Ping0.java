@@ -0,0 +1,431 @@
+package de.comroid.vban.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import de.comroid.vban.VBAN;
+
+/**
+ * The identity that a VBAN device sends with every PING0 request and reply of the
+ * {@linkplain VBAN.Service#IDENTIFICATION identification service}.
+ * <p>
+ * The payload is {@value #SIZE} bytes long. Numbers are stored little-endian, and texts are zero-padded;
+ * the user name and comment are UTF-8, all other texts are ASCII. Create instances with {@link #builder()}
+ * or {@link #read(ByteBuffer, int)}.
+ */
+public final class Ping0 {
+    public static final int SIZE = 676;
+
+    private static final int TYPE = 0;
+    private static final int FEATURES = 4;
+    private static final int FEATURES_EX = 8;
+    private static final int PREFERRED_RATE = 12;
+    private static final int MIN_RATE = 16;
+    private static final int MAX_RATE = 20;
+    private static final int COLOR = 24;
+    private static final int VERSION = 28;
+    private static final int LANGUAGE = 48;
+    private static final int DISTANT_IP = 128;
+    private static final int DISTANT_PORT = 160;
+    private static final int DEVICE_NAME = 164;
+    private static final int MANUFACTURER_NAME = 228;
+    private static final int APPLICATION_NAME = 292;
+    private static final int HOST_NAME = 356;
+    private static final int USER_NAME = 420;
+    private static final int USER_COMMENT = 548;
+
+    private final byte[] bytes;
+    private final int type;
+    private final int features;
+    private final int featuresEx;
+    private final int preferredRate;
+    private final int minRate;
+    private final int maxRate;
+    private final int color;
+    private final int version;
+    private final String language;
+    private final String distantIp;
+    private final int distantPort;
+    private final String deviceName;
+    private final String manufacturerName;
+    private final String applicationName;
+    private final String hostName;
+    private final String userName;
+    private final String userComment;
+
+    private Ping0(byte[] bytes) {
+        this.bytes = bytes;
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        this.type = buffer.getInt(TYPE);
+        this.features = buffer.getInt(FEATURES);
+        this.featuresEx = buffer.getInt(FEATURES_EX);
+        this.preferredRate = buffer.getInt(PREFERRED_RATE);
+        this.minRate = buffer.getInt(MIN_RATE);
+        this.maxRate = buffer.getInt(MAX_RATE);
+        this.color = buffer.getInt(COLOR);
+        this.version = buffer.getInt(VERSION);
+        this.language = text(bytes, LANGUAGE, 8, StandardCharsets.US_ASCII);
+        this.distantIp = text(bytes, DISTANT_IP, 32, StandardCharsets.US_ASCII);
+        this.distantPort = buffer.getShort(DISTANT_PORT) & 0xFFFF;
+        this.deviceName = text(bytes, DEVICE_NAME, 64, StandardCharsets.US_ASCII);
+        this.manufacturerName = text(bytes, MANUFACTURER_NAME, 64, StandardCharsets.US_ASCII);
+        this.applicationName = text(bytes, APPLICATION_NAME, 64, StandardCharsets.US_ASCII);
+        this.hostName = text(bytes, HOST_NAME, 64, StandardCharsets.US_ASCII);
+        this.userName = text(bytes, USER_NAME, 128, StandardCharsets.UTF_8);
+        this.userComment = text(bytes, USER_COMMENT, 128, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads an identity from the given buffer. The buffer's position is not modified.
+     *
+     * @param src    The buffer to read from.
+     * @param offset The absolute offset of the payload.
+     *
+     * @return The identity.
+     * @throws IndexOutOfBoundsException If the buffer holds less than {@value #SIZE} bytes from the offset on.
+     */
+    public static Ping0 read(ByteBuffer src, int offset) {
+        if (offset < 0 || src.limit() - offset < SIZE)
+            throw new IndexOutOfBoundsException("PING0 payload must be " + SIZE + " bytes long");
+
+        byte[] bytes = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++)
+            bytes[i] = src.get(offset + i);
+        return new Ping0(bytes);
+    }
+
+    /**
+     * Checks whether the given buffer holds exactly this identity. The buffer's position is not modified.
+     *
+     * @param src    The buffer to compare with.
+     * @param offset The absolute offset of the payload.
+     *
+     * @return Whether the payload equals this identity.
+     */
+    boolean matches(ByteBuffer src, int offset) {
+        if (offset < 0 || src.limit() - offset < SIZE)
+            return false;
+
+        for (int i = 0; i < SIZE; i++)
+            if (src.get(offset + i) != bytes[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Writes this identity into the given buffer. The buffer's position is not modified.
+     *
+     * @param dst    The buffer to write to.
+     * @param offset The absolute offset to write the payload at.
+     */
+    public void writeTo(ByteBuffer dst, int offset) {
+        for (int i = 0; i < SIZE; i++)
+            dst.put(offset + i, bytes[i]);
+    }
+
+    /**
+     * The device type, a combination of the {@link Type} bits.
+     *
+     * @return The device type bits.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * The supported features, a combination of the {@link Feature} bits.
+     *
+     * @return The feature bits.
+     */
+    public int getFeatures() {
+        return features;
+    }
+
+    public int getFeaturesEx() {
+        return featuresEx;
+    }
+
+    /**
+     * Checks whether all of the given feature bits are set.
+     *
+     * @param features The {@link Feature} bits to check.
+     *
+     * @return Whether the device supports all of the features.
+     */
+    public boolean supports(int features) {
+        return (this.features & features) == features;
+    }
+
+    /**
+     * The preferred sample rate in Hertz.
+     *
+     * @return The preferred sample rate.
+     */
+    public int getPreferredRate() {
+        return preferredRate;
+    }
+
+    public int getMinRate() {
+        return minRate;
+    }
+
+    public int getMaxRate() {
+        return maxRate;
+    }
+
+    /**
+     * The user color as {@code 0xRRGGBB}.
+     *
+     * @return The color.
+     */
+    public int getColor() {
+        return color;
+    }
+
+    /**
+     * The application version, with the major version in the highest byte.
+     *
+     * @return The version.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public String getDistantIp() {
+        return distantIp;
+    }
+
+    public int getDistantPort() {
+        return distantPort;
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public String getManufacturerName() {
+        return manufacturerName;
+    }
+
+    public String getApplicationName() {
+        return applicationName;
+    }
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public String getUserComment() {
+        return userComment;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Ping0{application=%s, device=%s, host=%s, user=%s}",
+                applicationName, deviceName, hostName, userName);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static String text(byte[] bytes, int offset, int size, Charset charset) {
+        int length = 0;
+        while (length < size && bytes[offset + length] != 0)
+            length++;
+        return new String(bytes, offset, length, charset);
+    }
+
+    /**
+     * Collection of device type bits, see {@link #getType()}.
+     */
+    public static final class Type {
+        public final static int RECEPTOR = 0x00000001;
+        public final static int TRANSMITTER = 0x00000002;
+        public final static int RECEPTOR_SPOT = 0x00000004;
+        public final static int TRANSMITTER_SPOT = 0x00000008;
+        public final static int VIRTUAL_DEVICE = 0x00000010;
+        public final static int VIRTUAL_MIXER = 0x00000020;
+        public final static int MATRIX = 0x00000040;
+        public final static int DAW = 0x00000080;
+        public final static int SERVER = 0x01000000;
+    }
+
+    /**
+     * Collection of feature bits, see {@link #getFeatures()}.
+     */
+    public static final class Feature {
+        public final static int AUDIO = 0x00000001;
+        public final static int AOIP = 0x00000002;
+        public final static int VOIP = 0x00000004;
+        public final static int SERIAL = 0x00000100;
+        public final static int MIDI = 0x00000300;
+        public final static int FRAME = 0x00001000;
+        public final static int TEXT = 0x00010000;
+    }
+
+    public static final class Builder implements de.comroid.util.model.Builder<Ping0> {
+        private int type = 0;
+        private int features = 0;
+        private int featuresEx = 0;
+        private int preferredRate = 0;
+        private int minRate = 0;
+        private int maxRate = 0;
+        private int color = 0;
+        private int version = 0;
+        private String language = "";
+        private String distantIp = "";
+        private int distantPort = 0;
+        private String deviceName = "";
+        private String manufacturerName = "";
+        private String applicationName = "";
+        private String hostName = "";
+        private String userName = "";
+        private String userComment = "";
+
+        private Builder() {
+        }
+
+        public Builder setType(int type) {
+            this.type = type;
+            return this;
+        }
+
+        public Builder setFeatures(int features) {
+            this.features = features;
+            return this;
+        }
+
+        public Builder setFeaturesEx(int featuresEx) {
+            this.featuresEx = featuresEx;
+            return this;
+        }
+
+        /**
+         * Sets the sample rates in Hertz.
+         *
+         * @param preferred The preferred sample rate.
+         * @param min       The lowest supported sample rate.
+         * @param max       The highest supported sample rate.
+         *
+         * @return This builder.
+         */
+        public Builder setRates(int preferred, int min, int max) {
+            this.preferredRate = preferred;
+            this.minRate = min;
+            this.maxRate = max;
+            return this;
+        }
+
+        public Builder setColor(int color) {
+            this.color = color;
+            return this;
+        }
+
+        public Builder setVersion(int version) {
+            this.version = version;
+            return this;
+        }
+
+        public Builder setLanguage(String language) {
+            this.language = language;
+            return this;
+        }
+
+        /**
+         * Sets the address that the device sends to.
+         *
+         * @param ip   The IP address as text.
+         * @param port The port.
+         *
+         * @return This builder.
+         */
+        public Builder setDistant(String ip, int port) {
+            this.distantIp = ip;
+            this.distantPort = port;
+            return this;
+        }
+
+        public Builder setDeviceName(String deviceName) {
+            this.deviceName = deviceName;
+            return this;
+        }
+
+        public Builder setManufacturerName(String manufacturerName) {
+            this.manufacturerName = manufacturerName;
+            return this;
+        }
+
+        public Builder setApplicationName(String applicationName) {
+            this.applicationName = applicationName;
+            return this;
+        }
+
+        public Builder setHostName(String hostName) {
+            this.hostName = hostName;
+            return this;
+        }
+
+        public Builder setUserName(String userName) {
+            this.userName = userName;
+            return this;
+        }
+
+        public Builder setUserComment(String userComment) {
+            this.userComment = userComment;
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @throws IllegalArgumentException If a text does not fit into its field, or the port is out of range.
+         */
+        @Override
+        public Ping0 build() {
+            if (distantPort < 0 || distantPort > 0xFFFF)
+                throw new IllegalArgumentException("Port out of range: " + distantPort);
+
+            byte[] bytes = new byte[SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(TYPE, type);
+            buffer.putInt(FEATURES, features);
+            buffer.putInt(FEATURES_EX, featuresEx);
+            buffer.putInt(PREFERRED_RATE, preferredRate);
+            buffer.putInt(MIN_RATE, minRate);
+            buffer.putInt(MAX_RATE, maxRate);
+            buffer.putInt(COLOR, color);
+            buffer.putInt(VERSION, version);
+            buffer.putShort(DISTANT_PORT, (short) distantPort);
+
+            putText(bytes, LANGUAGE, 8, language, StandardCharsets.US_ASCII);
+            putText(bytes, DISTANT_IP, 32, distantIp, StandardCharsets.US_ASCII);
+            putText(bytes, DEVICE_NAME, 64, deviceName, StandardCharsets.US_ASCII);
+            putText(bytes, MANUFACTURER_NAME, 64, manufacturerName, StandardCharsets.US_ASCII);
+            putText(bytes, APPLICATION_NAME, 64, applicationName, StandardCharsets.US_ASCII);
+            putText(bytes, HOST_NAME, 64, hostName, StandardCharsets.US_ASCII);
+            putText(bytes, USER_NAME, 128, userName, StandardCharsets.UTF_8);
+            putText(bytes, USER_COMMENT, 128, userComment, StandardCharsets.UTF_8);
+
+            return new Ping0(bytes);
+        }
+
+        private static void putText(byte[] dst, int offset, int size, String text, Charset charset) {
+            byte[] encoded = text.getBytes(charset);
+            if (encoded.length > size)
+                throw new IllegalArgumentException("Text must not be longer than " + size + " bytes: " + text);
+            System.arraycopy(encoded, 0, dst, offset, encoded.length);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package de.comroid.vban.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANDemultiplexer;
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.packet.VBANPacketHead;
+import de.comroid.vban.transport.BlockingUdpTransport;
+import de.comroid.vban.transport.Transport;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Implements the PING0 exchange of the {@linkplain VBAN.Service#IDENTIFICATION identification service}.
+ * <p>
+ * Every PING0 request is answered with a reply that carries this device's {@link Ping0 identity}, and the sender
+ * of every request and reply is added to the {@link PeerCache}. Both requests and replies are sent from one
+ * preallocated buffer, and a known device that sends its unchanged identity again is refreshed in place.
+ * Answering such a device therefore does not allocate, apart from what the transport allocates on receiving;
+ * a new or changed identity is read into a new {@link Ping0}.
+ * <p>
+ * The service either receives from its own transport with {@link #run()}, or is
+ * {@linkplain VBANDemultiplexer#register(VBAN.Protocol, String, InetAddress, VBANDemultiplexer.Handler) registered}
+ * for the {@link VBAN.Protocol#SERVICE service protocol} at a demultiplexer that shares the port with other streams.
+ * In both cases it sends through its own transport.
+ */
+public class PingService implements VBANDemultiplexer.Handler, Runnable, Closeable {
+    private final Transport transport;
+    private final Ping0 identity;
+    private final PeerCache peers;
+    private final VBANPacketHead.Factory<byte[]> requestHeads;
+    private final VBANPacketHead.Factory<byte[]> replyHeads;
+    private final ByteBuffer outgoing = ByteBuffer.allocateDirect(VBANPacketHead.SIZE + Ping0.SIZE);
+    private final ByteBuffer incoming = ByteBuffer.allocateDirect(VBANPacket.MAX_SIZE);
+    private final VBANPacketHead.View head = VBANPacketHead.view();
+    private volatile long answeredCount = 0;
+    private volatile long invalidCount = 0;
+    private volatile long errorCount = 0;
+    private volatile Exception lastError;
+
+    /**
+     * Constructor. Binds a new {@link BlockingUdpTransport} to the given address and port.
+     *
+     * @param address  The {@linkplain InetAddress address} to bind to.
+     * @param port     The port to bind to.
+     * @param identity The identity to send with every request and reply.
+     * @param peers    The cache to add discovered devices to.
+     *
+     * @throws IOException See {@link BlockingUdpTransport#BlockingUdpTransport(SocketAddress)}.
+     */
+    public PingService(InetAddress address, int port, Ping0 identity, PeerCache peers) throws IOException {
+        this(new BlockingUdpTransport(new InetSocketAddress(address, port)), identity, peers);
+    }
+
+    /**
+     * Constructor. Takes ownership of the given transport.
+     *
+     * @param transport The transport to send through, and to receive from with {@link #run()}.
+     * @param identity  The identity to send with every request and reply.
+     * @param peers     The cache to add discovered devices to.
+     */
+    public PingService(Transport transport, Ping0 identity, PeerCache peers) {
+        this.transport = transport;
+        this.identity = identity;
+        this.peers = peers;
+        this.requestHeads = VBANPacketHead.Factory.builder(VBAN.Protocol.SERVICE)
+                .setServiceFunction(VBAN.Service.FUNCTION_PING0)
+                .build();
+        this.replyHeads = VBANPacketHead.Factory.builder(VBAN.Protocol.SERVICE)
+                .setServiceFunction(VBAN.Service.FUNCTION_PING0 | VBAN.Service.FUNCTION_REPLY)
+                .build();
+
+        // the identity never changes, so only the head is written per packet
+        identity.writeTo(outgoing, VBANPacketHead.SIZE);
+    }
+
+    /**
+     * Sends a PING0 request. The device at the target answers with its identity, which is cached once it
+     * has been {@linkplain #handle(VBANPacketHead.View, ByteBuffer, SocketAddress) handled}.
+     *
+     * @param target The device or broadcast address to ping.
+     *
+     * @throws IOException See {@link Transport#send(ByteBuffer, SocketAddress)}.
+     */
+    public void ping(InetSocketAddress target) throws IOException {
+        send(requestHeads, target);
+    }
+
+    /**
+     * Handles packets until this service is {@linkplain #close() closed}.
+     * Errors are counted in {@link #getErrorCount()} and do not stop the loop. Receive timeouts are ignored.
+     */
+    @Override
+    public void run() {
+        while (transport.isOpen()) {
+            try {
+                handleNext();
+            } catch (SocketTimeoutException ignored) {
+                // nothing arrived within the transport's timeout
+            } catch (IOException | RuntimeException e) {
+                if (transport.isOpen()) {
+                    errorCount++;
+                    lastError = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives the next datagram from the transport and handles it.
+     *
+     * @throws IOException See {@link Transport#receive(ByteBuffer, int)}.
+     */
+    public void handleNext() throws IOException {
+        incoming.clear();
+        SocketAddress source = transport.receive(incoming, 0);
+        incoming.flip();
+
+        head.wrap(incoming);
+        if (head.isValid() && head.getProtocol().isService())
+            handle(head, incoming, source);
+    }
+
+    /**
+     * Caches the sender of a PING0 request or reply, and answers requests.
+     * Packets of other services are ignored.
+     */
+    @Override
+    public void handle(VBANPacketHead.View head, ByteBuffer datagram, SocketAddress source) {
+        if (head.getServiceType() != VBAN.Service.IDENTIFICATION)
+            return;
+
+        int function = head.getServiceFunction();
+        if ((function & ~VBAN.Service.FUNCTION_REPLY) != VBAN.Service.FUNCTION_PING0)
+            return;
+        if (datagram.limit() - head.getOffset() < VBANPacketHead.SIZE + Ping0.SIZE
+                || !(source instanceof InetSocketAddress)) {
+            invalidCount++;
+            return;
+        }
+
+        // a known device usually sends the same identity again; only a new or changed one is read
+        InetSocketAddress address = (InetSocketAddress) source;
+        int payload = head.getOffset() + VBANPacketHead.SIZE;
+        if (!peers.refresh(address, datagram, payload))
+            peers.update(address, Ping0.read(datagram, payload));
+
+        if ((function & VBAN.Service.FUNCTION_REPLY) == 0) {
+            try {
+                send(replyHeads, source);
+                answeredCount++;
+            } catch (IOException e) {
+                // counted instead of printed, so that a ping storm cannot flood the output
+                if (transport.isOpen()) {
+                    errorCount++;
+                    lastError = e;
+                }
+            }
+        }
+    }
+
+    public Ping0 getIdentity() {
+        return identity;
+    }
+
+    public PeerCache getPeers() {
+        return peers;
+    }
+
+    /**
+     * The amount of PING0 requests that were answered.
+     *
+     * @return The amount of sent replies.
+     */
+    public long getAnsweredCount() {
+        return answeredCount;
+    }
+
+    /**
+     * The amount of PING0 packets that were too short to carry an identity.
+     *
+     * @return The amount of invalid packets.
+     */
+    public long getInvalidCount() {
+        return invalidCount;
+    }
+
+    /**
+     * The amount of errors that {@link #run()} ran into, other than receive timeouts,
+     * and of replies that could not be sent.
+     *
+     * @return The amount of errors.
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * The error that {@link #run()} or sending a reply ran into most recently.
+     *
+     * @return The last error, or {@code null} if there was none yet.
+     */
+    public @Nullable Exception getLastError() {
+        return lastError;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    @Override
+    public void close() throws IOException {
+        transport.close();
+    }
+
+    private void send(VBANPacketHead.Factory<byte[]> heads, SocketAddress target) throws IOException {
+        synchronized (outgoing) {
+            heads.createInto(outgoing, 0);
+            outgoing.clear();
+            transport.send(outgoing, target);
+        }
+    }
+}
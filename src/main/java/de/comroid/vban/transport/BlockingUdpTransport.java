@@ -0,0 +1,117 @@
+package de.comroid.vban.transport;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import de.comroid.vban.packet.VBANPacket;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * UDP transport that blocks the calling thread in the kernel while sending and receiving.
+ * <p>
+ * Receiving without a timeout reads straight into the given buffer. The kernel can only time out receives
+ * through the channel's socket, so receiving with a timeout reads into an intermediate array first.
+ */
+public class BlockingUdpTransport extends UdpTransport {
+    private final byte[] timedBuffer = new byte[VBANPacket.MAX_SIZE];
+    private final DatagramPacket timedPacket = new DatagramPacket(timedBuffer, timedBuffer.length);
+
+    /**
+     * Constructor. Opens an unbound transport for sending. It receives on the ephemeral port it is bound to
+     * when it sends the first time.
+     *
+     * @throws IOException See {@link DatagramChannel#open()}.
+     */
+    public BlockingUdpTransport() throws IOException {
+        this(DatagramChannel.open());
+    }
+
+    /**
+     * Constructor. Opens a new channel and binds it to the given address. See {@link UdpTransport} for
+     * multicast group addresses.
+     *
+     * @param bindAddress The address to bind to.
+     *
+     * @throws IOException See {@link DatagramChannel#bind(SocketAddress)} and {@link #joinGroup(InetAddress, java.net.NetworkInterface)}.
+     */
+    public BlockingUdpTransport(SocketAddress bindAddress) throws IOException {
+        super(bindAddress);
+    }
+
+    /**
+     * Constructor. Takes ownership of an open channel, and switches it to blocking mode.
+     *
+     * @param channel The channel to send and receive through.
+     *
+     * @throws IOException See {@link DatagramChannel#configureBlocking(boolean)}.
+     */
+    public BlockingUdpTransport(DatagramChannel channel) throws IOException {
+        super(channel);
+        try {
+            channel.configureBlocking(true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an unbound transport for sending to the given address.
+     * Socket options for multicast only apply to channels of the protocol family of the group.
+     *
+     * @param target The address that will be sent to.
+     *
+     * @return A new transport.
+     * @throws IOException See {@link DatagramChannel#open(java.net.ProtocolFamily)}.
+     */
+    public static BlockingUdpTransport forTarget(InetAddress target) throws IOException {
+        if (!target.isMulticastAddress())
+            return new BlockingUdpTransport();
+        return new BlockingUdpTransport(DatagramChannel.open(Multicast.familyOf(target)));
+    }
+
+    @Override
+    public SocketAddress receive(ByteBuffer dst, int timeout) throws IOException {
+        if (timeout < 0) throw new IllegalArgumentException("Timeout must not be negative");
+        if (!channel.isOpen())
+            throw new SocketException("Socket is closed");
+
+        if (timeout == 0)
+            return channel.receive(dst);
+
+        synchronized (timedPacket) {
+            channel.socket().setSoTimeout(timeout);
+            timedPacket.setLength(timedBuffer.length);
+            channel.socket().receive(timedPacket);
+
+            dst.put(timedBuffer, 0, Math.min(timedPacket.getLength(), dst.remaining()));
+            return timedPacket.getSocketAddress();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The channel is switched to non-blocking mode for the time of the call.
+     */
+    @Override
+    public @Nullable SocketAddress poll(ByteBuffer dst) throws IOException {
+        if (!channel.isOpen())
+            throw new SocketException("Socket is closed");
+
+        synchronized (channel.blockingLock()) {
+            channel.configureBlocking(false);
+            try {
+                return channel.receive(dst);
+            } finally {
+                channel.configureBlocking(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package de.comroid.vban.transport;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.util.Enumeration;
+
+/**
+ * Helpers for opening datagram channels that send to or receive from IP multicast groups.
+ */
+final class Multicast {
+    private Multicast() {
+    }
+
+    static boolean isGroup(SocketAddress address) {
+        return address instanceof InetSocketAddress
+                && ((InetSocketAddress) address).getAddress() != null
+                && ((InetSocketAddress) address).getAddress().isMulticastAddress();
+    }
+
+    static ProtocolFamily familyOf(InetAddress address) {
+        return address instanceof Inet4Address ? StandardProtocolFamily.INET : StandardProtocolFamily.INET6;
+    }
+
+    /**
+     * The wildcard address of the family of the given address, for binding to all interfaces
+     * of a channel that was opened for that family.
+     *
+     * @param address An address of the family.
+     *
+     * @return The wildcard address.
+     */
+    static InetAddress wildcardOf(InetAddress address) throws IOException {
+        return InetAddress.getByAddress(new byte[address instanceof Inet4Address ? 4 : 16]);
+    }
+
+    /**
+     * Picks the network interface to join a group on when none is given:
+     * the first interface that is up, supports multicast and has an address of the group's family.
+     * Loopback interfaces are only picked if there is no other interface.
+     *
+     * @param group The group to join.
+     *
+     * @return The network interface.
+     * @throws SocketException If there is no multicast capable interface.
+     */
+    static NetworkInterface defaultInterface(InetAddress group) throws SocketException {
+        NetworkInterface loopback = null;
+
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        while (interfaces != null && interfaces.hasMoreElements()) {
+            NetworkInterface candidate = interfaces.nextElement();
+            if (!candidate.isUp() || !candidate.supportsMulticast() || !hasAddressOfFamily(candidate, group))
+                continue;
+
+            if (!candidate.isLoopback())
+                return candidate;
+            if (loopback == null)
+                loopback = candidate;
+        }
+
+        if (loopback != null)
+            return loopback;
+        throw new SocketException("No multicast capable network interface for " + group.getHostAddress());
+    }
+
+    private static boolean hasAddressOfFamily(NetworkInterface networkInterface, InetAddress group) {
+        Enumeration<InetAddress> addresses = networkInterface.getInetAddresses();
+        while (addresses.hasMoreElements())
+            if ((addresses.nextElement() instanceof Inet4Address) == (group instanceof Inet4Address))
+                return true;
+        return false;
+    }
+}
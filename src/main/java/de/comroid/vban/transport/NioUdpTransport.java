@@ -0,0 +1,115 @@
+package de.comroid.vban.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * UDP transport on a non-blocking channel, which waits for datagrams with a {@link Selector}.
+ * <p>
+ * Receiving tries to read a datagram first and only selects if none is pending, which saves the selection under
+ * load. Datagrams are always read straight into the given buffer, also when receiving with a timeout.
+ * Sending never blocks; a datagram that does not fit into the socket's send buffer is dropped without advancing
+ * its position, and counted in {@link #getDroppedCount()}.
+ */
+public class NioUdpTransport extends UdpTransport {
+    private final Selector selector;
+
+    /**
+     * Constructor. Opens an unbound transport for sending.
+     *
+     * @throws IOException See {@link DatagramChannel#open()} and {@link Selector#open()}.
+     */
+    public NioUdpTransport() throws IOException {
+        this(DatagramChannel.open());
+    }
+
+    /**
+     * Constructor. Opens a new channel and binds it to the given address. See {@link UdpTransport} for
+     * multicast group addresses.
+     *
+     * @param bindAddress The address to bind to.
+     *
+     * @throws IOException See {@link DatagramChannel#bind(SocketAddress)} and {@link #joinGroup(InetAddress, java.net.NetworkInterface)}.
+     */
+    public NioUdpTransport(SocketAddress bindAddress) throws IOException {
+        super(bindAddress);
+        this.selector = register(channel);
+    }
+
+    /**
+     * Constructor. Takes ownership of an open channel, and switches it to non-blocking mode.
+     *
+     * @param channel The channel to send and receive through.
+     *
+     * @throws IOException See {@link Selector#open()}.
+     */
+    public NioUdpTransport(DatagramChannel channel) throws IOException {
+        super(channel);
+        this.selector = register(channel);
+    }
+
+    @Override
+    public SocketAddress receive(ByteBuffer dst, int timeout) throws IOException {
+        if (timeout < 0) throw new IllegalArgumentException("Timeout must not be negative");
+        if (!channel.isOpen())
+            throw new SocketException("Socket is closed");
+
+        SocketAddress from;
+        long deadline = timeout > 0 ? System.nanoTime() + timeout * 1_000_000L : 0;
+
+        // try without selecting first, a datagram is usually already pending under load
+        while ((from = channel.receive(dst)) == null) {
+            long wait = 0;
+            if (timeout > 0 && (wait = (deadline - System.nanoTime()) / 1_000_000L) <= 0)
+                throw new SocketTimeoutException("Receive timed out");
+
+            try {
+                selector.select(wait);
+                selector.selectedKeys().clear();
+            } catch (ClosedSelectorException e) {
+                throw new SocketException("Socket is closed");
+            }
+        }
+
+        return from;
+    }
+
+    @Override
+    public @Nullable SocketAddress poll(ByteBuffer dst) throws IOException {
+        if (!channel.isOpen())
+            throw new SocketException("Socket is closed");
+        return channel.receive(dst);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            selector.close();
+        }
+    }
+
+    private static Selector register(DatagramChannel channel) throws IOException {
+        Selector selector = Selector.open();
+        try {
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            selector.close();
+            channel.close();
+            throw e;
+        }
+        return selector;
+    }
+}
@@ -0,0 +1,90 @@
+package de.comroid.vban.transport;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-memory network of {@link RingTransport}s, which pass datagrams between threads of the same JVM
+ * without going through the kernel.
+ * <p>
+ * Every transport is bound to an address that is unique within its network. Datagrams are copied into the
+ * receive ring of the transport bound to their target address. Like with UDP, datagrams to addresses that
+ * no transport is bound to, or to transports whose ring is full, are dropped.
+ */
+public final class RingNetwork {
+    /**
+     * The default amount of datagrams a transport can hold before it drops new ones.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int EPHEMERAL_PORTS = 49152;
+    private static final int EPHEMERAL_PORT_COUNT = 0x4000;
+
+    private final ConcurrentMap<SocketAddress, RingTransport> endpoints = new ConcurrentHashMap<>();
+    private final AtomicInteger nextPort = new AtomicInteger(0);
+
+    /**
+     * Binds a new transport with the {@linkplain #DEFAULT_CAPACITY default capacity}.
+     *
+     * @param address The address to bind to.
+     *
+     * @return A new transport.
+     * @throws BindException If another transport is bound to the address.
+     */
+    public RingTransport bind(SocketAddress address) throws BindException {
+        return bind(address, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Binds a new transport.
+     *
+     * @param address  The address to bind to.
+     * @param capacity The amount of datagrams the transport can hold. Is rounded up to a power of two.
+     *
+     * @return A new transport.
+     * @throws BindException If another transport is bound to the address.
+     */
+    public RingTransport bind(SocketAddress address, int capacity) throws BindException {
+        RingTransport transport = new RingTransport(this, address, capacity);
+        if (endpoints.putIfAbsent(address, transport) != null)
+            throw new BindException("Address already in use: " + address);
+        return transport;
+    }
+
+    /**
+     * Binds a new transport to an unused port of the loopback address, mostly for sending.
+     *
+     * @return A new transport.
+     * @throws BindException If all ephemeral ports are in use.
+     */
+    public RingTransport open() throws BindException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        for (int i = 0; i < EPHEMERAL_PORT_COUNT; i++) {
+            int port = EPHEMERAL_PORTS + (nextPort.getAndIncrement() & (EPHEMERAL_PORT_COUNT - 1));
+            try {
+                return bind(new InetSocketAddress(loopback, port), DEFAULT_CAPACITY);
+            } catch (BindException e) {
+                // the port is in use; try the next one
+            }
+        }
+        throw new BindException("No ephemeral port available");
+    }
+
+    void deliver(ByteBuffer datagram, SocketAddress source, SocketAddress target) throws IOException {
+        RingTransport endpoint = endpoints.get(target);
+        if (endpoint != null)
+            endpoint.offer(datagram, source);
+        datagram.position(datagram.limit());
+    }
+
+    void unbind(RingTransport transport) {
+        endpoints.remove(transport.getLocalAddress(), transport);
+    }
+}
@@ -0,0 +1,200 @@
+package de.comroid.vban.transport;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import de.comroid.vban.packet.VBANPacket;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * In-memory transport of a {@link RingNetwork}. Create instances with {@link RingNetwork#bind(SocketAddress)}.
+ * <p>
+ * Received datagrams are held in a bounded ring of preallocated direct slots. Any amount of threads can send
+ * to the ring without locking: every sender claims a slot with one compare-and-set, copies its datagram into it
+ * and publishes it. A receiver that finds the ring empty parks until a sender wakes it up.
+ * Datagrams are limited to {@value VBANPacket#MAX_SIZE} bytes.
+ */
+public class RingTransport implements Transport {
+    private final RingNetwork network;
+    private final SocketAddress address;
+    private final int mask;
+    private final ByteBuffer[] slots;
+    private final SocketAddress[] sources;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(0);
+    private final AtomicLong droppedCount = new AtomicLong(0);
+    private long head = 0;
+    private volatile Thread waiter;
+    private volatile boolean open = true;
+
+    RingTransport(RingNetwork network, SocketAddress address, int capacity) {
+        if (capacity < 1 || capacity > 1 << 20)
+            throw new IllegalArgumentException("Capacity must be from 1 to " + (1 << 20));
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        if (size == 0) size = 1;
+
+        this.network = network;
+        this.address = address;
+        this.mask = size - 1;
+        this.slots = new ByteBuffer[size];
+        this.sources = new SocketAddress[size];
+        this.sequences = new AtomicLongArray(size);
+
+        ByteBuffer memory = ByteBuffer.allocateDirect(size * VBANPacket.MAX_SIZE);
+        for (int i = 0; i < size; i++) {
+            memory.limit((i + 1) * VBANPacket.MAX_SIZE).position(i * VBANPacket.MAX_SIZE);
+            slots[i] = memory.slice();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The datagram is copied into the ring of the target before this method returns.
+     *
+     * @throws IOException If the datagram is larger than {@value VBANPacket#MAX_SIZE} bytes.
+     */
+    @Override
+    public void send(ByteBuffer datagram, SocketAddress target) throws IOException {
+        if (!open)
+            throw new SocketException("Socket is closed");
+        if (datagram.remaining() > VBANPacket.MAX_SIZE)
+            throw new IOException("Datagram is too large, must be smaller than " + VBANPacket.MAX_SIZE);
+
+        network.deliver(datagram, address, target);
+    }
+
+    @Override
+    public SocketAddress receive(ByteBuffer dst, int timeout) throws IOException {
+        if (timeout < 0) throw new IllegalArgumentException("Timeout must not be negative");
+
+        SocketAddress source = poll(dst);
+        if (source != null)
+            return source;
+
+        long deadline = timeout > 0 ? System.nanoTime() + timeout * 1_000_000L : 0;
+        Thread current = Thread.currentThread();
+        try {
+            while (true) {
+                waiter = current;
+                // checked after announcing the waiter, so that a concurrent sender cannot miss it
+                if ((source = poll(dst)) != null)
+                    return source;
+
+                if (timeout == 0)
+                    LockSupport.park(this);
+                else {
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0)
+                        throw new SocketTimeoutException("Receive timed out");
+                    LockSupport.parkNanos(this, wait);
+                }
+            }
+        } finally {
+            waiter = null;
+        }
+    }
+
+    @Override
+    public @Nullable SocketAddress poll(ByteBuffer dst) throws IOException {
+        if (!open)
+            throw new SocketException("Socket is closed");
+
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1)
+            return null;
+
+        ByteBuffer slot = slots[index];
+        SocketAddress source = sources[index];
+        if (slot.remaining() > dst.remaining())
+            slot.limit(slot.position() + dst.remaining());
+        dst.put(slot);
+        sources[index] = null;
+
+        // hands the slot back to the senders
+        sequences.set(index, head + mask + 1);
+        head++;
+        return source;
+    }
+
+    /**
+     * The amount of datagrams that were dropped because the ring was full.
+     *
+     * @return The amount of dropped datagrams.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * The amount of datagrams the ring can hold.
+     *
+     * @return The capacity of the ring.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() {
+        return address;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        network.unbind(this);
+
+        Thread waiting = waiter;
+        if (waiting != null)
+            LockSupport.unpark(waiting);
+    }
+
+    void offer(ByteBuffer datagram, SocketAddress source) {
+        if (!open) return;
+
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) (position & mask);
+            long available = sequences.get(index) - position;
+
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1))
+                    break;
+            } else if (available < 0) {
+                // the receiver has not freed the slot yet
+                droppedCount.incrementAndGet();
+                return;
+            }
+        }
+
+        ByteBuffer slot = slots[index];
+        slot.clear();
+        int start = datagram.position();
+        slot.put(datagram);
+        datagram.position(start);
+        slot.flip();
+        sources[index] = source;
+        sequences.set(index, position + 1);
+
+        Thread waiting = waiter;
+        if (waiting != null)
+            LockSupport.unpark(waiting);
+    }
+}
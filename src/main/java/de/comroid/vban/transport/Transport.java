@@ -0,0 +1,70 @@
+package de.comroid.vban.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Carries VBAN datagrams between endpoints.
+ * <p>
+ * A transport is one endpoint: it sends datagrams to other endpoints, and receives the datagrams sent to its
+ * {@linkplain #getLocalAddress() local address}. Like UDP, transports may drop datagrams, but never split,
+ * merge or corrupt them. Sending is thread-safe; receiving is done by one thread at a time.
+ *
+ * @see BlockingUdpTransport
+ * @see NioUdpTransport
+ * @see RingTransport
+ */
+public interface Transport extends Closeable {
+    /**
+     * Sends one datagram.
+     *
+     * @param datagram The datagram, from the buffer's position to its limit. The position is advanced to the limit,
+     *                 unless the datagram was dropped before it could be sent.
+     * @param target   The address to send to.
+     *
+     * @throws SocketException If this transport has been {@linkplain #close() closed}.
+     * @throws IOException     If the datagram could not be sent.
+     */
+    void send(ByteBuffer datagram, SocketAddress target) throws IOException;
+
+    /**
+     * Blocks until the next datagram has been received.
+     *
+     * @param dst     The buffer to receive into, from its position. A datagram larger than the remaining bytes
+     *                is truncated.
+     * @param timeout The maximum amount of milliseconds to block for. {@code 0} blocks infinitely.
+     *
+     * @return The address the datagram was sent from.
+     * @throws SocketTimeoutException If no datagram arrived within the timeout.
+     * @throws SocketException        If this transport has been {@linkplain #close() closed}.
+     * @throws IOException            If the datagram could not be received.
+     */
+    SocketAddress receive(ByteBuffer dst, int timeout) throws IOException;
+
+    /**
+     * Receives the next datagram only if one is already pending. Never blocks.
+     *
+     * @param dst The buffer to receive into, like for {@link #receive(ByteBuffer, int)}.
+     *
+     * @return The address the datagram was sent from, or {@code null} if no datagram was pending.
+     * @throws SocketException If this transport has been {@linkplain #close() closed}.
+     * @throws IOException     If the datagram could not be received.
+     */
+    @Nullable SocketAddress poll(ByteBuffer dst) throws IOException;
+
+    /**
+     * The address other endpoints send to for reaching this transport.
+     *
+     * @return The local address, or {@code null} if this transport can only send.
+     * @throws IOException If the address could not be determined.
+     */
+    @Nullable SocketAddress getLocalAddress() throws IOException;
+
+    boolean isOpen();
+}
@@ -0,0 +1,184 @@
+package de.comroid.vban.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Base class of the UDP transports, which send and receive through a {@link DatagramChannel}.
+ * <p>
+ * A transport that is bound to a multicast group address shares the port with other receivers of the group,
+ * is bound to the wildcard address, and joins the group on the default interface.
+ */
+public abstract class UdpTransport implements Transport {
+    final DatagramChannel channel;
+    private final List<MembershipKey> memberships = new ArrayList<>();
+    private final AtomicLong droppedCount = new AtomicLong(0);
+
+    UdpTransport(SocketAddress bindAddress) throws IOException {
+        this(openChannel(bindAddress));
+
+        if (Multicast.isGroup(bindAddress)) {
+            try {
+                joinGroup(((InetSocketAddress) bindAddress).getAddress(), null);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+    }
+
+    UdpTransport(DatagramChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void send(ByteBuffer datagram, SocketAddress target) throws IOException {
+        if (!channel.isOpen())
+            throw new SocketException("Socket is closed");
+        // a non-blocking channel sends nothing and leaves the position as is if the send buffer is full
+        if (channel.send(datagram, target) == 0 && datagram.hasRemaining())
+            droppedCount.incrementAndGet();
+    }
+
+    /**
+     * The amount of datagrams that were dropped because the send buffer was full.
+     * Only a non-blocking channel drops datagrams instead of waiting for space.
+     *
+     * @return The dropped datagram count.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Joins a multicast group, so that datagrams sent to the group on this transport's port are received.
+     * The channel must be bound to the wildcard address or to the group itself.
+     *
+     * @param group            The multicast group address.
+     * @param networkInterface The interface to join the group on, or {@code null} for the first interface
+     *                         that is up and supports multicast.
+     *
+     * @return The membership. It is also dropped by {@link #leaveGroup(InetAddress)}.
+     * @throws IllegalArgumentException If the address is not a multicast address.
+     * @throws IOException              See {@link DatagramChannel#join(InetAddress, NetworkInterface)}.
+     */
+    public synchronized MembershipKey joinGroup(InetAddress group, @Nullable NetworkInterface networkInterface)
+            throws IOException {
+        if (!group.isMulticastAddress())
+            throw new IllegalArgumentException("Not a multicast address: " + group.getHostAddress());
+        if (networkInterface == null)
+            networkInterface = Multicast.defaultInterface(group);
+
+        MembershipKey key = channel.join(group, networkInterface);
+        if (!memberships.contains(key))
+            memberships.add(key);
+        return key;
+    }
+
+    /**
+     * Leaves a multicast group on all interfaces it was joined on.
+     *
+     * @param group The multicast group address.
+     *
+     * @return Whether this transport was a member of the group.
+     */
+    public synchronized boolean leaveGroup(InetAddress group) {
+        boolean left = false;
+
+        Iterator<MembershipKey> iterator = memberships.iterator();
+        while (iterator.hasNext()) {
+            MembershipKey key = iterator.next();
+            if (!key.group().equals(group))
+                continue;
+
+            key.drop();
+            iterator.remove();
+            left = true;
+        }
+
+        return left;
+    }
+
+    /**
+     * The multicast groups this transport has joined, one entry per interface.
+     *
+     * @return The valid memberships.
+     */
+    public synchronized List<MembershipKey> getMemberships() {
+        List<MembershipKey> valid = new ArrayList<>();
+        for (MembershipKey key : memberships)
+            if (key.isValid())
+                valid.add(key);
+        return Collections.unmodifiableList(valid);
+    }
+
+    /**
+     * Sets a socket option, for example {@link StandardSocketOptions#IP_MULTICAST_TTL}.
+     *
+     * @param option The option.
+     * @param value  The value of the option.
+     * @param <T>    The type of the option's value.
+     *
+     * @throws IOException See {@link DatagramChannel#setOption(SocketOption, Object)}.
+     */
+    public <T> void setOption(SocketOption<T> option, T value) throws IOException {
+        channel.setOption(option, value);
+    }
+
+    public <T> T getOption(SocketOption<T> option) throws IOException {
+        return channel.getOption(option);
+    }
+
+    public DatagramChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public @Nullable SocketAddress getLocalAddress() throws IOException {
+        return channel.getLocalAddress();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // closing the channel drops all memberships
+        channel.close();
+    }
+
+    private static DatagramChannel openChannel(SocketAddress bindAddress) throws IOException {
+        if (!Multicast.isGroup(bindAddress))
+            return DatagramChannel.open().bind(bindAddress);
+
+        InetSocketAddress groupAddress = (InetSocketAddress) bindAddress;
+        InetAddress group = groupAddress.getAddress();
+        DatagramChannel channel = DatagramChannel.open(Multicast.familyOf(group));
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(Multicast.wildcardOf(group), groupAddress.getPort()));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+}
@@ -0,0 +1,68 @@
+package de.comroid.test.vban;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANInputStream;
+import de.comroid.vban.VBANOutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MulticastTest {
+    private static final int PORT = 6994;
+
+    @Test
+    public void testGroupDelivery() throws IOException {
+        InetAddress group = InetAddress.getByName("239.255.86.66");
+
+        VBANInputStream<String> in1 = VBAN.openCommandInputStream(group, PORT);
+        VBANInputStream<String> in2 = VBAN.openCommandInputStream(group, PORT);
+        VBANOutputStream<String> out = VBAN.openCommandOutputStream(group, PORT);
+        in1.setSocketTimeout(2000);
+        in2.setSocketTimeout(500);
+
+        try {
+            assertTrue(out.isMulticast());
+            out.setMulticastTimeToLive(0);
+            out.setMulticastLoopback(true);
+            assertEquals(0, out.getMulticastTimeToLive());
+            assertTrue(out.isMulticastLoopback());
+
+            out.sendData("Strip[0].Mute = 1");
+            assertEquals("Strip[0].Mute = 1", in1.readData());
+            assertEquals("Strip[0].Mute = 1", in2.readData());
+
+            assertTrue(in2.leaveGroup(group));
+            assertFalse(in2.leaveGroup(group));
+
+            out.sendData("Strip[0].Mute = 0");
+            assertEquals("Strip[0].Mute = 0", in1.readData());
+            try {
+                in2.readData();
+                fail("Received a packet after leaving the group");
+            } catch (SocketTimeoutException expected) {
+            }
+        } finally {
+            out.close();
+            in1.close();
+            in2.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTimeToLive() throws IOException {
+        VBANOutputStream<String> out = VBAN.openCommandOutputStream(InetAddress.getByName("239.255.86.66"), PORT);
+        try {
+            out.setMulticastTimeToLive(256);
+        } finally {
+            out.close();
+        }
+    }
+}
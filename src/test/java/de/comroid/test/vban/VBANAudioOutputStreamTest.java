@@ -0,0 +1,74 @@
+package de.comroid.test.vban;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANAudioOutputStream;
+import de.comroid.vban.VBANInputStream;
+import de.comroid.vban.model.data.AudioFrame;
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.packet.VBANPacketHead;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class VBANAudioOutputStreamTest {
+    @Test
+    public void testFragmentation() throws IOException {
+        VBANPacket.Factory<AudioFrame> factory = VBANPacket.Factory.builder(VBAN.Protocol.AUDIO)
+                .setHeadFactory(VBANPacketHead.Factory.builder(VBAN.Protocol.AUDIO)
+                        .setChannel((byte) 2)
+                        .build())
+                .build();
+        VBANInputStream<AudioFrame> in = VBAN.openAudioInputStream(6985);
+        VBANAudioOutputStream out = VBAN.openFragmentingAudioOutputStream(factory,
+                InetAddress.getLoopbackAddress(), 6985, 2);
+        in.setSocketTimeout(2000);
+
+        try {
+            assertEquals(4, out.getFrameSize());
+            assertEquals(256, out.getSamplesPerPacket());
+
+            byte[] pcm = new byte[2504];
+            for (int i = 0; i < pcm.length; i++)
+                pcm[i] = (byte) i;
+
+            out.write(pcm, 0, 2000);
+            out.write(pcm, 2000, 501);
+            assertEquals(453, out.getPendingBytes());
+            out.flush();
+            assertEquals(1, out.getPendingBytes());
+            out.write(ByteBuffer.wrap(pcm, 2501, 3));
+            out.flush();
+
+            int offset = 0;
+            for (int expected : new int[]{256, 256, 113, 1}) {
+                ByteBuffer datagram = in.readDatagram();
+                VBANPacketHead.View head = VBANPacketHead.view().wrap(datagram);
+
+                assertEquals(expected, head.getSamples());
+                assertEquals(expected * 4, datagram.remaining() - VBANPacketHead.SIZE);
+                for (int i = VBANPacketHead.SIZE; i < datagram.remaining(); i++)
+                    assertEquals(pcm[offset++], datagram.get(datagram.position() + i));
+            }
+            assertEquals(pcm.length, offset);
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnalignedFormat() throws IOException {
+        VBANPacket.Factory<AudioFrame> factory = VBANPacket.Factory.builder(VBAN.Protocol.AUDIO)
+                .setHeadFactory(VBANPacketHead.Factory.builder(VBAN.Protocol.AUDIO)
+                        .setFormatValue(VBAN.AudioFormat.BITS12)
+                        .build())
+                .build();
+
+        new VBANAudioOutputStream(factory, InetAddress.getLoopbackAddress(), 1, 1);
+    }
+}
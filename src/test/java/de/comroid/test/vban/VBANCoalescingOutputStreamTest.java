@@ -0,0 +1,143 @@
+package de.comroid.test.vban;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANCoalescingOutputStream;
+import de.comroid.vban.VBANReceiver;
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.packet.VBANPacketHead;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VBANCoalescingOutputStreamTest {
+    private static final int PORT = 6997;
+
+    @Test
+    public void testCoalescing() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        VBANReceiver receiver = new VBANReceiver(new InetSocketAddress(loopback, PORT));
+        VBANCoalescingOutputStream<String> out = VBAN.openCoalescingCommandOutputStream(loopback, PORT, 60_000);
+        receiver.setTimeout(2000);
+
+        try {
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 200; i++) {
+                out.sendData("Strip[0].Gain = " + i);
+                expected.append("Strip[0].Gain = ").append(i).append('\n');
+            }
+            out.flush();
+            assertEquals(0, out.getPendingBytes());
+
+            StringBuilder received = new StringBuilder();
+            int packets = 0;
+            while (received.length() < expected.length()) {
+                String text = text(receiver.receive());
+                assertTrue(text.length() <= VBANPacket.MAX_SIZE_WITHOUT_HEAD);
+                assertTrue("Line split over packets", text.endsWith("\n"));
+                received.append(text);
+                packets++;
+            }
+
+            assertEquals(expected.toString(), received.toString());
+            assertTrue("Sent " + packets + " packets", packets <= 4);
+        } finally {
+            out.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testLinger() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        VBANReceiver receiver = new VBANReceiver(new InetSocketAddress(loopback, PORT));
+        VBANCoalescingOutputStream<String> out = VBAN.openCoalescingCommandOutputStream(loopback, PORT, 50);
+        receiver.setTimeout(2000);
+
+        try {
+            long start = System.nanoTime();
+            out.write("Bus[0].Mute = 1\nBus[1].Mute = 1\nBus[2]".getBytes());
+            assertEquals(32 + "Bus[2]".length(), out.getPendingBytes());
+
+            assertEquals("Bus[0].Mute = 1\nBus[1].Mute = 1\n", text(receiver.receive()));
+            assertTrue(System.nanoTime() - start >= 40_000_000L);
+            assertEquals("Bus[2]".length(), out.getPendingBytes());
+
+            out.write(".Mute = 1\n".getBytes());
+            assertEquals("Bus[2].Mute = 1\n", text(receiver.receive()));
+        } finally {
+            out.close();
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testThreshold() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        VBANReceiver receiver = new VBANReceiver(new InetSocketAddress(loopback, PORT));
+        VBANCoalescingOutputStream<String> out = new VBANCoalescingOutputStream<>(
+                VBANPacket.Factory.protocolDefault(VBAN.Protocol.TEXT), loopback, PORT, 2, 32, 60_000);
+        receiver.setTimeout(2000);
+
+        try {
+            out.sendData("Strip[0].Mute = 1");
+            assertEquals(18, out.getPendingBytes());
+            out.sendData("Strip[1].Mute = 1");
+            assertEquals(0, out.getPendingBytes());
+
+            assertEquals("Strip[0].Mute = 1\nStrip[1].Mute = 1\n", text(receiver.receive()));
+
+            // an incomplete line is sent on close
+            out.write("Strip[2]".getBytes());
+        } finally {
+            out.close();
+        }
+
+        try {
+            assertEquals("Strip[2]", text(receiver.receive()));
+        } finally {
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void testLingerFailure() throws IOException, InterruptedException {
+        VBANCoalescingOutputStream<String> out = VBAN.openCoalescingCommandOutputStream(
+                InetAddress.getLoopbackAddress(), PORT, 20);
+
+        try {
+            out.sendData("Strip[0].Mute = 1");
+            // the lines cannot be sent once their linger time has passed
+            out.getTransport().close();
+            Thread.sleep(200);
+
+            try {
+                out.sendData("Strip[1].Mute = 1");
+                throw new AssertionError("Failed linger send was not reported");
+            } catch (IOException expected) {
+                assertEquals("Linger send failed", expected.getMessage());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreshold() throws IOException {
+        new VBANCoalescingOutputStream<>(VBANPacket.Factory.protocolDefault(VBAN.Protocol.TEXT),
+                InetAddress.getLoopbackAddress(), PORT, 2, 0, 0);
+    }
+
+    private static String text(ByteBuffer datagram) {
+        byte[] bytes = new byte[datagram.remaining() - VBANPacketHead.SIZE];
+        datagram.position(datagram.position() + VBANPacketHead.SIZE);
+        datagram.get(bytes);
+        return new String(bytes);
+    }
+}
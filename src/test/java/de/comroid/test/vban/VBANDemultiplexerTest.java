@@ -0,0 +1,202 @@
+package de.comroid.test.vban;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANDemultiplexer;
+import de.comroid.vban.VBANOutputStream;
+import de.comroid.vban.model.data.AudioFrame;
+import de.comroid.vban.model.data.MIDICommand;
+import de.comroid.vban.packet.VBANPacketHead;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class VBANDemultiplexerTest {
+    private static final int PORT = 6984;
+
+    @Test
+    public void testDispatching() throws IOException {
+        final List<String> commands = new ArrayList<>();
+        final List<String> audioStreams = new ArrayList<>();
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+
+        VBANDemultiplexer demultiplexer = new VBANDemultiplexer(loopback, PORT);
+        demultiplexer.getReceiver().setTimeout(2000);
+        demultiplexer.register(VBAN.Protocol.TEXT, "Command1", loopback,
+                new VBANDemultiplexer.DataHandler<String>(VBAN.Protocol.TEXT) {
+                    @Override
+                    protected void handleData(String data, VBANPacketHead.View head, SocketAddress source) {
+                        commands.add(data);
+                    }
+                });
+        demultiplexer.register(VBAN.Protocol.AUDIO, null, null, new VBANDemultiplexer.Handler() {
+            @Override
+            public void handle(VBANPacketHead.View head, ByteBuffer datagram, SocketAddress source) {
+                audioStreams.add(head.getStreamName());
+            }
+        });
+
+        VBANOutputStream<String> text = VBAN.openCommandOutputStream(PORT);
+        VBANOutputStream<AudioFrame> audio = VBAN.openAudioOutputStream(PORT);
+        VBANOutputStream<MIDICommand> midi = VBAN.openMidiOutputStream(PORT);
+        DatagramChannel garbage = DatagramChannel.open();
+
+        try {
+            text.sendData("Strip[1].Gain = 3");
+            audio.sendData(AudioFrame.fromBytes(new byte[4]));
+            garbage.send(ByteBuffer.wrap("not vban".getBytes()), new InetSocketAddress(loopback, PORT));
+            midi.sendData(MIDICommand.fromBytes(new byte[1]));
+
+            assertEquals(1, demultiplexer.dispatchNext());
+            assertEquals(1, demultiplexer.dispatchNext());
+            assertEquals(0, demultiplexer.dispatchNext());
+            assertEquals(0, demultiplexer.dispatchNext());
+        } finally {
+            text.close();
+            audio.close();
+            midi.close();
+            garbage.close();
+            demultiplexer.close();
+        }
+
+        assertEquals(1, commands.size());
+        assertEquals("Strip[1].Gain = 3", commands.get(0));
+        assertEquals("Stream1", audioStreams.get(0));
+        assertEquals(1, demultiplexer.getInvalidCount());
+        assertEquals(1, demultiplexer.getUnmatchedCount());
+    }
+
+    @Test
+    public void testCodecBitsAndFailingHandlers() throws IOException {
+        final List<AudioFrame> frames = new ArrayList<>();
+        VBANDemultiplexer demultiplexer = new VBANDemultiplexer(InetAddress.getLoopbackAddress(), PORT);
+        VBANDemultiplexer.DataHandler<AudioFrame> decoder = new VBANDemultiplexer.DataHandler<AudioFrame>(VBAN.Protocol.AUDIO) {
+            @Override
+            protected void handleData(AudioFrame data, VBANPacketHead.View head, SocketAddress source) {
+                frames.add(data);
+            }
+        };
+        demultiplexer.register(VBAN.Protocol.AUDIO, null, null, new VBANDemultiplexer.Handler() {
+            @Override
+            public void handle(VBANPacketHead.View head, ByteBuffer datagram, SocketAddress source) {
+                throw new IllegalStateException("broken handler");
+            }
+        });
+        demultiplexer.register(VBAN.Protocol.AUDIO, null, null, decoder);
+        VBANDemultiplexer.DataHandler<MIDICommand> midi = new VBANDemultiplexer.DataHandler<MIDICommand>(VBAN.Protocol.SERIAL) {
+            @Override
+            protected void handleData(MIDICommand data, VBANPacketHead.View head, SocketAddress source) {
+            }
+        };
+        demultiplexer.register(VBAN.Protocol.SERIAL, null, null, midi);
+
+        try {
+            byte[] audio = new byte[VBANPacketHead.SIZE + 4];
+            VBANPacketHead.defaultFactory(VBAN.Protocol.AUDIO).createInto(audio, 0);
+            // INT16 with the VBCA codec
+            audio[7] = 0x11;
+            assertEquals(2, demultiplexer.dispatch(ByteBuffer.wrap(audio), null));
+            assertEquals(1, frames.size());
+            assertEquals(VBAN.AudioFormat.INT16, frames.get(0).getFormat());
+
+            byte[] serial = new byte[VBANPacketHead.SIZE + 1];
+            VBANPacketHead.defaultFactory(VBAN.Protocol.SERIAL).createInto(serial, 0);
+            // an unknown serial data type cannot be decoded, but is skipped
+            serial[7] = 0x05;
+            assertEquals(1, demultiplexer.dispatch(ByteBuffer.wrap(serial), null));
+
+            assertEquals(1, demultiplexer.getFailedCount());
+            assertTrue(demultiplexer.getLastFailure() instanceof IllegalStateException);
+            assertEquals(0, decoder.getDecodeFailureCount());
+            assertEquals(1, midi.getDecodeFailureCount());
+            assertEquals(2, demultiplexer.getDispatchedCount());
+        } finally {
+            demultiplexer.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentDispatch() throws Exception {
+        final AtomicInteger mismatches = new AtomicInteger(0);
+        final VBANDemultiplexer demultiplexer = new VBANDemultiplexer(InetAddress.getLoopbackAddress(), PORT);
+        demultiplexer.register(VBAN.Protocol.AUDIO, null, null, new VBANDemultiplexer.Handler() {
+            @Override
+            public void handle(VBANPacketHead.View head, ByteBuffer datagram, SocketAddress source) {
+                // the view must keep pointing at the datagram this handler was called with
+                Thread.yield();
+                if (head.getBuffer() != datagram)
+                    mismatches.incrementAndGet();
+            }
+        });
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final byte[] datagram = new byte[VBANPacketHead.SIZE + 4];
+            VBANPacketHead.defaultFactory(VBAN.Protocol.AUDIO).createInto(datagram, 0);
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    ByteBuffer buffer = ByteBuffer.wrap(datagram);
+                    for (int i = 0; i < 20_000; i++)
+                        demultiplexer.dispatch(buffer, null);
+                }
+            };
+        }
+
+        try {
+            for (Thread thread : threads)
+                thread.start();
+            for (Thread thread : threads)
+                thread.join();
+        } finally {
+            demultiplexer.close();
+        }
+
+        assertEquals(0, mismatches.get());
+        assertEquals(threads.length * 20_000, demultiplexer.getDispatchedCount());
+    }
+
+    @Test
+    public void testRunIgnoresTimeouts() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+        VBANDemultiplexer demultiplexer = new VBANDemultiplexer(InetAddress.getLoopbackAddress(), PORT);
+        demultiplexer.getReceiver().setTimeout(10);
+        demultiplexer.register(VBAN.Protocol.TEXT, null, null, new VBANDemultiplexer.Handler() {
+            @Override
+            public void handle(VBANPacketHead.View head, ByteBuffer datagram, SocketAddress source) {
+                received.countDown();
+            }
+        });
+        Thread thread = new Thread(demultiplexer);
+        VBANOutputStream<String> text = VBAN.openCommandOutputStream(PORT);
+
+        try {
+            thread.start();
+            // several receive timeouts pass before the packet arrives
+            Thread.sleep(100);
+            text.sendData("Strip[0].Mute = 1");
+            assertTrue(received.await(2, TimeUnit.SECONDS));
+        } finally {
+            text.close();
+            demultiplexer.close();
+            thread.join();
+        }
+
+        assertEquals(0, demultiplexer.getErrorCount());
+        assertNull(demultiplexer.getLastError());
+    }
+}
@@ -1,4 +1,72 @@
 package de.comroid.test.vban;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANInputStream;
+import de.comroid.vban.VBANOutputStream;
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.packet.VBANPacketHead;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
 public class VBANInputStreamTest {
+    private static final int PORT = 6981;
+
+    @Test
+    public void testReceiveText() throws IOException {
+        VBANInputStream<String> in = VBAN.openCommandInputStream(PORT);
+        VBANOutputStream<String> out = VBAN.openCommandOutputStream(PORT);
+        in.setSocketTimeout(2000);
+
+        try {
+            out.sendData("Strip[0].Mute = 1");
+
+            assertEquals("Strip[0].Mute = 1", in.readData());
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
+    @Test
+    public void testDatagramBufferIsReused() throws IOException {
+        VBANInputStream<String> in = VBAN.openCommandInputStream(PORT);
+        VBANOutputStream<String> out = VBAN.openCommandOutputStream(PORT);
+        in.setSocketTimeout(2000);
+
+        try {
+            out.sendData("a");
+            out.sendData("bc");
+
+            ByteBuffer first = in.readDatagram();
+            assertEquals(VBANPacketHead.SIZE + 1, first.remaining());
+
+            ByteBuffer second = in.readDatagram();
+            assertSame(first, second);
+            assertEquals(VBANPacketHead.SIZE + 2, second.remaining());
+            assertEquals('b', second.get(VBANPacketHead.SIZE));
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void testTimeout() throws IOException {
+        VBANInputStream<String> in = VBAN.openCommandInputStream(PORT);
+        in.setSocketTimeout(50);
+
+        try {
+            in.readPacket();
+        } finally {
+            in.close();
+        }
+    }
 }
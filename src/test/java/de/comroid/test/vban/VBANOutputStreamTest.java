@@ -2,18 +2,27 @@ package de.comroid.test.vban;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANInputStream;
 import de.comroid.vban.VBANOutputStream;
+import de.comroid.vban.metrics.StreamMetrics;
 import de.comroid.vban.model.data.AudioFrame;
 import de.comroid.vban.model.data.MIDICommand;
 import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.transport.Transport;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 public class VBANOutputStreamTest {
     @Test
     public void testSendDataTypes() throws IOException {
@@ -70,6 +79,110 @@ public class VBANOutputStreamTest {
         vban.sendData("x");
     }
 
+    @Test
+    public void testPooledRoundTrip() throws IOException {
+        VBANInputStream<String> in = VBAN.openCommandInputStream(6982);
+        VBANOutputStream<String> out = new VBANOutputStream<>(VBANPacket.Factory.protocolDefault(VBAN.Protocol.TEXT),
+                InetAddress.getLoopbackAddress(), 6982, 2);
+        in.setSocketTimeout(2000);
+
+        try {
+            assertTrue(out.isPooled());
+
+            out.write("Bus[0].Gain = -6;\nBus[1]".getBytes());
+            out.write(".Mute = 1".getBytes());
+            out.flush();
+
+            assertEquals("Bus[0].Gain = -6;\n", in.readData());
+            assertEquals("Bus[1].Mute = 1", in.readData());
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
+    @Test
+    public void testSendBatch() throws IOException {
+        VBANInputStream<String> in = VBAN.openCommandInputStream(6983);
+        VBANOutputStream<String> pooled = new VBANOutputStream<>(VBANPacket.Factory.protocolDefault(VBAN.Protocol.TEXT),
+                InetAddress.getLoopbackAddress(), 6983, 1);
+        VBANOutputStream<String> unpooled = VBAN.openCommandOutputStream(6983);
+        in.setSocketTimeout(2000);
+
+        try {
+            pooled.write("pending".getBytes());
+            pooled.sendBatch(Arrays.asList("a", "b\nc"));
+            unpooled.sendBatch(Arrays.asList("d", "e"));
+
+            assertEquals("pending", in.readData());
+            assertEquals("a", in.readData());
+            assertEquals("b\nc", in.readData());
+            assertEquals("d", in.readData());
+            assertEquals("e", in.readData());
+        } finally {
+            pooled.close();
+            unpooled.close();
+            in.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testPooledStringTooLong() throws IOException {
+        byte[] bytes = new byte[VBANPacket.MAX_SIZE_WITHOUT_HEAD + 1];
+        Arrays.fill(bytes, (byte) 'x');
+        VBANOutputStream<String> vban = new VBANOutputStream<>(VBANPacket.Factory.protocolDefault(VBAN.Protocol.TEXT),
+                InetAddress.getLoopbackAddress(), 1, 1);
+        vban.write(bytes);
+    }
+
+    @Test
+    public void testDroppedDatagram() throws IOException {
+        // drops every second datagram, like a non-blocking channel with a full send buffer
+        Transport transport = new Transport() {
+            private int sends = 0;
+
+            @Override
+            public void send(ByteBuffer datagram, SocketAddress target) {
+                if (sends++ % 2 == 0)
+                    datagram.position(datagram.limit());
+            }
+
+            @Override
+            public SocketAddress receive(ByteBuffer dst, int timeout) throws IOException {
+                throw new IOException("Send only");
+            }
+
+            @Override
+            public SocketAddress poll(ByteBuffer dst) throws IOException {
+                throw new IOException("Send only");
+            }
+
+            @Override
+            public SocketAddress getLocalAddress() {
+                return null;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        VBANOutputStream<String> vban = new VBANOutputStream<>(VBANPacket.Factory.protocolDefault(VBAN.Protocol.TEXT),
+                transport, new InetSocketAddress(InetAddress.getLoopbackAddress(), 1));
+
+        for (int i = 0; i < 4; i++)
+            vban.sendData("x");
+
+        StreamMetrics metrics = vban.getMetrics();
+        assertEquals(2, metrics.getPackets());
+        assertEquals(2, metrics.getDroppedPackets());
+        assertEquals(2, metrics.snapshot().getDroppedPackets());
+    }
+
     private static VBANOutputStream<String> createTextStream() throws UnknownHostException, SocketException {
         return VBAN.openCommandOutputStream(InetAddress.getLocalHost(), VBAN.DEFAULT_PORT);
     }
@@ -0,0 +1,168 @@
+package de.comroid.test.vban;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANInputStream;
+import de.comroid.vban.VBANPacedAudioOutputStream;
+import de.comroid.vban.model.data.AudioFrame;
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.packet.VBANPacketHead;
+import de.comroid.vban.transport.RingNetwork;
+import de.comroid.vban.transport.RingTransport;
+import de.comroid.vban.transport.Transport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VBANPacedAudioOutputStreamTest {
+    @Test
+    public void testPacing() throws IOException {
+        VBANPacket.Factory<AudioFrame> factory = VBANPacket.Factory.builder(VBAN.Protocol.AUDIO)
+                .setHeadFactory(VBANPacketHead.Factory.builder(VBAN.Protocol.AUDIO)
+                        .setSRValue(VBAN.SampleRate.Hz48000)
+                        .setChannel((byte) 2)
+                        .build())
+                .build();
+        VBANInputStream<AudioFrame> in = VBAN.openAudioInputStream(6986);
+        VBANPacedAudioOutputStream out = VBAN.openPacedAudioOutputStream(factory,
+                InetAddress.getLoopbackAddress(), 6986, 32, VBANPacedAudioOutputStream.CatchUpPolicy.RESYNC);
+        in.setSocketTimeout(2000);
+
+        try {
+            // 19 packet durations of 256 samples at 48kHz are 101ms
+            out.write(new byte[20 * 256 * 4]);
+
+            long first = 0;
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i, in.readHead().getFrameCounter());
+                if (i == 0) first = System.nanoTime();
+            }
+            long elapsed = System.nanoTime() - first;
+
+            assertTrue("Packets were not paced: " + elapsed, elapsed >= 90_000_000L);
+            assertTrue("Packets were paced too slowly: " + elapsed, elapsed < 1_000_000_000L);
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testFailureAndInterrupt() throws Exception {
+        checkRecovery(new IOException("First send fails"));
+    }
+
+    @Test(timeout = 10000)
+    public void testRuntimeFailure() throws Exception {
+        checkRecovery(new IllegalStateException("First send fails"));
+    }
+
+    private static void checkRecovery(Exception firstFailure) throws Exception {
+        VBANPacket.Factory<AudioFrame> factory = VBANPacket.Factory.builder(VBAN.Protocol.AUDIO)
+                .setHeadFactory(VBANPacketHead.Factory.builder(VBAN.Protocol.AUDIO)
+                        .setSRValue(VBAN.SampleRate.Hz48000)
+                        .setChannel((byte) 2)
+                        .build())
+                .build();
+        RingNetwork network = new RingNetwork();
+        RingTransport in = network.bind(new InetSocketAddress("127.0.0.1", 1));
+        FailingOnceTransport transport = new FailingOnceTransport(network.open(), firstFailure);
+        // a pool of two buffers runs dry quickly if the scheduler stops releasing them
+        VBANPacedAudioOutputStream out = new VBANPacedAudioOutputStream(factory, transport,
+                (InetSocketAddress) in.getLocalAddress(), 2, VBANPacedAudioOutputStream.CatchUpPolicy.RESYNC);
+        byte[] packet = new byte[256 * 4];
+
+        try {
+            out.write(packet);
+            while (transport.sendingThread == null)
+                Thread.sleep(1);
+
+            // the failure is reported once, and the packet that reported it is not sent
+            try {
+                out.write(packet);
+                fail("Failure was not reported");
+            } catch (IOException expected) {
+                Throwable cause = expected.getCause();
+                if (cause.getCause() != null)
+                    cause = cause.getCause();
+                assertSame(firstFailure, cause);
+            }
+            out.write(packet);
+
+            // an interrupt does not stop the scheduler
+            transport.sendingThread.interrupt();
+            Thread.sleep(10);
+            out.write(packet);
+            out.write(packet);
+
+            ByteBuffer dst = ByteBuffer.allocate(VBANPacket.MAX_SIZE);
+            VBANPacketHead.View head = VBANPacketHead.view();
+            for (int frame : new int[]{1, 2, 3}) {
+                dst.clear();
+                in.receive(dst, 2000);
+                dst.flip();
+                assertEquals(frame, head.wrap(dst).getFrameCounter());
+            }
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
+    private static final class FailingOnceTransport implements Transport {
+        private final RingTransport sender;
+        private final Exception failure;
+        // the paced stream sends from its own scheduler thread
+        private volatile Thread sendingThread;
+
+        private FailingOnceTransport(RingTransport sender, Exception failure) {
+            this.sender = sender;
+            this.failure = failure;
+        }
+
+        @Override
+        public void send(ByteBuffer datagram, SocketAddress target) throws IOException {
+            if (sendingThread == null) {
+                sendingThread = Thread.currentThread();
+                if (failure instanceof IOException)
+                    throw (IOException) failure;
+                throw (RuntimeException) failure;
+            }
+            sender.send(datagram, target);
+        }
+
+        @Override
+        public SocketAddress receive(ByteBuffer dst, int timeout) throws IOException {
+            return sender.receive(dst, timeout);
+        }
+
+        @Override
+        public SocketAddress poll(ByteBuffer dst) throws IOException {
+            return sender.poll(dst);
+        }
+
+        @Override
+        public SocketAddress getLocalAddress() throws IOException {
+            return sender.getLocalAddress();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return sender.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            sender.close();
+        }
+    }
+}
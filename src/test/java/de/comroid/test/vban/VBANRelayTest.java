@@ -0,0 +1,241 @@
+package de.comroid.test.vban;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANOutputStream;
+import de.comroid.vban.VBANReceiver;
+import de.comroid.vban.VBANRelay;
+import de.comroid.vban.model.data.AudioFrame;
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.packet.VBANPacketHead;
+import de.comroid.vban.transport.RingNetwork;
+import de.comroid.vban.transport.RingTransport;
+import de.comroid.vban.transport.Transport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class VBANRelayTest {
+    private static final int PORT = 6991;
+    private static final int TARGET_1 = 6992;
+    private static final int TARGET_2 = 6993;
+
+    @Test
+    public void testFanOut() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+
+        VBANRelay relay = new VBANRelay(loopback, PORT);
+        relay.getReceiver().setTimeout(2000);
+        relay.addRule(VBANRelay.Rule.builder()
+                .setProtocol(VBAN.Protocol.TEXT)
+                .setStreamName("Command1")
+                .addDestination(loopback, TARGET_1)
+                .addDestination(loopback, TARGET_2)
+                .setRewrittenStreamName("Relayed")
+                .setFrameCounterOffset(100)
+                .build());
+
+        VBANReceiver target1 = new VBANReceiver(new InetSocketAddress(loopback, TARGET_1));
+        VBANReceiver target2 = new VBANReceiver(new InetSocketAddress(loopback, TARGET_2));
+        target1.setTimeout(2000);
+        target2.setTimeout(2000);
+
+        VBANOutputStream<String> text = VBAN.openCommandOutputStream(PORT);
+        VBANOutputStream<AudioFrame> audio = VBAN.openAudioOutputStream(PORT);
+
+        try {
+            audio.sendData(AudioFrame.fromBytes(new byte[4]));
+            text.sendData("Strip[1].Gain = 3");
+
+            assertEquals(0, relay.relayNext());
+            assertEquals(2, relay.relayNext());
+
+            for (VBANReceiver target : new VBANReceiver[]{target1, target2}) {
+                ByteBuffer datagram = target.receive();
+                VBANPacketHead.View head = VBANPacketHead.view().wrap(datagram);
+
+                assertTrue(head.isValid());
+                assertEquals(VBAN.Protocol.TEXT, head.getProtocol());
+                assertEquals("Relayed", head.getStreamName());
+                assertEquals(100, head.getFrameCounter());
+                assertEquals(VBANPacketHead.SIZE + "Strip[1].Gain = 3".length(), datagram.remaining());
+            }
+        } finally {
+            text.close();
+            audio.close();
+            target1.close();
+            target2.close();
+            relay.close();
+        }
+
+        assertEquals(1, relay.getRelayedCount());
+        assertEquals(2, relay.getSentCount());
+        assertEquals(1, relay.getUnmatchedCount());
+        assertEquals(0, relay.getInvalidCount());
+    }
+
+    @Test
+    public void testFailingDestination() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        RingNetwork network = new RingNetwork();
+        final RingTransport sender = network.open();
+        final InetSocketAddress broken = new InetSocketAddress(loopback, 2);
+        RingTransport[] targets = {
+                network.bind(new InetSocketAddress(loopback, 1)),
+                network.bind(new InetSocketAddress(loopback, 3))
+        };
+        Transport transport = new Transport() {
+            @Override
+            public void send(ByteBuffer datagram, SocketAddress target) throws IOException {
+                if (target.equals(broken))
+                    throw new IOException("Unreachable");
+                sender.send(datagram, target);
+            }
+
+            @Override
+            public SocketAddress receive(ByteBuffer dst, int timeout) throws IOException {
+                return sender.receive(dst, timeout);
+            }
+
+            @Override
+            public SocketAddress poll(ByteBuffer dst) throws IOException {
+                return sender.poll(dst);
+            }
+
+            @Override
+            public SocketAddress getLocalAddress() throws IOException {
+                return sender.getLocalAddress();
+            }
+
+            @Override
+            public boolean isOpen() {
+                return sender.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                sender.close();
+            }
+        };
+
+        VBANRelay relay = new VBANRelay(new VBANReceiver(new InetSocketAddress(loopback, PORT)), transport);
+        relay.addRule(VBANRelay.Rule.builder()
+                .addDestination(loopback, 1)
+                .addDestination(loopback, 2)
+                .addDestination(loopback, 3)
+                .build());
+
+        byte[] packet = new byte[VBANPacketHead.SIZE + 4];
+        VBANPacketHead.defaultFactory(VBAN.Protocol.TEXT).createInto(packet, 0);
+
+        try {
+            assertEquals(2, relay.relay(ByteBuffer.wrap(packet)));
+            assertEquals(2, relay.relay(ByteBuffer.wrap(packet)));
+
+            // the destination after the broken one still receives every packet
+            ByteBuffer dst = ByteBuffer.allocate(VBANPacket.MAX_SIZE);
+            for (RingTransport target : targets) {
+                for (int i = 0; i < 2; i++) {
+                    dst.clear();
+                    target.receive(dst, 2000);
+                }
+                assertNull(target.poll(dst));
+            }
+        } finally {
+            relay.close();
+            for (RingTransport target : targets)
+                target.close();
+        }
+
+        assertEquals(2, relay.getRelayedCount());
+        assertEquals(4, relay.getSentCount());
+        assertEquals(2, relay.getFailedCount());
+        assertEquals("Unreachable", relay.getLastFailure().getMessage());
+    }
+
+    @Test
+    public void testConcurrentRelay() throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        Transport discarding = new Transport() {
+            @Override
+            public void send(ByteBuffer datagram, SocketAddress target) {
+                datagram.position(datagram.limit());
+            }
+
+            @Override
+            public SocketAddress receive(ByteBuffer dst, int timeout) {
+                return null;
+            }
+
+            @Override
+            public SocketAddress poll(ByteBuffer dst) {
+                return null;
+            }
+
+            @Override
+            public SocketAddress getLocalAddress() {
+                return null;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        final VBANRelay relay = new VBANRelay(new VBANReceiver(new InetSocketAddress(loopback, PORT)), discarding);
+        relay.addRule(VBANRelay.Rule.builder()
+                .setStreamName("Command1")
+                .addDestination(loopback, TARGET_1)
+                .build());
+
+        // half of the threads relay matching packets, so a view re-pointed by another thread shows in the counts
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final byte[] datagram = new byte[VBANPacketHead.SIZE + 4];
+            VBANPacketHead.Factory.builder(VBAN.Protocol.TEXT)
+                    .setStreamName(t % 2 == 0 ? "Command1" : "Command2")
+                    .build()
+                    .createInto(datagram, 0);
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20_000; i++)
+                        relay.relay(ByteBuffer.wrap(datagram));
+                }
+            };
+        }
+
+        try {
+            for (Thread thread : threads)
+                thread.start();
+            for (Thread thread : threads)
+                thread.join();
+        } finally {
+            relay.close();
+        }
+
+        assertEquals(threads.length / 2 * 20_000, relay.getRelayedCount());
+        assertEquals(threads.length / 2 * 20_000, relay.getSentCount());
+        assertEquals(threads.length / 2 * 20_000, relay.getUnmatchedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStreamNameTooLong() {
+        VBANRelay.Rule.builder()
+                .setRewrittenStreamName("ThisNameIsTooLong")
+                .build();
+    }
+}
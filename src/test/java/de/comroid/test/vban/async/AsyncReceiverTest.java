@@ -0,0 +1,144 @@
+package de.comroid.test.vban.async;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANOutputStream;
+import de.comroid.vban.async.AsyncReceiver;
+import de.comroid.vban.async.ReceivedPacket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncReceiverTest {
+    private AsyncReceiver receiver;
+    private VBANOutputStream<String> out;
+
+    @Before
+    public void setUp() throws IOException {
+        receiver = new AsyncReceiver(InetAddress.getLoopbackAddress(), 6987);
+        out = VBAN.openCommandOutputStream(6987);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        out.close();
+        receiver.close();
+    }
+
+    @Test
+    public void testCallbackOrder() throws IOException, InterruptedException {
+        final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        receiver.register(VBAN.Protocol.TEXT, "Command1", null, new AsyncReceiver.Callback<String>() {
+            @Override
+            public void onReceive(ReceivedPacket<String> packet) {
+                received.add(packet.getData());
+            }
+        });
+
+        for (int i = 0; i < 10; i++)
+            out.sendData("Strip[" + i + "].Mute = 1");
+
+        for (int i = 0; i < 10; i++)
+            assertEquals("Strip[" + i + "].Mute = 1", received.poll(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCallbackFailure() throws IOException, InterruptedException {
+        receiver.register(VBAN.Protocol.TEXT, "Command1", null, new AsyncReceiver.Callback<String>() {
+            @Override
+            public void onReceive(ReceivedPacket<String> packet) {
+                throw new IllegalStateException(packet.getData());
+            }
+        });
+
+        for (int i = 0; i < 3; i++)
+            out.sendData("Strip[" + i + "].Mute = 1");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (receiver.getFailedCount() < 3 && System.nanoTime() - deadline < 0)
+            Thread.sleep(5);
+        assertEquals(3, receiver.getFailedCount());
+        assertEquals("Strip[2].Mute = 1", receiver.getLastFailure().getMessage());
+    }
+
+    @Test
+    public void testPendingCapacity() throws IOException, InterruptedException {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        receiver.register(VBAN.Protocol.TEXT, "Command1", null, new AsyncReceiver.Callback<String>() {
+            @Override
+            public void onReceive(ReceivedPacket<String> packet) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.add(packet.getData());
+            }
+        }, 2);
+
+        out.sendData("Strip[0].Mute = 1");
+        assertTrue(entered.await(2, TimeUnit.SECONDS));
+        for (int i = 1; i < 10; i++)
+            out.sendData("Strip[" + i + "].Mute = 1");
+
+        // one packet is blocked in the callback, two are queued, the rest is dropped
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (receiver.getDemultiplexer().getDispatchedCount() < 10 && System.nanoTime() - deadline < 0)
+            Thread.sleep(5);
+        assertEquals(7, receiver.getDroppedCount());
+
+        release.countDown();
+        for (int i = 0; i < 3; i++)
+            assertTrue(received.poll(2, TimeUnit.SECONDS) != null);
+        assertEquals(null, received.poll(50, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRead() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        Future<ReceivedPacket<String>> read = receiver.read(VBAN.Protocol.TEXT, null);
+        out.sendData("Bus[0].Gain = 0");
+
+        ReceivedPacket<String> packet = read.get(2, TimeUnit.SECONDS);
+        assertEquals("Bus[0].Gain = 0", packet.getData());
+        assertEquals("Command1", packet.getStreamName());
+    }
+
+    @Test
+    public void testReadTimeout() throws IOException, InterruptedException, ExecutionException {
+        Future<ReceivedPacket<String>> read = receiver.read(VBAN.Protocol.TEXT, "Command1");
+
+        try {
+            read.get(50, TimeUnit.MILLISECONDS);
+            throw new AssertionError("Read did not time out");
+        } catch (TimeoutException expected) {
+            // the timed out read has been cancelled and unregistered
+            assertTrue(read.isCancelled());
+            assertFalse(read.cancel(false));
+        }
+
+        out.sendData("Bus[0].Gain = 0");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (receiver.getDemultiplexer().getUnmatchedCount() == 0 && System.nanoTime() < deadline)
+            Thread.sleep(5);
+        assertEquals(1, receiver.getDemultiplexer().getUnmatchedCount());
+        assertEquals(0, receiver.getDemultiplexer().getDispatchedCount());
+    }
+}
@@ -0,0 +1,122 @@
+package de.comroid.test.vban.async;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANOutputStream;
+import de.comroid.vban.async.AsyncReceiver;
+import de.comroid.vban.async.Flow;
+import de.comroid.vban.async.PacketPublisher;
+import de.comroid.vban.async.ReceivedPacket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PacketPublisherTest {
+    private AsyncReceiver receiver;
+    private VBANOutputStream<String> out;
+
+    @Before
+    public void setUp() throws IOException {
+        receiver = new AsyncReceiver(InetAddress.getLoopbackAddress(), 6988);
+        out = VBAN.openCommandOutputStream(6988);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        out.close();
+        receiver.close();
+    }
+
+    @Test
+    public void testDropOldest() throws IOException, InterruptedException {
+        assertEquals("3 4 ", receiveAfterOverflow(PacketPublisher.OverflowStrategy.DROP_OLDEST));
+    }
+
+    @Test
+    public void testDropNewest() throws IOException, InterruptedException {
+        assertEquals("0 1 ", receiveAfterOverflow(PacketPublisher.OverflowStrategy.DROP_NEWEST));
+    }
+
+    @Test
+    public void testFailingSubscriber() throws IOException, InterruptedException {
+        PacketPublisher<String> publisher = new PacketPublisher<>(receiver, VBAN.Protocol.TEXT, null, 2,
+                PacketPublisher.OverflowStrategy.DROP_OLDEST);
+        CollectingSubscriber subscriber = new CollectingSubscriber() {
+            @Override
+            public void onNext(ReceivedPacket<String> item) {
+                throw new IllegalStateException(item.getData());
+            }
+        };
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(10);
+
+        out.sendData("0");
+        for (int i = 0; i < 200 && publisher.getFailedCount() < 1; i++)
+            Thread.sleep(10);
+        assertEquals(1, publisher.getFailedCount());
+        assertEquals("0", publisher.getLastFailure().getMessage());
+        assertEquals(0, publisher.getSubscriberCount());
+
+        publisher.close();
+    }
+
+    private String receiveAfterOverflow(PacketPublisher.OverflowStrategy strategy)
+            throws IOException, InterruptedException {
+        PacketPublisher<String> publisher = new PacketPublisher<>(receiver, VBAN.Protocol.TEXT, null, 2, strategy);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        publisher.subscribe(subscriber);
+
+        for (int i = 0; i < 5; i++)
+            out.sendData(String.valueOf(i));
+        for (int i = 0; i < 200 && publisher.getLostCount() < 3; i++)
+            Thread.sleep(10);
+        assertEquals(3, publisher.getLostCount());
+
+        subscriber.subscription.request(10);
+        StringBuilder received = new StringBuilder();
+        for (int i = 0; i < 2; i++)
+            received.append(subscriber.items.poll(2, TimeUnit.SECONDS)).append(' ');
+
+        publisher.close();
+        assertTrue(subscriber.completed.await(2, TimeUnit.SECONDS));
+        assertNull(subscriber.items.poll());
+        return received.toString();
+    }
+
+    private static class CollectingSubscriber implements Flow.Subscriber<ReceivedPacket<String>> {
+        private final BlockingQueue<String> items = new LinkedBlockingQueue<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ReceivedPacket<String> item) {
+            items.add(item.getData());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            throwable.printStackTrace();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
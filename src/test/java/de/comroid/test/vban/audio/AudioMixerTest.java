@@ -0,0 +1,155 @@
+package de.comroid.test.vban.audio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBAN.AudioFormat;
+import de.comroid.vban.VBANOutputStream;
+import de.comroid.vban.audio.AudioMixer;
+import de.comroid.vban.model.data.AudioFrame;
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.packet.VBANPacketHead;
+import de.comroid.vban.transport.RingNetwork;
+import de.comroid.vban.transport.RingTransport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AudioMixerTest {
+    @Test
+    public void testAlignmentAndGain() {
+        AudioMixer mixer = new AudioMixer(2, 4, AudioFormat.FLOAT32);
+        AudioMixer.Input first = mixer.addInput(1f);
+        AudioMixer.Input second = mixer.addInput(0.5f);
+
+        // both senders have their own frame counters
+        first.offer(100, constant(0.25f));
+        first.offer(101, constant(0.25f));
+        second.offer(7000, constant(0.5f));
+        second.offer(7001, constant(0.5f));
+
+        assertEquals(0.5f, mixer.mix()[0], 1e-6f);
+        assertEquals(0.5f, mixer.mix()[7], 1e-6f);
+    }
+
+    @Test
+    public void testMissingAndLateFrames() {
+        AudioMixer mixer = new AudioMixer(1, 4, AudioFormat.FLOAT32);
+        AudioMixer.Input input = mixer.addInput(1f);
+
+        input.offer(0, constant(0.5f));
+        input.offer(2, constant(0.25f));
+
+        assertEquals(0.5f, mixer.mix()[0], 0);
+        // the missing frame is silence, and does not hold back the next one
+        assertEquals(0f, mixer.mix()[0], 0);
+        assertEquals(0.25f, mixer.mix()[0], 0);
+
+        assertFalse(input.offer(1, constant(1f)));
+        assertEquals(1, input.getLateCount());
+    }
+
+    @Test
+    public void testRestartedSender() {
+        AudioMixer mixer = new AudioMixer(1, 4, AudioFormat.FLOAT32);
+        AudioMixer.Input input = mixer.addInput(1f);
+
+        for (int i = 5000; i < 5003; i++) {
+            assertTrue(input.offer(i, constant(0.5f)));
+            assertEquals(0.5f, mixer.mix()[0], 0);
+        }
+
+        // the sender restarts its counter at 0, far behind the mixed position
+        for (int i = 0; i < 3; i++) {
+            assertTrue(input.offer(i, constant(0.25f)));
+            assertEquals(0.25f, mixer.mix()[0], 0);
+        }
+        assertEquals(1, input.getResyncCount());
+        assertEquals(0, input.getLateCount());
+
+        // frames just behind are still late
+        assertFalse(input.offer(1, constant(1f)));
+        assertEquals(1, input.getLateCount());
+    }
+
+    @Test
+    public void testParallel() {
+        AudioMixer mixer = new AudioMixer(2, 256, AudioFormat.INT16);
+        for (int i = 0; i < AudioMixer.PARALLEL_THRESHOLD + 5; i++)
+            mixer.addInput(0.01f).offer(i, constant(0.5f));
+
+        float[] mixed = mixer.mix();
+        float expected = (AudioMixer.PARALLEL_THRESHOLD + 5) * 0.005f;
+        for (int i = 0; i < 512; i++)
+            assertEquals(expected, mixed[i], 1e-5f);
+
+        // the group tasks are reused for the next position, also with fewer inputs
+        for (int i = 0; i < 5; i++)
+            mixer.removeInput(mixer.getInputs().get(0));
+        // input i was aligned with frame counter i, so its next frame has counter i + 1
+        for (int i = 0; i < AudioMixer.PARALLEL_THRESHOLD; i++)
+            mixer.getInputs().get(i).offer(i + 5 + 1, constant(0.5f));
+
+        mixed = mixer.mix();
+        expected = AudioMixer.PARALLEL_THRESHOLD * 0.005f;
+        for (int i = 0; i < 512; i++)
+            assertEquals(expected, mixed[i], 1e-5f);
+    }
+
+    @Test
+    public void testMixTo() throws IOException {
+        RingNetwork network = new RingNetwork();
+        InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), 1);
+        RingTransport receiver = network.bind(target);
+        VBANOutputStream<AudioFrame> matching = new VBANOutputStream<>(outputFactory(2, 4, AudioFormat.FLOAT32),
+                network.open(), target, 2);
+        VBANOutputStream<AudioFrame> mismatching = new VBANOutputStream<>(outputFactory(1, 4, AudioFormat.FLOAT32),
+                network.open(), target, 2);
+
+        AudioMixer mixer = new AudioMixer(2, 4, AudioFormat.FLOAT32);
+        try {
+            mixer.mixTo(matching);
+            mixer.mixTo(matching);
+
+            ByteBuffer dst = ByteBuffer.allocate(VBANPacket.MAX_SIZE);
+            receiver.receive(dst, 2000);
+            assertEquals(VBANPacketHead.SIZE + 2 * 4 * 4, dst.position());
+
+            try {
+                mixer.mixTo(mismatching);
+                throw new AssertionError("Mislabelled output stream was accepted");
+            } catch (IllegalArgumentException expected) {
+                // nothing is mixed or sent for a stream that would mislabel the frames
+                assertEquals(2, mixer.getPosition());
+            }
+        } finally {
+            matching.close();
+            mismatching.close();
+            receiver.close();
+        }
+    }
+
+    private static VBANPacket.Factory<AudioFrame> outputFactory(int channels, int samples, AudioFormat format) {
+        return VBANPacket.Factory.builder(VBAN.Protocol.AUDIO)
+                .setHeadFactory(VBANPacketHead.Factory.builder(VBAN.Protocol.AUDIO)
+                        .setChannel(channels)
+                        .setSamples(samples)
+                        .setFormatValue(format)
+                        .build())
+                .build();
+    }
+
+    private static AudioFrame constant(float value) {
+        ByteBuffer bytes = ByteBuffer.allocate(512 * 4).order(ByteOrder.LITTLE_ENDIAN);
+        while (bytes.hasRemaining())
+            bytes.putFloat(value);
+        return AudioFrame.fromBytes(bytes.array(), AudioFormat.FLOAT32);
+    }
+}
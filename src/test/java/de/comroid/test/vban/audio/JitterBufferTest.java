@@ -0,0 +1,123 @@
+package de.comroid.test.vban.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.comroid.vban.audio.JitterBuffer;
+import de.comroid.vban.model.data.AudioFrame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class JitterBufferTest {
+    private static final long MS = 1_000_000L;
+    private JitterBuffer buffer;
+    private AudioFrame[] frames;
+
+    @Before
+    public void setUp() {
+        buffer = new JitterBuffer(8, 10);
+        frames = new AudioFrame[16];
+
+        for (int i = 0; i < frames.length; i++)
+            frames[i] = AudioFrame.fromBytes(new byte[]{(byte) i});
+    }
+
+    @Test
+    public void testReordering() {
+        buffer.offer(0, frames[0], 0);
+        buffer.offer(2, frames[2], MS);
+        buffer.offer(1, frames[1], 2 * MS);
+
+        assertNull(buffer.poll(5 * MS));
+        assertEquals(5 * MS, buffer.nanosUntilNextRelease(5 * MS));
+        assertSame(frames[0], buffer.poll(10 * MS));
+        assertNull(buffer.poll(10 * MS));
+        assertSame(frames[1], buffer.poll(12 * MS));
+        assertSame(frames[2], buffer.poll(12 * MS));
+        assertEquals(-1, buffer.nanosUntilNextRelease(12 * MS));
+    }
+
+    @Test
+    public void testLostAndLateFrames() {
+        buffer.offer(0, frames[0], 0);
+        buffer.offer(3, frames[3], MS);
+
+        assertSame(frames[0], buffer.poll(10 * MS));
+        assertNull(buffer.poll(10 * MS));
+        assertSame(frames[3], buffer.poll(11 * MS));
+        assertEquals(2, buffer.getLostCount());
+
+        assertFalse(buffer.offer(1, frames[1], 12 * MS));
+        assertEquals(1, buffer.getLateCount());
+        assertEquals(4, buffer.getNextFrameCounter());
+    }
+
+    @Test
+    public void testOverflow() {
+        for (int i = 0; i < 10; i++)
+            buffer.offer(i, frames[i], 0);
+
+        // the two oldest frames had arrived, so they are discarded rather than lost
+        assertEquals(8, buffer.size());
+        assertEquals(0, buffer.getLostCount());
+        assertEquals(2, buffer.getDiscardedCount());
+        assertSame(frames[2], buffer.poll(10 * MS));
+    }
+
+    @Test
+    public void testLargeJump() {
+        final List<int[]> losses = new ArrayList<>();
+        buffer.setListener(new JitterBuffer.Listener() {
+            @Override
+            public void onLateFrame(int frameCounter) {
+            }
+
+            @Override
+            public void onFramesLost(int firstFrameCounter, int count) {
+                losses.add(new int[]{firstFrameCounter, count});
+            }
+        });
+        buffer.offer(0, frames[0], 0);
+        buffer.offer(2, frames[2], 0);
+
+        // just below the resync distance; the buffer skips ahead to make room
+        buffer.offer(65_000, frames[3], 0);
+
+        assertEquals(0, buffer.getResyncCount());
+        assertEquals(2, buffer.getDiscardedCount());
+        assertEquals(65_000 - 7 - 2, buffer.getLostCount());
+        assertEquals(65_000 - 7, buffer.getNextFrameCounter());
+        assertEquals(2, losses.size());
+        assertArrayEquals(new int[]{1, 1}, losses.get(0));
+        assertArrayEquals(new int[]{3, 65_000 - 7 - 3}, losses.get(1));
+    }
+
+    @Test
+    public void testDuplicate() {
+        buffer.offer(5, frames[5], 0);
+
+        assertFalse(buffer.offer(5, frames[5], 0));
+        assertEquals(1, buffer.getDuplicateCount());
+    }
+
+    @Test
+    public void testReleaseNext() {
+        buffer.offer(0, frames[0], 0);
+        buffer.offer(2, frames[2], MS);
+
+        // released before its delay has run out
+        assertSame(frames[0], buffer.releaseNext());
+        assertNull(buffer.releaseNext());
+        assertEquals(1, buffer.getLostCount());
+        assertSame(frames[2], buffer.releaseNext());
+        assertEquals(3, buffer.getNextFrameCounter());
+        assertEquals(0, buffer.size());
+    }
+}
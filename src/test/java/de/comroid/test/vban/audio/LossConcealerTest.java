@@ -0,0 +1,187 @@
+package de.comroid.test.vban.audio;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANAudioInputStream;
+import de.comroid.vban.audio.JitterBuffer;
+import de.comroid.vban.audio.LossConcealer;
+import de.comroid.vban.model.data.AudioFrame;
+import de.comroid.vban.packet.VBANPacketHead;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LossConcealerTest {
+    private static final int PORT = 6999;
+    private static final int SAMPLES = 256;
+    private static final int PERIOD = 100;
+
+    private static float[] tone(int frame) {
+        float[] samples = new float[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++)
+            samples[i] = 0.5f * (float) Math.sin(2 * Math.PI * (frame * SAMPLES + i) / PERIOD);
+        return samples;
+    }
+
+    private static AudioFrame frame(float[] samples) {
+        ByteBuffer bytes = ByteBuffer.allocate(samples.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asFloatBuffer().put(samples);
+        return AudioFrame.fromBytes(bytes.array(), VBAN.AudioFormat.FLOAT32);
+    }
+
+    private static float maxError(AudioFrame frame, float[] expected, int from, int to) {
+        float[] actual = frame.toFloatArray();
+        float error = 0;
+        for (int i = from; i < to; i++)
+            error = Math.max(error, Math.abs(actual[i] - expected[i]));
+        return error;
+    }
+
+    @Test
+    public void testSilence() {
+        LossConcealer concealer = new LossConcealer(1, SAMPLES, VBAN.AudioFormat.FLOAT32, LossConcealer.Mode.SILENCE);
+        AudioFrame received = frame(tone(0));
+        assertSame(received, concealer.accept(received));
+
+        assertArrayEquals(new float[SAMPLES], concealer.conceal().toFloatArray(), 0);
+        assertTrue(concealer.isConcealing());
+
+        // the next frame fades in, and is untouched after the cross-fade
+        float[] next = tone(2);
+        AudioFrame faded = concealer.accept(frame(next));
+        assertFalse(concealer.isConcealing());
+        assertTrue(Math.abs(faded.toFloatArray()[0]) < Math.abs(next[0]));
+        assertEquals(0, maxError(faded, next, LossConcealer.CROSS_FADE, SAMPLES), 0);
+        assertEquals(1, concealer.getConcealedCount());
+    }
+
+    @Test
+    public void testRepeatLastFadesOut() {
+        LossConcealer concealer = new LossConcealer(1, SAMPLES, VBAN.AudioFormat.FLOAT32, LossConcealer.Mode.REPEAT_LAST);
+        float[] last = tone(0);
+        concealer.accept(frame(last));
+
+        assertArrayEquals(last, concealer.conceal().toFloatArray(), 0);
+
+        // the second concealed frame starts to fade out
+        float[] faded = concealer.conceal().toFloatArray();
+        assertEquals(last[PERIOD / 4], faded[PERIOD / 4], 0.03);
+        assertTrue(Math.abs(faded[SAMPLES - 1]) < Math.abs(last[SAMPLES - 1]));
+
+        for (int i = 0; i < LossConcealer.FADE_OUT_FRAMES - 1; i++)
+            concealer.conceal();
+        assertArrayEquals(new float[SAMPLES], concealer.conceal().toFloatArray(), 0);
+    }
+
+    @Test
+    public void testInterpolationContinuesTheWaveform() {
+        LossConcealer interpolating = new LossConcealer(1, SAMPLES, VBAN.AudioFormat.FLOAT32,
+                LossConcealer.Mode.INTERPOLATE);
+        LossConcealer repeating = new LossConcealer(1, SAMPLES, VBAN.AudioFormat.FLOAT32,
+                LossConcealer.Mode.REPEAT_LAST);
+        for (int f = 0; f < 4; f++) {
+            interpolating.accept(frame(tone(f)));
+            repeating.accept(frame(tone(f)));
+        }
+
+        float[] lost = tone(4);
+        // the frame length is no multiple of the period, so repeating the last frame jumps in phase
+        assertTrue(maxError(repeating.conceal(), lost, 0, SAMPLES) > 0.2f);
+        assertTrue(maxError(interpolating.conceal(), lost, 0, SAMPLES) < 0.01f);
+
+        float[] next = tone(5);
+        assertTrue(maxError(interpolating.accept(frame(next)), next, 0, SAMPLES) < 0.01f);
+    }
+
+    @Test
+    public void testStereoAndFormatChange() {
+        LossConcealer concealer = new LossConcealer(2, SAMPLES / 2, VBAN.AudioFormat.INT16,
+                LossConcealer.Mode.INTERPOLATE);
+        assertEquals(SAMPLES * 2, concealer.conceal().getBytes().length);
+
+        // frames that do not match reset the concealer and pass through
+        AudioFrame other = frame(tone(0));
+        assertSame(other, concealer.accept(other));
+        assertFalse(concealer.isConcealing());
+    }
+
+    @Test(timeout = 10000)
+    public void testStreamConcealsGapsOnTime() throws Exception {
+        // 256 samples at 6 kHz are 42.7 ms per frame, which is coarse enough to measure
+        final long frameNanos = SAMPLES * 1_000_000_000L / 6000;
+        VBANAudioInputStream in = new VBANAudioInputStream(InetAddress.getLoopbackAddress(), PORT,
+                new JitterBuffer(8, 10));
+        in.setLossConcealer(new LossConcealer(1, SAMPLES, VBAN.AudioFormat.FLOAT32, LossConcealer.Mode.INTERPOLATE));
+        in.setSocketTimeout(2000);
+
+        final VBANPacketHead.Factory<AudioFrame> heads = VBANPacketHead.Factory.builder(VBAN.Protocol.AUDIO)
+                .setSRValue(VBAN.SampleRate.Hz6000)
+                .setFormatValue(VBAN.AudioFormat.FLOAT32)
+                .setChannel(1)
+                .setSamples(SAMPLES)
+                .build();
+        final DatagramSocket socket = new DatagramSocket();
+        final int frames = 7;
+
+        Thread sender = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    byte[] datagram = new byte[VBANPacketHead.SIZE + SAMPLES * 4];
+                    long start = System.nanoTime();
+                    for (int f = 0; f < frames; f++) {
+                        long wait = start + f * frameNanos - System.nanoTime();
+                        if (wait > 0)
+                            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+
+                        heads.createInto(datagram, 0);
+                        System.arraycopy(frame(tone(f)).getBytes(), 0, datagram, VBANPacketHead.SIZE, SAMPLES * 4);
+                        // frames 2 and 3 are lost
+                        if (f != 2 && f != 3)
+                            socket.send(new DatagramPacket(datagram, datagram.length,
+                                    InetAddress.getLoopbackAddress(), PORT));
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+
+        long[] times = new long[frames];
+        try {
+            sender.start();
+            for (int f = 0; f < frames; f++) {
+                AudioFrame frame = in.readData();
+                times[f] = System.nanoTime();
+                // the second concealed frame fades out, and the frame after the gap is cross-faded from it
+                assertTrue("Frame " + f, maxError(frame, tone(f), 0, SAMPLES) < (f == 3 || f == 4 ? 0.2f : 0.01f));
+            }
+            sender.join();
+        } finally {
+            socket.close();
+            in.close();
+        }
+
+        // every frame, concealed or not, is played one frame duration after the previous one
+        for (int f = 2; f < frames; f++) {
+            long interval = times[f] - times[f - 1];
+            assertTrue("Interval before frame " + f + " was " + interval / 1_000_000 + " ms",
+                    interval > frameNanos / 2 && interval < frameNanos * 3 / 2);
+        }
+        // the gap did not add latency
+        assertTrue(times[frames - 1] - times[1] < (frames - 2) * frameNanos + frameNanos / 2);
+        assertEquals(2, in.getLossConcealer().getConcealedCount());
+        assertEquals(2, in.getJitterBuffer().getLostCount());
+    }
+}
@@ -0,0 +1,102 @@
+package de.comroid.test.vban.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import de.comroid.vban.VBAN.AudioFormat;
+import de.comroid.vban.audio.PcmConverter;
+import de.comroid.vban.model.data.AudioFrame;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PcmConverterTest {
+    private final PcmConverter converter = new PcmConverter();
+
+    @Test
+    public void testRoundTrips() {
+        byte[] int16 = new byte[3000 * 2];
+        for (int i = 0; i < int16.length; i++)
+            int16[i] = (byte) (i * 31);
+
+        for (AudioFormat format : new AudioFormat[]{AudioFormat.INT24, AudioFormat.INT32,
+                AudioFormat.FLOAT32, AudioFormat.FLOAT64}) {
+            byte[] converted = new byte[3000 * format.getSampleSize()];
+            byte[] back = new byte[int16.length];
+
+            converter.convert(int16, 0, AudioFormat.INT16, converted, 0, format, 3000);
+            converter.convert(converted, 0, format, back, 0, AudioFormat.INT16, 3000);
+            assertArrayEquals(format.toString(), int16, back);
+        }
+    }
+
+    @Test
+    public void testInt32ThroughFloat64IsExact() {
+        ByteBuffer int32 = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        int32.putInt(Integer.MAX_VALUE).putInt(Integer.MIN_VALUE).putInt(123456789);
+        byte[] doubles = new byte[24];
+        byte[] back = new byte[12];
+
+        converter.convert(int32.array(), 0, AudioFormat.INT32, doubles, 0, AudioFormat.FLOAT64, 3);
+        converter.convert(doubles, 0, AudioFormat.FLOAT64, back, 0, AudioFormat.INT32, 3);
+
+        assertArrayEquals(int32.array(), back);
+    }
+
+    @Test
+    public void testInPlace() {
+        byte[] bytes = new byte[2500 * 4];
+        for (int i = 0; i < 2500; i++) {
+            bytes[2 * i] = (byte) i;
+            bytes[2 * i + 1] = (byte) (i >> 8);
+        }
+
+        converter.convert(bytes, 0, AudioFormat.INT16, bytes, 0, AudioFormat.INT32, 2500);
+        ByteBuffer grown = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 2500; i++)
+            assertEquals((short) i << 16, grown.getInt(i * 4));
+
+        converter.convert(bytes, 0, AudioFormat.INT32, bytes, 0, AudioFormat.INT16, 2500);
+        for (int i = 0; i < 2500; i++)
+            assertEquals((short) i, grown.getShort(i * 2));
+    }
+
+    @Test
+    public void testClipping() {
+        byte[] int16 = new byte[4];
+        converter.encode(new float[]{1.5f, -2f}, 0, int16, 0, AudioFormat.INT16, 2);
+
+        AudioFrame frame = AudioFrame.fromBytes(int16, AudioFormat.INT16);
+        assertEquals(Short.MAX_VALUE, frame.asShortBuffer().get(0));
+        assertEquals(Short.MIN_VALUE, frame.asShortBuffer().get(1));
+    }
+
+    @Test
+    public void testDither() {
+        PcmConverter dithering = new PcmConverter(true);
+        float[] silence = new float[4096];
+        byte[] int16 = new byte[silence.length * 2];
+
+        dithering.encode(silence, 0, int16, 0, AudioFormat.INT16, silence.length);
+
+        ByteBuffer samples = ByteBuffer.wrap(int16).order(ByteOrder.LITTLE_ENDIAN);
+        int nonZero = 0;
+        for (int i = 0; i < silence.length; i++) {
+            short sample = samples.getShort(i * 2);
+            assertTrue(sample >= -1 && sample <= 1);
+            if (sample != 0) nonZero++;
+        }
+        assertTrue(nonZero > 0);
+    }
+
+    @Test
+    public void testFrame() {
+        AudioFrame frame = AudioFrame.fromBytes(new byte[]{0, (byte) 0x80, (byte) 0xFF}, AudioFormat.BYTE8);
+        AudioFrame converted = converter.convert(frame, AudioFormat.FLOAT32);
+
+        assertArrayEquals(frame.toFloatArray(), converted.toFloatArray(), 0);
+    }
+}
@@ -0,0 +1,141 @@
+package de.comroid.test.vban.audio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBAN.AudioFormat;
+import de.comroid.vban.VBAN.SampleRate;
+import de.comroid.vban.VBANAudioOutputStream;
+import de.comroid.vban.VBANReceiver;
+import de.comroid.vban.audio.PcmFileSource;
+import de.comroid.vban.packet.VBANPacketHead;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PcmFileSourceTest {
+    private static final int PORT = 6996;
+    private static final int FRAMES = 1000;
+
+    @Test
+    public void testWavHeader() throws IOException {
+        Path file = Files.createTempFile("vban", ".wav");
+        try {
+            Files.write(file, wav(3, 44100, 2, 32, new byte[FRAMES * 8]));
+
+            PcmFileSource source = PcmFileSource.openWav(file);
+            try {
+                assertEquals(SampleRate.Hz44100, source.getSampleRate());
+                assertEquals(AudioFormat.FLOAT32, source.getFormat());
+                assertEquals(2, source.getChannels());
+                assertEquals(8, source.getFrameSize());
+                assertEquals(FRAMES, source.getFrameCount());
+            } finally {
+                source.close();
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnsupportedWav() throws IOException {
+        Path file = Files.createTempFile("vban", ".wav");
+        try {
+            // IMA ADPCM
+            Files.write(file, wav(0x11, 48000, 1, 4, new byte[16]));
+            PcmFileSource.openWav(file).close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testStreamWav() throws IOException {
+        byte[] samples = new byte[FRAMES * 4];
+        for (int i = 0; i < samples.length; i++)
+            samples[i] = (byte) (i * 7);
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        Path file = Files.createTempFile("vban", ".wav");
+        Files.write(file, wav(1, 48000, 2, 16, samples));
+
+        PcmFileSource source = PcmFileSource.openWav(file);
+        VBANAudioOutputStream out = VBAN.openFragmentingAudioOutputStream(
+                source.createPacketFactory("Track1"), loopback, PORT, 8);
+        VBANReceiver receiver = new VBANReceiver(new InetSocketAddress(loopback, PORT));
+        receiver.setTimeout(2000);
+
+        try {
+            assertEquals(256, out.getSamplesPerPacket());
+            assertEquals(FRAMES, source.transferTo(out));
+            assertEquals(FRAMES, source.getPosition());
+
+            byte[] received = new byte[samples.length];
+            int length = 0;
+            VBANPacketHead.View head = VBANPacketHead.view();
+            while (length < received.length) {
+                ByteBuffer datagram = receiver.receive();
+                head.wrap(datagram);
+                assertEquals(SampleRate.Hz48000, head.getDataRateValue());
+                assertEquals(AudioFormat.INT16, head.getFormat());
+                assertEquals(2, head.getChannel());
+                assertEquals("Track1", head.getStreamName());
+
+                int payload = datagram.remaining() - VBANPacketHead.SIZE;
+                assertEquals(head.getSamples() * 4, payload);
+                datagram.position(datagram.position() + VBANPacketHead.SIZE);
+                datagram.get(received, length, payload);
+                length += payload;
+            }
+            assertArrayEquals(samples, received);
+        } finally {
+            receiver.close();
+            out.close();
+            source.close();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testRawSeek() throws IOException {
+        Path file = Files.createTempFile("vban", ".pcm");
+        try {
+            // a trailing partial sample frame is ignored
+            Files.write(file, new byte[FRAMES * 6 + 2]);
+
+            PcmFileSource source = PcmFileSource.openRaw(file, SampleRate.Hz96000, AudioFormat.INT24, 2);
+            try {
+                assertEquals(FRAMES, source.getFrameCount());
+                source.seek(FRAMES - 10);
+                assertEquals(FRAMES - 10, source.getPosition());
+            } finally {
+                source.close();
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static byte[] wav(int tag, int hz, int channels, int bits, byte[] data) {
+        ByteBuffer wav = ByteBuffer.allocate(44 + data.length).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put("RIFF".getBytes()).putInt(36 + data.length).put("WAVE".getBytes());
+        wav.put("fmt ".getBytes()).putInt(16)
+                .putShort((short) tag)
+                .putShort((short) channels)
+                .putInt(hz)
+                .putInt(hz * channels * bits / 8)
+                .putShort((short) (channels * bits / 8))
+                .putShort((short) bits);
+        wav.put("data".getBytes()).putInt(data.length).put(data);
+        return wav.array();
+    }
+}
@@ -0,0 +1,141 @@
+package de.comroid.test.vban.audio;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.audio.Resampler;
+import de.comroid.vban.model.data.AudioFrame;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResamplerTest {
+    @Test
+    public void testSine() {
+        Resampler resampler = new Resampler(VBAN.SampleRate.Hz44100, VBAN.SampleRate.Hz48000, 1);
+        float[] in = sine(1000, 44100, 4410);
+        float[] out = new float[resampler.maxOutputFrames(in.length)];
+
+        int written = resampler.process(in, 0, in.length, out, 0);
+        assertTrue(Math.abs(written - 4800) <= 1);
+
+        // the filter delays by half its length; 44.1 to 48 kHz upsamples by 160 internally
+        double delay = (Resampler.TAPS * 160 - 1) / 2.0 / 160 / 44100;
+        double maxError = 0;
+        for (int k = 200; k < written; k++) {
+            double expected = Math.sin(2 * Math.PI * 1000 * (k / 48000.0 - delay));
+            maxError = Math.max(maxError, Math.abs(out[k] - expected));
+        }
+        assertTrue("Error too large: " + maxError, maxError < 1e-3);
+    }
+
+    @Test
+    public void testLargeDownsamplingRatio() {
+        // 192 to 12 kHz; the output Nyquist frequency is 6 kHz
+        assertEquals(Resampler.TAPS * 16, new Resampler(VBAN.SampleRate.Hz192000, VBAN.SampleRate.Hz12000, 1).getTaps());
+
+        double passband = gainDb(2400);
+        double edge = gainDb(3600);
+        double stopband = gainDb(7800);
+
+        assertTrue("Passband gain: " + passband, Math.abs(passband) < 0.1);
+        assertTrue("Passband edge gain: " + edge, Math.abs(edge) < 0.1);
+        assertTrue("Stopband gain: " + stopband, stopband < -80);
+    }
+
+    @Test
+    public void testBlockwiseEqualsWhole() {
+        float[] in = sine(440, 48000, 2000);
+        float[] interleaved = new float[in.length * 2];
+        for (int i = 0; i < in.length; i++) {
+            interleaved[2 * i] = in[i];
+            interleaved[2 * i + 1] = -in[i];
+        }
+
+        Resampler whole = new Resampler(VBAN.SampleRate.Hz48000, VBAN.SampleRate.Hz44100, 2);
+        float[] expected = new float[whole.maxOutputFrames(in.length) * 2];
+        int expectedFrames = whole.process(interleaved, 0, in.length, expected, 0);
+
+        Resampler blockwise = new Resampler(VBAN.SampleRate.Hz48000, VBAN.SampleRate.Hz44100, 2);
+        float[] actual = new float[expected.length + 16];
+        int frames = 0;
+        for (int offset = 0; offset < in.length; offset += 37) {
+            int count = Math.min(37, in.length - offset);
+            frames += blockwise.process(interleaved, offset * 2, count, actual, frames * 2);
+        }
+
+        assertEquals(expectedFrames, frames);
+        for (int i = 0; i < frames * 2; i++)
+            assertEquals(expected[i], actual[i], 0);
+    }
+
+    @Test
+    public void testAudioFrame() {
+        Resampler resampler = new Resampler(VBAN.SampleRate.Hz24000, VBAN.SampleRate.Hz48000, 1);
+        byte[] bytes = new byte[512];
+        for (int i = 0; i < bytes.length; i += 2)
+            bytes[i + 1] = 0x40;
+
+        AudioFrame frame = resampler.process(AudioFrame.fromBytes(bytes, VBAN.AudioFormat.INT16));
+        float[] samples = frame.toFloatArray();
+
+        assertEquals(VBAN.AudioFormat.FLOAT32, frame.getFormat());
+        assertTrue(Math.abs(samples.length - 512) <= 1);
+        // a constant signal passes with unity gain once the filter is filled
+        assertEquals(0.5f, samples[samples.length - 1], 1e-4f);
+    }
+
+    @Test
+    public void testAudioFrameReuse() {
+        Resampler resampler = new Resampler(VBAN.SampleRate.Hz44100, VBAN.SampleRate.Hz48000, 2);
+        AudioFrame input = AudioFrame.fromBytes(new byte[256 * 2 * 2], VBAN.AudioFormat.INT16);
+
+        // 256 input frames alternate between 278 and 279 output frames
+        Set<AudioFrame> outputs = Collections.newSetFromMap(new IdentityHashMap<AudioFrame, Boolean>());
+        int total = 0;
+        for (int i = 0; i < 20; i++) {
+            AudioFrame output = resampler.process(input);
+            outputs.add(output);
+            total += output.getSampleCount() / 2;
+        }
+
+        assertEquals(2, outputs.size());
+        assertTrue(Math.abs(total - 20 * 256 * 48000 / 44100) <= 1);
+    }
+
+    @Test
+    public void testSameRate() {
+        Resampler resampler = new Resampler(VBAN.SampleRate.Hz48000, VBAN.SampleRate.Hz48000, 1);
+        float[] in = {0.1f, 0.2f, 0.3f};
+        float[] out = new float[3];
+
+        assertEquals(3, resampler.process(in, 0, 3, out, 0));
+        assertArrayEquals(in, out, 0);
+    }
+
+    private static double gainDb(double frequency) {
+        Resampler resampler = new Resampler(VBAN.SampleRate.Hz192000, VBAN.SampleRate.Hz12000, 1);
+        float[] in = sine(frequency, 192000, 96000);
+        float[] out = new float[resampler.maxOutputFrames(in.length)];
+        int written = resampler.process(in, 0, in.length, out, 0);
+
+        // skip the filter's delay and measure the RMS against the input's
+        double sum = 0;
+        int start = resampler.getTaps() / 16 + 1;
+        for (int i = start; i < written; i++)
+            sum += out[i] * out[i];
+        return 10 * Math.log10(sum / (written - start) / 0.5);
+    }
+
+    private static float[] sine(double frequency, int rate, int length) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++)
+            samples[i] = (float) Math.sin(2 * Math.PI * frequency * i / rate);
+        return samples;
+    }
+}
@@ -0,0 +1,204 @@
+package de.comroid.test.vban.capture;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANOutputStream;
+import de.comroid.vban.VBANReceiver;
+import de.comroid.vban.capture.CaptureReader;
+import de.comroid.vban.capture.CaptureReplayer;
+import de.comroid.vban.capture.CaptureWriter;
+import de.comroid.vban.capture.StreamIndex;
+import de.comroid.vban.model.data.AudioFrame;
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.packet.VBANPacketHead;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureTest {
+    private static final int PORT = 6995;
+    private static final int AUDIO_PACKETS = 60;
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path file = Files.createTempFile("vban", ".vbcap");
+        try {
+            CaptureWriter writer = new CaptureWriter(file, 64 << 10);
+            int total = writeTraffic(writer);
+            writer.close();
+
+            CaptureReader reader = new CaptureReader(file);
+            try {
+                verify(reader, total);
+            } finally {
+                reader.close();
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testUnclosedCapture() throws IOException {
+        Path file = Files.createTempFile("vban", ".vbcap");
+        try {
+            CaptureWriter writer = new CaptureWriter(file, 64 << 10);
+            try {
+                int total = writeTraffic(writer);
+                writer.force();
+
+                CaptureReader reader = new CaptureReader(file);
+                try {
+                    verify(reader, total);
+                } finally {
+                    reader.close();
+                }
+            } finally {
+                writer.close();
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testHandleAfterClose() throws IOException {
+        Path file = Files.createTempFile("vban", ".vbcap");
+        try {
+            CaptureWriter writer = new CaptureWriter(file, 64 << 10);
+            writer.close();
+
+            ByteBuffer datagram = ByteBuffer.wrap(new byte[VBANPacketHead.SIZE]);
+            try {
+                writer.handle(VBANPacketHead.view(), datagram, null);
+                throw new AssertionError("Write after close did not fail");
+            } catch (RuntimeException expected) {
+                assertEquals("Capture is closed", expected.getCause().getMessage());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        Path file = Files.createTempFile("vban", ".vbcap");
+        VBANReceiver receiver = new VBANReceiver(new InetSocketAddress(loopback, PORT));
+        VBANOutputStream<String> out = VBAN.openCommandOutputStream(loopback, PORT);
+        receiver.setTimeout(2000);
+
+        try {
+            VBANPacket.Factory<String> factory = VBANPacket.Factory.protocolDefault(VBAN.Protocol.TEXT);
+            CaptureWriter writer = new CaptureWriter(file);
+            for (int i = 0; i < 3; i++)
+                writer.write(ByteBuffer.wrap(factory.create().setData(("Command " + i).getBytes()).getBytes()),
+                        i * 20_000_000L);
+            writer.close();
+
+            CaptureReader reader = new CaptureReader(file);
+            try {
+                CaptureReplayer fast = new CaptureReplayer(out, CaptureReplayer.Timing.AS_FAST_AS_POSSIBLE);
+                assertEquals(3, fast.replay(reader.cursor()));
+                for (int i = 0; i < 3; i++)
+                    assertEquals("Command " + i, text(receiver.receive()));
+
+                CaptureReplayer timed = new CaptureReplayer(out, CaptureReplayer.Timing.ORIGINAL);
+                long start = System.nanoTime();
+                assertEquals(3, timed.replay(reader.cursor()));
+                long elapsed = System.nanoTime() - start;
+                assertTrue("Replay took " + elapsed + "ns", elapsed >= 40_000_000L);
+                for (int i = 0; i < 3; i++)
+                    assertEquals("Command " + i, text(receiver.receive()));
+            } finally {
+                reader.close();
+            }
+        } finally {
+            out.close();
+            receiver.close();
+            Files.delete(file);
+        }
+    }
+
+    private static int writeTraffic(CaptureWriter writer) throws IOException {
+        VBANPacket.Factory<AudioFrame> audio = VBANPacket.Factory.protocolDefault(VBAN.Protocol.AUDIO);
+        VBANPacket.Factory<String> text = VBANPacket.Factory.protocolDefault(VBAN.Protocol.TEXT);
+        byte[] samples = new byte[VBANPacket.MAX_SIZE_WITHOUT_HEAD];
+        int total = 0;
+
+        for (int i = 0; i < AUDIO_PACKETS; i++) {
+            Arrays.fill(samples, (byte) i);
+            writer.write(ByteBuffer.wrap(audio.create().setData(samples).getBytes()), total * 1000L);
+            total++;
+
+            if (i % 3 == 0) {
+                writer.write(ByteBuffer.wrap(text.create().setData(("Command " + i).getBytes()).getBytes()),
+                        total * 1000L);
+                total++;
+            }
+        }
+        writer.write(ByteBuffer.wrap("not vban".getBytes()), total * 1000L);
+        return total + 1;
+    }
+
+    private static void verify(CaptureReader reader, int total) throws IOException {
+        assertEquals(total - 1, reader.getRecordCount());
+        assertEquals(2, reader.getStreams().size());
+
+        CaptureReader.Cursor all = reader.cursor();
+        long previous = Long.MIN_VALUE;
+        for (int i = 0; i < total; i++) {
+            assertTrue(all.next());
+            assertTrue(all.getTimestamp() > previous);
+            previous = all.getTimestamp();
+        }
+        assertFalse(all.next());
+        assertEquals("not vban".length(), all.getDatagram().remaining());
+
+        StreamIndex audio = reader.getStream(VBAN.Protocol.AUDIO, "Stream1");
+        assertNotNull(audio);
+        assertEquals(AUDIO_PACKETS, audio.getRecordCount());
+
+        VBANPacketHead.View head = VBANPacketHead.view();
+        byte[] samples = new byte[VBANPacket.MAX_SIZE_WITHOUT_HEAD];
+        byte[] expected = new byte[VBANPacket.MAX_SIZE_WITHOUT_HEAD];
+        CaptureReader.Cursor cursor = reader.cursor(audio);
+        for (int i = 0; i < AUDIO_PACKETS; i++) {
+            assertTrue(cursor.next());
+            ByteBuffer datagram = cursor.getDatagram();
+            assertEquals(i, head.wrap(datagram).getFrameCounter());
+
+            datagram.position(datagram.position() + VBANPacketHead.SIZE);
+            datagram.get(samples);
+            Arrays.fill(expected, (byte) i);
+            assertArrayEquals(expected, samples);
+        }
+        assertFalse(cursor.next());
+
+        StreamIndex text = reader.getStream(VBAN.Protocol.TEXT, "Command1");
+        assertNotNull(text);
+        assertEquals(AUDIO_PACKETS / 3, text.getRecordCount());
+        cursor = reader.cursor(text);
+        assertTrue(cursor.next());
+        assertEquals("Command 0", text(cursor.getDatagram()));
+    }
+
+    private static String text(ByteBuffer datagram) {
+        byte[] bytes = new byte[datagram.remaining() - VBANPacketHead.SIZE];
+        datagram.position(datagram.position() + VBANPacketHead.SIZE);
+        datagram.get(bytes);
+        return new String(bytes);
+    }
+}
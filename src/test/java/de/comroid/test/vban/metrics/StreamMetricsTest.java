@@ -0,0 +1,96 @@
+package de.comroid.test.vban.metrics;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.metrics.Histogram;
+import de.comroid.vban.metrics.StreamMetrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamMetricsTest {
+    private StreamMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new StreamMetrics();
+    }
+
+    @Test
+    public void testFrameTracking() {
+        metrics.recordFrame(10);
+        metrics.recordFrame(11);
+        metrics.recordFrame(14);
+
+        assertEquals(2, metrics.getLostFrames());
+
+        metrics.recordFrame(12);
+
+        assertEquals(1, metrics.getLostFrames());
+        assertEquals(1, metrics.getReorderedFrames());
+    }
+
+    @Test
+    public void testFrameTrackingPerStream() {
+        metrics.recordFrame(VBAN.Protocol.AUDIO, "Stream1", 100);
+        metrics.recordFrame(VBAN.Protocol.AUDIO, "Stream2", 7);
+        metrics.recordFrame(VBAN.Protocol.TEXT, "Stream1", 50_000);
+        metrics.recordFrame(VBAN.Protocol.AUDIO, "Stream1", 101);
+        metrics.recordFrame(VBAN.Protocol.AUDIO, "Stream2", 8);
+        metrics.recordFrame(VBAN.Protocol.TEXT, "Stream1", 50_001);
+
+        // interleaved streams do not count each other's frames
+        assertEquals(0, metrics.getLostFrames());
+        assertEquals(0, metrics.getReorderedFrames());
+
+        metrics.recordFrame(VBAN.Protocol.AUDIO, "Stream2", 10);
+        assertEquals(1, metrics.getLostFrames());
+    }
+
+    @Test
+    public void testFrameTrackingResync() {
+        metrics.recordFrame(1_000_000);
+        metrics.recordFrame(1_000_001);
+
+        // the sender restarts its counter
+        metrics.recordFrame(0);
+        metrics.recordFrame(2);
+
+        assertEquals(1, metrics.getResyncs());
+        assertEquals(1, metrics.getLostFrames());
+        assertEquals(0, metrics.getReorderedFrames());
+        assertEquals(1, metrics.snapshot().getResyncs());
+    }
+
+    @Test
+    public void testCounters() {
+        metrics.recordPacket(100);
+        metrics.recordPacket(28);
+        metrics.recordDecodeFailure();
+
+        StreamMetrics.Snapshot snapshot = metrics.snapshot();
+        metrics.recordPacket(1);
+
+        assertEquals(2, snapshot.getPackets());
+        assertEquals(128, snapshot.getBytes());
+        assertEquals(1, snapshot.getDecodeFailures());
+        assertEquals(3, metrics.getPackets());
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 99; i++)
+            histogram.record(1000);
+        histogram.record(1_000_000);
+
+        long p50 = histogram.getPercentile(50);
+        long p100 = histogram.getPercentile(100);
+
+        assertEquals(100, histogram.getCount());
+        assertTrue(p50 >= 1000 && p50 < 2048);
+        assertTrue(p100 >= 1_000_000 && p100 < 2_097_152);
+    }
+}
@@ -0,0 +1,62 @@
+package de.comroid.test.vban.model.data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.model.data.AudioFrame;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class AudioFrameTest {
+    @Test
+    public void testInt16View() {
+        byte[] bytes = {0x00, (byte) 0x80, (byte) 0xFF, 0x7F};
+        AudioFrame frame = AudioFrame.fromBytes(bytes, VBAN.AudioFormat.INT16);
+
+        assertEquals(2, frame.getSampleCount());
+        assertEquals(Short.MIN_VALUE, frame.asShortBuffer().get(0));
+        assertEquals(Short.MAX_VALUE, frame.asShortBuffer().get(1));
+        assertArrayEquals(new float[]{-1f, 32767 / 32768f}, frame.toFloatArray(), 0f);
+
+        // views share the frame's memory
+        bytes[1] = 0;
+        assertEquals(0, frame.asShortBuffer().get(0));
+    }
+
+    @Test
+    public void testInt24() {
+        byte[] bytes = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x00, 0x00, 0x40};
+        AudioFrame frame = AudioFrame.fromBytes(bytes, VBAN.AudioFormat.INT24);
+
+        assertEquals(-1, frame.getInt24(0));
+        assertEquals(0x400000, frame.getInt24(1));
+        assertEquals(0.5f, frame.getSample(1), 0f);
+    }
+
+    @Test
+    public void testFloatFormats() {
+        ByteBuffer floats = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        floats.putFloat(0.25f).putFloat(-0.5f);
+        AudioFrame float32 = AudioFrame.fromBytes(floats.array(), VBAN.AudioFormat.FLOAT32);
+
+        ByteBuffer doubles = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        doubles.putDouble(0.25).putDouble(-0.5);
+        AudioFrame float64 = AudioFrame.fromBytes(doubles.array(), VBAN.AudioFormat.FLOAT64);
+
+        float[] samples = new float[4];
+        float32.toFloatArray(samples, 0);
+        float64.toFloatArray(samples, 2);
+
+        assertArrayEquals(new float[]{0.25f, -0.5f, 0.25f, -0.5f}, samples, 0f);
+        assertEquals(-0.5f, float32.asFloatBuffer().get(1), 0f);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFormatMismatch() {
+        AudioFrame.fromBytes(new byte[4], VBAN.AudioFormat.INT16).asFloatBuffer();
+    }
+}
@@ -1,13 +1,20 @@
 package de.comroid.test.vban.packet;
 
+import java.nio.ByteBuffer;
+
 import de.comroid.vban.VBAN;
 import de.comroid.vban.exception.InvalidPacketAttributeException;
+import de.comroid.vban.packet.StreamNameCache;
 import de.comroid.vban.packet.VBANPacketHead;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class VBANPacketHeadTest {
     private VBANPacketHead.Factory headFactory;
@@ -52,4 +59,89 @@ public class VBANPacketHeadTest {
         assertEquals(VBAN.Codec.VBCA, decoded.getCodec());
         assertEquals("Textstream", decoded.getStreamName());
     }
+
+    @Test
+    public void testHeadView() throws InvalidPacketAttributeException {
+        headFactory.create();
+        byte[] generated = headFactory.create().getBytes();
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+        buffer.position(3);
+        buffer.put(generated);
+        buffer.flip().position(3);
+
+        VBANPacketHead.View view = VBANPacketHead.view().wrap(buffer);
+        VBANPacketHead.Decoded decoded = VBANPacketHead.decode(generated);
+
+        assertTrue(view.isValid());
+        assertEquals(VBAN.Protocol.TEXT, view.getProtocol());
+        assertEquals(decoded.getDataRateValue(), view.getDataRateValue());
+        assertEquals(decoded.getFormat(), view.getFormat());
+        assertEquals(decoded.getChannel(), view.getChannel());
+        assertEquals(decoded.getSamples(), view.getSamples());
+        assertEquals(decoded.getCodec(), view.getCodec());
+        assertEquals(1, view.getFrameCounter());
+        assertEquals(decoded.getFrameCounter(), view.getFrameCounter());
+        assertSame(decoded.getStreamName(), view.getStreamName());
+    }
+
+    @Test
+    public void testInvalidHeadView() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[VBANPacketHead.SIZE]);
+
+        assertFalse(VBANPacketHead.view().wrap(buffer).isValid());
+        assertFalse(VBANPacketHead.view().wrap(buffer, 1).isValid());
+    }
+
+    @Test
+    public void testInvalidDataRate() {
+        byte[] bytes = VBANPacketHead.Factory.builder(VBAN.Protocol.AUDIO)
+                .setSRValue(VBAN.SampleRate.Hz48000)
+                .build()
+                .create()
+                .getBytes();
+        // AUDIO with the highest data rate index, which names no sample rate
+        bytes[4] = 0b00011111;
+
+        try {
+            VBANPacketHead.decode(bytes);
+            throw new AssertionError("Invalid sample rate index was decoded");
+        } catch (InvalidPacketAttributeException expected) {
+            // the index is rejected instead of being looked up out of range
+        }
+
+        VBANPacketHead.View view = VBANPacketHead.view().wrap(ByteBuffer.wrap(bytes));
+        assertFalse(view.isValid());
+        assertEquals(31, view.getDataRateIndex());
+        assertNull(view.getDataRateValue());
+    }
+
+    @Test
+    public void testStreamNameCache() {
+        byte[] name = new byte[StreamNameCache.NAME_SIZE + 2];
+        System.arraycopy("Stream1".getBytes(), 0, name, 2, 7);
+
+        String cached = StreamNameCache.get(name, 2);
+
+        assertEquals("Stream1", cached);
+        assertSame(cached, StreamNameCache.get(ByteBuffer.wrap(name), 2));
+    }
+
+    @Test
+    public void testCreateInto() {
+        byte[] created = headFactory.create().getBytes();
+        byte[] written = new byte[VBANPacketHead.SIZE + 4];
+
+        assertEquals(1, headFactory.createInto(written, 4));
+        assertEquals(2, headFactory.counter());
+
+        created[27] = 1;
+        for (int i = 0; i < VBANPacketHead.SIZE; i++)
+            assertEquals(created[i], written[i + 4]);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(VBANPacketHead.SIZE);
+        assertEquals(2, headFactory.createInto(buffer, 0));
+        assertEquals(2, VBANPacketHead.view().wrap(buffer).getFrameCounter());
+        assertEquals("Textstream", VBANPacketHead.view().wrap(buffer).getStreamName());
+    }
 }
@@ -0,0 +1,230 @@
+package de.comroid.test.vban.service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANInputStream;
+import de.comroid.vban.VBANOutputStream;
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.packet.VBANPacketHead;
+import de.comroid.vban.service.PeerCache;
+import de.comroid.vban.service.Ping0;
+import de.comroid.vban.service.PingService;
+import de.comroid.vban.transport.RingNetwork;
+import de.comroid.vban.transport.RingTransport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PingServiceTest {
+    private static Ping0 identity(String application, int features) {
+        return Ping0.builder()
+                .setType(Ping0.Type.VIRTUAL_MIXER)
+                .setFeatures(features)
+                .setRates(48000, 8000, 96000)
+                .setColor(0x3366FF)
+                .setVersion(0x01020304)
+                .setLanguage("EN")
+                .setDistant("192.168.0.10", VBAN.DEFAULT_PORT)
+                .setDeviceName("Virtual Device")
+                .setManufacturerName("comroid")
+                .setApplicationName(application)
+                .setHostName("studio-pc")
+                .setUserName("J\u00fcrgen")
+                .setUserComment("on air")
+                .build();
+    }
+
+    @Test
+    public void testPing0RoundTrip() {
+        Ping0 ping = identity("VBAN-API", Ping0.Feature.AUDIO | Ping0.Feature.TEXT);
+        ByteBuffer buffer = ByteBuffer.allocate(Ping0.SIZE + 4);
+        ping.writeTo(buffer, 4);
+
+        // numbers are little-endian
+        assertEquals(Ping0.Type.VIRTUAL_MIXER, buffer.get(4));
+        assertEquals(0x40, buffer.get(4 + 16) & 0xFF); // 8000 = 0x1F40
+
+        Ping0 read = Ping0.read(buffer, 4);
+        assertEquals(Ping0.Type.VIRTUAL_MIXER, read.getType());
+        assertTrue(read.supports(Ping0.Feature.TEXT));
+        assertTrue(!read.supports(Ping0.Feature.MIDI));
+        assertEquals(48000, read.getPreferredRate());
+        assertEquals(8000, read.getMinRate());
+        assertEquals(96000, read.getMaxRate());
+        assertEquals(0x3366FF, read.getColor());
+        assertEquals(0x01020304, read.getVersion());
+        assertEquals("EN", read.getLanguage());
+        assertEquals("192.168.0.10", read.getDistantIp());
+        assertEquals(VBAN.DEFAULT_PORT, read.getDistantPort());
+        assertEquals("Virtual Device", read.getDeviceName());
+        assertEquals("comroid", read.getManufacturerName());
+        assertEquals("VBAN-API", read.getApplicationName());
+        assertEquals("studio-pc", read.getHostName());
+        assertEquals("J\u00fcrgen", read.getUserName());
+        assertEquals("on air", read.getUserComment());
+
+        try {
+            Ping0.builder().setLanguage("too long for eight").build();
+            fail("Expected the language to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testServiceHead() throws Exception {
+        VBANPacketHead.Factory<byte[]> factory = VBANPacketHead.Factory.builder(VBAN.Protocol.SERVICE)
+                .setServiceFunction(VBAN.Service.FUNCTION_REPLY)
+                .build();
+        byte[] bytes = new byte[VBANPacketHead.SIZE + 8];
+        factory.createInto(bytes, 0);
+
+        VBANPacket.Decoded packet = VBANPacket.decode(bytes, bytes.length);
+        VBANPacketHead.Decoded head = packet.getHead();
+        assertEquals(VBAN.Protocol.SERVICE, head.getProtocol());
+        assertEquals(VBAN.Service.FUNCTION_REPLY, head.getServiceFunction());
+        assertEquals(VBAN.Service.IDENTIFICATION, head.getServiceType());
+        assertEquals(VBAN.Service.STREAM_NAME, head.getStreamName());
+        assertNull(head.getDataRateValue());
+        assertNull(head.getFormat());
+
+        VBANPacketHead.View view = VBANPacketHead.view().wrap(ByteBuffer.wrap(bytes));
+        assertTrue(view.isValid());
+        assertEquals(VBAN.Service.FUNCTION_REPLY, view.getServiceFunction());
+        assertEquals(VBAN.Service.IDENTIFICATION, view.getServiceType());
+    }
+
+    @Test
+    public void testDiscovery() throws IOException {
+        RingNetwork network = new RingNetwork();
+        PingService mixer = new PingService(network.open(),
+                identity("Mixer", Ping0.Feature.AUDIO | Ping0.Feature.TEXT),
+                new PeerCache(1, TimeUnit.MINUTES));
+        PingService console = new PingService(network.open(),
+                identity("Console", Ping0.Feature.TEXT),
+                new PeerCache(1, TimeUnit.MINUTES));
+
+        try {
+            InetSocketAddress mixerAddress = (InetSocketAddress) mixer.getTransport().getLocalAddress();
+            InetSocketAddress consoleAddress = (InetSocketAddress) console.getTransport().getLocalAddress();
+
+            console.ping(mixerAddress);
+            mixer.handleNext();
+            assertEquals(1, mixer.getAnsweredCount());
+            // the request carries the identity of the console
+            assertEquals("Console", mixer.getPeers().get(consoleAddress).getIdentity().getApplicationName());
+
+            console.handleNext();
+            assertEquals(0, console.getAnsweredCount());
+            PeerCache.Peer peer = console.getPeers().get(mixerAddress);
+            assertNotNull(peer);
+            assertEquals("Mixer", peer.getIdentity().getApplicationName());
+
+            List<PeerCache.Peer> audio = console.getPeers().findPeers(Ping0.Feature.AUDIO);
+            assertEquals(1, audio.size());
+            assertEquals(mixerAddress, audio.get(0).getAddress());
+            assertEquals(0, mixer.getPeers().findPeers(Ping0.Feature.AUDIO).size());
+        } finally {
+            mixer.close();
+            console.close();
+        }
+    }
+
+    @Test
+    public void testUnchangedIdentityIsReused() throws IOException {
+        RingNetwork network = new RingNetwork();
+        PingService mixer = new PingService(network.open(),
+                identity("Mixer", Ping0.Feature.AUDIO), new PeerCache(1, TimeUnit.MINUTES));
+        PingService console = new PingService(network.open(),
+                identity("Console", Ping0.Feature.TEXT), new PeerCache(1, TimeUnit.MINUTES));
+
+        try {
+            InetSocketAddress mixerAddress = (InetSocketAddress) mixer.getTransport().getLocalAddress();
+            InetSocketAddress consoleAddress = (InetSocketAddress) console.getTransport().getLocalAddress();
+
+            console.ping(mixerAddress);
+            mixer.handleNext();
+            PeerCache.Peer first = mixer.getPeers().get(consoleAddress);
+
+            // the same identity again refreshes the entry in place
+            console.ping(mixerAddress);
+            mixer.handleNext();
+            assertSame(first, mixer.getPeers().get(consoleAddress));
+            assertEquals(2, mixer.getAnsweredCount());
+
+            // a changed identity replaces it
+            mixer.getPeers().update(consoleAddress, identity("Other", Ping0.Feature.TEXT));
+            console.ping(mixerAddress);
+            mixer.handleNext();
+            assertEquals("Console", mixer.getPeers().get(consoleAddress).getIdentity().getApplicationName());
+        } finally {
+            mixer.close();
+            console.close();
+        }
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        PeerCache cache = new PeerCache(50, TimeUnit.MILLISECONDS);
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", VBAN.DEFAULT_PORT);
+        cache.update(address, identity("Mixer", Ping0.Feature.AUDIO));
+
+        assertNotNull(cache.get(address));
+        assertEquals(1, cache.getPeers().size());
+
+        Thread.sleep(120);
+        assertNull(cache.get(address));
+        assertTrue(cache.getPeers().isEmpty());
+        assertEquals(0, cache.evictExpired());
+
+        cache.update(address, identity("Mixer", Ping0.Feature.AUDIO));
+        Thread.sleep(120);
+        assertEquals(1, cache.evictExpired());
+    }
+
+    @Test
+    public void testEvictionOnUpdate() throws InterruptedException {
+        PeerCache cache = new PeerCache(50, TimeUnit.MILLISECONDS);
+        cache.update(new InetSocketAddress("127.0.0.1", VBAN.DEFAULT_PORT), identity("Mixer", Ping0.Feature.AUDIO));
+
+        // adding another device after the time to live evicts the first one without listing the cache
+        Thread.sleep(120);
+        cache.update(new InetSocketAddress("127.0.0.2", VBAN.DEFAULT_PORT), identity("Console", Ping0.Feature.TEXT));
+        assertEquals(0, cache.evictExpired());
+        assertEquals(1, cache.getPeers().size());
+    }
+
+    @Test
+    public void testStrayServicePacket() throws IOException {
+        RingNetwork network = new RingNetwork();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", VBAN.DEFAULT_PORT);
+        RingTransport sender = network.open();
+
+        VBANInputStream<String> in = new VBANInputStream<>(VBAN.Protocol.TEXT, network.bind(address));
+        VBANOutputStream<String> out = new VBANOutputStream<>(
+                VBANPacket.Factory.protocolDefault(VBAN.Protocol.TEXT), sender, address);
+        PingService service = new PingService(network.open(),
+                identity("Mixer", Ping0.Feature.TEXT), new PeerCache(1, TimeUnit.MINUTES));
+        in.setSocketTimeout(2000);
+
+        try {
+            service.ping(address);
+            out.sendData("Strip[0].Mute = 0");
+            assertEquals("Strip[0].Mute = 0", in.readData());
+        } finally {
+            in.close();
+            out.close();
+            service.close();
+        }
+    }
+}
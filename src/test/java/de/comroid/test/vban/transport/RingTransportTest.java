@@ -0,0 +1,176 @@
+package de.comroid.test.vban.transport;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import de.comroid.vban.VBAN;
+import de.comroid.vban.VBANInputStream;
+import de.comroid.vban.VBANOutputStream;
+import de.comroid.vban.packet.VBANPacket;
+import de.comroid.vban.transport.BlockingUdpTransport;
+import de.comroid.vban.transport.RingNetwork;
+import de.comroid.vban.transport.RingTransport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class RingTransportTest {
+    private static final int PORT = 6998;
+
+    @Test
+    public void testConcurrentSenders() throws Exception {
+        final RingNetwork network = new RingNetwork();
+        final RingTransport receiver = network.bind(new InetSocketAddress("127.0.0.1", 1), 64);
+        final int producers = 4;
+        final int perProducer = 5000;
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final RingTransport sender = network.open();
+            final int id = p;
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    ByteBuffer datagram = ByteBuffer.allocate(8);
+                    try {
+                        start.await();
+                        for (int i = 0; i < perProducer; ) {
+                            long dropped = receiver.getDroppedCount();
+                            datagram.clear();
+                            datagram.putInt(id).putInt(i).flip();
+                            sender.send(datagram, receiver.getLocalAddress());
+                            if (receiver.getDroppedCount() == dropped)
+                                i++;
+                            else Thread.yield();
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            threads[p].start();
+        }
+        start.countDown();
+
+        int[] next = new int[producers];
+        ByteBuffer dst = ByteBuffer.allocateDirect(VBANPacket.MAX_SIZE);
+        for (int received = 0; received < producers * perProducer; ) {
+            dst.clear();
+            receiver.receive(dst, 5000);
+            dst.flip();
+            int id = dst.getInt();
+            int sequence = dst.getInt();
+
+            // drops and retries of other producers may interleave, but every producer stays in order
+            if (sequence == next[id]) {
+                next[id]++;
+                received++;
+            } else if (sequence > next[id])
+                fail("Producer " + id + " skipped from " + next[id] + " to " + sequence);
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertArrayEquals(new int[]{perProducer, perProducer, perProducer, perProducer}, next);
+    }
+
+    @Test
+    public void testTimeoutAndDrop() throws IOException {
+        RingNetwork network = new RingNetwork();
+        RingTransport receiver = network.bind(new InetSocketAddress("127.0.0.1", 2), 2);
+        RingTransport sender = network.open();
+        ByteBuffer dst = ByteBuffer.allocate(16);
+
+        try {
+            receiver.receive(dst, 50);
+            fail("Expected a timeout");
+        } catch (SocketTimeoutException expected) {
+        }
+        assertNull(receiver.poll(dst));
+
+        for (int i = 0; i < 3; i++)
+            sender.send(ByteBuffer.wrap(new byte[]{(byte) i}), receiver.getLocalAddress());
+        assertEquals(2, receiver.getCapacity());
+        assertEquals(1, receiver.getDroppedCount());
+
+        assertEquals(sender.getLocalAddress(), receiver.poll(dst));
+        assertEquals(sender.getLocalAddress(), receiver.poll(dst));
+        assertNull(receiver.poll(dst));
+        assertEquals(2, dst.position());
+        assertEquals(0, dst.get(0));
+        assertEquals(1, dst.get(1));
+
+        try {
+            network.bind(receiver.getLocalAddress());
+            fail("Expected the address to be taken");
+        } catch (BindException expected) {
+        }
+
+        receiver.close();
+        assertFalse(receiver.isOpen());
+        try {
+            receiver.poll(dst);
+            fail("Expected a closed transport");
+        } catch (SocketException expected) {
+        }
+        // the address is free again
+        network.bind(receiver.getLocalAddress()).close();
+    }
+
+    @Test
+    public void testStreamRoundTrip() throws IOException {
+        RingNetwork network = new RingNetwork();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", VBAN.DEFAULT_PORT);
+
+        VBANInputStream<String> in = new VBANInputStream<>(VBAN.Protocol.TEXT, network.bind(address));
+        VBANOutputStream<String> out = new VBANOutputStream<>(
+                VBANPacket.Factory.protocolDefault(VBAN.Protocol.TEXT), network.open(), address);
+        in.setSocketTimeout(2000);
+
+        try {
+            out.sendData("Strip[0].Gain = -6");
+            out.sendData("Bus[1].Mute = 1");
+            assertEquals("Strip[0].Gain = -6", in.readData());
+            assertEquals("Bus[1].Mute = 1", in.readData());
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    @Test
+    public void testBlockingUdpTimeout() throws IOException {
+        BlockingUdpTransport receiver = new BlockingUdpTransport(new InetSocketAddress("127.0.0.1", PORT));
+        BlockingUdpTransport sender = new BlockingUdpTransport();
+        ByteBuffer dst = ByteBuffer.allocateDirect(16);
+
+        try {
+            try {
+                receiver.receive(dst, 50);
+                fail("Expected a timeout");
+            } catch (SocketTimeoutException expected) {
+            }
+            assertNull(receiver.poll(dst));
+
+            sender.send(ByteBuffer.wrap(new byte[]{4, 2}), receiver.getLocalAddress());
+            receiver.receive(dst, 2000);
+            assertEquals(2, dst.position());
+            assertEquals(4, dst.get(0));
+            assertEquals(2, dst.get(1));
+        } finally {
+            receiver.close();
+            sender.close();
+        }
+    }
+}